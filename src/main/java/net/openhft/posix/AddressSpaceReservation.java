@@ -0,0 +1,190 @@
+package net.openhft.posix;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class reserves a contiguous range of address space, into which files or anonymous memory are committed at fixed offsets.
+ * <p>
+ * The reservation is a PROT_NONE, MAP_NORESERVE mapping, which uses no memory or swap, and can't be accessed.
+ * Committing maps over part of it with MAP_FIXED, so a series of files can be presented as one flat range of addresses,
+ * and a pointer can move from one file to the next without remapping. When a committed region is closed, its addresses
+ * are reserved again rather than unmapped, so nothing else can be mapped in the gap.
+ * <p>
+ * Access to a part which is not committed, or not committed yet, raises SIGSEGV which crashes the JVM, so readers must check
+ * what has been committed before following a pointer.
+ */
+public final class AddressSpaceReservation implements AutoCloseable {
+    private static final int RESERVE_FLAGS = MMapFlag.PRIVATE.or(MMapFlag.ANONYMOUS) | MMapFlag.NORESERVE.value();
+
+    private final PosixAPI posix;
+    private final long address;
+    private final long length;
+    // committed regions, ordered by address
+    private final List<MappedRegion> committed = new ArrayList<>();
+    private boolean closed;
+
+    private AddressSpaceReservation(PosixAPI posix, long address, long length) {
+        this.posix = posix;
+        this.address = address;
+        this.length = length;
+    }
+
+    /**
+     * Reserves a range of address space.
+     *
+     * @param length    The length to reserve, rounded up to a page.
+     * @param alignment The alignment of the start e.g. 2 MiB or 1 GiB so huge pages can be committed, or 0 for page aligned.
+     * @return The reservation.
+     * @throws PosixRuntimeException If the address space is not available.
+     */
+    public static AddressSpaceReservation reserve(long length, long alignment) {
+        if (length <= 0)
+            throw new IllegalArgumentException("length: " + length);
+        if (alignment != 0 && (Long.bitCount(alignment) != 1 || alignment < MappedRegion.PAGE_SIZE))
+            throw new IllegalArgumentException("alignment: " + alignment);
+        final PosixAPI posix = PosixAPI.posix();
+        final long rounded = (length + MappedRegion.PAGE_SIZE - 1) & -MappedRegion.PAGE_SIZE;
+        if (alignment <= MappedRegion.PAGE_SIZE)
+            return new AddressSpaceReservation(posix, posix.mmap(0, rounded, MMapProt.PROT_NONE.value(), RESERVE_FLAGS, -1, 0), rounded);
+        // over reserve, and trim to the alignment
+        final long overLength = rounded + alignment;
+        final long addr = posix.mmap(0, overLength, MMapProt.PROT_NONE.value(), RESERVE_FLAGS, -1, 0);
+        final long aligned = (addr + alignment - 1) & -alignment;
+        if (aligned > addr)
+            posix.munmap(addr, aligned - addr);
+        final long end = aligned + rounded;
+        if (addr + overLength > end)
+            posix.munmap(end, addr + overLength - end);
+        return new AddressSpaceReservation(posix, aligned, rounded);
+    }
+
+    /**
+     * Maps part of a file at an offset in the reservation, shared.
+     *
+     * @param offset     The offset in the reservation, page aligned.
+     * @param fd         The file descriptor.
+     * @param fileOffset The offset in the file, page aligned.
+     * @param length     The length to map.
+     * @param prot       The protection e.g. PROT_READ_WRITE
+     * @param ownsFd     Whether to close the file descriptor when the region is closed.
+     * @return The region, which returns its addresses to the reservation when closed.
+     * @throws IllegalArgumentException If the range is outside the reservation or overlaps a region already committed.
+     * @throws PosixRuntimeException    If the mmap fails.
+     */
+    public synchronized MappedRegion commitFile(long offset, int fd, long fileOffset, long length, MMapProt prot, boolean ownsFd) {
+        return commit(offset, length, fd, fileOffset, prot.value(), MMapFlag.SHARED.or(MMapFlag.FIXED), ownsFd);
+    }
+
+    /**
+     * Maps private anonymous memory, zeroed, at an offset in the reservation.
+     *
+     * @param offset The offset in the reservation, page aligned.
+     * @param length The length to map.
+     * @param flags  Any flags to add e.g. POPULATE, or 0
+     * @return The region, which returns its addresses to the reservation when closed.
+     * @throws IllegalArgumentException If the range is outside the reservation or overlaps a region already committed.
+     * @throws PosixRuntimeException    If the mmap fails.
+     */
+    public synchronized MappedRegion commitAnonymous(long offset, long length, int flags) {
+        final int allFlags = MMapFlag.PRIVATE.or(MMapFlag.ANONYMOUS) | MMapFlag.FIXED.value() | flags;
+        return commit(offset, length, -1, 0L, MMapProt.PROT_READ_WRITE.value(), allFlags, false);
+    }
+
+    private MappedRegion commit(long offset, long length, int fd, long fileOffset, int prot, int flags, boolean ownsFd) {
+        if (closed)
+            throw new IllegalStateException("closed");
+        if ((offset & (MappedRegion.PAGE_SIZE - 1)) != 0 || length <= 0 || offset < 0 || offset > this.length - length)
+            throw new IllegalArgumentException("offset: " + offset + " length: " + length + " reserved: " + this.length);
+        final long addr = address + offset;
+        int index = 0;
+        for (; index < committed.size(); index++) {
+            final MappedRegion region = committed.get(index);
+            if (region.address() >= addr + length)
+                break;
+            if (region.address() + region.length() > addr)
+                throw new IllegalArgumentException("offset: " + offset + " length: " + length + " overlaps " + region);
+        }
+        final long mapped = posix.mmap(addr, length, prot, flags, fd, fileOffset);
+        if (mapped != addr) {
+            posix.munmap(mapped, length);
+            throw new IllegalStateException("Mapped at " + Long.toHexString(mapped) + " not " + Long.toHexString(addr));
+        }
+        final MappedRegion region = new MappedRegion(posix, addr, length, fd, fileOffset, prot, ownsFd, this);
+        committed.add(index, region);
+        return region;
+    }
+
+    /**
+     * Called by a region when it is closed, to reserve its addresses again.
+     */
+    synchronized void release(MappedRegion region, long addr, long length) {
+        committed.remove(region);
+        if (closed)
+            return;
+        // mapping over the committed region unmaps it, discarding its pages
+        posix.mmap(addr, length, MMapProt.PROT_NONE.value(), RESERVE_FLAGS | MMapFlag.FIXED.value(), -1, 0);
+    }
+
+    /**
+     * Changes the protection of part of the reservation, see mprotect(2), e.g. to make a region read only once written.
+     *
+     * @param offset The offset in the reservation, page aligned.
+     * @param length The length.
+     * @param prot   The protection required.
+     * @return 0 on success, -1 on error.
+     */
+    public int protect(long offset, long length, MMapProt prot) {
+        if (offset < 0 || length < 0 || offset > this.length - length)
+            throw new IllegalArgumentException("offset: " + offset + " length: " + length + " reserved: " + this.length);
+        return posix.mprotect(address + offset, length, prot);
+    }
+
+    /**
+     * @return The start of the reservation.
+     */
+    public long address() {
+        return address;
+    }
+
+    /**
+     * @return The length reserved.
+     */
+    public long length() {
+        return length;
+    }
+
+    /**
+     * @return The regions committed, ordered by address.
+     */
+    public synchronized List<MappedRegion> committed() {
+        return new ArrayList<>(committed);
+    }
+
+    /**
+     * Closes every region committed, and unmaps the whole reservation.
+     */
+    @Override
+    public void close() {
+        final List<MappedRegion> regions;
+        synchronized (this) {
+            if (closed)
+                return;
+            closed = true;
+            regions = new ArrayList<>(committed);
+        }
+        // with closed set, these only close their file descriptors
+        for (MappedRegion region : regions)
+            region.close();
+        posix.munmap(address, length);
+    }
+
+    @Override
+    public String toString() {
+        return "AddressSpaceReservation{" +
+                "address=0x" + Long.toHexString(address) +
+                ", length=" + length +
+                ", committed=" + committed().size() +
+                '}';
+    }
+}
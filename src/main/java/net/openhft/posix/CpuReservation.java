@@ -0,0 +1,75 @@
+package net.openhft.posix;
+
+/**
+ * This class is a CPU reserved for a thread by {@link CpuReservations}, which the thread is bound to until this is closed.
+ */
+public final class CpuReservation implements AutoCloseable {
+    private final CpuReservations reservations;
+    private final int cpu;
+    // the descriptor of the locked file
+    private final int fd;
+    private final int pid;
+    private final int tid;
+    private final Thread thread;
+    // the affinity of the thread before it was bound
+    private final CpuSet original;
+
+    CpuReservation(CpuReservations reservations, int cpu, int fd, int pid, int tid, Thread thread, CpuSet original) {
+        this.reservations = reservations;
+        this.cpu = cpu;
+        this.fd = fd;
+        this.pid = pid;
+        this.tid = tid;
+        this.thread = thread;
+        this.original = original;
+    }
+
+    /**
+     * @return The CPU reserved.
+     */
+    public int cpu() {
+        return cpu;
+    }
+
+    int fd() {
+        return fd;
+    }
+
+    /**
+     * @return The process holding it.
+     */
+    public int pid() {
+        return pid;
+    }
+
+    /**
+     * @return The thread id, as from gettid, of the thread bound to it.
+     */
+    public int tid() {
+        return tid;
+    }
+
+    /**
+     * @return The thread bound to it.
+     */
+    public Thread thread() {
+        return thread;
+    }
+
+    CpuSet original() {
+        return original;
+    }
+
+    /**
+     * Releases the CPU, restoring the thread's original affinity.
+     */
+    @Override
+    public void close() {
+        reservations.release(this);
+    }
+
+    @Override
+    public String toString() {
+        return "CpuReservation{cpu=" + cpu + ", pid=" + pid + ", tid=" + tid + ", thread=" + thread.getName() + '}';
+    }
+}
@@ -0,0 +1,373 @@
+package net.openhft.posix;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import static net.openhft.posix.internal.UnsafeMemory.UNSAFE;
+
+/**
+ * This class hands out exclusive CPUs from a pool, binding the reserving thread to its CPU with sched_setaffinity.
+ * <p>
+ * Reservations are coordinated between processes on the same host with a lockf lock on a file per CPU in a shared directory.
+ * The kernel releases these locks if a process dies. As lockf locks belong to the process, the lock files held are also recorded
+ * for the whole process, so any number of pools in a JVM can share a directory.
+ * <p>
+ * A reservation is released when it is closed, or shortly after its thread exits by a daemon thread which polls the threads
+ * holding CPUs while there are any, see {@link #releaseExited()}. Until then, the CPU can't be reserved by any other thread or process.
+ * <p>
+ * The default pool is set with <code>-Dposix.cpu.reserve=2-7</code>, or is the isolated CPUs if any, otherwise all CPUs online except CPU 0.
+ * The default directory is <code>-Dposix.cpu.reserve.dir</code>, or posix-cpu-reservations in java.io.tmpdir
+ */
+public final class CpuReservations {
+    static final String POOL_PROPERTY = "posix.cpu.reserve";
+    static final String DIR_PROPERTY = "posix.cpu.reserve.dir";
+
+    private static volatile CpuReservations instance;
+    // the lock files held by any pool in this process, as closing any descriptor for a file releases the lockf lock on it
+    private static final Map<Path, CpuReservation> LOCKED = new HashMap<>();
+    // How often the reaper checks whether the threads holding CPUs have exited
+    private static final long REAP_INTERVAL_NS = TimeUnit.MILLISECONDS.toNanos(100);
+    // the thread releasing the reservations of threads which exited, running while LOCKED is not empty
+    private static Thread reaper;
+
+    private final BitSet pool;
+    private final Path lockDir;
+    // the reservations held by this process, indexed by CPU
+    private final CpuReservation[] held;
+
+    /**
+     * Creates a pool of CPUs to reserve.
+     *
+     * @param pool    The CPUs which may be reserved.
+     * @param lockDir The directory of lock files shared by all processes using this pool.
+     * @throws IOException If the lock files can't be created.
+     */
+    public CpuReservations(BitSet pool, Path lockDir) throws IOException {
+        this.pool = (BitSet) pool.clone();
+        // the real path, so pools sharing a directory by another name see the same lock files
+        this.lockDir = Files.createDirectories(lockDir).toRealPath();
+        this.held = new CpuReservation[Math.max(1, pool.length())];
+        // created up front, rather than opened with O_CREAT while a lock might be held
+        for (int cpu = pool.nextSetBit(0); cpu >= 0; cpu = pool.nextSetBit(cpu + 1)) {
+            final Path lockFile = lockFile(cpu);
+            if (!Files.exists(lockFile))
+                try {
+                    Files.createFile(lockFile);
+                } catch (FileAlreadyExistsException ignored) {
+                    // created by another process
+                }
+        }
+    }
+
+    /**
+     * @return The pool using the default CPUs and directory.
+     * @throws PosixRuntimeException If the lock files can't be created.
+     */
+    public static CpuReservations instance() {
+        CpuReservations reservations = instance;
+        if (reservations == null) {
+            synchronized (CpuReservations.class) {
+                reservations = instance;
+                if (reservations == null) {
+                    try {
+                        instance = reservations = new CpuReservations(defaultPool(), defaultLockDir());
+                    } catch (IOException e) {
+                        throw new PosixRuntimeException(e);
+                    }
+                }
+            }
+        }
+        return reservations;
+    }
+
+    static BitSet defaultPool() {
+        final String pool = System.getProperty(POOL_PROPERTY);
+        if (pool != null)
+            return CpuTopology.parseCpuList(pool);
+        final CpuTopology topology = CpuTopology.current();
+        final BitSet isolated = topology.isolated();
+        if (!isolated.isEmpty())
+            return isolated;
+        final BitSet online = topology.online();
+        if (online.cardinality() > 1)
+            online.clear(0);
+        return online;
+    }
+
+    static Path defaultLockDir() {
+        final String dir = System.getProperty(DIR_PROPERTY);
+        return dir != null
+                ? Paths.get(dir)
+                : Paths.get(System.getProperty("java.io.tmpdir"), "posix-cpu-reservations");
+    }
+
+    Path lockFile(int cpu) {
+        return lockDir.resolve("cpu-" + cpu + ".lock");
+    }
+
+    /**
+     * @return The CPUs which may be reserved.
+     */
+    public BitSet pool() {
+        return (BitSet) pool.clone();
+    }
+
+    /**
+     * Reserves a free CPU from the pool and binds the calling thread to it.
+     *
+     * @return The reservation, to close when the thread no longer needs the CPU.
+     * @throws IllegalStateException If no CPU in the pool is free.
+     */
+    public CpuReservation reserve() {
+        final CpuReservation reservation = tryReserve();
+        if (reservation == null)
+            throw new IllegalStateException("No free CPU in " + pool + ", held " + holders());
+        return reservation;
+    }
+
+    /**
+     * Reserves a free CPU from the pool and binds the calling thread to it.
+     *
+     * @return The reservation, or null if no CPU in the pool is free.
+     */
+    public synchronized CpuReservation tryReserve() {
+        releaseExited();
+        for (int cpu = pool.nextSetBit(0); cpu >= 0; cpu = pool.nextSetBit(cpu + 1)) {
+            final CpuReservation reservation = tryReserve0(cpu);
+            if (reservation != null)
+                return reservation;
+        }
+        return null;
+    }
+
+    /**
+     * Reserves a specific CPU from the pool and binds the calling thread to it.
+     *
+     * @param cpu The CPU to reserve.
+     * @return The reservation, or null if it is held by another thread or process.
+     * @throws IllegalArgumentException If the CPU is not in the pool.
+     */
+    public synchronized CpuReservation tryReserve(int cpu) {
+        if (!pool.get(cpu))
+            throw new IllegalArgumentException("CPU " + cpu + " is not in " + pool);
+        releaseExited();
+        return tryReserve0(cpu);
+    }
+
+    private CpuReservation tryReserve0(int cpu) {
+        if (held[cpu] != null)
+            return null;
+        final Path lockFile = lockFile(cpu);
+        final PosixAPI posix = PosixAPI.posix();
+        synchronized (LOCKED) {
+            // lockf would succeed, as this process already holds the lock
+            if (LOCKED.containsKey(lockFile))
+                return null;
+            final int fd = posix.open(lockFile.toString(), OpenFlag.O_RDWR, 0666);
+            if (fd < 0)
+                return null;
+            if (posix.lockf(fd, LockfFlag.F_TLOCK.value(), 0) != 0) {
+                posix.close(fd);
+                return null;
+            }
+            final Thread thread = Thread.currentThread();
+            final int pid = posix.getpid();
+            final int tid = posix.gettid();
+            final CpuSet original = new CpuSet();
+            try (CpuSet cpus = new CpuSet(cpu + 1)) {
+                posix.sched_getaffinity(0, original);
+                posix.sched_setaffinity(0, cpus.set(cpu));
+                writeHolder(posix, fd, pid + " " + tid + " " + thread.getName() + "\n");
+            } catch (RuntimeException e) {
+                original.close();
+                posix.close(fd);
+                throw e;
+            }
+            final CpuReservation reservation = new CpuReservation(this, cpu, fd, pid, tid, thread, original);
+            held[cpu] = reservation;
+            LOCKED.put(lockFile, reservation);
+            if (reaper == null) {
+                reaper = new Thread(CpuReservations::reap, "cpu-reservation-reaper");
+                reaper.setDaemon(true);
+                reaper.start();
+            }
+            return reservation;
+        }
+    }
+
+    private static void reap() {
+        final List<CpuReservation> exited = new ArrayList<>();
+        while (true) {
+            LockSupport.parkNanos(REAP_INTERVAL_NS);
+            synchronized (LOCKED) {
+                if (LOCKED.isEmpty()) {
+                    reaper = null;
+                    return;
+                }
+                for (CpuReservation reservation : LOCKED.values())
+                    if (!reservation.thread().isAlive())
+                        exited.add(reservation);
+            }
+            // released outside the lock on LOCKED, as release() locks its pool first
+            for (CpuReservation reservation : exited)
+                reservation.close();
+            exited.clear();
+        }
+    }
+
+    private static void writeHolder(PosixAPI posix, int fd, String text) {
+        final byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        final long buf = UNSAFE.allocateMemory(bytes.length);
+        try {
+            for (int i = 0; i < bytes.length; i++)
+                UNSAFE.putByte(buf + i, bytes[i]);
+            posix.ftruncate(fd, 0);
+            posix.write(fd, buf, bytes.length);
+        } finally {
+            UNSAFE.freeMemory(buf);
+        }
+    }
+
+    /**
+     * Releases a reservation, restoring the thread's original affinity if it is still running.
+     */
+    synchronized void release(CpuReservation reservation) {
+        if (held[reservation.cpu()] != reservation)
+            return;
+        held[reservation.cpu()] = null;
+        final PosixAPI posix = PosixAPI.posix();
+        if (reservation.thread().isAlive())
+            posix.sched_setaffinity(reservation.tid(), reservation.original());
+        reservation.original().close();
+        synchronized (LOCKED) {
+            // closing the descriptor releases the lock
+            posix.ftruncate(reservation.fd(), 0);
+            posix.close(reservation.fd());
+            LOCKED.remove(lockFile(reservation.cpu()));
+        }
+    }
+
+    /**
+     * Releases the reservations of threads which have exited, without waiting for the reaper thread. This is called by each method of this pool.
+     */
+    public synchronized void releaseExited() {
+        for (CpuReservation reservation : held)
+            if (reservation != null && !reservation.thread().isAlive())
+                release(reservation);
+    }
+
+    /**
+     * Reports who holds each CPU in the pool, in this process or another.
+     *
+     * @return The holders, ordered by CPU.
+     */
+    public synchronized List<Holder> holders() {
+        releaseExited();
+        final List<Holder> holders = new ArrayList<>();
+        final PosixAPI posix = PosixAPI.posix();
+        for (int cpu = pool.nextSetBit(0); cpu >= 0; cpu = pool.nextSetBit(cpu + 1)) {
+            final Path lockFile = lockFile(cpu);
+            synchronized (LOCKED) {
+                final CpuReservation reservation = LOCKED.get(lockFile);
+                if (reservation != null) {
+                    holders.add(new Holder(cpu, reservation.pid(), reservation.tid(), reservation.thread().getName()));
+                    continue;
+                }
+                // safe to close these descriptors as no pool in this process can lock this file until they are
+                final int fd = posix.open(lockFile.toString(), OpenFlag.O_RDWR, 0666);
+                if (fd < 0)
+                    continue;
+                try {
+                    if (posix.lockf(fd, LockfFlag.F_TEST.value(), 0) == 0)
+                        continue;
+                    final Holder holder = Holder.parse(cpu, new String(Files.readAllBytes(lockFile), StandardCharsets.UTF_8));
+                    if (holder != null)
+                        holders.add(holder);
+                } catch (IOException ignored) {
+                    // released while reading
+                } finally {
+                    posix.close(fd);
+                }
+            }
+        }
+        return Collections.unmodifiableList(holders);
+    }
+
+    @Override
+    public String toString() {
+        return "CpuReservations{pool=" + pool + ", lockDir=" + lockDir + ", holders=" + holders() + '}';
+    }
+
+    /**
+     * The thread holding a CPU.
+     */
+    public static final class Holder {
+        private final int cpu;
+        private final int pid;
+        private final int tid;
+        private final String threadName;
+
+        Holder(int cpu, int pid, int tid, String threadName) {
+            this.cpu = cpu;
+            this.pid = pid;
+            this.tid = tid;
+            this.threadName = threadName;
+        }
+
+        static Holder parse(int cpu, String text) {
+            final String[] parts = text.trim().split(" ", 3);
+            if (parts.length < 3)
+                return null;
+            try {
+                return new Holder(cpu, Integer.parseInt(parts[0]), Integer.parseInt(parts[1]), parts[2]);
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+
+        /**
+         * @return The CPU held.
+         */
+        public int cpu() {
+            return cpu;
+        }
+
+        /**
+         * @return The process holding it.
+         */
+        public int pid() {
+            return pid;
+        }
+
+        /**
+         * @return The thread id, as from gettid, holding it.
+         */
+        public int tid() {
+            return tid;
+        }
+
+        /**
+         * @return The name of the thread holding it.
+         */
+        public String threadName() {
+            return threadName;
+        }
+
+        @Override
+        public String toString() {
+            return "cpu " + cpu + " pid " + pid + " tid " + tid + " " + threadName;
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package net.openhft.posix;
+
+import static net.openhft.posix.internal.UnsafeMemory.IS64BIT;
+import static net.openhft.posix.internal.UnsafeMemory.UNSAFE;
+
+/**
+ * This class is a set of CPUs in off-heap memory laid out as a cpu_set_t, for
+ * {@link PosixAPI#sched_setaffinity(int, CpuSet)} and {@link PosixAPI#sched_getaffinity(int, CpuSet)}.
+ * <p>
+ * As with cpu_set_t, it is an array of unsigned long, with CPU n at bit n % bits-per-long of word n / bits-per-long.
+ * The size is rounded up to a whole number of words, as the kernel requires.
+ * <p>
+ * An instance can be reused for any number of calls without allocating. It is not thread safe and must be closed to free its memory.
+ */
+public final class CpuSet implements AutoCloseable {
+    // The size of an unsigned long in bytes and bits
+    private static final int WORD_BYTES = IS64BIT ? 8 : 4;
+    private static final int WORD_BITS = WORD_BYTES * 8;
+
+    // The number of CPUs which can be held
+    private final int maxCpus;
+
+    // The size of the mask in bytes
+    private final int sizeInBytes;
+
+    // The address of the mask, 0 once closed
+    private long address;
+
+    /**
+     * Creates an empty CpuSet large enough for every CPU configured on this machine.
+     */
+    public CpuSet() {
+        this(PosixAPI.posix().get_nprocs_conf());
+    }
+
+    /**
+     * Creates an empty CpuSet.
+     *
+     * @param maxCpus The number of CPUs it can hold, numbered from 0.
+     */
+    public CpuSet(int maxCpus) {
+        if (maxCpus < 1)
+            throw new IllegalArgumentException("maxCpus: " + maxCpus);
+        final int words = (maxCpus + WORD_BITS - 1) / WORD_BITS;
+        this.sizeInBytes = words * WORD_BYTES;
+        this.maxCpus = sizeInBytes * 8;
+        this.address = UNSAFE.allocateMemory(sizeInBytes);
+        clearAll();
+    }
+
+    /**
+     * @return The address of the mask, to pass as a cpu_set_t *
+     */
+    public long address() {
+        if (address == 0)
+            throw new IllegalStateException("Closed");
+        return address;
+    }
+
+    /**
+     * @return The size of the mask in bytes, to pass as cpusetsize.
+     */
+    public int sizeInBytes() {
+        return sizeInBytes;
+    }
+
+    /**
+     * @return The number of CPUs it can hold, which is rounded up to a whole number of words.
+     */
+    public int maxCpus() {
+        return maxCpus;
+    }
+
+    private long wordAddress(int cpu) {
+        if (cpu < 0 || cpu >= maxCpus)
+            throw new IndexOutOfBoundsException("cpu: " + cpu + " maxCpus: " + maxCpus);
+        return address() + (long) (cpu / WORD_BITS) * WORD_BYTES;
+    }
+
+    private long getWord(long wordAddress) {
+        return IS64BIT ? UNSAFE.getLong(wordAddress) : UNSAFE.getInt(wordAddress) & 0xFFFFFFFFL;
+    }
+
+    private void putWord(long wordAddress, long word) {
+        if (IS64BIT)
+            UNSAFE.putLong(wordAddress, word);
+        else
+            UNSAFE.putInt(wordAddress, (int) word);
+    }
+
+    /**
+     * Adds a CPU.
+     *
+     * @param cpu The CPU number.
+     * @return this
+     */
+    public CpuSet set(int cpu) {
+        final long wordAddress = wordAddress(cpu);
+        putWord(wordAddress, getWord(wordAddress) | (1L << (cpu % WORD_BITS)));
+        return this;
+    }
+
+    /**
+     * Adds the CPUs from and to inclusive.
+     *
+     * @param from The first CPU.
+     * @param to   The last CPU.
+     * @return this
+     */
+    public CpuSet setRange(int from, int to) {
+        for (int cpu = from; cpu <= to; cpu++)
+            set(cpu);
+        return this;
+    }
+
+    /**
+     * Removes a CPU.
+     *
+     * @param cpu The CPU number.
+     * @return this
+     */
+    public CpuSet clear(int cpu) {
+        final long wordAddress = wordAddress(cpu);
+        putWord(wordAddress, getWord(wordAddress) & ~(1L << (cpu % WORD_BITS)));
+        return this;
+    }
+
+    /**
+     * Removes all CPUs.
+     *
+     * @return this
+     */
+    public CpuSet clearAll() {
+        UNSAFE.setMemory(address(), sizeInBytes, (byte) 0);
+        return this;
+    }
+
+    /**
+     * @param cpu The CPU number.
+     * @return Whether the CPU is in the set, false if it is beyond maxCpus.
+     */
+    public boolean isSet(int cpu) {
+        if (cpu < 0 || cpu >= maxCpus)
+            return false;
+        return (getWord(wordAddress(cpu)) & (1L << (cpu % WORD_BITS))) != 0;
+    }
+
+    /**
+     * Iterates the CPUs in the set without allocating e.g.
+     * <pre>for (int cpu = set.nextSetCpu(0); cpu >= 0; cpu = set.nextSetCpu(cpu + 1))</pre>
+     *
+     * @param from The first CPU to check.
+     * @return The first CPU in the set from this one, or -1 if there are none.
+     */
+    public int nextSetCpu(int from) {
+        for (int cpu = Math.max(0, from); cpu < maxCpus; ) {
+            final long word = getWord(wordAddress(cpu)) >>> (cpu % WORD_BITS);
+            if (word != 0)
+                return cpu + Long.numberOfTrailingZeros(word);
+            cpu += WORD_BITS - cpu % WORD_BITS;
+        }
+        return -1;
+    }
+
+    /**
+     * @return The number of CPUs in the set.
+     */
+    public int cardinality() {
+        int count = 0;
+        for (int i = 0; i < sizeInBytes; i += WORD_BYTES)
+            count += Long.bitCount(getWord(address() + i));
+        return count;
+    }
+
+    /**
+     * Frees the memory.
+     */
+    @Override
+    public void close() {
+        if (address != 0) {
+            UNSAFE.freeMemory(address);
+            address = 0;
+        }
+    }
+
+    /**
+     * @return The CPUs in the set as ranges e.g. 0-3,8-8
+     */
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder();
+        for (int start = nextSetCpu(0); start >= 0; ) {
+            int end = start;
+            while (isSet(end + 1))
+                end++;
+            if (sb.length() > 0)
+                sb.append(',');
+            sb.append(start).append('-').append(end);
+            start = nextSetCpu(end + 1);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,371 @@
+package net.openhft.posix;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * This class describes how the CPUs of this machine are laid out, as read from /sys/devices/system/cpu on Linux:
+ * which package (socket), core and NUMA node each CPU is on, which CPUs are SMT siblings (hyperthreads),
+ * which share the L2 and last level caches, and which are isolated from the scheduler with isolcpus or nohz_full.
+ * <p>
+ * This can be used to choose CPUs for threads which hand off to each other, e.g. two CPUs which share a last level cache
+ * but not a core, see {@link #pairSharingCacheNotCore(BitSet)}
+ * <p>
+ * Where a value is not available it is -1, or an empty set.
+ */
+public final class CpuTopology {
+    // The default location of the CPU descriptions
+    static final String SYS_CPU = "/sys/devices/system/cpu";
+
+    private static volatile CpuTopology current;
+
+    // indexed by CPU number, null where a CPU is not present
+    private final List<Cpu> cpus;
+    private final BitSet online;
+    private final BitSet isolated;
+    private final BitSet nohzFull;
+
+    private CpuTopology(List<Cpu> cpus, BitSet online, BitSet isolated, BitSet nohzFull) {
+        this.cpus = Collections.unmodifiableList(cpus);
+        this.online = online;
+        this.isolated = isolated;
+        this.nohzFull = nohzFull;
+    }
+
+    /**
+     * Returns the topology of this machine, read once. CPUs going on or offline after this won't be reflected.
+     *
+     * @return The topology of this machine, empty if /sys/devices/system/cpu can't be read.
+     */
+    public static CpuTopology current() {
+        CpuTopology topology = current;
+        if (topology == null)
+            current = topology = read(Paths.get(SYS_CPU));
+        return topology;
+    }
+
+    /**
+     * Reads the topology from a directory laid out as /sys/devices/system/cpu
+     *
+     * @param sysCpu The directory to read.
+     * @return The topology, empty if the directory can't be read.
+     */
+    public static CpuTopology read(Path sysCpu) {
+        final List<Cpu> cpus = new ArrayList<>();
+        final BitSet possible = readCpuList(sysCpu.resolve("possible"));
+        final BitSet present = readCpuList(sysCpu.resolve("present"));
+        for (int i = possible.nextSetBit(0); i >= 0; i = possible.nextSetBit(i + 1)) {
+            final Path dir = sysCpu.resolve("cpu" + i);
+            if (!Files.isDirectory(dir) || (!present.isEmpty() && !present.get(i)))
+                continue;
+            while (cpus.size() <= i)
+                cpus.add(null);
+            cpus.set(i, readCpu(i, dir));
+        }
+        final BitSet online = readCpuList(sysCpu.resolve("online"));
+        return new CpuTopology(cpus,
+                online,
+                readCpuList(sysCpu.resolve("isolated")),
+                readCpuList(sysCpu.resolve("nohz_full")));
+    }
+
+    private static Cpu readCpu(int id, Path dir) {
+        final Path topology = dir.resolve("topology");
+        BitSet l2 = new BitSet();
+        BitSet llc = new BitSet();
+        int llcLevel = -1;
+        try (DirectoryStream<Path> caches = Files.newDirectoryStream(dir.resolve("cache"), "index*")) {
+            for (Path cache : caches) {
+                if ("Instruction".equals(readString(cache.resolve("type"))))
+                    continue;
+                final int level = readInt(cache.resolve("level"));
+                final BitSet shared = readCpuList(cache.resolve("shared_cpu_list"));
+                if (level == 2)
+                    l2 = shared;
+                if (level > llcLevel) {
+                    llcLevel = level;
+                    llc = shared;
+                }
+            }
+        } catch (IOException | RuntimeException ignored) {
+            // no cache information e.g. in some virtual machines
+        }
+        int node = -1;
+        try (DirectoryStream<Path> nodes = Files.newDirectoryStream(dir, "node*")) {
+            for (Path path : nodes) {
+                node = Integer.parseInt(path.getFileName().toString().substring(4));
+                break;
+            }
+        } catch (IOException | RuntimeException ignored) {
+            // not a NUMA kernel
+        }
+        BitSet siblings = readCpuList(topology.resolve("thread_siblings_list"));
+        if (siblings.isEmpty())
+            siblings = readCpuList(topology.resolve("core_cpus_list"));
+        if (siblings.isEmpty())
+            siblings.set(id);
+        return new Cpu(id,
+                readInt(topology.resolve("physical_package_id")),
+                readInt(topology.resolve("core_id")),
+                node,
+                siblings,
+                l2,
+                llc,
+                llcLevel);
+    }
+
+    /**
+     * Parses a CPU list as used by the kernel e.g. 0-3,8,10-11
+     *
+     * @param list The CPU list, may be empty.
+     * @return The CPUs in the list.
+     * @throws NumberFormatException If the list is not valid.
+     */
+    public static BitSet parseCpuList(String list) {
+        final BitSet cpus = new BitSet();
+        final String trimmed = list.trim();
+        if (trimmed.isEmpty())
+            return cpus;
+        for (String range : trimmed.split(",")) {
+            final int dash = range.indexOf('-');
+            if (dash < 0) {
+                cpus.set(Integer.parseInt(range.trim()));
+            } else {
+                cpus.set(Integer.parseInt(range.substring(0, dash).trim()),
+                        Integer.parseInt(range.substring(dash + 1).trim()) + 1);
+            }
+        }
+        return cpus;
+    }
+
+    /**
+     * Reads a CPU list file.
+     *
+     * @param path The file.
+     * @return The CPUs listed, empty if the file doesn't exist or is not valid.
+     */
+    static BitSet readCpuList(Path path) {
+        final String list = readString(path);
+        try {
+            return list == null ? new BitSet() : parseCpuList(list);
+        } catch (NumberFormatException e) {
+            return new BitSet();
+        }
+    }
+
+    private static String readString(Path path) {
+        try {
+            return new String(Files.readAllBytes(path), StandardCharsets.ISO_8859_1).trim();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static int readInt(Path path) {
+        final String s = readString(path);
+        try {
+            return s == null ? -1 : Integer.parseInt(s);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * @return The CPUs present, in order.
+     */
+    public List<Cpu> cpus() {
+        final List<Cpu> list = new ArrayList<>();
+        for (Cpu cpu : cpus)
+            if (cpu != null)
+                list.add(cpu);
+        return list;
+    }
+
+    /**
+     * @param id The CPU number.
+     * @return The CPU, or null if not present.
+     */
+    public Cpu cpu(int id) {
+        return id >= 0 && id < cpus.size() ? cpus.get(id) : null;
+    }
+
+    /**
+     * @return The CPUs online.
+     */
+    public BitSet online() {
+        return (BitSet) online.clone();
+    }
+
+    /**
+     * @return The CPUs isolated from the scheduler with the isolcpus boot parameter.
+     */
+    public BitSet isolated() {
+        return (BitSet) isolated.clone();
+    }
+
+    /**
+     * @return The CPUs with the scheduler tick disabled with the nohz_full boot parameter.
+     */
+    public BitSet nohzFull() {
+        return (BitSet) nohzFull.clone();
+    }
+
+    /**
+     * @return Whether the two CPUs are hyperthreads of the same core, or the same CPU.
+     */
+    public boolean sharesCore(int cpu1, int cpu2) {
+        final Cpu cpu = cpu(cpu1);
+        return cpu != null && cpu.siblings.get(cpu2);
+    }
+
+    /**
+     * @return Whether the two CPUs share a last level cache.
+     */
+    public boolean sharesLastLevelCache(int cpu1, int cpu2) {
+        final Cpu cpu = cpu(cpu1);
+        return cpu != null && cpu.lastLevelCache.get(cpu2);
+    }
+
+    /**
+     * Chooses two online CPUs on different cores which share a last level cache, for a pair of threads which hand off to
+     * each other. CPUs which are isolated are preferred, then those with the lowest numbers.
+     *
+     * @param allowed The CPUs which may be chosen e.g. from sched_getaffinity, or null for any.
+     * @return The two CPUs, or null if no such pair is available.
+     */
+    public int[] pairSharingCacheNotCore(BitSet allowed) {
+        final BitSet candidates = online();
+        if (allowed != null)
+            candidates.and(allowed);
+        final BitSet preferred = (BitSet) candidates.clone();
+        preferred.and(isolated);
+        final int[] pair = pairSharingCacheNotCore0(preferred);
+        return pair != null ? pair : pairSharingCacheNotCore0(candidates);
+    }
+
+    private int[] pairSharingCacheNotCore0(BitSet candidates) {
+        for (int a = candidates.nextSetBit(0); a >= 0; a = candidates.nextSetBit(a + 1)) {
+            final Cpu cpuA = cpu(a);
+            if (cpuA == null)
+                continue;
+            for (int b = candidates.nextSetBit(a + 1); b >= 0; b = candidates.nextSetBit(b + 1)) {
+                if (cpuA.lastLevelCache.get(b) && !cpuA.siblings.get(b))
+                    return new int[]{a, b};
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("CpuTopology{online=").append(online)
+                .append(", isolated=").append(isolated)
+                .append(", nohzFull=").append(nohzFull);
+        for (Cpu cpu : cpus())
+            sb.append("\n  ").append(cpu);
+        return sb.append('}').toString();
+    }
+
+    /**
+     * This class describes where one CPU is in the topology.
+     */
+    public static final class Cpu {
+        private final int id;
+        private final int packageId;
+        private final int coreId;
+        private final int numaNode;
+        private final BitSet siblings;
+        private final BitSet l2Cache;
+        private final BitSet lastLevelCache;
+        private final int lastLevelCacheLevel;
+
+        Cpu(int id, int packageId, int coreId, int numaNode, BitSet siblings, BitSet l2Cache, BitSet lastLevelCache, int lastLevelCacheLevel) {
+            this.id = id;
+            this.packageId = packageId;
+            this.coreId = coreId;
+            this.numaNode = numaNode;
+            this.siblings = siblings;
+            this.l2Cache = l2Cache;
+            this.lastLevelCache = lastLevelCache;
+            this.lastLevelCacheLevel = lastLevelCacheLevel;
+        }
+
+        /**
+         * @return The CPU number, as used by sched_setaffinity.
+         */
+        public int id() {
+            return id;
+        }
+
+        /**
+         * @return The physical package (socket).
+         */
+        public int packageId() {
+            return packageId;
+        }
+
+        /**
+         * @return The core within the package.
+         */
+        public int coreId() {
+            return coreId;
+        }
+
+        /**
+         * @return The NUMA node.
+         */
+        public int numaNode() {
+            return numaNode;
+        }
+
+        /**
+         * @return The CPUs on the same core, including this one.
+         */
+        public BitSet siblings() {
+            return (BitSet) siblings.clone();
+        }
+
+        /**
+         * @return The CPUs sharing this CPU's L2 cache.
+         */
+        public BitSet l2Cache() {
+            return (BitSet) l2Cache.clone();
+        }
+
+        /**
+         * @return The CPUs sharing this CPU's last level cache.
+         */
+        public BitSet lastLevelCache() {
+            return (BitSet) lastLevelCache.clone();
+        }
+
+        /**
+         * @return The level of the last level cache e.g. 3
+         */
+        public int lastLevelCacheLevel() {
+            return lastLevelCacheLevel;
+        }
+
+        @Override
+        public String toString() {
+            return "Cpu{" +
+                    "id=" + id +
+                    ", packageId=" + packageId +
+                    ", coreId=" + coreId +
+                    ", numaNode=" + numaNode +
+                    ", siblings=" + siblings +
+                    ", l2Cache=" + l2Cache +
+                    ", lastLevelCache=" + lastLevelCache +
+                    ", lastLevelCacheLevel=" + lastLevelCacheLevel +
+                    '}';
+        }
+    }
+}
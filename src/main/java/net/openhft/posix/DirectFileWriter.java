@@ -0,0 +1,256 @@
+package net.openhft.posix;
+
+import jnr.constants.platform.Errno;
+
+import static net.openhft.posix.internal.UnsafeMemory.UNSAFE;
+
+/**
+ * This class writes a file sequentially with O_DIRECT, so the data bypasses the page cache and doesn't evict pages
+ * other readers depend on, e.g. of a memory mapped journal.
+ * <p>
+ * O_DIRECT requires the buffer address, file offset and length of each write to be aligned to the logical block size of
+ * the device, so data is collected in a buffer allocated with posix_memalign and written in whole blocks. On {@link #flush()}
+ * the last partial block is written padded with zeros and kept, to be written again once it is complete. The file is truncated
+ * to the length written on close.
+ * <p>
+ * Where O_DIRECT is not available, e.g. on macOS or tmpfs, the file is written through the page cache instead, see {@link #isDirect()}
+ * <p>
+ * This class is not thread safe.
+ */
+public final class DirectFileWriter implements AutoCloseable {
+    // a multiple of the logical block size of almost every device, and the page size
+    public static final int DEFAULT_ALIGNMENT = 4096;
+
+    private final PosixAPI posix;
+    private final String filename;
+    private final int fd;
+    private final boolean direct;
+    private final int alignment;
+    private final int bufferSize;
+    private final long buffer;
+    // set if posix_memalign is not available
+    private final MappedRegion bufferRegion;
+    // the offset in the file of the start of the buffer, always aligned
+    private long bufferOffset;
+    private int used;
+    private boolean closed;
+
+    /**
+     * Creates or truncates a file to write with a 1 MiB buffer.
+     *
+     * @param filename The file to write.
+     */
+    public DirectFileWriter(String filename) {
+        this(filename, 1 << 20, DEFAULT_ALIGNMENT);
+    }
+
+    /**
+     * Creates or truncates a file to write.
+     *
+     * @param filename   The file to write.
+     * @param bufferSize The size of the buffer, a multiple of the alignment. Larger buffers mean fewer, larger writes.
+     * @param alignment  The alignment required by the device, a power of 2 e.g. 512 or 4096
+     * @throws PosixRuntimeException If the file can't be opened or the buffer can't be allocated.
+     */
+    public DirectFileWriter(String filename, int bufferSize, int alignment) {
+        if (Integer.bitCount(alignment) != 1 || alignment < 8)
+            throw new IllegalArgumentException("alignment: " + alignment);
+        if (bufferSize <= 0 || bufferSize % alignment != 0)
+            throw new IllegalArgumentException("bufferSize: " + bufferSize + " must be a multiple of " + alignment);
+        this.posix = PosixAPI.posix();
+        this.filename = filename;
+        this.alignment = alignment;
+        this.bufferSize = bufferSize;
+        final int flags = OpenFlag.O_WRONLY.or(OpenFlag.O_CREAT) | OpenFlag.O_TRUNC.or(OpenFlag.O_CLOEXEC);
+        int fd = -1;
+        if (OpenFlag.O_DIRECT.isSupported()) {
+            fd = posix.open(filename, flags | OpenFlag.O_DIRECT.value(), 0666);
+            // file systems such as tmpfs don't support O_DIRECT
+            if (fd < 0 && posix.lastError() != Errno.EINVAL.intValue())
+                throw new PosixRuntimeException("Unable to open " + filename + " " + posix.lastErrorStr(), posix.lastError());
+        }
+        this.direct = fd >= 0;
+        if (fd < 0)
+            fd = posix.open(filename, flags, 0666);
+        if (fd < 0)
+            throw new PosixRuntimeException("Unable to open " + filename + " " + posix.lastErrorStr(), posix.lastError());
+        this.fd = fd;
+        try {
+            final long memptr = UNSAFE.allocateMemory(8);
+            try {
+                final int ret = posix.posix_memalign(memptr, alignment, bufferSize);
+                if (ret == 0) {
+                    this.buffer = UNSAFE.getAddress(memptr);
+                    this.bufferRegion = null;
+                } else if (alignment <= MappedRegion.PAGE_SIZE) {
+                    // no C library, mmap is page aligned
+                    this.bufferRegion = MappedRegion.mapAnonymous(bufferSize, 0);
+                    this.buffer = bufferRegion.address();
+                } else {
+                    throw new PosixRuntimeException("posix_memalign failed " + posix.strerror(ret), ret);
+                }
+            } finally {
+                UNSAFE.freeMemory(memptr);
+            }
+        } catch (RuntimeException e) {
+            posix.close(fd);
+            throw e;
+        }
+    }
+
+    /**
+     * Writes from native memory.
+     *
+     * @param src The address to copy from.
+     * @param len The number of bytes.
+     */
+    public void write(long src, long len) {
+        checkOpen();
+        while (len > 0) {
+            final int n = (int) Math.min(len, bufferSize - used);
+            UNSAFE.copyMemory(src, buffer + used, n);
+            used += n;
+            src += n;
+            len -= n;
+            if (used == bufferSize)
+                writeFull();
+        }
+    }
+
+    /**
+     * Writes from a byte[]
+     *
+     * @param bytes The bytes.
+     * @param start The offset of the first byte.
+     * @param len   The number of bytes.
+     */
+    public void write(byte[] bytes, int start, int len) {
+        checkOpen();
+        if (start < 0 || len < 0 || start > bytes.length - len)
+            throw new IndexOutOfBoundsException("start: " + start + " len: " + len + " length: " + bytes.length);
+        while (len > 0) {
+            final int n = Math.min(len, bufferSize - used);
+            UNSAFE.copyMemory(bytes, UNSAFE.arrayBaseOffset(byte[].class) + (long) start, null, buffer + used, n);
+            used += n;
+            start += n;
+            len -= n;
+            if (used == bufferSize)
+                writeFull();
+        }
+    }
+
+    private void writeFull() {
+        pwriteFully(bufferSize);
+        bufferOffset += bufferSize;
+        used = 0;
+    }
+
+    /**
+     * Writes what is buffered to the file, padding the last partial block, which is kept in the buffer.
+     * The file may be longer than {@link #position()} until it is closed.
+     */
+    public void flush() {
+        checkOpen();
+        if (used == 0)
+            return;
+        final int whole = used & -alignment;
+        final int partial = used - whole;
+        if (partial == 0) {
+            pwriteFully(used);
+        } else {
+            UNSAFE.setMemory(buffer + used, alignment - partial, (byte) 0);
+            pwriteFully(whole + alignment);
+        }
+        if (whole > 0) {
+            // keep the partial block at the start of the buffer, its offset is aligned
+            if (partial > 0)
+                UNSAFE.copyMemory(buffer + whole, buffer, partial);
+            bufferOffset += whole;
+            used = partial;
+        }
+    }
+
+    private void pwriteFully(int length) {
+        for (int written = 0; written < length; ) {
+            final long n = posix.pwrite(fd, buffer + written, length - written, bufferOffset + written);
+            if (n < 0)
+                throw new PosixRuntimeException("pwrite to " + filename + " failed " + posix.lastErrorStr(), posix.lastError());
+            // a short write leaves the rest aligned as the length written by a device is a multiple of its block size
+            written += (int) n;
+        }
+    }
+
+    /**
+     * Flushes and waits for the data to be durable with fdatasync. With O_DIRECT the data is already on the device, but
+     * this is still needed for the device cache and the file metadata.
+     */
+    public void sync() {
+        flush();
+        if (posix.fdatasync(fd) != 0)
+            throw new PosixRuntimeException("fdatasync of " + filename + " failed " + posix.lastErrorStr(), posix.lastError());
+    }
+
+    /**
+     * @return The number of bytes written, including those still buffered.
+     */
+    public long position() {
+        return bufferOffset + used;
+    }
+
+    /**
+     * @return Whether the file was opened with O_DIRECT
+     */
+    public boolean isDirect() {
+        return direct;
+    }
+
+    /**
+     * @return The alignment of writes.
+     */
+    public int alignment() {
+        return alignment;
+    }
+
+    /**
+     * @return The file descriptor.
+     */
+    public int fd() {
+        return fd;
+    }
+
+    private void checkOpen() {
+        if (closed)
+            throw new IllegalStateException("closed");
+    }
+
+    /**
+     * Flushes, truncates the file to the length written, closes it and frees the buffer.
+     */
+    @Override
+    public void close() {
+        if (closed)
+            return;
+        try {
+            flush();
+            if (posix.ftruncate(fd, position()) != 0)
+                throw new PosixRuntimeException("Unable to truncate " + filename + " " + posix.lastErrorStr(), posix.lastError());
+        } finally {
+            closed = true;
+            posix.close(fd);
+            if (bufferRegion != null)
+                bufferRegion.close();
+            else
+                posix.free(buffer);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "DirectFileWriter{" +
+                "filename='" + filename + '\'' +
+                ", direct=" + direct +
+                ", alignment=" + alignment +
+                ", position=" + position() +
+                '}';
+    }
+}
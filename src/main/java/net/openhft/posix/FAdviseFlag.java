@@ -0,0 +1,47 @@
+package net.openhft.posix;
+
+/**
+ * This enum represents the advice for file access patterns (posix_fadvise).
+ * It defines the advice given to the kernel about how a range of a file will be read, which affects read ahead and caching.
+ */
+public enum FAdviseFlag {
+    // No further special treatment
+    POSIX_FADV_NORMAL(0),
+
+    // Expect random access, disabling read ahead
+    POSIX_FADV_RANDOM(1),
+
+    // Expect sequential access, doubling the read ahead window
+    POSIX_FADV_SEQUENTIAL(2),
+
+    // Will need this range, start reading it into the page cache without waiting
+    POSIX_FADV_WILLNEED(3),
+
+    // Don't need this range, drop its clean pages from the page cache
+    POSIX_FADV_DONTNEED(4),
+
+    // Will access this range once, currently no effect on Linux
+    POSIX_FADV_NOREUSE(5);
+
+    // The integer value representing the advice
+    private final int value;
+
+    /**
+     * Constructor for FAdviseFlag.
+     *
+     * @param value The integer value representing the advice
+     */
+    FAdviseFlag(int value) {
+        this.value = value;
+    }
+
+    /**
+     * This method is a getter for the value instance variable.
+     * It returns the current integer value of this FAdviseFlag object.
+     *
+     * @return The current integer value of this FAdviseFlag object
+     */
+    public int value() {
+        return value;
+    }
+}
@@ -0,0 +1,133 @@
+package net.openhft.posix;
+
+import static net.openhft.posix.internal.UnsafeMemory.UNSAFE;
+
+/**
+ * This class holds the result of {@link PosixAPI#stat(CharSequence, FileStat)} or {@link PosixAPI#fstat(int, FileStat)}.
+ * It is mutable so one instance can be reused e.g. by a thread monitoring the growth of a sparse file.
+ */
+public final class FileStat {
+    // for statx(2)
+    static final int AT_FDCWD = -100;
+    static final int AT_EMPTY_PATH = 0x1000;
+    static final int STATX_BASIC_STATS = 0x7ff;
+    // The size of struct statx
+    static final int STATX_SIZE = 256;
+    static final int S_IFMT = 0170000;
+    static final int S_IFDIR = 0040000;
+
+    // The size of the file in bytes
+    private long size;
+
+    // The number of 512 byte blocks allocated on disk
+    private long blocks;
+
+    // The preferred block size for I/O
+    private int blksize;
+
+    // The inode on the device
+    private long inode;
+
+    // The file type and permissions
+    private int mode;
+
+    // The number of hard links
+    private int nlink;
+
+    // The last modification time in nanoseconds since the epoch
+    private long mtimeNanos;
+
+    /**
+     * Reads a struct statx as written by the statx system call.
+     *
+     * @param address The address of the struct statx.
+     * @return this
+     */
+    FileStat readStatx(long address) {
+        blksize = UNSAFE.getInt(address + 4);
+        nlink = UNSAFE.getInt(address + 16);
+        mode = UNSAFE.getShort(address + 28) & 0xFFFF;
+        inode = UNSAFE.getLong(address + 32);
+        size = UNSAFE.getLong(address + 40);
+        blocks = UNSAFE.getLong(address + 48);
+        // struct statx_timestamp { __s64 tv_sec; __u32 tv_nsec; }
+        mtimeNanos = UNSAFE.getLong(address + 112) * 1_000_000_000L + UNSAFE.getInt(address + 120);
+        return this;
+    }
+
+    /**
+     * @return The size of the file in bytes.
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * @return The number of 512 byte blocks allocated on disk, which for a sparse file can be much less than the size.
+     */
+    public long blocks() {
+        return blocks;
+    }
+
+    /**
+     * @return The bytes allocated on disk.
+     */
+    public long diskUsage() {
+        return blocks * 512;
+    }
+
+    /**
+     * @return The preferred block size for I/O.
+     */
+    public int blksize() {
+        return blksize;
+    }
+
+    /**
+     * @return The inode on the device.
+     */
+    public long inode() {
+        return inode;
+    }
+
+    /**
+     * @return The file type and permissions, as st_mode.
+     */
+    public int mode() {
+        return mode;
+    }
+
+    /**
+     * @return Whether this is a directory.
+     */
+    public boolean isDirectory() {
+        return (mode & S_IFMT) == S_IFDIR;
+    }
+
+    /**
+     * @return The number of hard links.
+     */
+    public int nlink() {
+        return nlink;
+    }
+
+    /**
+     * @return The last modification time in nanoseconds since the epoch.
+     */
+    public long mtimeNanos() {
+        return mtimeNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "FileStat{" +
+                "size=" + size +
+                ", blocks=" + blocks +
+                ", blksize=" + blksize +
+                ", inode=" + inode +
+                ", mode=" + Integer.toOctalString(mode) +
+                ", nlink=" + nlink +
+                ", mtimeNanos=" + mtimeNanos +
+                '}';
+    }
+}
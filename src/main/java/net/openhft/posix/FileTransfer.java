@@ -0,0 +1,427 @@
+package net.openhft.posix;
+
+import jnr.constants.platform.Errno;
+import net.openhft.posix.internal.raw.Syscall;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+import static net.openhft.posix.internal.UnsafeMemory.UNSAFE;
+
+/**
+ * This class moves data from one file descriptor to another using the cheapest primitive which works for that pair.
+ * <p>
+ * In order of preference:
+ * <ol>
+ *     <li>copy_file_range, between regular files, which can share the blocks (reflink) on btrfs and XFS, or copy on the server for NFS</li>
+ *     <li>sendfile, from a regular file to anything e.g. a socket</li>
+ *     <li>splice, through a pipe held by this object if neither side is a pipe</li>
+ *     <li>read and write through a buffer, which works for everything</li>
+ * </ol>
+ * A primitive is skipped when the kernel rejects it for these file descriptors e.g. EINVAL, EXDEV or ENOSYS, before anything
+ * has been moved. The primitive which worked is remembered for the last pair of file descriptors, so only the first call for
+ * a pair makes extra system calls.
+ * <p>
+ * If a non-blocking outFd would block after data has been spliced into the pipe, the data is kept in the pipe and written
+ * first by the next transfer to that outFd.
+ * <p>
+ * This class is not thread safe, but can be reused for any number of transfers.
+ */
+public final class FileTransfer implements AutoCloseable {
+    // sendfile and splice move at most this per call
+    static final long MAX_CHUNK = 0x7ffff000L;
+    // moved nothing, as the method is not supported for these file descriptors
+    private static final long UNSUPPORTED = -1;
+    // interrupted, call again
+    private static final long RETRY = -2;
+
+    private final PosixAPI posix;
+    private final int bufferSize;
+    // the offset passed to the kernel, and the pipe's file descriptors
+    private final long scratch;
+    private final Map<Method, long[]> bytesByMethod = new EnumMap<>(Method.class);
+    private long buffer;
+    private int pipeIn = -1;
+    private int pipeOut = -1;
+    // bytes spliced into the pipe which outFd would not accept yet
+    private long pipePending;
+    private int pipePendingFd = -1;
+    // the method which worked for the last pair of file descriptors
+    private int pairInFd = -1;
+    private int pairOutFd = -1;
+    private Method pairMethod;
+    private boolean pairViaPipe;
+    private Method lastMethod;
+    private boolean closed;
+
+    /**
+     * The primitives in order of preference.
+     */
+    public enum Method {
+        COPY_FILE_RANGE, SENDFILE, SPLICE, READ_WRITE
+    }
+
+    /**
+     * Creates a transfer with a 1 MiB buffer for when the data has to be copied through user space.
+     */
+    public FileTransfer() {
+        this(1 << 20);
+    }
+
+    /**
+     * @param bufferSize The size of the buffer used when the data has to be copied through user space.
+     */
+    public FileTransfer(int bufferSize) {
+        if (bufferSize <= 0)
+            throw new IllegalArgumentException("bufferSize: " + bufferSize);
+        this.posix = PosixAPI.posix();
+        this.bufferSize = bufferSize;
+        this.scratch = UNSAFE.allocateMemory(16);
+        for (Method method : Method.values())
+            bytesByMethod.put(method, new long[1]);
+    }
+
+    /**
+     * Copies a whole file, creating or truncating the destination.
+     *
+     * @param from The file to copy.
+     * @param to   The file to write.
+     * @return The number of bytes copied.
+     * @throws PosixRuntimeException If either file can't be opened, or the copy fails.
+     */
+    public static long copyFile(String from, String to) {
+        final PosixAPI posix = PosixAPI.posix();
+        final int in = posix.open(from, OpenFlag.O_RDONLY.or(OpenFlag.O_CLOEXEC), 0);
+        if (in < 0)
+            throw new PosixRuntimeException("Unable to open " + from + " " + posix.lastErrorStr(), posix.lastError());
+        try (FileTransfer transfer = new FileTransfer()) {
+            final FileStat stat = new FileStat();
+            if (posix.fstat(in, stat) != 0)
+                throw new PosixRuntimeException("Unable to stat " + from + " " + posix.lastErrorStr(), posix.lastError());
+            final int flags = OpenFlag.O_WRONLY.or(OpenFlag.O_CREAT) | OpenFlag.O_TRUNC.or(OpenFlag.O_CLOEXEC);
+            final int out = posix.open(to, flags, 0666);
+            if (out < 0)
+                throw new PosixRuntimeException("Unable to open " + to + " " + posix.lastErrorStr(), posix.lastError());
+            try {
+                return transfer.transfer(in, 0, out, stat.size());
+            } finally {
+                posix.close(out);
+            }
+        } finally {
+            posix.close(in);
+        }
+    }
+
+    /**
+     * Moves data from one file descriptor to another, writing at the file offset of outFd.
+     *
+     * @param inFd     The file descriptor to read from.
+     * @param inOffset The position to read from, which leaves the file offset of inFd unchanged,
+     *                 or -1 to read from its file offset, as is needed for a pipe or socket.
+     * @param outFd    The file descriptor to write to, at its file offset.
+     * @param len      The number of bytes to move.
+     * @return The number of bytes moved, less than len at the end of the input, or if a non-blocking file descriptor would block.
+     * @throws PosixRuntimeException If a read or write fails.
+     * @throws IllegalStateException If data is waiting in the pipe to be written to a different outFd.
+     */
+    public long transfer(int inFd, long inOffset, int outFd, long len) {
+        if (closed)
+            throw new IllegalStateException("closed");
+        if (len < 0)
+            throw new IllegalArgumentException("len: " + len);
+        if (len == 0)
+            return 0;
+        long pending = 0;
+        if (pipePending > 0) {
+            if (outFd != pipePendingFd)
+                throw new IllegalStateException(pipePending + " bytes are waiting to be written to " + pipePendingFd);
+            // these are the first bytes from the input
+            pending = drainPipe(outFd, Math.min(len, pipePending));
+            bytesByMethod.get(Method.SPLICE)[0] += pending;
+            lastMethod = Method.SPLICE;
+            if (pipePending > 0 || pending == len)
+                return pending;
+            if (inOffset >= 0)
+                inOffset += pending;
+            len -= pending;
+        }
+        if (inFd != pairInFd || outFd != pairOutFd) {
+            pairInFd = inFd;
+            pairOutFd = outFd;
+            pairMethod = null;
+            pairViaPipe = false;
+        }
+        if (pairMethod != null) {
+            final long moved = transfer(pairMethod, inFd, inOffset, outFd, len);
+            if (moved != UNSUPPORTED)
+                return pending + moved(pairMethod, moved);
+        }
+        for (Method method : Method.values()) {
+            if (method == pairMethod)
+                continue;
+            final long moved = transfer(method, inFd, inOffset, outFd, len);
+            if (moved != UNSUPPORTED) {
+                pairMethod = method;
+                return pending + moved(method, moved);
+            }
+        }
+        throw new AssertionError("READ_WRITE is always supported");
+    }
+
+    private long moved(Method method, long moved) {
+        lastMethod = method;
+        bytesByMethod.get(method)[0] += moved;
+        return moved;
+    }
+
+    private long transfer(Method method, int inFd, long inOffset, int outFd, long len) {
+        switch (method) {
+            case COPY_FILE_RANGE:
+                return Syscall.COPY_FILE_RANGE.isAvailable() ? copyFileRange(inFd, inOffset, outFd, len) : UNSUPPORTED;
+            case SENDFILE:
+                return Syscall.SENDFILE.isAvailable() ? sendfile(inFd, inOffset, outFd, len) : UNSUPPORTED;
+            case SPLICE:
+                if (!Syscall.SPLICE.isAvailable())
+                    return UNSUPPORTED;
+                if (!pairViaPipe) {
+                    final long moved = splice(inFd, inOffset, outFd, len);
+                    // EINVAL if neither is a pipe
+                    if (moved != UNSUPPORTED || posix.lastError() != Errno.EINVAL.intValue())
+                        return moved;
+                    pairViaPipe = true;
+                }
+                return spliceViaPipe(inFd, inOffset, outFd, len);
+            default:
+                return readWrite(inFd, inOffset, outFd, len);
+        }
+    }
+
+    private long offsetPtr(long offset) {
+        if (offset < 0)
+            return 0;
+        UNSAFE.putLong(scratch, offset);
+        return scratch;
+    }
+
+    private long copyFileRange(int inFd, long inOffset, int outFd, long len) {
+        long done = 0;
+        final long offPtr = offsetPtr(inOffset);
+        while (done < len) {
+            final long n = posix.copy_file_range(inFd, offPtr, outFd, 0, len - done, 0);
+            // procfs and sysfs files report 0 rather than an error, so unless this pair has copied before, let the next method check for EOF
+            if (n == 0)
+                return done == 0 && pairMethod != Method.COPY_FILE_RANGE ? UNSUPPORTED : done;
+            if (n > 0) {
+                done += n;
+                continue;
+            }
+            final long ret = failed("copy_file_range", done);
+            if (ret != RETRY)
+                return ret;
+        }
+        return done;
+    }
+
+    private long sendfile(int inFd, long inOffset, int outFd, long len) {
+        long done = 0;
+        final long offPtr = offsetPtr(inOffset);
+        while (done < len) {
+            final long n = posix.sendfile(outFd, inFd, offPtr, Math.min(MAX_CHUNK, len - done));
+            if (n == 0)
+                break;
+            if (n > 0) {
+                done += n;
+                continue;
+            }
+            final long ret = failed("sendfile", done);
+            if (ret != RETRY)
+                return ret;
+        }
+        return done;
+    }
+
+    // directly, which works if either is a pipe, otherwise fails with EINVAL
+    private long splice(int inFd, long inOffset, int outFd, long len) {
+        long done = 0;
+        while (done < len) {
+            final long n = posix.splice(inFd, offsetPtr(inOffset < 0 ? -1 : inOffset + done), outFd, 0,
+                    Math.min(MAX_CHUNK, len - done), SpliceFlag.SPLICE_F_MOVE.value());
+            if (n == 0)
+                break;
+            if (n > 0) {
+                done += n;
+                continue;
+            }
+            final long ret = failed("splice", done);
+            if (ret != RETRY)
+                return ret;
+        }
+        return done;
+    }
+
+    private long spliceViaPipe(int inFd, long inOffset, int outFd, long len) {
+        if (pipeIn < 0 && !openPipe())
+            return UNSUPPORTED;
+        long done = 0;
+        while (done < len) {
+            final long in = posix.splice(inFd, offsetPtr(inOffset < 0 ? -1 : inOffset + done), pipeOut, 0,
+                    Math.min(MAX_CHUNK, len - done), SpliceFlag.SPLICE_F_MOVE.value());
+            if (in == 0)
+                break;
+            if (in < 0) {
+                final long ret = failed("splice", done);
+                if (ret == RETRY)
+                    continue;
+                return ret;
+            }
+            pipePending = in;
+            pipePendingFd = outFd;
+            done += drainPipe(outFd, in);
+            // outFd would block, the rest is written by the next call
+            if (pipePending > 0)
+                break;
+        }
+        return done;
+    }
+
+    /**
+     * Writes bytes waiting in the pipe to outFd, stopping if it would block.
+     *
+     * @return The number of bytes written.
+     */
+    private long drainPipe(int outFd, long len) {
+        long out = 0;
+        while (out < len) {
+            final long m = posix.splice(pipeIn, 0, outFd, 0, len - out, SpliceFlag.SPLICE_F_MOVE.value());
+            if (m > 0) {
+                out += m;
+                continue;
+            }
+            final int errno = posix.lastError();
+            if (m < 0 && errno == Errno.EINTR.intValue())
+                continue;
+            if (m < 0 && errno == Errno.EAGAIN.intValue())
+                break;
+            // the data in the pipe is lost
+            closePipe();
+            throw new PosixRuntimeException("splice to " + outFd + " failed " + posix.strerror(errno), errno);
+        }
+        pipePending -= out;
+        return out;
+    }
+
+    private boolean openPipe() {
+        if (posix.pipe2(scratch + 8, OpenFlag.O_CLOEXEC.value()) != 0)
+            return false;
+        pipeIn = UNSAFE.getInt(scratch + 8);
+        pipeOut = UNSAFE.getInt(scratch + 12);
+        return true;
+    }
+
+    private void closePipe() {
+        if (pipeIn < 0)
+            return;
+        posix.close(pipeIn);
+        posix.close(pipeOut);
+        pipeIn = pipeOut = -1;
+        pipePending = 0;
+    }
+
+    private long readWrite(int inFd, long inOffset, int outFd, long len) {
+        if (buffer == 0)
+            buffer = UNSAFE.allocateMemory(bufferSize);
+        long done = 0;
+        while (done < len) {
+            final long want = Math.min(bufferSize, len - done);
+            final long n = inOffset < 0
+                    ? posix.read(inFd, buffer, want)
+                    : posix.pread(inFd, buffer, want, inOffset + done);
+            if (n == 0)
+                break;
+            if (n < 0) {
+                final int errno = posix.lastError();
+                if (errno == Errno.EINTR.intValue())
+                    continue;
+                if (errno == Errno.EAGAIN.intValue())
+                    break;
+                throw new PosixRuntimeException("read from " + inFd + " failed " + posix.strerror(errno), errno);
+            }
+            for (long written = 0; written < n; ) {
+                final long m = posix.write(outFd, buffer + written, n - written);
+                if (m < 0) {
+                    final int errno = posix.lastError();
+                    if (errno == Errno.EINTR.intValue())
+                        continue;
+                    throw new PosixRuntimeException("write to " + outFd + " failed " + posix.strerror(errno), errno);
+                }
+                written += m;
+            }
+            done += n;
+        }
+        return done;
+    }
+
+    /**
+     * Decides what to do when a call fails.
+     *
+     * @return UNSUPPORTED to try the next method, RETRY to call again, otherwise the number of bytes moved.
+     */
+    private long failed(String call, long done) {
+        final int errno = posix.lastError();
+        if (errno == Errno.EINTR.intValue())
+            return RETRY;
+        if (errno == Errno.EAGAIN.intValue())
+            return done;
+        if (done == 0 && isUnsupported(errno))
+            return UNSUPPORTED;
+        throw new PosixRuntimeException(call + " failed after " + done + " bytes " + posix.strerror(errno), errno);
+    }
+
+    private static boolean isUnsupported(int errno) {
+        return errno == Errno.EBADF.intValue()
+                || errno == Errno.EXDEV.intValue()
+                || errno == Errno.EINVAL.intValue()
+                || errno == Errno.ESPIPE.intValue()
+                || errno == Errno.ENOSYS.intValue()
+                || errno == Errno.EOPNOTSUPP.intValue();
+    }
+
+    /**
+     * @return The method used by the last transfer, or null if none.
+     */
+    public Method lastMethod() {
+        return lastMethod;
+    }
+
+    /**
+     * @param method A method.
+     * @return The number of bytes moved with it.
+     */
+    public long bytes(Method method) {
+        return bytesByMethod.get(method)[0];
+    }
+
+    /**
+     * Closes the pipe, dropping any data waiting in it, and frees the buffer.
+     */
+    @Override
+    public void close() {
+        if (closed)
+            return;
+        closed = true;
+        closePipe();
+        if (buffer != 0)
+            UNSAFE.freeMemory(buffer);
+        UNSAFE.freeMemory(scratch);
+    }
+
+    @Override
+    public String toString() {
+        return "FileTransfer{" +
+                "lastMethod=" + lastMethod +
+                ", bytes=" + bytesByMethod.entrySet().stream()
+                .map(e -> e.getKey() + "=" + e.getValue()[0])
+                .reduce((a, b) -> a + ", " + b).orElse("") +
+                '}';
+    }
+}
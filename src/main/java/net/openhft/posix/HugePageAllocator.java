@@ -0,0 +1,416 @@
+package net.openhft.posix;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * This class allocates memory backed by explicit huge pages, so large off-heap tables take far fewer TLB misses
+ * without relying on khugepaged, which collapses pages in the background and can cause latency spikes of its own.
+ * <p>
+ * Anonymous memory is mapped with MAP_HUGETLB from the pool of the page size chosen, if it has enough free pages.
+ * Memory to share between processes is a file on a hugetlbfs mount with that page size.
+ * If no huge pages are available, this falls back to memory aligned to the transparent huge page size, the PMD size of usually 2 MiB,
+ * with MADV_HUGEPAGE, so transparent huge pages are used unless they are set to never; {@link Allocation#backing()} reports which was used.
+ * <p>
+ * Pools of huge pages are reserved with e.g. <code>echo 512 &gt; /sys/kernel/mm/hugepages/hugepages-2048kB/nr_hugepages</code>
+ */
+public final class HugePageAllocator {
+    static final String SYS_HUGEPAGES = "/sys/kernel/mm/hugepages";
+    static final String PROC_MOUNTS = "/proc/mounts";
+    static final String THP_ENABLED = "/sys/kernel/mm/transparent_hugepage/enabled";
+    static final String THP_PMD_SIZE = "/sys/kernel/mm/transparent_hugepage/hpage_pmd_size";
+    // The transparent huge page size on x86_64, and aarch64 with 4 kB pages, if not known
+    static final long DEFAULT_PMD_SIZE = 2L << 20;
+    // The shift of log2(page size) in the mmap flags to select a huge page size other than the default
+    static final int MAP_HUGE_SHIFT = 26;
+
+    private final PosixAPI posix;
+    private final long pageSize;
+    private final boolean populate;
+
+    /**
+     * @param pageSize The huge page size e.g. 2 MiB or 1 GiB
+     * @param populate Whether to fault in the pages when allocated, rather than on first use.
+     */
+    public HugePageAllocator(long pageSize, boolean populate) {
+        if (Long.bitCount(pageSize) != 1 || pageSize < MappedRegion.PAGE_SIZE)
+            throw new IllegalArgumentException("pageSize: " + pageSize);
+        this.posix = PosixAPI.posix();
+        this.pageSize = pageSize;
+        this.populate = populate;
+    }
+
+    /**
+     * Allocates private anonymous memory, zeroed.
+     *
+     * @param length The length, rounded up to a whole number of huge pages, or of transparent huge pages if it falls back.
+     * @return The memory allocated.
+     * @throws PosixRuntimeException If even the fallback can't be mapped.
+     */
+    public Allocation allocate(long length) {
+        final long rounded = roundUp(length, pageSize);
+        final int populateFlag = populate ? MMapFlag.POPULATE.value() : 0;
+        final Pool pool = pool(pageSize);
+        if (MMapFlag.HUGETLB.isSupported() && pool != null && pool.free() * pageSize >= rounded) {
+            try {
+                final int flags = MMapFlag.PRIVATE.or(MMapFlag.ANONYMOUS) | MMapFlag.HUGETLB.value() | hugeSizeFlag() | populateFlag;
+                final MappedRegion region = MappedRegion.map(posix, -1, 0L, rounded, MMapProt.PROT_READ_WRITE.value(), flags, false);
+                return new Allocation(region, Backing.HUGETLB, pageSize);
+            } catch (PosixRuntimeException e) {
+                // taken by another process since the pool was read
+            }
+        }
+        return allocateTransparent(length);
+    }
+
+    /**
+     * Allocates memory shared with other processes as a file on a hugetlbfs mount, which can be mapped by name.
+     * The file is created if it doesn't exist, and is not deleted when closed.
+     *
+     * @param name   The name of the file in the mount.
+     * @param length The length, rounded up to a whole number of huge pages.
+     * @return The memory allocated.
+     * @throws PosixRuntimeException If there is no hugetlbfs mount for this page size or there are not enough free pages.
+     */
+    public Allocation allocateShared(String name, long length) {
+        final String mount = hugetlbfsMount(pageSize);
+        if (mount == null)
+            throw new PosixRuntimeException("No hugetlbfs mount for " + (pageSize >> 10) + " kB pages in " + PROC_MOUNTS);
+        final String filename = mount + "/" + name;
+        final long rounded = roundUp(length, pageSize);
+        final int fd = posix.open(filename, OpenFlag.O_RDWR.or(OpenFlag.O_CREAT), 0666);
+        if (fd < 0)
+            throw new PosixRuntimeException("Unable to open " + filename + " " + posix.lastErrorStr(), posix.lastError());
+        try {
+            final FileStat stat = new FileStat();
+            if (posix.fstat(fd, stat) != 0 || stat.size() < rounded) {
+                if (posix.ftruncate(fd, rounded) != 0)
+                    throw new PosixRuntimeException("Unable to size " + filename + " " + posix.lastErrorStr(), posix.lastError());
+            }
+            final int flags = MMapFlag.SHARED.or(populate ? MMapFlag.POPULATE.value() : 0);
+            final MappedRegion region = MappedRegion.map(posix, fd, 0L, rounded, MMapProt.PROT_READ_WRITE.value(), flags, true);
+            return new Allocation(region, Backing.HUGETLBFS, pageSize);
+        } catch (RuntimeException e) {
+            posix.close(fd);
+            throw e;
+        }
+    }
+
+    private Allocation allocateTransparent(long requested) {
+        // transparent huge pages are always the PMD size, whatever size was chosen for explicit ones
+        final long thpSize = transparentPageSize();
+        final long length = roundUp(requested, thpSize);
+        // over map so an aligned range can be kept, as only aligned ranges can be backed by huge pages
+        final long overLength = length + thpSize;
+        final long addr = posix.mmap(0, overLength, MMapProt.PROT_READ_WRITE.value(), MMapFlag.PRIVATE.or(MMapFlag.ANONYMOUS), -1, 0);
+        final long aligned = (addr + thpSize - 1) & -thpSize;
+        if (aligned > addr)
+            posix.munmap(addr, aligned - addr);
+        final long end = aligned + length;
+        if (addr + overLength > end)
+            posix.munmap(end, addr + overLength - end);
+        final MappedRegion region = new MappedRegion(posix, aligned, length, -1, 0L, MMapProt.PROT_READ_WRITE.value(), false);
+        // madvise succeeds even if transparent huge pages are disabled
+        final boolean transparent = posix.madvise(aligned, length, MAdviseFlag.MADV_HUGEPAGE) == 0
+                && !"never".equals(transparentHugePages());
+        if (populate)
+            PreToucher.touchPages(posix, aligned, length, MappedRegion.PAGE_SIZE, true);
+        return new Allocation(region, transparent ? Backing.TRANSPARENT : Backing.NORMAL, transparent ? thpSize : MappedRegion.PAGE_SIZE);
+    }
+
+    private int hugeSizeFlag() {
+        // 0 selects the default huge page size
+        return pageSize == defaultPageSize() ? 0 : Long.numberOfTrailingZeros(pageSize) << MAP_HUGE_SHIFT;
+    }
+
+    private static long roundUp(long length, long pageSize) {
+        if (length <= 0)
+            throw new IllegalArgumentException("length: " + length);
+        return (length + pageSize - 1) & -pageSize;
+    }
+
+    /**
+     * @return The huge page size chosen.
+     */
+    public long pageSize() {
+        return pageSize;
+    }
+
+    /**
+     * @return The default huge page size, as used by hugetlbfs mounts without a pagesize option, or 0 if not known.
+     */
+    public static long defaultPageSize() {
+        try {
+            for (String line : Files.readAllLines(Paths.get("/proc/meminfo"), StandardCharsets.ISO_8859_1))
+                if (line.startsWith("Hugepagesize:"))
+                    return Long.parseLong(line.substring(13).replace("kB", "").trim()) << 10;
+        } catch (IOException | NumberFormatException ignored) {
+            // not Linux
+        }
+        return 0;
+    }
+
+    /**
+     * @return The transparent huge page mode, always, madvise or never, or null if not known.
+     */
+    public static String transparentHugePages() {
+        return transparentHugePages(Paths.get(THP_ENABLED));
+    }
+
+    static String transparentHugePages(Path thpEnabled) {
+        final String text;
+        try {
+            text = new String(Files.readAllBytes(thpEnabled), StandardCharsets.ISO_8859_1);
+        } catch (IOException e) {
+            return null;
+        }
+        // the mode selected is in brackets e.g. always [madvise] never
+        final int start = text.indexOf('[');
+        final int end = text.indexOf(']', start + 1);
+        return start < 0 || end < 0 ? null : text.substring(start + 1, end);
+    }
+
+    /**
+     * @return The size of a transparent huge page, from hpage_pmd_size, or 2 MiB if not known.
+     */
+    public static long transparentPageSize() {
+        return transparentPageSize(Paths.get(THP_PMD_SIZE));
+    }
+
+    static long transparentPageSize(Path pmdSize) {
+        final long size = readLong(pmdSize);
+        return Long.bitCount(size) == 1 && size >= MappedRegion.PAGE_SIZE ? size : DEFAULT_PMD_SIZE;
+    }
+
+    /**
+     * @return The pools of huge pages of each size, empty if not supported.
+     */
+    public static List<Pool> pools() {
+        return pools(Paths.get(SYS_HUGEPAGES));
+    }
+
+    /**
+     * @param pageSize The huge page size.
+     * @return The pool of huge pages of that size, or null if not supported.
+     */
+    public static Pool pool(long pageSize) {
+        for (Pool pool : pools())
+            if (pool.pageSize() == pageSize)
+                return pool;
+        return null;
+    }
+
+    static List<Pool> pools(Path sysHugepages) {
+        final List<Pool> pools = new ArrayList<>();
+        try (DirectoryStream<Path> dirs = Files.newDirectoryStream(sysHugepages, "hugepages-*kB")) {
+            for (Path dir : dirs) {
+                final String name = dir.getFileName().toString();
+                final long pageSize = Long.parseLong(name.substring("hugepages-".length(), name.length() - 2)) << 10;
+                pools.add(new Pool(pageSize,
+                        readLong(dir.resolve("nr_hugepages")),
+                        readLong(dir.resolve("free_hugepages")),
+                        readLong(dir.resolve("resv_hugepages")),
+                        readLong(dir.resolve("surplus_hugepages"))));
+            }
+        } catch (IOException | RuntimeException ignored) {
+            // no huge page support
+        }
+        pools.sort((a, b) -> Long.compare(a.pageSize, b.pageSize));
+        return Collections.unmodifiableList(pools);
+    }
+
+    private static long readLong(Path path) {
+        try {
+            return Long.parseLong(new String(Files.readAllBytes(path), StandardCharsets.ISO_8859_1).trim());
+        } catch (IOException | NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * @param pageSize The huge page size.
+     * @return The mount point of a hugetlbfs for that page size, or null if there is none.
+     */
+    public static String hugetlbfsMount(long pageSize) {
+        return hugetlbfsMount(Paths.get(PROC_MOUNTS), pageSize, defaultPageSize());
+    }
+
+    static String hugetlbfsMount(Path procMounts, long pageSize, long defaultPageSize) {
+        final List<String> lines;
+        try {
+            lines = Files.readAllLines(procMounts, StandardCharsets.ISO_8859_1);
+        } catch (IOException e) {
+            return null;
+        }
+        for (String line : lines) {
+            // e.g. hugetlbfs /dev/hugepages hugetlbfs rw,relatime,pagesize=2M 0 0
+            final String[] parts = line.split(" ");
+            if (parts.length < 4 || !"hugetlbfs".equals(parts[2]))
+                continue;
+            long mountPageSize = defaultPageSize;
+            for (String option : parts[3].split(","))
+                if (option.startsWith("pagesize="))
+                    mountPageSize = parseSize(option.substring("pagesize=".length()));
+            if (mountPageSize == pageSize)
+                return parts[1];
+        }
+        return null;
+    }
+
+    static long parseSize(String size) {
+        final char unit = Character.toUpperCase(size.charAt(size.length() - 1));
+        final int shift = unit == 'K' ? 10 : unit == 'M' ? 20 : unit == 'G' ? 30 : 0;
+        return Long.parseLong(shift == 0 ? size : size.substring(0, size.length() - 1)) << shift;
+    }
+
+    /**
+     * How an allocation is backed.
+     */
+    public enum Backing {
+        // Explicit huge pages, mapped anonymously with MAP_HUGETLB
+        HUGETLB,
+        // Explicit huge pages, as a file on a hugetlbfs mount
+        HUGETLBFS,
+        // Aligned memory advised with MADV_HUGEPAGE, backed by huge pages only if they are available when faulted
+        TRANSPARENT,
+        // Regular pages, as transparent huge pages are set to never or not supported
+        NORMAL
+    }
+
+    /**
+     * Memory allocated, to close when no longer needed.
+     */
+    public static final class Allocation implements AutoCloseable {
+        private final MappedRegion region;
+        private final Backing backing;
+        private final long pageSize;
+
+        Allocation(MappedRegion region, Backing backing, long pageSize) {
+            this.region = region;
+            this.backing = backing;
+            this.pageSize = pageSize;
+        }
+
+        /**
+         * @return The memory mapped.
+         */
+        public MappedRegion region() {
+            return region;
+        }
+
+        /**
+         * @return How the memory is backed.
+         */
+        public Backing backing() {
+            return backing;
+        }
+
+        /**
+         * @return The page size the memory is backed by, or would be by transparent huge pages.
+         */
+        public long pageSize() {
+            return pageSize;
+        }
+
+        /**
+         * @return The start of the memory.
+         */
+        public long address() {
+            return region.address();
+        }
+
+        /**
+         * @return The length of the memory.
+         */
+        public long length() {
+            return region.length();
+        }
+
+        @Override
+        public void close() {
+            region.close();
+        }
+
+        @Override
+        public String toString() {
+            return "Allocation{" +
+                    "address=" + Long.toHexString(region.address()) +
+                    ", length=" + region.length() +
+                    ", backing=" + backing +
+                    ", pageSize=" + pageSize +
+                    '}';
+        }
+    }
+
+    /**
+     * The state of the pool of huge pages of one size.
+     */
+    public static final class Pool {
+        private final long pageSize;
+        private final long total;
+        private final long free;
+        private final long reserved;
+        private final long surplus;
+
+        Pool(long pageSize, long total, long free, long reserved, long surplus) {
+            this.pageSize = pageSize;
+            this.total = total;
+            this.free = free;
+            this.reserved = reserved;
+            this.surplus = surplus;
+        }
+
+        /**
+         * @return The size of each page.
+         */
+        public long pageSize() {
+            return pageSize;
+        }
+
+        /**
+         * @return The number of pages in the pool.
+         */
+        public long total() {
+            return total;
+        }
+
+        /**
+         * @return The number of pages not yet faulted in, less those reserved by mappings but not yet faulted in.
+         */
+        public long free() {
+            return Math.max(0, free - reserved);
+        }
+
+        /**
+         * @return The number of pages reserved by mappings but not yet faulted in.
+         */
+        public long reserved() {
+            return reserved;
+        }
+
+        /**
+         * @return The number of pages above nr_hugepages, allocated on demand up to nr_overcommit_hugepages
+         */
+        public long surplus() {
+            return surplus;
+        }
+
+        @Override
+        public String toString() {
+            return "Pool{" +
+                    "pageSize=" + pageSize +
+                    ", total=" + total +
+                    ", free=" + free +
+                    ", reserved=" + reserved +
+                    ", surplus=" + surplus +
+                    '}';
+        }
+    }
+}
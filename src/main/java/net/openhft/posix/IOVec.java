@@ -0,0 +1,152 @@
+package net.openhft.posix;
+
+import net.openhft.posix.internal.UnsafeMemory;
+
+import static net.openhft.posix.internal.UnsafeMemory.UNSAFE;
+
+/**
+ * This class is an off-heap array of struct iovec, each a native address and length, for the vectored I/O calls
+ * readv, writev, preadv, pwritev, preadv2 and pwritev2, and vmsplice.
+ * <p>
+ * It is intended to be allocated once and reused for each batch with {@link #clear()} and {@link #add(long, long)},
+ * so a batch of reads or writes takes one system call with no allocation and no copy through the Java heap.
+ * This class is not thread safe.
+ */
+public final class IOVec implements AutoCloseable {
+    // The most entries the kernel accepts in one call, IOV_MAX
+    public static final int IOV_MAX = 1024;
+    // The size of a pointer and a size_t
+    private static final int WORD = UnsafeMemory.IS32BIT ? 4 : 8;
+    // The size of a struct iovec
+    static final int SIZE = 2 * WORD;
+
+    private final int capacity;
+    private long address;
+    private int count;
+
+    /**
+     * @param capacity The most entries it can hold, up to IOV_MAX
+     */
+    public IOVec(int capacity) {
+        if (capacity < 1 || capacity > IOV_MAX)
+            throw new IllegalArgumentException("capacity: " + capacity);
+        this.capacity = capacity;
+        this.address = UNSAFE.allocateMemory((long) capacity * SIZE);
+    }
+
+    /**
+     * Adds an entry.
+     *
+     * @param base   The native address to read into or write from.
+     * @param length The number of bytes.
+     * @return this
+     * @throws IllegalStateException If it is full.
+     */
+    public IOVec add(long base, long length) {
+        if (count >= capacity)
+            throw new IllegalStateException("Full, capacity " + capacity);
+        set(count++, base, length);
+        return this;
+    }
+
+    /**
+     * Replaces an entry.
+     *
+     * @param index  The entry, less than count()
+     * @param base   The native address.
+     * @param length The number of bytes.
+     */
+    public void set(int index, long base, long length) {
+        final long entry = entry(index);
+        if (WORD == 8) {
+            UNSAFE.putLong(entry, base);
+            UNSAFE.putLong(entry + 8, length);
+        } else {
+            UNSAFE.putInt(entry, (int) base);
+            UNSAFE.putInt(entry + 4, (int) length);
+        }
+    }
+
+    /**
+     * @param index The entry.
+     * @return Its native address.
+     */
+    public long base(int index) {
+        final long entry = entry(index);
+        return WORD == 8 ? UNSAFE.getLong(entry) : UNSAFE.getInt(entry) & 0xFFFFFFFFL;
+    }
+
+    /**
+     * @param index The entry.
+     * @return Its length.
+     */
+    public long length(int index) {
+        final long entry = entry(index);
+        return WORD == 8 ? UNSAFE.getLong(entry + 8) : UNSAFE.getInt(entry + 4) & 0xFFFFFFFFL;
+    }
+
+    private long entry(int index) {
+        if (address == 0)
+            throw new IllegalStateException("closed");
+        if (index < 0 || index >= capacity)
+            throw new IndexOutOfBoundsException("index: " + index + " capacity: " + capacity);
+        return address + (long) index * SIZE;
+    }
+
+    /**
+     * @return The total length of all the entries.
+     */
+    public long totalLength() {
+        long total = 0;
+        for (int i = 0; i < count; i++)
+            total += length(i);
+        return total;
+    }
+
+    /**
+     * Removes all the entries, to reuse it for another batch.
+     *
+     * @return this
+     */
+    public IOVec clear() {
+        count = 0;
+        return this;
+    }
+
+    /**
+     * @return The number of entries.
+     */
+    public int count() {
+        return count;
+    }
+
+    /**
+     * @return The most entries it can hold.
+     */
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * @return The address of the first struct iovec, as passed to the system calls.
+     */
+    public long address() {
+        return address;
+    }
+
+    @Override
+    public void close() {
+        if (address != 0) {
+            UNSAFE.freeMemory(address);
+            address = 0;
+        }
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("IOVec{count=").append(count);
+        for (int i = 0; i < count && address != 0; i++)
+            sb.append(i == 0 ? ", " : ",").append("0x").append(Long.toHexString(base(i))).append('+').append(length(i));
+        return sb.append('}').toString();
+    }
+}
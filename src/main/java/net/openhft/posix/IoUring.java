@@ -0,0 +1,616 @@
+package net.openhft.posix;
+
+import jnr.constants.platform.Errno;
+
+import static net.openhft.posix.internal.UnsafeMemory.UNSAFE;
+
+/**
+ * This class is an io_uring, a pair of rings shared with the kernel: operations are queued as submission queue entries (SQEs)
+ * and their results are read back as completion queue entries (CQEs), see io_uring(7). This is Linux 5.6+ only.
+ * <p>
+ * Many operations can be queued with the <code>prep*</code> methods and submitted with one system call to {@link #submit()},
+ * or with SQPOLL, a kernel thread polls the submission queue so no system call is needed at all while it is busy.
+ * Completions are read with {@link #peekCompletions(CompletionHandler)} without a system call, or waited for
+ * with {@link #waitCompletions(int, CompletionHandler)}
+ * <p>
+ * Each <code>prep*</code> method returns the address of the SQE, to which flags such as IOSQE_FIXED_FILE or IOSQE_IO_LINK
+ * can be added with {@link #sqeFlags(long, int)}, or 0 if the submission queue is full and {@link #submit()} should be called.
+ * Buffers, paths and iovecs passed must remain valid until the operation completes.
+ * <p>
+ * This class is not thread safe, it is intended to be used by one thread, as is normal for io_uring.
+ */
+public final class IoUring implements AutoCloseable {
+    // io_uring_setup flags
+    public static final int IORING_SETUP_IOPOLL = 1;
+    public static final int IORING_SETUP_SQPOLL = 2;
+    public static final int IORING_SETUP_SQ_AFF = 4;
+    // io_uring_enter flags
+    public static final int IORING_ENTER_GETEVENTS = 1;
+    public static final int IORING_ENTER_SQ_WAKEUP = 2;
+    // SQE flags
+    public static final int IOSQE_FIXED_FILE = 1;
+    public static final int IOSQE_IO_DRAIN = 2;
+    public static final int IOSQE_IO_LINK = 4;
+    // fsync flags
+    public static final int IORING_FSYNC_DATASYNC = 1;
+    // opcodes
+    public static final int IORING_OP_NOP = 0;
+    public static final int IORING_OP_READV = 1;
+    public static final int IORING_OP_WRITEV = 2;
+    public static final int IORING_OP_FSYNC = 3;
+    public static final int IORING_OP_READ_FIXED = 4;
+    public static final int IORING_OP_WRITE_FIXED = 5;
+    public static final int IORING_OP_FALLOCATE = 17;
+    public static final int IORING_OP_OPENAT = 18;
+    public static final int IORING_OP_CLOSE = 19;
+    public static final int IORING_OP_READ = 22;
+    public static final int IORING_OP_WRITE = 23;
+    // io_uring_register opcodes
+    static final int IORING_REGISTER_BUFFERS = 0;
+    static final int IORING_UNREGISTER_BUFFERS = 1;
+    static final int IORING_REGISTER_FILES = 2;
+    static final int IORING_UNREGISTER_FILES = 3;
+
+    // struct io_uring_params and the offsets of its fields
+    static final int PARAMS_SIZE = 120;
+    private static final int P_SQ_ENTRIES = 0;
+    private static final int P_CQ_ENTRIES = 4;
+    private static final int P_FLAGS = 8;
+    private static final int P_SQ_THREAD_CPU = 12;
+    private static final int P_SQ_THREAD_IDLE = 16;
+    private static final int P_FEATURES = 20;
+    private static final int P_SQ_OFF = 40;
+    private static final int P_CQ_OFF = 80;
+    // offsets within struct io_sqring_offsets and io_cqring_offsets
+    private static final int OFF_HEAD = 0;
+    private static final int OFF_TAIL = 4;
+    private static final int OFF_RING_MASK = 8;
+    private static final int SQ_OFF_FLAGS = 16;
+    private static final int SQ_OFF_ARRAY = 24;
+    private static final int CQ_OFF_CQES = 20;
+
+    private static final int IORING_FEAT_SINGLE_MMAP = 1;
+    private static final int IORING_SQ_NEED_WAKEUP = 1;
+    private static final long IORING_OFF_SQ_RING = 0L;
+    private static final long IORING_OFF_CQ_RING = 0x8000000L;
+    private static final long IORING_OFF_SQES = 0x10000000L;
+    static final int SQE_SIZE = 64;
+    static final int CQE_SIZE = 16;
+
+    private final PosixAPI posix;
+    private final int fd;
+    private final int setupFlags;
+    private final long sqRing;
+    private final long sqRingSize;
+    private final long cqRing;
+    private final long cqRingSize;
+    private final long sqes;
+    private final long sqesSize;
+    // addresses of the ring fields shared with the kernel
+    private final long sqHead;
+    private final long sqTail;
+    private final long sqFlags;
+    private final long sqArray;
+    private final int sqMask;
+    private final int sqEntries;
+    private final long cqHead;
+    private final long cqTail;
+    private final long cqes;
+    private final int cqMask;
+    private final int cqEntries;
+    // the SQEs prepared but not yet made visible to the kernel
+    private int sqeTail;
+    private int sqeHead;
+    private long inFlight;
+    private boolean closed;
+
+    /**
+     * Sets up an io_uring with no special flags.
+     *
+     * @param entries The number of submission queue entries, a power of 2, the completion queue is twice this.
+     * @throws PosixRuntimeException If io_uring is not supported or not permitted e.g. ENOSYS or EPERM
+     */
+    public IoUring(int entries) {
+        this(entries, 0, 0, -1);
+    }
+
+    /**
+     * Sets up an io_uring.
+     *
+     * @param entries        The number of submission queue entries, a power of 2, the completion queue is twice this.
+     * @param setupFlags     The flags e.g. IORING_SETUP_SQPOLL
+     * @param sqThreadIdleMs With SQPOLL, how long the kernel thread polls before sleeping.
+     * @param sqThreadCpu    With SQPOLL, the CPU to bind the kernel thread to, or -1 for any.
+     * @throws PosixRuntimeException If io_uring is not supported or not permitted e.g. ENOSYS or EPERM
+     */
+    public IoUring(int entries, int setupFlags, int sqThreadIdleMs, int sqThreadCpu) {
+        this.posix = PosixAPI.posix();
+        final long params = UNSAFE.allocateMemory(PARAMS_SIZE);
+        try {
+            UNSAFE.setMemory(params, PARAMS_SIZE, (byte) 0);
+            int flags = setupFlags;
+            if (sqThreadCpu >= 0 && (flags & IORING_SETUP_SQPOLL) != 0)
+                flags |= IORING_SETUP_SQ_AFF;
+            UNSAFE.putInt(params + P_FLAGS, flags);
+            UNSAFE.putInt(params + P_SQ_THREAD_CPU, Math.max(0, sqThreadCpu));
+            UNSAFE.putInt(params + P_SQ_THREAD_IDLE, sqThreadIdleMs);
+            this.fd = posix.io_uring_setup(entries, params);
+            if (fd < 0)
+                throw new PosixRuntimeException("io_uring_setup failed " + posix.lastErrorStr(), posix.lastError());
+            this.setupFlags = flags;
+            this.sqEntries = UNSAFE.getInt(params + P_SQ_ENTRIES);
+            this.cqEntries = UNSAFE.getInt(params + P_CQ_ENTRIES);
+            final long sqOff = params + P_SQ_OFF;
+            final long cqOff = params + P_CQ_OFF;
+            final int sqArrayOff = UNSAFE.getInt(sqOff + SQ_OFF_ARRAY);
+            final int cqesOff = UNSAFE.getInt(cqOff + CQ_OFF_CQES);
+            final boolean singleMmap = (UNSAFE.getInt(params + P_FEATURES) & IORING_FEAT_SINGLE_MMAP) != 0;
+            long sqSize = sqArrayOff + 4L * sqEntries;
+            long cqSize = cqesOff + (long) CQE_SIZE * cqEntries;
+            if (singleMmap)
+                sqSize = cqSize = Math.max(sqSize, cqSize);
+            final int prot = MMapProt.PROT_READ_WRITE.value();
+            final int mapFlags = MMapFlag.SHARED.or(MMapFlag.POPULATE);
+            long sq = 0, cq = 0, sqeArray = 0;
+            try {
+                sq = posix.mmap(0, sqSize, prot, mapFlags, fd, IORING_OFF_SQ_RING);
+                cq = singleMmap ? sq : posix.mmap(0, cqSize, prot, mapFlags, fd, IORING_OFF_CQ_RING);
+                sqeArray = posix.mmap(0, (long) SQE_SIZE * sqEntries, prot, mapFlags, fd, IORING_OFF_SQES);
+            } catch (RuntimeException e) {
+                if (cq != 0 && cq != sq)
+                    posix.munmap(cq, cqSize);
+                if (sq != 0)
+                    posix.munmap(sq, sqSize);
+                posix.close(fd);
+                throw e;
+            }
+            this.sqRing = sq;
+            this.sqRingSize = sqSize;
+            this.cqRing = cq;
+            this.cqRingSize = singleMmap ? 0 : cqSize;
+            this.sqes = sqeArray;
+            this.sqesSize = (long) SQE_SIZE * sqEntries;
+            this.sqHead = sq + UNSAFE.getInt(sqOff + OFF_HEAD);
+            this.sqTail = sq + UNSAFE.getInt(sqOff + OFF_TAIL);
+            this.sqMask = UNSAFE.getInt(sq + UNSAFE.getInt(sqOff + OFF_RING_MASK));
+            this.sqFlags = sq + UNSAFE.getInt(sqOff + SQ_OFF_FLAGS);
+            this.sqArray = sq + sqArrayOff;
+            this.cqHead = cq + UNSAFE.getInt(cqOff + OFF_HEAD);
+            this.cqTail = cq + UNSAFE.getInt(cqOff + OFF_TAIL);
+            this.cqMask = UNSAFE.getInt(cq + UNSAFE.getInt(cqOff + OFF_RING_MASK));
+            this.cqes = cq + cqesOff;
+            this.sqeTail = this.sqeHead = UNSAFE.getInt(sqTail);
+        } finally {
+            UNSAFE.freeMemory(params);
+        }
+    }
+
+    /**
+     * @return The next free SQE, zeroed, or 0 if the submission queue is full.
+     */
+    public long getSqe() {
+        if (closed)
+            throw new IllegalStateException("closed");
+        final int head = UNSAFE.getIntVolatile(null, sqHead);
+        if (sqeTail - head >= sqEntries)
+            return 0;
+        final long sqe = sqes + (long) (sqeTail & sqMask) * SQE_SIZE;
+        sqeTail++;
+        UNSAFE.setMemory(sqe, SQE_SIZE, (byte) 0);
+        return sqe;
+    }
+
+    private long prep(int opcode, int fd, long addr, int len, long offset, long userData) {
+        final long sqe = getSqe();
+        if (sqe == 0)
+            return 0;
+        UNSAFE.putByte(sqe, (byte) opcode);
+        UNSAFE.putInt(sqe + 4, fd);
+        UNSAFE.putLong(sqe + 8, offset);
+        UNSAFE.putLong(sqe + 16, addr);
+        UNSAFE.putInt(sqe + 24, len);
+        UNSAFE.putLong(sqe + 32, userData);
+        return sqe;
+    }
+
+    /**
+     * Adds flags to a prepared SQE.
+     *
+     * @param sqe   The SQE returned by a prep method.
+     * @param flags The flags e.g. IOSQE_FIXED_FILE, IOSQE_IO_LINK
+     */
+    public static void sqeFlags(long sqe, int flags) {
+        UNSAFE.putByte(sqe + 1, (byte) (UNSAFE.getByte(sqe + 1) | flags));
+    }
+
+    /**
+     * Queues an operation which does nothing, e.g. to test the ring.
+     *
+     * @param userData Returned with the completion.
+     * @return The SQE, or 0 if the queue is full.
+     */
+    public long prepNop(long userData) {
+        return prep(IORING_OP_NOP, -1, 0, 0, 0, userData);
+    }
+
+    /**
+     * Queues a read, as pread.
+     *
+     * @param fd       The file descriptor, or index of a registered file with IOSQE_FIXED_FILE
+     * @param buf      The address to read into.
+     * @param len      The number of bytes.
+     * @param offset   The position in the file, or -1 to use and update the file offset.
+     * @param userData Returned with the completion.
+     * @return The SQE, or 0 if the queue is full.
+     */
+    public long prepRead(int fd, long buf, int len, long offset, long userData) {
+        return prep(IORING_OP_READ, fd, buf, len, offset, userData);
+    }
+
+    /**
+     * Queues a write, as pwrite.
+     *
+     * @param fd       The file descriptor, or index of a registered file with IOSQE_FIXED_FILE
+     * @param buf      The address to write from.
+     * @param len      The number of bytes.
+     * @param offset   The position in the file, or -1 to use and update the file offset.
+     * @param userData Returned with the completion.
+     * @return The SQE, or 0 if the queue is full.
+     */
+    public long prepWrite(int fd, long buf, int len, long offset, long userData) {
+        return prep(IORING_OP_WRITE, fd, buf, len, offset, userData);
+    }
+
+    /**
+     * Queues a vectored read, as preadv.
+     *
+     * @param fd       The file descriptor, or index of a registered file with IOSQE_FIXED_FILE
+     * @param iov      The buffers to read into.
+     * @param offset   The position in the file.
+     * @param userData Returned with the completion.
+     * @return The SQE, or 0 if the queue is full.
+     */
+    public long prepReadv(int fd, IOVec iov, long offset, long userData) {
+        return prep(IORING_OP_READV, fd, iov.address(), iov.count(), offset, userData);
+    }
+
+    /**
+     * Queues a vectored write, as pwritev.
+     *
+     * @param fd       The file descriptor, or index of a registered file with IOSQE_FIXED_FILE
+     * @param iov      The buffers to write from.
+     * @param offset   The position in the file.
+     * @param userData Returned with the completion.
+     * @return The SQE, or 0 if the queue is full.
+     */
+    public long prepWritev(int fd, IOVec iov, long offset, long userData) {
+        return prep(IORING_OP_WRITEV, fd, iov.address(), iov.count(), offset, userData);
+    }
+
+    /**
+     * Queues a read into a buffer registered with {@link #registerBuffers(IOVec)}
+     *
+     * @param fd       The file descriptor, or index of a registered file with IOSQE_FIXED_FILE
+     * @param buf      The address to read into, within the registered buffer.
+     * @param len      The number of bytes.
+     * @param offset   The position in the file.
+     * @param bufIndex The index of the registered buffer.
+     * @param userData Returned with the completion.
+     * @return The SQE, or 0 if the queue is full.
+     */
+    public long prepReadFixed(int fd, long buf, int len, long offset, int bufIndex, long userData) {
+        final long sqe = prep(IORING_OP_READ_FIXED, fd, buf, len, offset, userData);
+        if (sqe != 0)
+            UNSAFE.putShort(sqe + 40, (short) bufIndex);
+        return sqe;
+    }
+
+    /**
+     * Queues a write from a buffer registered with {@link #registerBuffers(IOVec)}
+     *
+     * @param fd       The file descriptor, or index of a registered file with IOSQE_FIXED_FILE
+     * @param buf      The address to write from, within the registered buffer.
+     * @param len      The number of bytes.
+     * @param offset   The position in the file.
+     * @param bufIndex The index of the registered buffer.
+     * @param userData Returned with the completion.
+     * @return The SQE, or 0 if the queue is full.
+     */
+    public long prepWriteFixed(int fd, long buf, int len, long offset, int bufIndex, long userData) {
+        final long sqe = prep(IORING_OP_WRITE_FIXED, fd, buf, len, offset, userData);
+        if (sqe != 0)
+            UNSAFE.putShort(sqe + 40, (short) bufIndex);
+        return sqe;
+    }
+
+    /**
+     * Queues an fsync or fdatasync. To order it after writes, set IOSQE_IO_LINK on the writes, or IOSQE_IO_DRAIN on this.
+     *
+     * @param fd       The file descriptor, or index of a registered file with IOSQE_FIXED_FILE
+     * @param datasync Whether to sync only the data, as fdatasync
+     * @param userData Returned with the completion.
+     * @return The SQE, or 0 if the queue is full.
+     */
+    public long prepFsync(int fd, boolean datasync, long userData) {
+        final long sqe = prep(IORING_OP_FSYNC, fd, 0, 0, 0, userData);
+        if (sqe != 0 && datasync)
+            UNSAFE.putInt(sqe + 28, IORING_FSYNC_DATASYNC);
+        return sqe;
+    }
+
+    /**
+     * Queues an fallocate.
+     *
+     * @param fd       The file descriptor, or index of a registered file with IOSQE_FIXED_FILE
+     * @param mode     The mode, 0 to allocate and extend the file.
+     * @param offset   The start of the range.
+     * @param length   The length of the range.
+     * @param userData Returned with the completion.
+     * @return The SQE, or 0 if the queue is full.
+     */
+    public long prepFallocate(int fd, int mode, long offset, long length, long userData) {
+        // the length is passed in addr and the mode in len
+        return prep(IORING_OP_FALLOCATE, fd, length, mode, offset, userData);
+    }
+
+    /**
+     * Queues an openat. The result is the new file descriptor.
+     *
+     * @param dirfd    The directory the path is relative to, or AT_FDCWD (-100)
+     * @param path     The address of a NUL terminated path, see {@link net.openhft.posix.internal.UnsafeMemory#toCString(CharSequence)}
+     * @param flags    The open flags.
+     * @param mode     The permissions if created.
+     * @param userData Returned with the completion.
+     * @return The SQE, or 0 if the queue is full.
+     */
+    public long prepOpenat(int dirfd, long path, int flags, int mode, long userData) {
+        final long sqe = prep(IORING_OP_OPENAT, dirfd, path, mode, 0, userData);
+        if (sqe != 0)
+            UNSAFE.putInt(sqe + 28, flags);
+        return sqe;
+    }
+
+    /**
+     * Queues a close.
+     *
+     * @param fd       The file descriptor.
+     * @param userData Returned with the completion.
+     * @return The SQE, or 0 if the queue is full.
+     */
+    public long prepClose(int fd, long userData) {
+        return prep(IORING_OP_CLOSE, fd, 0, 0, 0, userData);
+    }
+
+    /**
+     * Makes the SQEs prepared visible to the kernel, without a system call.
+     *
+     * @return The number made visible.
+     */
+    private int flush() {
+        final int toSubmit = sqeTail - sqeHead;
+        if (toSubmit == 0)
+            return 0;
+        int tail = UNSAFE.getInt(sqTail);
+        for (; sqeHead != sqeTail; sqeHead++, tail++)
+            UNSAFE.putInt(sqArray + 4L * (tail & sqMask), sqeHead & sqMask);
+        // release, so the kernel sees the SQEs before the tail
+        UNSAFE.putOrderedInt(null, sqTail, tail);
+        inFlight += toSubmit;
+        return toSubmit;
+    }
+
+    /**
+     * Submits the SQEs prepared. With SQPOLL this only makes a system call if the kernel thread is asleep.
+     *
+     * @return The number submitted.
+     * @throws PosixRuntimeException If io_uring_enter fails.
+     */
+    public int submit() {
+        return submitAndWait(0);
+    }
+
+    /**
+     * Submits the SQEs prepared, and waits for at least a number of completions.
+     *
+     * @param waitNr The number of completions to wait for, or 0 to not wait.
+     * @return The number submitted.
+     * @throws PosixRuntimeException If io_uring_enter fails.
+     */
+    public int submitAndWait(int waitNr) {
+        final int submitted = flush();
+        int flags = waitNr > 0 ? IORING_ENTER_GETEVENTS : 0;
+        if ((setupFlags & IORING_SETUP_SQPOLL) != 0) {
+            // full barrier, so the tail store is visible before reading whether the kernel thread needs waking
+            UNSAFE.fullFence();
+            if ((UNSAFE.getIntVolatile(null, sqFlags) & IORING_SQ_NEED_WAKEUP) != 0)
+                flags |= IORING_ENTER_SQ_WAKEUP;
+            else if (waitNr == 0)
+                return submitted;
+            enter(0, waitNr, flags);
+            return submitted;
+        }
+        if (submitted == 0 && waitNr == 0)
+            return 0;
+        return enter(submitted, waitNr, flags);
+    }
+
+    private int enter(int toSubmit, int waitNr, int flags) {
+        for (; ; ) {
+            final int ret = posix.io_uring_enter(fd, toSubmit, waitNr, flags);
+            if (ret >= 0)
+                return ret;
+            final int errno = posix.lastError();
+            // retry on EINTR
+            if (errno != Errno.EINTR.intValue())
+                throw new PosixRuntimeException("io_uring_enter failed " + posix.strerror(errno), errno);
+        }
+    }
+
+    /**
+     * Reads the completions available without a system call.
+     *
+     * @param handler Called for each completion.
+     * @return The number of completions read.
+     */
+    public int peekCompletions(CompletionHandler handler) {
+        int head = UNSAFE.getInt(cqHead);
+        // acquire, so the CQEs are read after the tail
+        final int tail = UNSAFE.getIntVolatile(null, cqTail);
+        final int count = tail - head;
+        for (; head != tail; head++) {
+            final long cqe = cqes + (long) (head & cqMask) * CQE_SIZE;
+            handler.onComplete(UNSAFE.getLong(cqe), UNSAFE.getInt(cqe + 8), UNSAFE.getInt(cqe + 12));
+        }
+        if (count != 0) {
+            // release, so the kernel doesn't reuse the CQEs until they have been read
+            UNSAFE.putOrderedInt(null, cqHead, tail);
+            inFlight -= count;
+        }
+        return count;
+    }
+
+    /**
+     * Submits anything prepared, waits for at least a number of completions and reads all those available.
+     *
+     * @param minComplete The number of completions to wait for.
+     * @param handler     Called for each completion.
+     * @return The number of completions read.
+     */
+    public int waitCompletions(int minComplete, CompletionHandler handler) {
+        int count = peekCompletions(handler);
+        if (count >= minComplete && sqeTail == sqeHead)
+            return count;
+        final int submitted = flush();
+        final int waitFor = Math.max(0, minComplete - count);
+        if ((setupFlags & IORING_SETUP_SQPOLL) != 0) {
+            UNSAFE.fullFence();
+            int flags = IORING_ENTER_GETEVENTS;
+            if ((UNSAFE.getIntVolatile(null, sqFlags) & IORING_SQ_NEED_WAKEUP) != 0)
+                flags |= IORING_ENTER_SQ_WAKEUP;
+            enter(0, waitFor, flags);
+        } else {
+            enter(submitted, waitFor, IORING_ENTER_GETEVENTS);
+        }
+        return count + peekCompletions(handler);
+    }
+
+    /**
+     * Registers buffers, so reads and writes with {@link #prepReadFixed} and {@link #prepWriteFixed} don't map them each time.
+     *
+     * @param buffers The buffers, indexed in the order added.
+     * @throws PosixRuntimeException If io_uring_register fails e.g. ENOMEM if over RLIMIT_MEMLOCK
+     */
+    public void registerBuffers(IOVec buffers) {
+        register(IORING_REGISTER_BUFFERS, buffers.address(), buffers.count());
+    }
+
+    /**
+     * Unregisters all buffers.
+     */
+    public void unregisterBuffers() {
+        register(IORING_UNREGISTER_BUFFERS, 0, 0);
+    }
+
+    /**
+     * Registers files, so operations with IOSQE_FIXED_FILE can refer to them by index, avoiding a look up each time.
+     *
+     * @param fds The file descriptors, indexed in order.
+     * @throws PosixRuntimeException If io_uring_register fails.
+     */
+    public void registerFiles(int... fds) {
+        final long arr = UNSAFE.allocateMemory(4L * Math.max(1, fds.length));
+        try {
+            for (int i = 0; i < fds.length; i++)
+                UNSAFE.putInt(arr + 4L * i, fds[i]);
+            register(IORING_REGISTER_FILES, arr, fds.length);
+        } finally {
+            UNSAFE.freeMemory(arr);
+        }
+    }
+
+    /**
+     * Unregisters all files.
+     */
+    public void unregisterFiles() {
+        register(IORING_UNREGISTER_FILES, 0, 0);
+    }
+
+    private void register(int opcode, long arg, int nrArgs) {
+        if (posix.io_uring_register(fd, opcode, arg, nrArgs) != 0)
+            throw new PosixRuntimeException("io_uring_register " + opcode + " failed " + posix.lastErrorStr(), posix.lastError());
+    }
+
+    /**
+     * @return The number of operations submitted whose completion has not been read.
+     */
+    public long inFlight() {
+        return inFlight;
+    }
+
+    /**
+     * @return The number of SQEs prepared but not yet submitted.
+     */
+    public int prepared() {
+        return sqeTail - sqeHead;
+    }
+
+    /**
+     * @return The size of the submission queue.
+     */
+    public int sqEntries() {
+        return sqEntries;
+    }
+
+    /**
+     * @return The size of the completion queue.
+     */
+    public int cqEntries() {
+        return cqEntries;
+    }
+
+    /**
+     * @return The io_uring file descriptor.
+     */
+    public int fd() {
+        return fd;
+    }
+
+    /**
+     * Unmaps the rings and closes the io_uring. Operations in flight are cancelled by the kernel.
+     */
+    @Override
+    public void close() {
+        if (closed)
+            return;
+        closed = true;
+        posix.munmap(sqes, sqesSize);
+        if (cqRingSize > 0)
+            posix.munmap(cqRing, cqRingSize);
+        posix.munmap(sqRing, sqRingSize);
+        posix.close(fd);
+    }
+
+    @Override
+    public String toString() {
+        return "IoUring{" +
+                "fd=" + fd +
+                ", sqEntries=" + sqEntries +
+                ", cqEntries=" + cqEntries +
+                ", setupFlags=" + setupFlags +
+                ", inFlight=" + inFlight +
+                '}';
+    }
+
+    /**
+     * Called for each completion read. A single handler can be reused, so reading completions doesn't allocate.
+     */
+    @FunctionalInterface
+    public interface CompletionHandler {
+        /**
+         * @param userData The userData of the operation.
+         * @param res      The result, as the system call would return, or -errno on failure.
+         * @param flags    The CQE flags.
+         */
+        void onComplete(long userData, int res, int flags);
+    }
+}
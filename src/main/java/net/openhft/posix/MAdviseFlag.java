@@ -54,7 +54,13 @@ public enum MAdviseFlag {
     MADV_WIPEONFORK(18),
 
     // Undo MADV_WIPEONFORK
-    MADV_KEEPONFORK(19);
+    MADV_KEEPONFORK(19),
+
+    // Populate (prefault) page tables readable, faulting in all pages, since Linux 5.14
+    MADV_POPULATE_READ(22),
+
+    // Populate (prefault) page tables writable, faulting in all pages, since Linux 5.14
+    MADV_POPULATE_WRITE(23);
 
     // The integer value representing the madvise flag
     final int value;
@@ -1,26 +1,68 @@
 package net.openhft.posix;
 
+import net.openhft.posix.internal.core.OS;
+
 /**
  * This enum represents the different flags for mmap operations.
  * It defines the flags for memory mapping operations, including shared and private mappings.
+ * <p>
+ * Flags can be combined without allocating with {@link #or(MMapFlag)} and {@link #or(int)} e.g.
+ * <code>MMapFlag.PRIVATE.or(MMapFlag.ANONYMOUS) | MMapFlag.POPULATE.value()</code>
+ * <p>
+ * Most flags are Linux specific, the values are those for x86 and arm. Where a flag is not available on this OS its value is 0,
+ * see {@link #isSupported()}
  */
 public enum MMapFlag {
     // Memory mapping to be shared with other processes
-    SHARED(1),
+    SHARED(1, 1),
 
     // Memory mapping to be private to the process
-    PRIVATE(2);
+    PRIVATE(2, 2),
+
+    // Shared, failing with EOPNOTSUPP if any flag is not supported, needed for SYNC
+    SHARED_VALIDATE(3, 0),
+
+    // Place the mapping at exactly the address given, replacing any mapping there
+    FIXED(0x10, 0x10),
+
+    // Not backed by a file, the fd should be -1 and the memory is zeroed
+    ANONYMOUS(0x20, 0x1000),
+
+    // Lock the pages of the mapping in memory, as mlock would
+    LOCKED(0x2000, 0),
+
+    // Don't reserve swap space for the mapping, allowing large reservations of address space
+    NORESERVE(0x4000, 0x40),
+
+    // Fault in the pages of the mapping now, reading ahead for a file
+    POPULATE(0x8000, 0),
+
+    // Allocate the mapping from huge pages, see /proc/sys/vm/nr_hugepages
+    HUGETLB(0x40000, 0),
+
+    // Writes through a DAX mapping are durable once they reach the CPU caches, requires SHARED_VALIDATE
+    SYNC(0x80000, 0),
+
+    // Place the mapping at exactly the address given, failing with EEXIST rather than replacing a mapping, since Linux 4.17
+    FIXED_NOREPLACE(0x100000, 0),
+
+    // With HUGETLB, use 2 MiB huge pages, log2(size) << MAP_HUGE_SHIFT (26)
+    HUGE_2MB(21 << 26, 0),
+
+    // With HUGETLB, use 1 GiB huge pages, log2(size) << MAP_HUGE_SHIFT (26)
+    HUGE_1GB(30 << 26, 0);
 
     // The integer value representing the mmap flag
-    private int value;
+    private final int value;
 
     /**
      * Constructor for MMapFlag.
      *
-     * @param value The integer value representing the mmap flag
+     * @param linux The integer value representing the mmap flag on Linux
+     * @param macOS The integer value on macOS, or 0 if not available
      */
-    MMapFlag(int value) {
-        this.value = value;
+    MMapFlag(int linux, int macOS) {
+        this.value = OS.isMacOSX() ? macOS : linux;
     }
 
     /**
@@ -32,4 +74,27 @@ public enum MMapFlag {
     public int value() {
         return value;
     }
+
+    /**
+     * @return Whether this flag is available on this OS, if not its value is 0 and it has no effect.
+     */
+    public boolean isSupported() {
+        return value != 0;
+    }
+
+    /**
+     * @param flag Another flag.
+     * @return The value of both flags.
+     */
+    public int or(MMapFlag flag) {
+        return value | flag.value;
+    }
+
+    /**
+     * @param flags The value of other flags.
+     * @return The value of these flags and this one.
+     */
+    public int or(int flags) {
+        return value | flags;
+    }
 }
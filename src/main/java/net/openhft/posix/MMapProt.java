@@ -20,8 +20,8 @@ public enum MMapProt {
     // Memory protection to allow both execute and read access
     PROT_EXEC_READ(5),
 
-    // Memory protection to allow no access
-    PROT_NONE(8);
+    // Memory protection to allow no access, 0 on both Linux and macOS
+    PROT_NONE(0);
 
     // The integer value representing the memory protection level
     final int value;
@@ -0,0 +1,41 @@
+package net.openhft.posix;
+
+/**
+ * This enum represents the flags for mremap(2), which is Linux only. They can be combined with {@link #value()}
+ * With no flags the mapping can only be resized in place.
+ */
+public enum MRemapFlag {
+    /**
+     * The mapping may be moved to a new address if it can't be resized in place.
+     */
+    MREMAP_MAYMOVE(1),
+
+    /**
+     * Move the mapping to the new address given, replacing any mapping there. Requires MREMAP_MAYMOVE.
+     */
+    MREMAP_FIXED(2),
+
+    /**
+     * Leave the old mapping in place, with no pages, when moving. Requires MREMAP_MAYMOVE, since Linux 5.7
+     */
+    MREMAP_DONTUNMAP(4);
+
+    // The integer value representing the mremap flag
+    private final int value;
+
+    /**
+     * Constructor for MRemapFlag.
+     *
+     * @param value The integer value representing the mremap flag
+     */
+    MRemapFlag(int value) {
+        this.value = value;
+    }
+
+    /**
+     * @return The integer value of this flag.
+     */
+    public int value() {
+        return value;
+    }
+}
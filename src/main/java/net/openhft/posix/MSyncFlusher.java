@@ -0,0 +1,463 @@
+package net.openhft.posix;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * This class calls msync on a dedicated thread so writers to mapped memory never call it inline.
+ * <p>
+ * Writers register each mapped range and report the high-water mark they have written up to with {@link Range#dirty(long)}
+ * The flusher thread msyncs what is dirty according to its {@link Policy}: once enough bytes are dirty, or enough time has passed,
+ * with MS_ASYNC or MS_SYNC. Dirty spans which are adjacent in memory, e.g. consecutive chunks of a file, are coalesced into
+ * one msync call.
+ * <p>
+ * A writer which needs to know its data is durable calls {@link #sync()}, which completes once everything dirty at the time of the
+ * call has been written with MS_SYNC.
+ */
+public final class MSyncFlusher implements AutoCloseable {
+    private static final long PAGE_MASK = -MappedRegion.PAGE_SIZE;
+
+    private final PosixAPI posix;
+    private final Policy policy;
+    private final List<Range> ranges = new CopyOnWriteArrayList<>();
+    private final ConcurrentLinkedQueue<CompletableFuture<Void>> syncRequests = new ConcurrentLinkedQueue<>();
+    private final Thread thread;
+    private final CompletableFuture<Void> started = new CompletableFuture<>();
+    private final AtomicLong msyncCalls = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private volatile boolean closed;
+
+    // used only by the flusher thread, to sort and coalesce the spans each pass
+    private long[] starts = new long[16];
+    private long[] ends = new long[16];
+    private Range[] spanRanges = new Range[16];
+    private long[] spanUpto = new long[16];
+
+    /**
+     * Creates a flusher and starts its thread.
+     *
+     * @param name   The name of the thread.
+     * @param policy When to flush, copied so later changes have no effect.
+     * @throws IllegalArgumentException If the policy's CPU is not configured on this machine.
+     * @throws PosixRuntimeException    If the thread could not be bound to the policy's CPU.
+     */
+    public MSyncFlusher(String name, Policy policy) {
+        this.posix = PosixAPI.posix();
+        this.policy = new Policy(policy);
+        if (this.policy.cpu >= posix.get_nprocs_conf())
+            throw new IllegalArgumentException("cpu: " + this.policy.cpu + " nprocs_conf: " + posix.get_nprocs_conf());
+        this.thread = new Thread(this::run, name);
+        this.thread.setDaemon(true);
+        this.thread.start();
+        try {
+            started.join();
+        } catch (CompletionException e) {
+            throw (RuntimeException) e.getCause();
+        }
+    }
+
+    /**
+     * Registers a range of mapped memory to flush.
+     *
+     * @param address The start of the range, a multiple of the page size.
+     * @param length  The length of the range.
+     * @return The range, which the writer reports progress to.
+     */
+    public Range register(long address, long length) {
+        if (closed)
+            throw new IllegalStateException("closed");
+        if ((address & ~PAGE_MASK) != 0)
+            throw new IllegalArgumentException("address " + Long.toHexString(address) + " is not page aligned");
+        final Range range = new Range(this, address, length);
+        ranges.add(range);
+        return range;
+    }
+
+    /**
+     * Registers the whole of a mapped region to flush. The range must be closed before the region is.
+     *
+     * @param region The region.
+     * @return The range, which the writer reports progress to.
+     */
+    public Range register(MappedRegion region) {
+        return register(region.address(), region.length());
+    }
+
+    /**
+     * Requests everything dirty so far is written with MS_SYNC.
+     *
+     * @return A future completed when it has been written, or completed exceptionally if an msync failed or the flusher was closed.
+     */
+    public CompletableFuture<Void> sync() {
+        final CompletableFuture<Void> future = new CompletableFuture<>();
+        syncRequests.add(future);
+        if (closed)
+            drainRequests(new IllegalStateException("closed"));
+        else
+            LockSupport.unpark(thread);
+        return future;
+    }
+
+    private void run() {
+        // saturates, so Long.MAX_VALUE means never
+        final long pauseNanos = TimeUnit.MICROSECONDS.toNanos(policy.pauseMicros);
+        final long intervalNanos = TimeUnit.MICROSECONDS.toNanos(policy.everyMicros);
+        if (policy.cpu >= 0 && posix.sched_setaffinity_as(posix.gettid(), policy.cpu) != 0) {
+            closed = true;
+            started.completeExceptionally(new PosixRuntimeException("Unable to bind " + thread.getName() + " to cpu " + policy.cpu + " " + posix.lastErrorStr(), posix.lastError()));
+            return;
+        }
+        started.complete(null);
+        long lastFlush = System.nanoTime();
+        while (!closed) {
+            if (!syncRequests.isEmpty()) {
+                // only requests made before this pass starts are known to be covered by it
+                final int requests = syncRequests.size();
+                final RuntimeException error = flush(true);
+                for (int i = 0; i < requests; i++)
+                    complete(syncRequests.poll(), error);
+                lastFlush = System.nanoTime();
+                continue;
+            }
+            final long dirty = dirtyBytes();
+            final long now = System.nanoTime();
+            if (dirty > 0 && (dirty >= policy.everyBytes || now - lastFlush >= intervalNanos)) {
+                final long calls = msyncCalls.get();
+                final RuntimeException error = flush(policy.mode == MSyncFlag.MS_SYNC);
+                lastFlush = now;
+                // pause rather than spin if msync is failing, or there was nothing to flush
+                if (error != null || msyncCalls.get() == calls)
+                    LockSupport.parkNanos(pauseNanos);
+                continue;
+            }
+            LockSupport.parkNanos(pauseNanos);
+        }
+        // a final flush of everything dirty
+        drainRequests(flush(true));
+    }
+
+    private void drainRequests(RuntimeException error) {
+        for (CompletableFuture<Void> future; (future = syncRequests.poll()) != null; )
+            complete(future, error);
+    }
+
+    private static void complete(CompletableFuture<Void> future, RuntimeException error) {
+        if (future == null)
+            return;
+        if (error == null)
+            future.complete(null);
+        else
+            future.completeExceptionally(error);
+    }
+
+    private long dirtyBytes() {
+        long dirty = 0;
+        for (Range range : ranges)
+            dirty += Math.max(0, Math.min(range.dirty.get(), range.length) - range.flushedUpto);
+        return dirty;
+    }
+
+    /**
+     * Flushes every range, coalescing adjacent spans.
+     *
+     * @param sync Whether to use MS_SYNC, otherwise MS_ASYNC
+     * @return The error from the first msync which failed, or null.
+     */
+    private synchronized RuntimeException flush(boolean sync) {
+        int count = 0;
+        for (Range range : ranges) {
+            if (range.closed)
+                continue;
+            final long from = sync ? range.syncedUpto : range.flushedUpto;
+            final long upto = Math.min(range.dirty.get(), range.length);
+            if (upto <= from)
+                continue;
+            if (count == starts.length)
+                grow();
+            starts[count] = (range.address + from) & PAGE_MASK;
+            ends[count] = range.address + upto;
+            spanRanges[count] = range;
+            spanUpto[count] = upto;
+            count++;
+        }
+        sortByStart(count);
+
+        RuntimeException error = null;
+        final int flag = sync ? MSyncFlag.MS_SYNC.value() : MSyncFlag.MS_ASYNC.value();
+        for (int first = 0; first < count; ) {
+            long end = ends[first];
+            int last = first + 1;
+            while (last < count && starts[last] <= end) {
+                end = Math.max(end, ends[last]);
+                last++;
+            }
+            msyncCalls.incrementAndGet();
+            if (posix.msync(starts[first], end - starts[first], flag) == 0) {
+                for (int i = first; i < last; i++) {
+                    final Range range = spanRanges[i];
+                    range.flushedUpto = Math.max(range.flushedUpto, spanUpto[i]);
+                    if (sync)
+                        range.syncedUpto = spanUpto[i];
+                }
+            } else {
+                failures.incrementAndGet();
+                if (error == null)
+                    error = new PosixRuntimeException("msync failed " + posix.lastErrorStr(), posix.lastError());
+            }
+            first = last;
+        }
+        for (int i = 0; i < count; i++)
+            spanRanges[i] = null;
+        return error;
+    }
+
+    // insertion sort, as there are few ranges and it doesn't allocate
+    private void sortByStart(int count) {
+        for (int i = 1; i < count; i++) {
+            final long start = starts[i], end = ends[i], upto = spanUpto[i];
+            final Range range = spanRanges[i];
+            int j = i - 1;
+            for (; j >= 0 && starts[j] > start; j--) {
+                starts[j + 1] = starts[j];
+                ends[j + 1] = ends[j];
+                spanRanges[j + 1] = spanRanges[j];
+                spanUpto[j + 1] = spanUpto[j];
+            }
+            starts[j + 1] = start;
+            ends[j + 1] = end;
+            spanRanges[j + 1] = range;
+            spanUpto[j + 1] = upto;
+        }
+    }
+
+    private void grow() {
+        final int length = starts.length * 2;
+        starts = Arrays.copyOf(starts, length);
+        ends = Arrays.copyOf(ends, length);
+        spanRanges = Arrays.copyOf(spanRanges, length);
+        spanUpto = Arrays.copyOf(spanUpto, length);
+    }
+
+    synchronized void unregister(Range range) {
+        range.closed = true;
+        ranges.remove(range);
+    }
+
+    /**
+     * @return The number of msync calls made.
+     */
+    public long msyncCalls() {
+        return msyncCalls.get();
+    }
+
+    /**
+     * @return The number of msync calls which failed.
+     */
+    public long failures() {
+        return failures.get();
+    }
+
+    /**
+     * @return The ranges registered.
+     */
+    public List<Range> ranges() {
+        return new ArrayList<>(ranges);
+    }
+
+    /**
+     * Stops the thread after a final MS_SYNC of everything dirty.
+     */
+    @Override
+    public void close() {
+        if (closed)
+            return;
+        closed = true;
+        LockSupport.unpark(thread);
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * A range of mapped memory which is written from the start up to a high-water mark.
+     */
+    public static final class Range implements AutoCloseable {
+        private final MSyncFlusher flusher;
+        private final long address;
+        private final long length;
+        // written by writers
+        private final AtomicLong dirty = new AtomicLong();
+        // written by the flusher thread
+        private volatile long flushedUpto;
+        private volatile long syncedUpto;
+        private volatile boolean closed;
+
+        Range(MSyncFlusher flusher, long address, long length) {
+            this.flusher = flusher;
+            this.address = address;
+            this.length = length;
+        }
+
+        /**
+         * Records the range has been written up to an offset. This is cheap enough to call after every write.
+         *
+         * @param upto The offset from the start of the range written up to, lower values than before are ignored.
+         * @throws IllegalArgumentException If upto is beyond the length of the range.
+         */
+        public void dirty(long upto) {
+            if (upto > length)
+                throw new IllegalArgumentException("upto: " + upto + " length: " + length);
+            for (long prev; (prev = dirty.get()) < upto; )
+                if (dirty.compareAndSet(prev, upto))
+                    return;
+        }
+
+        /**
+         * @return The high-water mark written up to.
+         */
+        public long dirtyUpto() {
+            return dirty.get();
+        }
+
+        /**
+         * @return The offset msync has been called up to, with either flag.
+         */
+        public long flushedUpto() {
+            return flushedUpto;
+        }
+
+        /**
+         * @return The offset msync has been called up to with MS_SYNC
+         */
+        public long syncedUpto() {
+            return syncedUpto;
+        }
+
+        /**
+         * @return The start of the range.
+         */
+        public long address() {
+            return address;
+        }
+
+        /**
+         * @return The length of the range.
+         */
+        public long length() {
+            return length;
+        }
+
+        /**
+         * Stops flushing this range, waiting for any msync of it in progress. It can be unmapped after this.
+         */
+        @Override
+        public void close() {
+            flusher.unregister(this);
+        }
+
+        @Override
+        public String toString() {
+            return "Range{" +
+                    "address=" + Long.toHexString(address) +
+                    ", length=" + length +
+                    ", dirty=" + dirty.get() +
+                    ", flushedUpto=" + flushedUpto +
+                    ", syncedUpto=" + syncedUpto +
+                    '}';
+        }
+    }
+
+    /**
+     * When the flusher calls msync, with either flag. Durability on request with {@link #sync()} always uses MS_SYNC.
+     */
+    public static final class Policy {
+        private MSyncFlag mode = MSyncFlag.MS_ASYNC;
+        private long everyBytes = 1L << 20;
+        private long everyMicros = 10_000;
+        private long pauseMicros = 100;
+        private int cpu = -1;
+
+        public Policy() {
+        }
+
+        Policy(Policy policy) {
+            this.mode = policy.mode;
+            this.everyBytes = policy.everyBytes;
+            this.everyMicros = policy.everyMicros;
+            this.pauseMicros = policy.pauseMicros;
+            this.cpu = policy.cpu;
+        }
+
+        /**
+         * @param mode The flag used for flushes not requested with sync(), MS_ASYNC by default.
+         * @return this
+         */
+        public Policy mode(MSyncFlag mode) {
+            if (mode == MSyncFlag.MS_INVALIDATE)
+                throw new IllegalArgumentException("mode: " + mode);
+            this.mode = mode;
+            return this;
+        }
+
+        /**
+         * @param everyBytes Flush once this many bytes are dirty across all ranges, 1 MiB by default.
+         * @return this
+         */
+        public Policy everyBytes(long everyBytes) {
+            this.everyBytes = everyBytes;
+            return this;
+        }
+
+        /**
+         * @param everyMicros Flush anything dirty once this long has passed since the last flush, 10 ms by default,
+         *                    or Long.MAX_VALUE to flush only by size.
+         * @return this
+         */
+        public Policy everyMicros(long everyMicros) {
+            this.everyMicros = everyMicros;
+            return this;
+        }
+
+        /**
+         * @param pauseMicros How long the thread pauses when there is nothing to do or msync fails, 100 us by default.
+         * @return this
+         */
+        public Policy pauseMicros(long pauseMicros) {
+            this.pauseMicros = pauseMicros;
+            return this;
+        }
+
+        /**
+         * @param cpu The CPU to bind the flusher thread to, or -1 for any, the default.
+         * @return this
+         * @throws IllegalArgumentException If cpu is less than -1.
+         */
+        public Policy cpu(int cpu) {
+            if (cpu < -1)
+                throw new IllegalArgumentException("cpu: " + cpu);
+            this.cpu = cpu;
+            return this;
+        }
+
+        @Override
+        public String toString() {
+            return "Policy{" +
+                    "mode=" + mode +
+                    ", everyBytes=" + everyBytes +
+                    ", everyMicros=" + everyMicros +
+                    ", pauseMicros=" + pauseMicros +
+                    ", cpu=" + cpu +
+                    '}';
+        }
+    }
+}
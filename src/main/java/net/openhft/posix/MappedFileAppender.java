@@ -0,0 +1,365 @@
+package net.openhft.posix;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import static net.openhft.posix.internal.UnsafeMemory.UNSAFE;
+
+/**
+ * This class appends to a file through a memory mapping which grows in fixed size chunks, so the writer never takes a page fault
+ * or waits for the file system to allocate blocks.
+ * <p>
+ * A contiguous range of address space for the whole capacity is reserved up front with {@link AddressSpaceReservation},
+ * and each chunk of the file is committed into it in turn, so addresses don't change as the file grows and a record can straddle chunks.
+ * A background thread, or a caller of {@link #runOnce()}, keeps the chunk being written and the next chunksAhead chunks
+ * allocated with fallocate, mapped and pre-faulted with {@link PreToucher}, and msyncs with MS_ASYNC behind the tail so the dirty pages are written back
+ * steadily rather than all at once.
+ * <p>
+ * There must be only one writer thread. Other threads can read the tail, and read up to it through {@link #address()}
+ * Positions start at 0 for each appender; an existing file is overwritten from the start.
+ */
+public final class MappedFileAppender implements AutoCloseable {
+    // The default chunk size, a 2 MiB huge page
+    public static final long DEFAULT_CHUNK_SIZE = 2L << 20;
+    // The default number of chunks to prepare ahead of the one being written
+    public static final int DEFAULT_CHUNKS_AHEAD = 2;
+
+    // How long the background thread pauses when it has nothing to do
+    private static final long PAUSE_NS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final PosixAPI posix;
+    private final String filename;
+    private final int fd;
+    private final AddressSpaceReservation reservation;
+    private final long address;
+    private final long capacity;
+    private final long chunkSize;
+    private final int chunksAhead;
+    // the position published to other threads, written by the writer thread
+    private final AtomicLong tail = new AtomicLong();
+    // the bytes from the start which are mapped and pre-faulted
+    private volatile long mappedUpto;
+    // the bytes from the start which have been passed to msync
+    private long syncedUpto;
+    // the times the writer had to map a chunk itself
+    private volatile long stalls;
+    // the first failure of the background thread, rethrown to the writer
+    private volatile RuntimeException failure;
+    private Thread background;
+    private boolean closed;
+
+    /**
+     * Opens or creates a file to append to, reserving address space for its capacity and preparing the first chunk.
+     * The background thread is not started, see {@link #start()}
+     *
+     * @param filename    The file to append to.
+     * @param capacity    The most which can be appended, rounded up to a whole chunk.
+     * @param chunkSize   The size of each chunk mapped, a multiple of the page size.
+     * @param chunksAhead The number of chunks to prepare ahead of the one being written.
+     * @throws PosixRuntimeException If the file can't be opened, or the address space reserved.
+     */
+    public MappedFileAppender(String filename, long capacity, long chunkSize, int chunksAhead) {
+        if (chunkSize <= 0 || chunkSize % MappedRegion.PAGE_SIZE != 0)
+            throw new IllegalArgumentException("chunkSize: " + chunkSize + " must be a multiple of " + MappedRegion.PAGE_SIZE);
+        if (capacity <= 0)
+            throw new IllegalArgumentException("capacity: " + capacity);
+        if (chunksAhead < 0)
+            throw new IllegalArgumentException("chunksAhead: " + chunksAhead);
+        this.posix = PosixAPI.posix();
+        this.filename = filename;
+        this.capacity = (capacity + chunkSize - 1) / chunkSize * chunkSize;
+        this.chunkSize = chunkSize;
+        this.chunksAhead = chunksAhead;
+        this.fd = posix.open(filename, OpenFlag.O_RDWR.or(OpenFlag.O_CREAT), 0666);
+        if (fd < 0)
+            throw new PosixRuntimeException("Unable to open " + filename + " " + posix.lastErrorStr(), posix.lastError());
+        try {
+            this.reservation = AddressSpaceReservation.reserve(this.capacity, 0);
+        } catch (RuntimeException e) {
+            posix.close(fd);
+            throw e;
+        }
+        this.address = reservation.address();
+        try {
+            prepare(0);
+        } catch (RuntimeException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * Opens a file to append to with 2 MiB chunks, starting a background thread to prepare them.
+     *
+     * @param filename The file to append to.
+     * @param capacity The most which can be appended.
+     * @return The appender.
+     * @throws PosixRuntimeException If the file can't be opened, or the address space reserved.
+     */
+    public static MappedFileAppender open(String filename, long capacity) {
+        final MappedFileAppender appender = new MappedFileAppender(filename, capacity, DEFAULT_CHUNK_SIZE, DEFAULT_CHUNKS_AHEAD);
+        appender.start();
+        return appender;
+    }
+
+    /**
+     * Starts a daemon thread which prepares chunks and msyncs behind the tail, until closed.
+     * Callers which need to control this thread e.g. to keep it off the writer's CPU, can call {@link #runOnce()} from their own.
+     * If the thread fails, e.g. the disk is full, it stops and the failure is thrown by the next {@link #acquire(long)} or {@link #close()}
+     *
+     * @return this
+     */
+    public synchronized MappedFileAppender start() {
+        if (closed)
+            throw new IllegalStateException("closed");
+        if (background == null) {
+            background = new Thread(this::runLoop, "appender~" + new File(filename).getName());
+            background.setDaemon(true);
+            background.start();
+        }
+        return this;
+    }
+
+    private void runLoop() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                if (!runOnce())
+                    LockSupport.parkNanos(PAUSE_NS);
+            }
+        } catch (RuntimeException e) {
+            failure = e;
+        }
+    }
+
+    /**
+     * Does one step of the background work: preparing the next chunk needed, or msyncing what has been written since the last call.
+     *
+     * @return Whether anything was done, if not the caller can pause.
+     */
+    public boolean runOnce() {
+        final long tail = this.tail.get();
+        if (prepare(tail))
+            return true;
+        return sync(tail);
+    }
+
+    /**
+     * Prepares at most one chunk, up to chunksAhead after the one containing position.
+     */
+    private synchronized boolean prepare(long position) {
+        if (closed)
+            return false;
+        final long target = Math.min(capacity, (position / chunkSize + 1 + chunksAhead) * chunkSize);
+        final long upto = mappedUpto;
+        if (upto >= target)
+            return false;
+        mapChunk(upto);
+        return true;
+    }
+
+    private void mapChunk(long offset) {
+        // allocate the blocks, so the writer doesn't wait on the file system
+        if (posix.fallocate(fd, 0, offset, chunkSize) != 0 && posix.ftruncate(fd, offset + chunkSize) != 0)
+            throw new PosixRuntimeException("Unable to extend " + filename + " " + posix.lastErrorStr(), posix.lastError());
+        final MappedRegion chunk = reservation.commitFile(offset, fd, offset, chunkSize, MMapProt.PROT_READ_WRITE, false);
+        PreToucher.touchPages(posix, chunk.address(), chunkSize, MappedRegion.PAGE_SIZE, true);
+        mappedUpto = offset + chunkSize;
+    }
+
+    private synchronized boolean sync(long tail) {
+        if (closed)
+            return false;
+        final long upto = tail & -MappedRegion.PAGE_SIZE;
+        if (upto <= syncedUpto)
+            return false;
+        final long from = syncedUpto & -MappedRegion.PAGE_SIZE;
+        if (posix.msync(address + from, upto - from, MSyncFlag.MS_ASYNC.value()) != 0)
+            throw new PosixRuntimeException("Unable to msync " + filename + " " + posix.lastErrorStr(), posix.lastError());
+        syncedUpto = upto;
+        return true;
+    }
+
+    /**
+     * Returns the address to write the next length bytes to. The bytes are not visible to other threads until
+     * {@link #advance(long)} is called.
+     * This is only blocked if the background work has fallen behind, see {@link #stalls()}
+     *
+     * @param length The number of bytes to be written.
+     * @return The address of the tail.
+     * @throws IllegalStateException If this would exceed the capacity, or it is closed.
+     * @throws PosixRuntimeException If the background thread failed to prepare a chunk or msync.
+     */
+    public long acquire(long length) {
+        final RuntimeException failure = this.failure;
+        if (failure != null)
+            throw failure;
+        final long position = tail.get();
+        final long end = position + length;
+        if (length < 0 || end > capacity)
+            throw new IllegalStateException("Unable to write " + length + " at " + position + " capacity " + capacity);
+        if (end > mappedUpto)
+            ensureMapped(end);
+        return address + position;
+    }
+
+    private synchronized void ensureMapped(long end) {
+        if (closed)
+            throw new IllegalStateException("closed");
+        if (end <= mappedUpto)
+            return;
+        stalls++;
+        while (mappedUpto < end)
+            mapChunk(mappedUpto);
+    }
+
+    /**
+     * Moves the tail past bytes written after {@link #acquire(long)}, publishing them to other threads.
+     *
+     * @param length The number of bytes written.
+     */
+    public void advance(long length) {
+        final long end = tail.get() + length;
+        if (length < 0 || end > mappedUpto)
+            throw new IllegalStateException("Unable to advance " + length + " past " + mappedUpto);
+        tail.lazySet(end);
+    }
+
+    /**
+     * Appends bytes from memory.
+     *
+     * @param src    The address to copy from.
+     * @param length The number of bytes.
+     * @return The position they were written at.
+     */
+    public long append(long src, long length) {
+        final long addr = acquire(length);
+        UNSAFE.copyMemory(src, addr, length);
+        advance(length);
+        return addr - address;
+    }
+
+    /**
+     * Appends bytes from an array.
+     *
+     * @param bytes  The array to copy from.
+     * @param start  The index of the first byte.
+     * @param length The number of bytes.
+     * @return The position they were written at.
+     */
+    public long append(byte[] bytes, int start, int length) {
+        if (start < 0 || length < 0 || start > bytes.length - length)
+            throw new IndexOutOfBoundsException("start: " + start + " length: " + length + " array: " + bytes.length);
+        final long addr = acquire(length);
+        UNSAFE.copyMemory(bytes, UNSAFE.arrayBaseOffset(byte[].class) + start, null, addr, length);
+        advance(length);
+        return addr - address;
+    }
+
+    /**
+     * @return The address of position 0. The addresses up to the capacity are reserved until closed.
+     */
+    public long address() {
+        return address;
+    }
+
+    /**
+     * @return The position the next append will be written at.
+     */
+    public long tail() {
+        return tail.get();
+    }
+
+    /**
+     * @return The most which can be appended.
+     */
+    public long capacity() {
+        return capacity;
+    }
+
+    /**
+     * @return The size of each chunk mapped.
+     */
+    public long chunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * @return The number of bytes from the start which are mapped and ready to write.
+     */
+    public long mappedUpto() {
+        return mappedUpto;
+    }
+
+    /**
+     * @return The number of bytes from the start which have been passed to msync.
+     */
+    public synchronized long syncedUpto() {
+        return syncedUpto;
+    }
+
+    /**
+     * @return The number of times the writer had to map a chunk itself because the background work fell behind.
+     */
+    public long stalls() {
+        return stalls;
+    }
+
+    /**
+     * @return The file descriptor of the file.
+     */
+    public int fd() {
+        return fd;
+    }
+
+    /**
+     * Stops the background thread, msyncs everything written, and unmaps and closes the file.
+     * The file is left at a whole number of chunks.
+     *
+     * @throws PosixRuntimeException If the background thread failed, after closing.
+     */
+    @Override
+    public void close() {
+        final Thread thread;
+        synchronized (this) {
+            if (closed)
+                return;
+            thread = background;
+        }
+        if (thread != null) {
+            thread.interrupt();
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        synchronized (this) {
+            if (closed)
+                return;
+            closed = true;
+            if (mappedUpto > 0)
+                posix.msync(address, mappedUpto, MSyncFlag.MS_ASYNC.value());
+            // unmaps the chunks and the rest of the reservation
+            reservation.close();
+            posix.close(fd);
+            mappedUpto = 0;
+        }
+        final RuntimeException failure = this.failure;
+        if (failure != null)
+            throw failure;
+    }
+
+    @Override
+    public String toString() {
+        return "MappedFileAppender{" +
+                "filename='" + filename + '\'' +
+                ", tail=" + tail() +
+                ", mappedUpto=" + mappedUpto +
+                ", capacity=" + capacity +
+                ", chunkSize=" + chunkSize +
+                ", stalls=" + stalls +
+                '}';
+    }
+}
@@ -0,0 +1,569 @@
+package net.openhft.posix;
+
+import jnr.constants.platform.Errno;
+
+import static net.openhft.posix.internal.UnsafeMemory.UNSAFE;
+
+/**
+ * This class owns a memory mapping from {@link PosixAPI#mmap(long, long, int, int, int, long)}, unmapping it on close.
+ * <p>
+ * The accessors take an offset into the region which is bounds checked, then make a single Unsafe access, so after inlining
+ * they compile to the same code as hand written pointer arithmetic. After close the length is 0 so any access throws.
+ * <p>
+ * Accessors may be called from any thread, but close, or a resize, must not be called while other threads are accessing the region.
+ */
+public final class MappedRegion implements AutoCloseable {
+    // The size of a page, which the mapping and the ranges passed to msync, madvise and mlock are aligned to
+    static final long PAGE_SIZE = UNSAFE.pageSize();
+
+    private final PosixAPI posix;
+    // changes only if moved by resize
+    private long address;
+    private final int fd;
+    private final long offset;
+    private final int prot;
+    // close the file descriptor as well as unmapping
+    private final boolean ownsFd;
+    // 0 once closed
+    private long length;
+    // the reservation this was committed into, which it is returned to on close, or null
+    private final AddressSpaceReservation reservation;
+
+    MappedRegion(PosixAPI posix, long address, long length, int fd, long offset, int prot, boolean ownsFd) {
+        this(posix, address, length, fd, offset, prot, ownsFd, null);
+    }
+
+    MappedRegion(PosixAPI posix, long address, long length, int fd, long offset, int prot, boolean ownsFd, AddressSpaceReservation reservation) {
+        this.reservation = reservation;
+        this.posix = posix;
+        this.address = address;
+        this.length = length;
+        this.fd = fd;
+        this.offset = offset;
+        this.prot = prot;
+        this.ownsFd = ownsFd;
+    }
+
+    /**
+     * Maps a region of an open file. The file descriptor is not closed with the region.
+     *
+     * @param fd     The file descriptor.
+     * @param offset The offset in the file, a multiple of the page size.
+     * @param length The length to map.
+     * @param prot   The protection e.g. PROT_READ_WRITE
+     * @param flags  The flags e.g. SHARED
+     * @return The region mapped.
+     * @throws PosixRuntimeException If the mmap fails.
+     */
+    public static MappedRegion map(int fd, long offset, long length, MMapProt prot, MMapFlag flags) {
+        return map(PosixAPI.posix(), fd, offset, length, prot.value(), flags.value(), false);
+    }
+
+    /**
+     * Maps private anonymous memory, zeroed.
+     *
+     * @param length The length to map.
+     * @param flags  Any flags to add to PRIVATE and ANONYMOUS e.g. <code>MMapFlag.POPULATE.or(MMapFlag.HUGETLB)</code>, or 0
+     * @return The region mapped.
+     * @throws PosixRuntimeException If the mmap fails.
+     */
+    public static MappedRegion mapAnonymous(long length, int flags) {
+        return map(PosixAPI.posix(), -1, 0L, length, MMapProt.PROT_READ_WRITE.value(),
+                MMapFlag.PRIVATE.or(MMapFlag.ANONYMOUS) | flags, false);
+    }
+
+    /**
+     * Maps a region of memory with any combination of flags.
+     *
+     * @param posix  The PosixAPI to use.
+     * @param fd     The file descriptor, or -1 for an anonymous mapping.
+     * @param offset The offset in the file, a multiple of the page size.
+     * @param length The length to map.
+     * @param prot   The protection flags.
+     * @param flags  The mmap flags.
+     * @param ownsFd Whether to close the file descriptor when the region is closed.
+     * @return The region mapped.
+     * @throws PosixRuntimeException If the mmap fails.
+     */
+    public static MappedRegion map(PosixAPI posix, int fd, long offset, long length, int prot, int flags, boolean ownsFd) {
+        if (length <= 0)
+            throw new IllegalArgumentException("length: " + length);
+        final long address = posix.mmap(0, length, prot, flags, fd, offset);
+        return new MappedRegion(posix, address, length, fd, offset, prot, ownsFd);
+    }
+
+    /**
+     * Opens or creates a file, extends it to at least length if writable, and maps it shared.
+     * The file is closed with the region.
+     *
+     * @param filename The file to map.
+     * @param length   The length to map from the start of the file.
+     * @param writable Whether to map for writing, otherwise read only.
+     * @return The region mapped.
+     * @throws PosixRuntimeException If the file can't be opened, extended or mapped, or is shorter than length when read only,
+     *                               as reading past the end of a file raises SIGBUS.
+     */
+    public static MappedRegion mapFile(String filename, long length, boolean writable) {
+        final PosixAPI posix = PosixAPI.posix();
+        final int fd = posix.open(filename, writable ? OpenFlag.O_RDWR.or(OpenFlag.O_CREAT) : OpenFlag.O_RDONLY.value(), 0666);
+        if (fd < 0)
+            throw new PosixRuntimeException("Unable to open " + filename + " " + posix.lastErrorStr(), posix.lastError());
+        try {
+            final FileStat stat = new FileStat();
+            if (posix.fstat(fd, stat) != 0)
+                throw new PosixRuntimeException("Unable to stat " + filename + " " + posix.lastErrorStr(), posix.lastError());
+            if (stat.size() < length) {
+                if (!writable)
+                    throw new PosixRuntimeException("Unable to map " + length + " bytes of " + filename + " which is " + stat.size() + " bytes",
+                            Errno.EINVAL.intValue());
+                if (posix.ftruncate(fd, length) != 0)
+                    throw new PosixRuntimeException("Unable to extend " + filename + " " + posix.lastErrorStr(), posix.lastError());
+            }
+            return map(posix, fd, 0L, length,
+                    writable ? MMapProt.PROT_READ_WRITE.value() : MMapProt.PROT_READ.value(),
+                    MMapFlag.SHARED.value(), true);
+        } catch (RuntimeException e) {
+            posix.close(fd);
+            throw e;
+        }
+    }
+
+    /**
+     * @return The address of the start of the region.
+     */
+    public long address() {
+        return address;
+    }
+
+    /**
+     * @return The length of the region, 0 once closed.
+     */
+    public long length() {
+        return length;
+    }
+
+    /**
+     * @return The file descriptor mapped, or -1 if anonymous.
+     */
+    public int fd() {
+        return fd;
+    }
+
+    /**
+     * @return The offset in the file of the start of the region.
+     */
+    public long offset() {
+        return offset;
+    }
+
+    /**
+     * @return The protection flags it was mapped with.
+     */
+    public int prot() {
+        return prot;
+    }
+
+    /**
+     * @return Whether the region has been closed.
+     */
+    public boolean isClosed() {
+        return length == 0;
+    }
+
+    /**
+     * Checks the access is within the region and returns its address.
+     */
+    private long address(long offset, int size) {
+        if (offset < 0 || offset > length - size)
+            throw new IndexOutOfBoundsException("offset: " + offset + " size: " + size + " length: " + length);
+        return address + offset;
+    }
+
+    /**
+     * Reads a byte.
+     *
+     * @param offset The offset in the region.
+     * @return The value read.
+     */
+    public byte getByte(long offset) {
+        return UNSAFE.getByte(address(offset, 1));
+    }
+
+    /**
+     * Writes a byte.
+     *
+     * @param offset The offset in the region.
+     * @param value  The value to write.
+     */
+    public void putByte(long offset, byte value) {
+        UNSAFE.putByte(address(offset, 1), value);
+    }
+
+    /**
+     * Reads a short.
+     *
+     * @param offset The offset in the region.
+     * @return The value read.
+     */
+    public short getShort(long offset) {
+        return UNSAFE.getShort(address(offset, 2));
+    }
+
+    /**
+     * Writes a short.
+     *
+     * @param offset The offset in the region.
+     * @param value  The value to write.
+     */
+    public void putShort(long offset, short value) {
+        UNSAFE.putShort(address(offset, 2), value);
+    }
+
+    /**
+     * Reads an int.
+     *
+     * @param offset The offset in the region.
+     * @return The value read.
+     */
+    public int getInt(long offset) {
+        return UNSAFE.getInt(address(offset, 4));
+    }
+
+    /**
+     * Writes an int.
+     *
+     * @param offset The offset in the region.
+     * @param value  The value to write.
+     */
+    public void putInt(long offset, int value) {
+        UNSAFE.putInt(address(offset, 4), value);
+    }
+
+    /**
+     * Reads a long.
+     *
+     * @param offset The offset in the region.
+     * @return The value read.
+     */
+    public long getLong(long offset) {
+        return UNSAFE.getLong(address(offset, 8));
+    }
+
+    /**
+     * Writes a long.
+     *
+     * @param offset The offset in the region.
+     * @param value  The value to write.
+     */
+    public void putLong(long offset, long value) {
+        UNSAFE.putLong(address(offset, 8), value);
+    }
+
+    /**
+     * Reads a double.
+     *
+     * @param offset The offset in the region.
+     * @return The value read.
+     */
+    public double getDouble(long offset) {
+        return UNSAFE.getDouble(address(offset, 8));
+    }
+
+    /**
+     * Writes a double.
+     *
+     * @param offset The offset in the region.
+     * @param value  The value to write.
+     */
+    public void putDouble(long offset, double value) {
+        UNSAFE.putDouble(address(offset, 8), value);
+    }
+
+    /**
+     * Reads an int with volatile semantics.
+     *
+     * @param offset The offset in the region, aligned to 4 bytes.
+     * @return The value read.
+     */
+    public int getIntVolatile(long offset) {
+        return UNSAFE.getIntVolatile(null, address(offset, 4));
+    }
+
+    /**
+     * Writes an int with volatile semantics.
+     *
+     * @param offset The offset in the region, aligned to 4 bytes.
+     * @param value  The value to write.
+     */
+    public void putIntVolatile(long offset, int value) {
+        UNSAFE.putIntVolatile(null, address(offset, 4), value);
+    }
+
+    /**
+     * Reads a long with volatile semantics.
+     *
+     * @param offset The offset in the region, aligned to 8 bytes.
+     * @return The value read.
+     */
+    public long getLongVolatile(long offset) {
+        return UNSAFE.getLongVolatile(null, address(offset, 8));
+    }
+
+    /**
+     * Writes a long with volatile semantics.
+     *
+     * @param offset The offset in the region, aligned to 8 bytes.
+     * @param value  The value to write.
+     */
+    public void putLongVolatile(long offset, long value) {
+        UNSAFE.putLongVolatile(null, address(offset, 8), value);
+    }
+
+    /**
+     * Writes an int which is not reordered with earlier stores, but may be delayed, i.e. a release store.
+     *
+     * @param offset The offset in the region, aligned to 4 bytes.
+     * @param value  The value to write.
+     */
+    public void putOrderedInt(long offset, int value) {
+        UNSAFE.putOrderedInt(null, address(offset, 4), value);
+    }
+
+    /**
+     * Writes a long which is not reordered with earlier stores, but may be delayed, i.e. a release store.
+     *
+     * @param offset The offset in the region, aligned to 8 bytes.
+     * @param value  The value to write.
+     */
+    public void putOrderedLong(long offset, long value) {
+        UNSAFE.putOrderedLong(null, address(offset, 8), value);
+    }
+
+    /**
+     * Atomically sets an int if it has the expected value.
+     *
+     * @param offset   The offset in the region, aligned to 4 bytes.
+     * @param expected The expected value.
+     * @param value    The new value.
+     * @return Whether it was set.
+     */
+    public boolean compareAndSwapInt(long offset, int expected, int value) {
+        return UNSAFE.compareAndSwapInt(null, address(offset, 4), expected, value);
+    }
+
+    /**
+     * Atomically sets a long if it has the expected value.
+     *
+     * @param offset   The offset in the region, aligned to 8 bytes.
+     * @param expected The expected value.
+     * @param value    The new value.
+     * @return Whether it was set.
+     */
+    public boolean compareAndSwapLong(long offset, long expected, long value) {
+        return UNSAFE.compareAndSwapLong(null, address(offset, 8), expected, value);
+    }
+
+    /**
+     * Atomically adds to an int.
+     *
+     * @param offset The offset in the region, aligned to 4 bytes.
+     * @param delta  The amount to add.
+     * @return The value before adding.
+     */
+    public int getAndAddInt(long offset, int delta) {
+        return UNSAFE.getAndAddInt(null, address(offset, 4), delta);
+    }
+
+    /**
+     * Atomically adds to a long.
+     *
+     * @param offset The offset in the region, aligned to 8 bytes.
+     * @param delta  The amount to add.
+     * @return The value before adding.
+     */
+    public long getAndAddLong(long offset, long delta) {
+        return UNSAFE.getAndAddLong(null, address(offset, 8), delta);
+    }
+
+    /**
+     * Copies bytes from the region to a byte[]
+     *
+     * @param offset The offset in the region.
+     * @param bytes  The array.
+     * @param start  The index in the array.
+     * @param len    The number of bytes.
+     */
+    public void getBytes(long offset, byte[] bytes, int start, int len) {
+        if (start < 0 || len < 0 || start > bytes.length - len)
+            throw new IndexOutOfBoundsException("start: " + start + " len: " + len + " bytes.length: " + bytes.length);
+        UNSAFE.copyMemory(null, address(offset, len), bytes, UNSAFE.arrayBaseOffset(byte[].class) + (long) start, len);
+    }
+
+    /**
+     * Copies bytes from a byte[] to the region.
+     *
+     * @param offset The offset in the region.
+     * @param bytes  The array.
+     * @param start  The index in the array.
+     * @param len    The number of bytes.
+     */
+    public void putBytes(long offset, byte[] bytes, int start, int len) {
+        if (start < 0 || len < 0 || start > bytes.length - len)
+            throw new IndexOutOfBoundsException("start: " + start + " len: " + len + " bytes.length: " + bytes.length);
+        UNSAFE.copyMemory(bytes, UNSAFE.arrayBaseOffset(byte[].class) + (long) start, null, address(offset, len), len);
+    }
+
+    /**
+     * Grows the region without moving it, extending a writable file first if needed, see mremap(2).
+     * The pages already mapped are kept, so they are not faulted in again. This is Linux only.
+     *
+     * @param newLength The length required.
+     * @return true if it was grown, false if the addresses after it are in use.
+     * @throws PosixRuntimeException If the file can't be extended, or mremap fails for another reason.
+     */
+    public boolean growInPlace(long newLength) {
+        if (newLength <= length)
+            return newLength == length && length > 0;
+        extendFile(newLength);
+        try {
+            posix.mremap(address, length, newLength, 0, 0);
+        } catch (PosixRuntimeException e) {
+            // there is another mapping in the way
+            if (e.errno() == Errno.ENOMEM.intValue())
+                return false;
+            throw e;
+        }
+        length = newLength;
+        return true;
+    }
+
+    /**
+     * Resizes the region in place if possible, otherwise moves it, extending a writable file first if needed, see mremap(2).
+     * If it moves, any pointer into the old address is invalid. This is Linux only.
+     *
+     * @param newLength The length required.
+     * @return The address of the region, which changes if it was moved.
+     * @throws PosixRuntimeException If the file can't be extended, or mremap fails.
+     */
+    public long resize(long newLength) {
+        if (length == 0)
+            throw new IllegalStateException("closed");
+        if (newLength <= 0)
+            throw new IllegalArgumentException("newLength: " + newLength);
+        extendFile(newLength);
+        address = posix.mremap(address, length, newLength, MRemapFlag.MREMAP_MAYMOVE.value(), 0);
+        length = newLength;
+        return address;
+    }
+
+    private void extendFile(long newLength) {
+        if (length == 0)
+            throw new IllegalStateException("closed");
+        if (reservation != null)
+            throw new UnsupportedOperationException("Commit more of the reservation instead of resizing " + this);
+        if (fd < 0 || (prot & MMapProt.PROT_WRITE.value()) == 0)
+            return;
+        final FileStat stat = new FileStat();
+        final long required = offset + newLength;
+        if ((posix.fstat(fd, stat) != 0 || stat.size() < required) && posix.ftruncate(fd, required) != 0)
+            throw new PosixRuntimeException("Unable to extend fd " + fd + " " + posix.lastErrorStr(), posix.lastError());
+    }
+
+    /**
+     * Checks a range is within the region and returns the page aligned address at or before its start.
+     */
+    private long pageAddress(long offset, long len) {
+        if (offset < 0 || len < 0 || offset > length - len)
+            throw new IndexOutOfBoundsException("offset: " + offset + " length: " + len + " region length: " + length);
+        return (address + offset) & -PAGE_SIZE;
+    }
+
+    /**
+     * Synchronizes a range of the region with the file. The range is extended to whole pages.
+     *
+     * @param offset The offset of the start of the range.
+     * @param len    The length of the range.
+     * @param flags  The flags e.g. MS_ASYNC
+     * @return 0 on success, -1 on error.
+     */
+    public int msync(long offset, long len, MSyncFlag flags) {
+        final long start = pageAddress(offset, len);
+        return posix.msync(start, address + offset + len - start, flags.value());
+    }
+
+    /**
+     * Synchronizes the whole region with the file.
+     *
+     * @param flags The flags e.g. MS_SYNC
+     * @return 0 on success, -1 on error.
+     */
+    public int msync(MSyncFlag flags) {
+        return msync(0, length, flags);
+    }
+
+    /**
+     * Advises the kernel how a range of the region will be used. The range is extended to whole pages.
+     *
+     * @param offset The offset of the start of the range.
+     * @param len    The length of the range.
+     * @param advice The advice e.g. MADV_SEQUENTIAL
+     * @return 0 on success, -1 on error.
+     */
+    public int madvise(long offset, long len, MAdviseFlag advice) {
+        return madvise(offset, len, advice.value());
+    }
+
+    /**
+     * Advises the kernel how a range of the region will be used. The range is extended to whole pages.
+     *
+     * @param offset The offset of the start of the range.
+     * @param len    The length of the range.
+     * @param advice The advice as a value for the platform.
+     * @return 0 on success, -1 on error.
+     */
+    public int madvise(long offset, long len, int advice) {
+        final long start = pageAddress(offset, len);
+        return posix.madvise(start, address + offset + len - start, advice);
+    }
+
+    /**
+     * Locks a range of the region in memory. The range is extended to whole pages.
+     *
+     * @param offset      The offset of the start of the range.
+     * @param len         The length of the range.
+     * @param lockOnFault Whether to lock pages as they are touched, rather than loading them all now.
+     * @return true if locked, false if there is not enough lockable memory.
+     */
+    public boolean mlock(long offset, long len, boolean lockOnFault) {
+        final long start = pageAddress(offset, len);
+        return posix.mlock2(start, address + offset + len - start, lockOnFault);
+    }
+
+    /**
+     * Unmaps the region, and closes the file descriptor if it was opened by {@link #mapFile(String, long, boolean)}.
+     * Calling this again has no effect.
+     */
+    @Override
+    public void close() {
+        final long len = length;
+        if (len == 0)
+            return;
+        length = 0;
+        if (reservation != null)
+            reservation.release(this, address, len);
+        else
+            posix.munmap(address, len);
+        if (ownsFd)
+            posix.close(fd);
+    }
+
+    @Override
+    public String toString() {
+        return "MappedRegion{address=0x" + Long.toHexString(address) +
+                ", length=" + length +
+                ", fd=" + fd +
+                ", offset=" + offset +
+                ", prot=" + prot +
+                '}';
+    }
+}
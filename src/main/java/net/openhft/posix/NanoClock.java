@@ -0,0 +1,36 @@
+package net.openhft.posix;
+
+import net.openhft.posix.internal.NanoClockHolder;
+
+/**
+ * A clock which reads a single {@link ClockId} as cheaply as the platform allows.
+ * <p>
+ * On Linux this calls the kernel's vDSO clock_gettime directly rather than going through libc and the usual
+ * errno handling, as a critical FFM downcall on Java 22+ with native access enabled, or via JNR otherwise.
+ * On other platforms it falls back to {@link PosixAPI#clock_gettime(ClockId)}.
+ */
+public interface NanoClock {
+
+    /**
+     * Returns the fastest available clock for a clock ID. Clocks are cached, so this can be called repeatedly.
+     *
+     * @param clockId The clock ID to read.
+     * @return A NanoClock for that clock ID.
+     */
+    static NanoClock forClock(ClockId clockId) {
+        return NanoClockHolder.forClock(clockId);
+    }
+
+    /**
+     * @return The clock ID this clock reads.
+     */
+    ClockId clockId();
+
+    /**
+     * Reads the clock.
+     *
+     * @return The time of this clock in nanoseconds.
+     * @throws IllegalArgumentException If the clock could not be read.
+     */
+    long nanoTime() throws IllegalArgumentException;
+}
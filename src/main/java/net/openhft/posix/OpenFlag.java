@@ -1,45 +1,79 @@
 package net.openhft.posix;
 
+import net.openhft.posix.internal.core.OS;
+import net.openhft.posix.internal.raw.Syscall;
+
 /**
  * This enum represents the different flags for opening files (open).
  * It defines the flags used to control the behavior of file opening operations.
+ * <p>
+ * The values differ by OS, and on Linux a few differ on arm and aarch64. Where a flag is not available on this OS its value is 0,
+ * see {@link #isSupported()}. Flags can be combined with {@link #or(OpenFlag)} and {@link #or(int)}
  */
 public enum OpenFlag {
     // Open for reading only
-    O_RDONLY(0x0000),
+    O_RDONLY(0x0000, 0x0000),
 
     // Open for writing only
-    O_WRONLY(0x0001),
+    O_WRONLY(0x0001, 0x0001),
 
     // Open for reading and writing
-    O_RDWR(0x0002),
+    O_RDWR(0x0002, 0x0002),
 
     // No delay (non-blocking mode)
-    O_NONBLOCK(0x0004),
+    O_NONBLOCK(0x0800, 0x0004),
 
     // Set append mode
-    O_APPEND(0x0008),
+    O_APPEND(0x0400, 0x0008),
 
-    // Open with shared file lock
-    O_SHLOCK(0x0010),
+    // Open with shared file lock, macOS only
+    O_SHLOCK(0, 0x0010),
 
-    // Open with exclusive file lock
-    O_EXLOCK(0x0020),
+    // Open with exclusive file lock, macOS only
+    O_EXLOCK(0, 0x0020),
 
     // Signal pgrp when data is ready (asynchronous mode)
-    O_ASYNC(0x0040),
+    O_ASYNC(0x2000, 0x0040),
+
+    // Synchronous writes of data and metadata, the same as O_SYNC
+    O_FSYNC(0x101000, 0x0080),
 
-    // Synchronous writes
-    O_FSYNC(0x0080),
+    // Synchronous writes of data and metadata
+    O_SYNC(0x101000, 0x0080),
+
+    // Synchronous writes of data, and only the metadata needed to read it
+    O_DSYNC(0x1000, 0x400000),
 
     // Create if non-existent
-    O_CREAT(0x0200),
+    O_CREAT(0x0040, 0x0200),
 
     // Truncate to zero length
-    O_TRUNC(0x0400),
+    O_TRUNC(0x0200, 0x0400),
 
     // Error if already exists
-    O_EXCL(0x0800);
+    O_EXCL(0x0080, 0x0800),
+
+    // Don't make a terminal the controlling terminal
+    O_NOCTTY(0x0100, 0x20000),
+
+    // Fail unless the path is a directory
+    O_DIRECTORY(0x10000, 0x4000, 0x100000),
+
+    // Fail if the last part of the path is a symbolic link
+    O_NOFOLLOW(0x20000, 0x8000, 0x0100),
+
+    // Close the file descriptor on exec
+    O_CLOEXEC(0x80000, 0x1000000),
+
+    // Transfer directly to and from user buffers, bypassing the page cache. Buffers, offsets and lengths must be aligned
+    // to the logical block size, see DirectFileWriter. Linux only, on macOS use fcntl F_NOCACHE
+    O_DIRECT(0x4000, 0x10000, 0),
+
+    // Don't update the access time on read, Linux only
+    O_NOATIME(0x40000, 0),
+
+    // Create an unnamed file in the directory given, which can be linked later. Linux 3.11+ only
+    O_TMPFILE(0x400000 | 0x10000, 0x400000 | 0x4000, 0);
 
     // The integer value representing the open flag
     final int value;
@@ -47,10 +81,24 @@ public enum OpenFlag {
     /**
      * Constructor for OpenFlag.
      *
-     * @param value The integer value representing the open flag
+     * @param linux The integer value representing the open flag on Linux
+     * @param macOS The integer value on macOS, or 0 if not available
      */
-    OpenFlag(int value) {
-        this.value = value;
+    OpenFlag(int linux, int macOS) {
+        this(linux, linux, macOS);
+    }
+
+    /**
+     * Constructor for OpenFlag, for a flag with a different value on arm.
+     *
+     * @param linux    The integer value on Linux
+     * @param linuxArm The integer value on Linux for arm and aarch64
+     * @param macOS    The integer value on macOS, or 0 if not available
+     */
+    OpenFlag(int linux, int linuxArm, int macOS) {
+        this.value = OS.isMacOSX() ? macOS
+                : Syscall.Arch.CURRENT == Syscall.Arch.ARM || Syscall.Arch.CURRENT == Syscall.Arch.AARCH64 ? linuxArm
+                : linux;
     }
 
     /**
@@ -62,4 +110,27 @@ public enum OpenFlag {
     public int value() {
         return value;
     }
+
+    /**
+     * @return Whether this flag is available on this OS, if not its value is 0 and it has no effect.
+     */
+    public boolean isSupported() {
+        return value != 0 || this == O_RDONLY;
+    }
+
+    /**
+     * @param flag Another flag.
+     * @return The value of both flags.
+     */
+    public int or(OpenFlag flag) {
+        return value | flag.value;
+    }
+
+    /**
+     * @param flags The value of other flags.
+     * @return The value of these flags and this one.
+     */
+    public int or(int flags) {
+        return value | flags;
+    }
 }
@@ -1,7 +1,9 @@
 package net.openhft.posix;
 
 import net.openhft.posix.internal.PosixAPIHolder;
+import net.openhft.posix.internal.ThreadScratch;
 import net.openhft.posix.internal.UnsafeMemory;
+import net.openhft.posix.internal.raw.Syscall;
 
 import java.io.BufferedReader;
 import java.io.IOException;
@@ -16,13 +18,26 @@ import static net.openhft.posix.internal.UnsafeMemory.UNSAFE;
 public interface PosixAPI {
 
     /**
-     * @return The fastest available PosixAPI implementation.
+     * Returns the PosixAPI implementation to use. By default this is the preferred implementation for the platform,
+     * or with <code>-Dposix.api=fastest</code> the fastest available as measured at startup.
+     * An implementation can be pinned with <code>-Dposix.api=ffm</code>, <code>jnr</code>, <code>jna</code>, <code>raw</code> or <code>noop</code>
+     *
+     * @return The PosixAPI implementation.
      */
     static PosixAPI posix() {
         PosixAPIHolder.loadPosixApi();
         return PosixAPIHolder.POSIX_API;
     }
 
+    /**
+     * Describes the implementation returned by {@link #posix()}, measuring its cost per call if that hasn't been done already.
+     *
+     * @return Which implementation is in use, why, and its cost per call.
+     */
+    static PosixBackend posixBackend() {
+        return PosixAPIHolder.posixBackend();
+    }
+
     /**
      * Sets the PosixAPI to a no-op implementation.
      */
@@ -127,6 +142,21 @@ public interface PosixAPI {
         return mmap(addr, length, prot.value(), flags.value(), fd, offset);
     }
 
+    /**
+     * Maps files or devices into memory.
+     *
+     * @param addr   The address.
+     * @param length The length.
+     * @param prot   The desired memory protection.
+     * @param flags  The flags combined e.g. <code>MMapFlag.SHARED.or(MMapFlag.POPULATE)</code>
+     * @param fd     The file descriptor.
+     * @param offset The offset.
+     * @return The starting address of the mapped area.
+     */
+    default long mmap(long addr, long length, MMapProt prot, int flags, int fd, long offset) {
+        return mmap(addr, length, prot.value(), flags, fd, offset);
+    }
+
     /**
      * Maps files or devices into memory.
      *
@@ -202,6 +232,147 @@ public interface PosixAPI {
      */
     int msync(long address, long length, int mode);
 
+    /**
+     * Flushes the data and metadata of a file to the storage device, see fsync(2).
+     *
+     * @param fd The file descriptor.
+     * @return 0 on success, -1 on error.
+     */
+    default int fsync(int fd) {
+        return (int) syscall(Syscall.FSYNC.number(), fd, 0, 0, 0, 0, 0);
+    }
+
+    /**
+     * Flushes the data of a file to the storage device, and only the metadata needed to read it back e.g. its size, see fdatasync(2).
+     *
+     * @param fd The file descriptor.
+     * @return 0 on success, -1 on error.
+     */
+    default int fdatasync(int fd) {
+        return (int) syscall(Syscall.FDATASYNC.number(), fd, 0, 0, 0, 0, 0);
+    }
+
+    /**
+     * Starts and/or waits for writeback of a range of a file, see sync_file_range(2). This is Linux only.
+     *
+     * @param fd     The file descriptor.
+     * @param offset The offset of the start of the range.
+     * @param nbytes The length of the range, or 0 for up to the end of the file.
+     * @param flags  The flags.
+     * @return 0 on success, -1 on error.
+     */
+    default int sync_file_range(int fd, long offset, long nbytes, SyncFileRangeFlag... flags) {
+        int value = 0;
+        for (SyncFileRangeFlag flag : flags)
+            value |= flag.value();
+        return sync_file_range(fd, offset, nbytes, value);
+    }
+
+    /**
+     * Starts and/or waits for writeback of a range of a file, see sync_file_range(2). This is Linux only.
+     *
+     * @param fd     The file descriptor.
+     * @param offset The offset of the start of the range.
+     * @param nbytes The length of the range, or 0 for up to the end of the file.
+     * @param flags  The flags e.g. SYNC_FILE_RANGE_WRITE (2)
+     * @return 0 on success, -1 on error.
+     */
+    default int sync_file_range(int fd, long offset, long nbytes, int flags) {
+        // 64-bit only, RawPosixAPI passes the offsets in pairs of registers on 32-bit
+        return (int) syscall(Syscall.SYNC_FILE_RANGE.number64(), fd, offset, nbytes, flags, 0, 0);
+    }
+
+    /**
+     * Gives advice about how a range of a file will be read, see posix_fadvise(2). This is Linux only.
+     *
+     * @param fd     The file descriptor.
+     * @param offset The offset of the start of the range.
+     * @param len    The length of the range, or 0 for up to the end of the file.
+     * @param advice The advice.
+     * @return 0 on success, -1 on error.
+     */
+    default int posix_fadvise(int fd, long offset, long len, FAdviseFlag advice) {
+        return posix_fadvise(fd, offset, len, advice.value());
+    }
+
+    /**
+     * Gives advice about how a range of a file will be read, see posix_fadvise(2). This is Linux only.
+     * <p>
+     * Unlike the C library function, this returns -1 and sets errno on error, as other calls do.
+     *
+     * @param fd     The file descriptor.
+     * @param offset The offset of the start of the range.
+     * @param len    The length of the range, or 0 for up to the end of the file.
+     * @param advice The advice e.g. POSIX_FADV_WILLNEED (3)
+     * @return 0 on success, -1 on error.
+     */
+    default int posix_fadvise(int fd, long offset, long len, int advice) {
+        // 64-bit only, RawPosixAPI passes the offsets in pairs of registers on 32-bit
+        return (int) syscall(Syscall.FADVISE64.number64(), fd, offset, len, advice, 0, 0);
+    }
+
+    /**
+     * Reads a range of a file into the page cache, see readahead(2). This is Linux only.
+     * <p>
+     * This blocks until the reads have been issued, for advice which doesn't block use {@link #posix_fadvise(int, long, long, FAdviseFlag)}
+     * with POSIX_FADV_WILLNEED
+     *
+     * @param fd     The file descriptor.
+     * @param offset The offset of the start of the range.
+     * @param count  The number of bytes.
+     * @return 0 on success, -1 on error.
+     */
+    default int readahead(int fd, long offset, long count) {
+        // 64-bit only, RawPosixAPI passes the offset in a pair of registers on 32-bit
+        return (int) syscall(Syscall.READAHEAD.number64(), fd, offset, count, 0, 0, 0);
+    }
+
+    /**
+     * Changes the protection of a range of mappings, see mprotect(2).
+     *
+     * @param addr   The start of the range, page aligned.
+     * @param length The length of the range.
+     * @param prot   The protection required.
+     * @return 0 on success, -1 on error.
+     */
+    default int mprotect(long addr, long length, MMapProt prot) {
+        return mprotect(addr, length, prot.value());
+    }
+
+    /**
+     * Changes the protection of a range of mappings, see mprotect(2).
+     *
+     * @param addr   The start of the range, page aligned.
+     * @param length The length of the range.
+     * @param prot   The protection flags e.g. PROT_READ (1) | PROT_WRITE (2), or PROT_NONE (0)
+     * @return 0 on success, -1 on error.
+     */
+    default int mprotect(long addr, long length, int prot) {
+        return (int) syscall(Syscall.MPROTECT.number(), addr, length, prot, 0, 0, 0);
+    }
+
+    /**
+     * Resizes a mapping, and optionally moves it, see mremap(2). This is Linux only.
+     * The pages are kept, so growing doesn't fault in again what was mapped before.
+     *
+     * @param oldAddress The start of the mapping, page aligned.
+     * @param oldSize    The current length.
+     * @param newSize    The length required.
+     * @param flags      The flags e.g. MREMAP_MAYMOVE (1), or 0 to resize in place.
+     * @param newAddress The address to move to with MREMAP_FIXED, otherwise 0
+     * @return The address of the mapping, which is oldAddress unless it was moved.
+     * @throws PosixRuntimeException         If it can't be resized e.g. ENOMEM if it can't grow in place.
+     * @throws UnsupportedOperationException If not on Linux.
+     */
+    default long mremap(long oldAddress, long oldSize, long newSize, int flags, long newAddress) {
+        if (!Syscall.MREMAP.isAvailable())
+            throw new UnsupportedOperationException("mremap is Linux only");
+        final long address = syscall(Syscall.MREMAP.number(), oldAddress, oldSize, newSize, flags, newAddress, 0);
+        if (address == -1)
+            throw PosixRuntimeException.of(lastError());
+        return address;
+    }
+
     /**
      * Unmaps files or devices from memory.
      *
@@ -253,14 +424,152 @@ public interface PosixAPI {
      */
     long write(int fd, long src, long len);
 
+    /**
+     * Reads from a position in a file without using or changing the file offset, so one file descriptor can be shared
+     * between threads, see pread(2).
+     *
+     * @param fd     The file descriptor.
+     * @param dst    The destination address.
+     * @param len    The number of bytes to read.
+     * @param offset The position in the file.
+     * @return The number of bytes read, 0 at the end of the file, or -1 on error.
+     */
+    default long pread(int fd, long dst, long len, long offset) {
+        // 64-bit only, RawPosixAPI passes the offset in a pair of registers on 32-bit
+        return syscall(Syscall.PREAD64.number64(), fd, dst, len, offset, 0, 0);
+    }
+
+    /**
+     * Writes to a position in a file without using or changing the file offset, see pwrite(2).
+     *
+     * @param fd     The file descriptor.
+     * @param src    The source address.
+     * @param len    The number of bytes to write.
+     * @param offset The position in the file.
+     * @return The number of bytes written, or -1 on error.
+     */
+    default long pwrite(int fd, long src, long len, long offset) {
+        return syscall(Syscall.PWRITE64.number64(), fd, src, len, offset, 0, 0);
+    }
+
+    /**
+     * Reads from a position in a file into a number of buffers in one call, see preadv(2).
+     *
+     * @param fd     The file descriptor.
+     * @param iov    The address of an array of struct iovec, see {@link IOVec}
+     * @param iovcnt The number of entries, up to IOV_MAX (1024)
+     * @param offset The position in the file.
+     * @return The number of bytes read, or -1 on error.
+     */
+    default long preadv(int fd, long iov, int iovcnt, long offset) {
+        // the kernel takes the offset as low and high words, the high word is ignored on 64-bit
+        return syscall(Syscall.PREADV.number64(), fd, iov, iovcnt, offset, 0, 0);
+    }
+
+    /**
+     * Writes to a position in a file from a number of buffers in one call, see pwritev(2).
+     *
+     * @param fd     The file descriptor.
+     * @param iov    The address of an array of struct iovec, see {@link IOVec}
+     * @param iovcnt The number of entries, up to IOV_MAX (1024)
+     * @param offset The position in the file.
+     * @return The number of bytes written, or -1 on error.
+     */
+    default long pwritev(int fd, long iov, int iovcnt, long offset) {
+        return syscall(Syscall.PWRITEV.number64(), fd, iov, iovcnt, offset, 0, 0);
+    }
+
+    /**
+     * Reads as preadv with per call flags, see preadv2(2). This is Linux only.
+     *
+     * @param fd     The file descriptor.
+     * @param iov    The address of an array of struct iovec, see {@link IOVec}
+     * @param iovcnt The number of entries, up to IOV_MAX (1024)
+     * @param offset The position in the file, or -1 to use and update the file offset.
+     * @param flags  The flags e.g. RWF_NOWAIT (8), see {@link RwfFlag}
+     * @return The number of bytes read, or -1 on error e.g. EAGAIN for RWF_NOWAIT if the data is not cached.
+     */
+    default long preadv2(int fd, long iov, int iovcnt, long offset, int flags) {
+        return syscall(Syscall.PREADV2.number64(), fd, iov, iovcnt, offset, 0, flags);
+    }
+
+    /**
+     * Writes as pwritev with per call flags, see pwritev2(2). This is Linux only.
+     *
+     * @param fd     The file descriptor.
+     * @param iov    The address of an array of struct iovec, see {@link IOVec}
+     * @param iovcnt The number of entries, up to IOV_MAX (1024)
+     * @param offset The position in the file, or -1 to use and update the file offset.
+     * @param flags  The flags e.g. RWF_DSYNC (2), see {@link RwfFlag}
+     * @return The number of bytes written, or -1 on error.
+     */
+    default long pwritev2(int fd, long iov, int iovcnt, long offset, int flags) {
+        return syscall(Syscall.PWRITEV2.number64(), fd, iov, iovcnt, offset, 0, flags);
+    }
+
+    /**
+     * Reads from a position in a file into the buffers of an IOVec, see preadv(2).
+     *
+     * @param fd     The file descriptor.
+     * @param iov    The buffers.
+     * @param offset The position in the file.
+     * @return The number of bytes read, or -1 on error.
+     */
+    default long preadv(int fd, IOVec iov, long offset) {
+        return preadv(fd, iov.address(), iov.count(), offset);
+    }
+
+    /**
+     * Writes to a position in a file from the buffers of an IOVec, see pwritev(2).
+     *
+     * @param fd     The file descriptor.
+     * @param iov    The buffers.
+     * @param offset The position in the file.
+     * @return The number of bytes written, or -1 on error.
+     */
+    default long pwritev(int fd, IOVec iov, long offset) {
+        return pwritev(fd, iov.address(), iov.count(), offset);
+    }
+
+    /**
+     * Reads from a position in a file into the buffers of an IOVec with per call flags, see preadv2(2).
+     *
+     * @param fd     The file descriptor.
+     * @param iov    The buffers.
+     * @param offset The position in the file, or -1 to use and update the file offset.
+     * @param flags  The flags e.g. RWF_NOWAIT (8)
+     * @return The number of bytes read, or -1 on error.
+     */
+    default long preadv2(int fd, IOVec iov, long offset, int flags) {
+        return preadv2(fd, iov.address(), iov.count(), offset, flags);
+    }
+
+    /**
+     * Writes to a position in a file from the buffers of an IOVec with per call flags, see pwritev2(2).
+     *
+     * @param fd     The file descriptor.
+     * @param iov    The buffers.
+     * @param offset The position in the file, or -1 to use and update the file offset.
+     * @param flags  The flags e.g. RWF_DSYNC (2)
+     * @return The number of bytes written, or -1 on error.
+     */
+    default long pwritev2(int fd, IOVec iov, long offset, int flags) {
+        return pwritev2(fd, iov.address(), iov.count(), offset, flags);
+    }
+
     /**
      * Calculates disk usage for a given filename.
+     * For a file this uses {@link #stat(CharSequence, FileStat)}, for a directory, or if stat isn't supported, the du command.
      *
      * @param filename The filename to calculate disk usage for.
-     * @return The disk usage in bytes.
+     * @return The disk usage in KiB.
      * @throws IOException If an I/O error occurs.
      */
     default long du(String filename) throws IOException {
+        final FileStat stat = new FileStat();
+        if (stat(filename, stat) == 0 && !stat.isDirectory())
+            return (stat.blocks() + 1) / 2;
+
         ProcessBuilder pb = new ProcessBuilder("du", filename);
         pb.redirectErrorStream(true);
         final Process process = pb.start();
@@ -270,6 +579,61 @@ public interface PosixAPI {
         }
     }
 
+    /**
+     * Gets the status of a file, see statx(2).
+     *
+     * @param dirfd The directory a relative path is relative to, e.g. AT_FDCWD (-100)
+     * @param path  The address of the NUL terminated path.
+     * @param flags The flags e.g. AT_EMPTY_PATH (0x1000) to stat dirfd itself.
+     * @param mask  The fields wanted e.g. STATX_BASIC_STATS (0x7ff)
+     * @param statx The address of a struct statx of 256 bytes.
+     * @return 0 on success, -1 on error or if not supported.
+     */
+    default int statx(int dirfd, long path, int flags, int mask, long statx) {
+        return (int) syscall(Syscall.STATX.number(), dirfd, path, flags, mask, statx, 0);
+    }
+
+    /**
+     * Gets the status of a file by name.
+     *
+     * @param path The path of the file.
+     * @param stat The FileStat to populate.
+     * @return 0 on success, -1 on error or if not supported.
+     */
+    default int stat(CharSequence path, FileStat stat) {
+        final long statx = ThreadScratch.address();
+        // short paths are copied after the struct statx rather than allocating
+        final long scratchPath = statx + FileStat.STATX_SIZE;
+        final boolean inScratch = UnsafeMemory.putAscii(scratchPath, path, ThreadScratch.SIZE - FileStat.STATX_SIZE);
+        final long cpath = inScratch ? scratchPath : UnsafeMemory.toCString(path);
+        try {
+            if (statx(FileStat.AT_FDCWD, cpath, 0, FileStat.STATX_BASIC_STATS, statx) != 0)
+                return -1;
+            stat.readStatx(statx);
+            return 0;
+        } finally {
+            if (!inScratch)
+                UNSAFE.freeMemory(cpath);
+        }
+    }
+
+    /**
+     * Gets the status of an open file.
+     *
+     * @param fd   The file descriptor.
+     * @param stat The FileStat to populate.
+     * @return 0 on success, -1 on error or if not supported.
+     */
+    default int fstat(int fd, FileStat stat) {
+        final long statx = ThreadScratch.address();
+        final long emptyPath = statx + FileStat.STATX_SIZE;
+        UNSAFE.putByte(emptyPath, (byte) 0);
+        if (statx(fd, emptyPath, FileStat.AT_EMPTY_PATH, FileStat.STATX_BASIC_STATS, statx) != 0)
+            return -1;
+        stat.readStatx(statx);
+        return 0;
+    }
+
     /**
      * Gets the current time of day.
      *
@@ -298,52 +662,55 @@ public interface PosixAPI {
      */
     int sched_getaffinity(int pid, int cpusetsize, long mask);
 
+    /**
+     * Sets the CPU affinity for a process.
+     *
+     * @param pid  The process or thread ID, 0 for the calling thread.
+     * @param cpus The CPUs it may run on.
+     * @return 0 on success, -1 on error.
+     */
+    default int sched_setaffinity(int pid, CpuSet cpus) {
+        return sched_setaffinity(pid, cpus.sizeInBytes(), cpus.address());
+    }
+
+    /**
+     * Gets the CPU affinity for a process.
+     *
+     * @param pid  The process or thread ID, 0 for the calling thread.
+     * @param cpus The CpuSet to populate.
+     * @return 0 on success, -1 on error.
+     */
+    default int sched_getaffinity(int pid, CpuSet cpus) {
+        return sched_getaffinity(pid, cpus.sizeInBytes(), cpus.address());
+    }
+
     /**
      * Returns a summary of the CPU affinity for a given process ID.
+     * This allocates a CpuSet, see {@link #sched_getaffinity_summary(int, CpuSet)} to reuse one.
      *
      * @param pid The process ID.
-     * @return A summary of the CPU affinity as a string.
+     * @return A summary of the CPU affinity as a string e.g. 0-3,8-8
      */
     default String sched_getaffinity_summary(int pid) {
-        final int nprocs_conf = get_nprocs_conf();
-        final int size = Math.max(8, (nprocs_conf + 7) / 64 * 8);
-        long ptr = malloc(size);
-        boolean set = false;
-        int start = 0;
-        StringBuilder sb = new StringBuilder();
-        try {
-            final int ret = sched_getaffinity(pid, size, ptr);
-            if (ret != 0)
-                return "na: " + lastError();
-            for (int i = 0; i < nprocs_conf; i++) {
-                final int b = UNSAFE.getInt(ptr + i / 32);
-                if (((b >> i) & 1) != 0) {
-                    if (set) {
-                        // nothing.
-                    } else {
-                        start = i;
-                        set = true;
-                    }
-                } else {
-                    if (set) {
-                        if (sb.length() > 0)
-                            sb.append(',');
-                        sb.append(start).append('-').append(i - 1);
-                        set = false;
-                    }
-                }
-            }
-            if (set) {
-                if (sb.length() > 0)
-                    sb.append(',');
-                sb.append(start).append('-').append(nprocs_conf - 1);
-            }
-            return sb.toString();
-        } finally {
-            free(ptr);
+        try (CpuSet cpus = new CpuSet(get_nprocs_conf())) {
+            return sched_getaffinity_summary(pid, cpus);
         }
     }
 
+    /**
+     * Returns a summary of the CPU affinity for a given process ID.
+     *
+     * @param pid  The process ID.
+     * @param cpus The CpuSet to populate.
+     * @return A summary of the CPU affinity as a string e.g. 0-3,8-8
+     */
+    default String sched_getaffinity_summary(int pid, CpuSet cpus) {
+        final int ret = sched_getaffinity(pid, cpus);
+        if (ret != 0)
+            return "na: " + lastError();
+        return cpus.toString();
+    }
+
     /**
      * Returns the last error code.
      *
@@ -353,53 +720,59 @@ public interface PosixAPI {
 
     /**
      * Sets the CPU affinity for a process to a specific CPU.
+     * This allocates a CpuSet, see {@link #sched_setaffinity_as(int, int, CpuSet)} to reuse one.
      *
      * @param pid The process ID.
      * @param cpu The CPU to set affinity to.
      * @return 0 on success, -1 on error.
      */
     default int sched_setaffinity_as(int pid, int cpu) {
-        final int nprocs_conf = get_nprocs_conf();
-        final int size = Math.max(8, (nprocs_conf + 7) / 64 * 8);
-        long ptr = malloc(size);
-        try {
-            for (int i = 0; i < size; i += 4)
-                UNSAFE.putInt(ptr + i, 0);
-
-            UNSAFE.putByte(ptr + cpu / 8,
-                    (byte) (1 << (cpu & 7)));
-            return sched_setaffinity(pid, size, ptr);
-        } finally {
-            free(ptr);
+        try (CpuSet cpus = new CpuSet(get_nprocs_conf())) {
+            return sched_setaffinity_as(pid, cpu, cpus);
         }
     }
 
+    /**
+     * Sets the CPU affinity for a process to a specific CPU.
+     *
+     * @param pid  The process ID.
+     * @param cpu  The CPU to set affinity to.
+     * @param cpus The CpuSet to use, which is cleared first.
+     * @return 0 on success, -1 on error.
+     */
+    default int sched_setaffinity_as(int pid, int cpu, CpuSet cpus) {
+        return sched_setaffinity(pid, cpus.clearAll().set(cpu));
+    }
+
     /**
      * Sets the CPU affinity for a process to a range of CPUs.
+     * This allocates a CpuSet, see {@link #sched_setaffinity_range(int, int, int, CpuSet)} to reuse one.
      *
      * @param pid  The process ID.
      * @param from The starting CPU.
-     * @param to   The ending CPU.
+     * @param to   The ending CPU, inclusive, limited to the CPUs configured.
      * @return 0 on success, -1 on error.
      */
     default int sched_setaffinity_range(int pid, int from, int to) {
         final int nprocs_conf = get_nprocs_conf();
-        final int size = Math.max(8, (nprocs_conf + 7) / 64 * 8);
-        long ptr = malloc(size);
-        try {
-            for (int i = 0; i < size; i += 4)
-                UNSAFE.putInt(ptr + i, 0);
-
-            for (int i = from; i <= to; i++) {
-                UNSAFE.putInt(ptr + i / 32,
-                        UNSAFE.getInt(ptr + i / 32) | (1 << i));
-            }
-            return sched_setaffinity(pid, size, ptr);
-        } finally {
-            free(ptr);
+        try (CpuSet cpus = new CpuSet(nprocs_conf)) {
+            return sched_setaffinity_range(pid, from, Math.min(to, nprocs_conf - 1), cpus);
         }
     }
 
+    /**
+     * Sets the CPU affinity for a process to a range of CPUs.
+     *
+     * @param pid  The process ID.
+     * @param from The starting CPU.
+     * @param to   The ending CPU, inclusive, limited to the CPUs the set can hold.
+     * @param cpus The CpuSet to use, which is cleared first.
+     * @return 0 on success, -1 on error.
+     */
+    default int sched_setaffinity_range(int pid, int from, int to, CpuSet cpus) {
+        return sched_setaffinity(pid, cpus.clearAll().setRange(from, Math.min(to, cpus.maxCpus() - 1)));
+    }
+
     /**
      * Returns the current wall clock time in microseconds.
      * Note that clock_gettime() is more accurate if available.
@@ -407,16 +780,10 @@ public interface PosixAPI {
      * @return The wall clock time in microseconds.
      */
     default long gettimeofday() {
-        long ptr = malloc(16);
-        try {
-            if (gettimeofday(ptr) != 0)
-                return 0;
-            if (UnsafeMemory.IS32BIT)
-                return (UNSAFE.getInt(ptr) & 0xFFFFFFFFL) * 1_000_000L + UNSAFE.getInt(ptr + 4);
-            return UNSAFE.getLong(ptr) * 1_000_000 + UNSAFE.getInt(ptr + 8);
-        } finally {
-            free(ptr);
-        }
+        long ptr = ThreadScratch.address();
+        if (gettimeofday(ptr) != 0)
+            return 0;
+        return UnsafeMemory.timevalMicros(ptr);
     }
 
     /**
@@ -448,6 +815,16 @@ public interface PosixAPI {
      */
     long clock_gettime(int clockId) throws IllegalArgumentException;
 
+    /**
+     * Reads a clock into a caller supplied struct timespec, without allocating any memory.
+     * On 64-bit platforms tv_sec is the long at offset 0 and tv_nsec the long at offset 8.
+     *
+     * @param clockId  The clock ID.
+     * @param timespec The address of a struct timespec of at least 16 bytes.
+     * @return 0 on success, -1 on error.
+     */
+    int clock_gettime(int clockId, long timespec);
+
     /**
      * Allocates memory of a specified size.
      *
@@ -463,6 +840,18 @@ public interface PosixAPI {
      */
     void free(long ptr);
 
+    /**
+     * Allocates memory aligned to a power of 2, see posix_memalign(3) e.g. for O_DIRECT buffers. Free it with {@link #free(long)}
+     *
+     * @param memptr    The address of a word to store the address of the memory in.
+     * @param alignment The alignment, a power of 2 multiple of the word size.
+     * @param size      The size of the memory to allocate.
+     * @return 0 on success, or an error number e.g. ENOMEM, EINVAL, or ENOSYS (38) if this implementation has no C library to call.
+     */
+    default int posix_memalign(long memptr, long alignment, long size) {
+        return 38;
+    }
+
     /**
      * Returns the number of available processors.
      *
@@ -477,6 +866,15 @@ public interface PosixAPI {
      */
     int get_nprocs_conf();
 
+    /**
+     * Returns how the CPUs are laid out in packages, cores and caches, read once from /sys/devices/system/cpu
+     *
+     * @return The CPU topology, empty if not available on this platform.
+     */
+    default CpuTopology cpuTopology() {
+        return CpuTopology.current();
+    }
+
     /**
      * Returns the process ID.
      *
@@ -491,6 +889,205 @@ public interface PosixAPI {
      */
     int gettid();
 
+    /**
+     * Makes a system call by number, for calls the C library may not have a wrapper for.
+     * See {@link Syscall} for the numbers on this architecture.
+     *
+     * @param number The system call number, or -1 if not available on this architecture.
+     * @param arg1   The first argument, or 0 if not used.
+     * @param arg2   The second argument, or 0 if not used.
+     * @param arg3   The third argument, or 0 if not used.
+     * @param arg4   The fourth argument, or 0 if not used.
+     * @param arg5   The fifth argument, or 0 if not used.
+     * @param arg6   The sixth argument, or 0 if not used.
+     * @return The result of the system call, -1 on error, or -1 with errno set to ENOSYS if not supported.
+     */
+    long syscall(int number, long arg1, long arg2, long arg3, long arg4, long arg5, long arg6);
+
+    /**
+     * Issues a memory barrier on a set of threads, see membarrier(2).
+     *
+     * @param cmd   The command e.g. MEMBARRIER_CMD_QUERY (0), MEMBARRIER_CMD_PRIVATE_EXPEDITED (8)
+     * @param flags The flags, usually 0.
+     * @return For MEMBARRIER_CMD_QUERY, a bit mask of the supported commands, otherwise 0 on success, -1 on error.
+     */
+    default int membarrier(int cmd, int flags) {
+        return (int) syscall(Syscall.MEMBARRIER.number(), cmd, flags, 0, 0, 0, 0);
+    }
+
+    /**
+     * Returns the CPU the calling thread is running on, see getcpu(2).
+     * This can be stale as soon as it returns unless the thread is bound to one CPU.
+     *
+     * @return The CPU number, or -1 on error.
+     */
+    default int getcpu() {
+        final long ptr = ThreadScratch.address();
+        if (syscall(Syscall.GETCPU.number(), ptr, ptr + 4, 0, 0, 0, 0) != 0)
+            return -1;
+        return UNSAFE.getInt(ptr);
+    }
+
+    /**
+     * Creates an anonymous file in memory, see memfd_create(2).
+     *
+     * @param name  The name shown in /proc/self/fd, for debugging.
+     * @param flags The flags e.g. MFD_CLOEXEC (1), MFD_ALLOW_SEALING (2), MFD_HUGETLB (4)
+     * @return The file descriptor, or -1 on error.
+     */
+    default int memfd_create(CharSequence name, int flags) {
+        final long cname = UnsafeMemory.toCString(name);
+        try {
+            return (int) syscall(Syscall.MEMFD_CREATE.number(), cname, flags, 0, 0, 0, 0);
+        } finally {
+            UNSAFE.freeMemory(cname);
+        }
+    }
+
+    /**
+     * Copies a range of one file to another within the kernel, see copy_file_range(2).
+     *
+     * @param fdIn      The file descriptor to copy from.
+     * @param offInPtr  The address of a 64-bit offset in fdIn which is updated, or 0 to use and update the file offset.
+     * @param fdOut     The file descriptor to copy to.
+     * @param offOutPtr The address of a 64-bit offset in fdOut which is updated, or 0 to use and update the file offset.
+     * @param len       The number of bytes to copy.
+     * @param flags     The flags, must be 0.
+     * @return The number of bytes copied, or -1 on error.
+     */
+    default long copy_file_range(int fdIn, long offInPtr, int fdOut, long offOutPtr, long len, int flags) {
+        return syscall(Syscall.COPY_FILE_RANGE.number(), fdIn, offInPtr, fdOut, offOutPtr, len, flags);
+    }
+
+    /**
+     * Copies from a file to another file descriptor e.g. a socket, within the kernel, see sendfile(2).
+     *
+     * @param outFd     The file descriptor to write to, at its file offset.
+     * @param inFd      The file descriptor to read from, which must support mmap e.g. a regular file.
+     * @param offsetPtr The address of a 64-bit offset in inFd which is updated, or 0 to use and update the file offset.
+     * @param count     The number of bytes to copy, at most 0x7ffff000 are copied per call.
+     * @return The number of bytes copied, or -1 on error.
+     */
+    default long sendfile(int outFd, int inFd, long offsetPtr, long count) {
+        return syscall(Syscall.SENDFILE.number(), outFd, inFd, offsetPtr, count, 0, 0);
+    }
+
+    /**
+     * Moves data between a pipe and another file descriptor without copying through user space, see splice(2).
+     * One of the file descriptors must be a pipe.
+     *
+     * @param fdIn      The file descriptor to read from.
+     * @param offInPtr  The address of a 64-bit offset in fdIn which is updated, or 0 to use its file offset, must be 0 for a pipe.
+     * @param fdOut     The file descriptor to write to.
+     * @param offOutPtr The address of a 64-bit offset in fdOut which is updated, or 0 to use its file offset, must be 0 for a pipe.
+     * @param len       The maximum number of bytes to move.
+     * @param flags     The flags e.g. SPLICE_F_MOVE (1) | SPLICE_F_MORE (4), see {@link SpliceFlag}
+     * @return The number of bytes moved, 0 at the end of the input, or -1 on error.
+     */
+    default long splice(int fdIn, long offInPtr, int fdOut, long offOutPtr, long len, int flags) {
+        return syscall(Syscall.SPLICE.number(), fdIn, offInPtr, fdOut, offOutPtr, len, flags);
+    }
+
+    /**
+     * Duplicates data from one pipe to another without consuming it, see tee(2).
+     *
+     * @param fdIn  The pipe to read from, the data remains in it.
+     * @param fdOut The pipe to write to.
+     * @param len   The maximum number of bytes to duplicate.
+     * @param flags The flags e.g. SPLICE_F_NONBLOCK (2), see {@link SpliceFlag}
+     * @return The number of bytes duplicated, or -1 on error.
+     */
+    default long tee(int fdIn, int fdOut, long len, int flags) {
+        return syscall(Syscall.TEE.number(), fdIn, fdOut, len, flags, 0, 0);
+    }
+
+    /**
+     * Moves user memory into a pipe, see vmsplice(2). With SPLICE_F_GIFT the pages may be moved rather than copied,
+     * in which case the memory must not be modified afterwards.
+     *
+     * @param fd     The pipe to write to.
+     * @param iov    The address of an array of struct iovec, see {@link IOVec}
+     * @param nrSegs The number of entries, up to IOV_MAX (1024)
+     * @param flags  The flags e.g. SPLICE_F_GIFT (8), see {@link SpliceFlag}
+     * @return The number of bytes moved, or -1 on error.
+     */
+    default long vmsplice(int fd, long iov, int nrSegs, int flags) {
+        return syscall(Syscall.VMSPLICE.number(), fd, iov, nrSegs, flags, 0, 0);
+    }
+
+    /**
+     * Moves the buffers of an IOVec into a pipe, see vmsplice(2).
+     *
+     * @param fd    The pipe to write to.
+     * @param iov   The buffers.
+     * @param flags The flags, see {@link SpliceFlag}
+     * @return The number of bytes moved, or -1 on error.
+     */
+    default long vmsplice(int fd, IOVec iov, int flags) {
+        return vmsplice(fd, iov.address(), iov.count(), flags);
+    }
+
+    /**
+     * Creates a pipe, see pipe2(2).
+     *
+     * @param pipefd The address of two ints, set to the read and write ends.
+     * @param flags  The flags e.g. O_CLOEXEC, O_NONBLOCK, see {@link OpenFlag}
+     * @return 0 on success, -1 on error.
+     */
+    default int pipe2(long pipefd, int flags) {
+        return (int) syscall(Syscall.PIPE2.number(), pipefd, flags, 0, 0, 0, 0);
+    }
+
+    /**
+     * Creates a pair of connected sockets, see socketpair(2).
+     *
+     * @param domain   The domain e.g. AF_UNIX (1)
+     * @param type     The type e.g. SOCK_STREAM (1)
+     * @param protocol The protocol, usually 0.
+     * @param sv       The address of two ints, set to the file descriptors of the sockets.
+     * @return 0 on success, -1 on error.
+     */
+    default int socketpair(int domain, int type, int protocol, long sv) {
+        return (int) syscall(Syscall.SOCKETPAIR.number(), domain, type, protocol, sv, 0, 0);
+    }
+
+    /**
+     * Sets up an io_uring instance, see io_uring_setup(2).
+     *
+     * @param entries The number of submission queue entries.
+     * @param params  The address of a struct io_uring_params, which is updated with the offsets of the rings.
+     * @return The file descriptor of the io_uring, or -1 on error.
+     */
+    default int io_uring_setup(int entries, long params) {
+        return (int) syscall(Syscall.IO_URING_SETUP.number(), entries, params, 0, 0, 0, 0);
+    }
+
+    /**
+     * Submits queued entries to an io_uring and/or waits for completions, see io_uring_enter(2).
+     *
+     * @param fd          The io_uring file descriptor.
+     * @param toSubmit    The number of submission queue entries to submit.
+     * @param minComplete The number of completions to wait for, with IORING_ENTER_GETEVENTS (1)
+     * @param flags       The flags e.g. IORING_ENTER_GETEVENTS (1), IORING_ENTER_SQ_WAKEUP (2)
+     * @return The number of entries submitted, or -1 on error.
+     */
+    default int io_uring_enter(int fd, int toSubmit, int minComplete, int flags) {
+        return (int) syscall(Syscall.IO_URING_ENTER.number(), fd, toSubmit, minComplete, flags, 0, 0);
+    }
+
+    /**
+     * Registers buffers or files with an io_uring so they are not looked up for each operation, see io_uring_register(2).
+     *
+     * @param fd     The io_uring file descriptor.
+     * @param opcode The operation e.g. IORING_REGISTER_BUFFERS (0), IORING_REGISTER_FILES (2)
+     * @param arg    The address of the argument e.g. an array of struct iovec or of int file descriptors.
+     * @param nrArgs The number of elements in the argument.
+     * @return 0 on success, -1 on error.
+     */
+    default int io_uring_register(int fd, int opcode, long arg, int nrArgs) {
+        return (int) syscall(Syscall.IO_URING_REGISTER.number(), fd, opcode, arg, nrArgs, 0, 0);
+    }
+
     /**
      * Returns the error message for a given error code.
      *
@@ -0,0 +1,55 @@
+package net.openhft.posix;
+
+/**
+ * This class describes a {@link PosixAPI} implementation, and what it costs per call as measured on this machine.
+ */
+public final class PosixBackend {
+    // The short name of the implementation e.g. ffm, jnr, jna or noop
+    private final String name;
+
+    // The average time of a cheap call such as getpid, or NaN if not measured
+    private final double nanosPerCall;
+
+    // How this implementation was chosen
+    private final String selectedBy;
+
+    /**
+     * Constructs a PosixBackend.
+     *
+     * @param name         The short name of the implementation.
+     * @param nanosPerCall The measured average time per call in nanoseconds, or NaN.
+     * @param selectedBy   How this implementation was chosen.
+     */
+    public PosixBackend(String name, double nanosPerCall, String selectedBy) {
+        this.name = name;
+        this.nanosPerCall = nanosPerCall;
+        this.selectedBy = selectedBy;
+    }
+
+    /**
+     * @return The short name of the implementation e.g. ffm, jnr, jna or noop.
+     */
+    public String name() {
+        return name;
+    }
+
+    /**
+     * @return The measured average time of a cheap call such as getpid in nanoseconds, or NaN if not measured.
+     */
+    public double nanosPerCall() {
+        return nanosPerCall;
+    }
+
+    /**
+     * @return How this implementation was chosen e.g. platform, fastest or the system property.
+     */
+    public String selectedBy() {
+        return selectedBy;
+    }
+
+    @Override
+    public String toString() {
+        return name + " (" + selectedBy + "): "
+                + (Double.isNaN(nanosPerCall) ? "not measured" : String.format("%.1f ns/call", nanosPerCall));
+    }
+}
@@ -1,20 +1,48 @@
 package net.openhft.posix;
 
+import net.openhft.posix.internal.ErrnoTable;
+
 /**
  * This class represents a runtime exception specific to POSIX operations.
  * It extends the standard {@link RuntimeException} to provide more specific error handling for POSIX-related errors.
+ * <p>
+ * Where the failure has an errno, it is available from {@link #errno()} so callers can branch on it, e.g. to retry on EAGAIN.
+ * The exceptions returned by {@link #of(int)} are preallocated and have no stack trace, so throwing them doesn't allocate.
  */
 public class PosixRuntimeException extends RuntimeException {
     // Serialization version UID for ensuring compatibility during deserialization
     private static final long serialVersionUID = 0L;
 
+    // One shared, immutable instance per errno
+    private static final PosixRuntimeException[] PREALLOCATED = new PosixRuntimeException[ErrnoTable.size()];
+
+    static {
+        for (int i = 1; i < PREALLOCATED.length; i++)
+            if (ErrnoTable.errno(i) != null)
+                PREALLOCATED[i] = new PosixRuntimeException(i);
+    }
+
+    // The errno of the failure, or 0 if not known
+    private final int errno;
+
     /**
      * Constructs a new PosixRuntimeException with the specified detail message.
      *
      * @param message The detail message for the exception.
      */
     public PosixRuntimeException(String message) {
+        this(message, 0);
+    }
+
+    /**
+     * Constructs a new PosixRuntimeException with the specified detail message and errno.
+     *
+     * @param message The detail message for the exception.
+     * @param errno   The errno of the failure, or 0 if not known.
+     */
+    public PosixRuntimeException(String message, int errno) {
         super(message);
+        this.errno = errno;
     }
 
     /**
@@ -24,5 +52,36 @@ public class PosixRuntimeException extends RuntimeException {
      */
     public PosixRuntimeException(Throwable cause) {
         super(cause);
+        this.errno = 0;
+    }
+
+    /**
+     * Constructs a PosixRuntimeException for an errno without a stack trace or suppressed exceptions, so it can be shared.
+     *
+     * @param errno The errno of the failure.
+     */
+    private PosixRuntimeException(int errno) {
+        super(ErrnoTable.name(errno) + ": " + ErrnoTable.description(errno), null, false, false);
+        this.errno = errno;
+    }
+
+    /**
+     * Returns a preallocated exception for an errno, without a stack trace.
+     * Use this where a failure is expected on a hot path, such as a retry loop on EAGAIN or ENOMEM.
+     *
+     * @param errno The errno of the failure e.g. from {@link PosixAPI#lastError()}
+     * @return The shared exception for that errno, or a new one if the errno is not known.
+     */
+    public static PosixRuntimeException of(int errno) {
+        if (errno > 0 && errno < PREALLOCATED.length && PREALLOCATED[errno] != null)
+            return PREALLOCATED[errno];
+        return new PosixRuntimeException(errno);
+    }
+
+    /**
+     * @return The errno of the failure, or 0 if not known.
+     */
+    public int errno() {
+        return errno;
     }
 }
@@ -0,0 +1,206 @@
+package net.openhft.posix;
+
+import jnr.constants.platform.Errno;
+import net.openhft.posix.internal.core.OS;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static net.openhft.posix.internal.UnsafeMemory.UNSAFE;
+
+/**
+ * This class makes a range of mapped memory resident before it is used, so the first access to each page doesn't take a page fault.
+ * <p>
+ * Where the kernel supports it (Linux 5.14+) this uses madvise with MADV_POPULATE_READ or MADV_POPULATE_WRITE, otherwise
+ * it touches one word in each page, with a stride of the page size of each mapping, e.g. 2 MiB for hugetlbfs.
+ * The range is split into pieces which are pre-touched by a number of threads in parallel.
+ * <p>
+ * On Linux the range is checked against /proc/self/smaps first, as touching memory which is not mapped, or writing to memory
+ * which is read only, would crash the JVM.
+ */
+public final class PreToucher {
+    // The most one thread pre-touches before taking the next piece
+    static final long PIECE_SIZE = 64L << 20;
+
+    // cleared if the kernel doesn't support MADV_POPULATE_READ/WRITE
+    private static volatile boolean populateSupported = OS.isLinux();
+    // read pages are summed into this so the reads are not eliminated
+    private static volatile int sink;
+
+    private final PosixAPI posix;
+    private final int threads;
+
+    /**
+     * @param threads The number of threads to pre-touch with, including the caller.
+     */
+    public PreToucher(int threads) {
+        if (threads < 1)
+            throw new IllegalArgumentException("threads: " + threads);
+        this.posix = PosixAPI.posix();
+        this.threads = threads;
+    }
+
+    /**
+     * @return Whether MADV_POPULATE_READ/WRITE can be used, false once the kernel has rejected it.
+     */
+    public static boolean isPopulateSupported() {
+        return populateSupported;
+    }
+
+    /**
+     * Pre-touches a mapped region, for writing if it was mapped writable.
+     *
+     * @param region The region.
+     */
+    public void touch(MappedRegion region) {
+        touch(region.address(), region.length(), (region.prot() & MMapProt.PROT_WRITE.value()) != 0);
+    }
+
+    /**
+     * Pre-touches a range of mapped memory, which may span a number of mappings.
+     *
+     * @param address The start of the range.
+     * @param length  The length of the range.
+     * @param write   Whether to fault the pages in writable, which breaks copy on write and allocates blocks of sparse files.
+     * @throws IllegalArgumentException If any of the range is not mapped, or not writable when write is true.
+     * @throws PosixRuntimeException    If madvise fails other than for being unsupported.
+     */
+    public void touch(long address, long length, boolean write) {
+        final long start = address & -MappedRegion.PAGE_SIZE;
+        final List<long[]> pieces = pieces(segments(start, address + length, write));
+        final AtomicInteger next = new AtomicInteger();
+        final AtomicReference<Throwable> error = new AtomicReference<>();
+        final Runnable worker = () -> {
+            try {
+                for (int i; (i = next.getAndIncrement()) < pieces.size() && error.get() == null; ) {
+                    final long[] piece = pieces.get(i);
+                    touchPages(posix, piece[0], piece[1] - piece[0], piece[2], write);
+                }
+            } catch (Throwable t) {
+                error.compareAndSet(null, t);
+            }
+        };
+        final int extra = Math.min(threads, pieces.size()) - 1;
+        final Thread[] workers = new Thread[Math.max(0, extra)];
+        for (int i = 0; i < workers.length; i++) {
+            workers[i] = new Thread(worker, "pretouch~" + i);
+            workers[i].setDaemon(true);
+            workers[i].start();
+        }
+        worker.run();
+        for (Thread t : workers) {
+            try {
+                t.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                error.compareAndSet(null, e);
+            }
+        }
+        final Throwable t = error.get();
+        if (t instanceof RuntimeException)
+            throw (RuntimeException) t;
+        if (t instanceof Error)
+            throw (Error) t;
+        if (t != null)
+            throw new PosixRuntimeException(t);
+    }
+
+    /**
+     * Pre-touches a range known to be mapped with the access required, on the calling thread.
+     *
+     * @param address The start of the range, page aligned.
+     * @param length  The length of the range.
+     * @param stride  The page size of the mapping.
+     * @param write   Whether to fault the pages in writable.
+     */
+    static void touchPages(PosixAPI posix, long address, long length, long stride, boolean write) {
+        if (populateSupported) {
+            final MAdviseFlag advice = write ? MAdviseFlag.MADV_POPULATE_WRITE : MAdviseFlag.MADV_POPULATE_READ;
+            if (posix.madvise(address, length, advice) == 0)
+                return;
+            final int errno = posix.lastError();
+            if (errno != Errno.EINVAL.intValue())
+                throw new PosixRuntimeException("madvise " + advice + " failed " + posix.strerror(errno), errno);
+            // an older kernel
+            populateSupported = false;
+        }
+        final long end = address + length;
+        if (write) {
+            // an atomic add of 0 leaves any data there intact, even if another thread is writing
+            for (long addr = address; addr < end; addr += stride)
+                UNSAFE.getAndAddInt(null, addr, 0);
+        } else {
+            int sum = 0;
+            for (long addr = address; addr < end; addr += stride)
+                sum += UNSAFE.getByte(addr);
+            sink = sum;
+        }
+    }
+
+    /**
+     * Returns the parts of the range in each mapping, with the page size of that mapping.
+     */
+    private List<long[]> segments(long start, long end, boolean write) {
+        final List<long[]> segments = new ArrayList<>();
+        if (!OS.isLinux()) {
+            segments.add(new long[]{start, end, MappedRegion.PAGE_SIZE});
+            return segments;
+        }
+        long covered = start;
+        try (BufferedReader br = new BufferedReader(new FileReader("/proc/self/smaps"))) {
+            Mapping mapping = null;
+            for (String line; (line = br.readLine()) != null && covered < end; ) {
+                if (!line.startsWith("KernelPageSize:")) {
+                    if (line.indexOf('-') > 0 && line.indexOf(':') > line.indexOf(' '))
+                        mapping = new Mapping(line);
+                    continue;
+                }
+                if (mapping == null || mapping.addr() + mapping.length() <= covered || mapping.addr() >= end)
+                    continue;
+                if (mapping.addr() > covered)
+                    break;
+                if (mapping.perms().charAt(0) != 'r' || (write && mapping.perms().charAt(1) != 'w'))
+                    throw new IllegalArgumentException("Not " + (write ? "writable" : "readable") + ": " + mapping);
+                final long pageSize = Long.parseLong(line.substring(15).replace("kB", "").trim()) << 10;
+                final long segmentEnd = Math.min(end, mapping.addr() + mapping.length());
+                // madvise needs the start aligned to the page size of the mapping
+                segments.add(new long[]{covered & -pageSize, segmentEnd, pageSize});
+                covered = segmentEnd;
+            }
+        } catch (IOException e) {
+            throw new PosixRuntimeException(e);
+        }
+        if (covered < end)
+            throw new IllegalArgumentException("Not mapped at " + Long.toHexString(covered));
+        return segments;
+    }
+
+    /**
+     * Splits the segments into pieces of up to PIECE_SIZE, aligned to their page size.
+     */
+    private static List<long[]> pieces(List<long[]> segments) {
+        final List<long[]> pieces = new ArrayList<>();
+        for (long[] segment : segments) {
+            final long stride = segment[2];
+            for (long from = segment[0]; from < segment[1]; ) {
+                final long to = Math.min(segment[1], ((from + PIECE_SIZE) / stride) * stride);
+                final long upto = to > from ? to : Math.min(segment[1], from + stride);
+                pieces.add(new long[]{from, upto, stride});
+                from = upto;
+            }
+        }
+        return pieces;
+    }
+
+    /**
+     * @return The number of threads used, including the caller.
+     */
+    public int threads() {
+        return threads;
+    }
+}
@@ -0,0 +1,51 @@
+package net.openhft.posix;
+
+/**
+ * This enum represents the per call flags for preadv2(2) and pwritev2(2), which is Linux only.
+ * They can be combined with {@link #value()}
+ */
+public enum RwfFlag {
+    /**
+     * High priority, polling for completion on block devices which support it, since Linux 4.6
+     */
+    RWF_HIPRI(1),
+
+    /**
+     * Write the data and the metadata needed to read it back as with O_DSYNC, for this call only, since Linux 4.7
+     */
+    RWF_DSYNC(2),
+
+    /**
+     * Write the data and all metadata as with O_SYNC, for this call only, since Linux 4.7
+     */
+    RWF_SYNC(4),
+
+    /**
+     * Fail with EAGAIN rather than block e.g. reading data not in the page cache, since Linux 4.14
+     */
+    RWF_NOWAIT(8),
+
+    /**
+     * Append to the end of the file as with O_APPEND, for this call only, since Linux 4.16
+     */
+    RWF_APPEND(16);
+
+    // The integer value representing the flag
+    private final int value;
+
+    /**
+     * Constructor for RwfFlag.
+     *
+     * @param value The integer value representing the flag
+     */
+    RwfFlag(int value) {
+        this.value = value;
+    }
+
+    /**
+     * @return The integer value of this flag.
+     */
+    public int value() {
+        return value;
+    }
+}
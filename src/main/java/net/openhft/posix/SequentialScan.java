@@ -0,0 +1,217 @@
+package net.openhft.posix;
+
+import jnr.constants.platform.Errno;
+
+/**
+ * This class reads a file from start to end, advising the kernel to read ahead of the reader and to drop the pages behind it.
+ * <p>
+ * POSIX_FADV_WILLNEED is issued for a window ahead of the position, so reads don't stall on a cold disk, and
+ * POSIX_FADV_DONTNEED for what is more than a window behind it, so scanning a file much larger than memory doesn't evict
+ * the page cache of everything else on the machine. The advice is issued in steps of a quarter of a window, so there are
+ * few system calls per MiB read.
+ * <p>
+ * The file can be read with {@link #read(long, int)}, or by another means e.g. a mapping, calling {@link #position(long)}
+ * as it progresses. Only clean pages are dropped, pages being written are not affected.
+ * <p>
+ * Where posix_fadvise is not available, e.g. on macOS, the advice is skipped, see {@link #isAdvising()}
+ * <p>
+ * This class is not thread safe.
+ */
+public final class SequentialScan implements AutoCloseable {
+    private final PosixAPI posix;
+    private final int fd;
+    private final boolean ownsFd;
+    private final long aheadBytes;
+    private final long behindBytes;
+    private final long step;
+    private long position;
+    // advice has been given up to these offsets
+    private long willNeedUpto;
+    private long dontNeedUpto;
+    private long adviceCalls;
+    private boolean advising;
+    private boolean closed;
+
+    /**
+     * Scans a file descriptor from an offset.
+     *
+     * @param fd          The file descriptor, not closed by this scan.
+     * @param start       The offset to start from.
+     * @param aheadBytes  How far ahead of the position to read ahead e.g. 64 MiB
+     * @param behindBytes How far behind the position to keep pages, or Long.MAX_VALUE to not drop them.
+     */
+    public SequentialScan(int fd, long start, long aheadBytes, long behindBytes) {
+        this(PosixAPI.posix(), fd, false, start, aheadBytes, behindBytes);
+    }
+
+    private SequentialScan(PosixAPI posix, int fd, boolean ownsFd, long start, long aheadBytes, long behindBytes) {
+        if (start < 0 || aheadBytes < MappedRegion.PAGE_SIZE || behindBytes < 0)
+            throw new IllegalArgumentException("start: " + start + " aheadBytes: " + aheadBytes + " behindBytes: " + behindBytes);
+        this.posix = posix;
+        this.fd = fd;
+        this.ownsFd = ownsFd;
+        this.aheadBytes = aheadBytes;
+        this.behindBytes = behindBytes;
+        this.step = Math.max(MappedRegion.PAGE_SIZE, (aheadBytes / 4) & -MappedRegion.PAGE_SIZE);
+        this.position = start;
+        this.willNeedUpto = start;
+        this.dontNeedUpto = start & -MappedRegion.PAGE_SIZE;
+        // doubles the kernel's own read ahead window, for the whole file
+        this.advising = advise(0, 0, FAdviseFlag.POSIX_FADV_SEQUENTIAL);
+        advance();
+    }
+
+    /**
+     * Opens a file to scan from the start, read only.
+     *
+     * @param filename    The file.
+     * @param aheadBytes  How far ahead of the position to read ahead.
+     * @param behindBytes How far behind the position to keep pages, or Long.MAX_VALUE to not drop them.
+     * @return The scan, which closes the file when closed.
+     * @throws PosixRuntimeException If the file can't be opened.
+     */
+    public static SequentialScan open(String filename, long aheadBytes, long behindBytes) {
+        final PosixAPI posix = PosixAPI.posix();
+        final int fd = posix.open(filename, OpenFlag.O_RDONLY.or(OpenFlag.O_CLOEXEC), 0);
+        if (fd < 0)
+            throw new PosixRuntimeException("Unable to open " + filename + " " + posix.lastErrorStr(), posix.lastError());
+        try {
+            return new SequentialScan(posix, fd, true, 0, aheadBytes, behindBytes);
+        } catch (RuntimeException e) {
+            posix.close(fd);
+            throw e;
+        }
+    }
+
+    /**
+     * Reads from the position, and advances it by the number of bytes read.
+     *
+     * @param dst The address to read into.
+     * @param len The maximum number of bytes.
+     * @return The number of bytes read, 0 at the end of the file.
+     * @throws PosixRuntimeException If the read fails.
+     */
+    public int read(long dst, int len) {
+        if (closed)
+            throw new IllegalStateException("closed");
+        final long n = posix.pread(fd, dst, len, position);
+        if (n < 0)
+            throw new PosixRuntimeException("pread failed " + posix.lastErrorStr(), posix.lastError());
+        position(position + n);
+        return (int) n;
+    }
+
+    /**
+     * Moves the position forward after reading by another means, giving advice if it has moved far enough.
+     *
+     * @param position The offset read up to.
+     */
+    public void position(long position) {
+        if (position < this.position)
+            throw new IllegalArgumentException("position: " + position + " < " + this.position);
+        this.position = position;
+        advance();
+    }
+
+    private void advance() {
+        if (!advising)
+            return;
+        if (willNeedUpto - position < aheadBytes - step) {
+            final long upto = position + aheadBytes;
+            advise(willNeedUpto, upto - willNeedUpto, FAdviseFlag.POSIX_FADV_WILLNEED);
+            willNeedUpto = upto;
+        }
+        if (behindBytes != Long.MAX_VALUE && position - behindBytes - dontNeedUpto >= step) {
+            // drop whole pages only, a partial page at the end is still being read
+            final long upto = (position - behindBytes) & -MappedRegion.PAGE_SIZE;
+            advise(dontNeedUpto, upto - dontNeedUpto, FAdviseFlag.POSIX_FADV_DONTNEED);
+            dontNeedUpto = upto;
+        }
+    }
+
+    private boolean advise(long offset, long len, FAdviseFlag advice) {
+        if (closed)
+            return false;
+        adviceCalls++;
+        if (posix.posix_fadvise(fd, offset, len, advice) == 0)
+            return true;
+        final int errno = posix.lastError();
+        if (errno == Errno.ENOSYS.intValue()) {
+            advising = false;
+            return false;
+        }
+        throw new PosixRuntimeException("posix_fadvise " + advice + " failed " + posix.strerror(errno), errno);
+    }
+
+    /**
+     * @return The offset read up to.
+     */
+    public long position() {
+        return position;
+    }
+
+    /**
+     * @return The offset POSIX_FADV_WILLNEED has been issued up to.
+     */
+    public long willNeedUpto() {
+        return willNeedUpto;
+    }
+
+    /**
+     * @return The offset POSIX_FADV_DONTNEED has been issued up to.
+     */
+    public long dontNeedUpto() {
+        return dontNeedUpto;
+    }
+
+    /**
+     * @return The number of posix_fadvise calls made.
+     */
+    public long adviceCalls() {
+        return adviceCalls;
+    }
+
+    /**
+     * @return Whether advice is being given, false if posix_fadvise is not available.
+     */
+    public boolean isAdvising() {
+        return advising;
+    }
+
+    /**
+     * @return The file descriptor.
+     */
+    public int fd() {
+        return fd;
+    }
+
+    /**
+     * Drops the pages read which are still cached, unless keeping them, and closes the file if it was opened by this scan.
+     */
+    @Override
+    public void close() {
+        if (closed)
+            return;
+        try {
+            if (advising && behindBytes != Long.MAX_VALUE && position > dontNeedUpto) {
+                advise(dontNeedUpto, position - dontNeedUpto, FAdviseFlag.POSIX_FADV_DONTNEED);
+                dontNeedUpto = position;
+            }
+        } finally {
+            closed = true;
+            if (ownsFd)
+                posix.close(fd);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "SequentialScan{" +
+                "fd=" + fd +
+                ", position=" + position +
+                ", willNeedUpto=" + willNeedUpto +
+                ", dontNeedUpto=" + dontNeedUpto +
+                ", advising=" + advising +
+                '}';
+    }
+}
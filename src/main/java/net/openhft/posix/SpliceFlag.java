@@ -0,0 +1,48 @@
+package net.openhft.posix;
+
+/**
+ * This enum represents the flags for splice(2), tee(2) and vmsplice(2), which can be combined with {@link #value()}
+ */
+public enum SpliceFlag {
+    /**
+     * Move pages rather than copying them where possible, only a hint.
+     */
+    SPLICE_F_MOVE(1),
+
+    /**
+     * Don't block on the pipe, the other file descriptor may still block unless it is non-blocking.
+     */
+    SPLICE_F_NONBLOCK(2),
+
+    /**
+     * More data will follow, e.g. like TCP_CORK for a socket.
+     */
+    SPLICE_F_MORE(4),
+
+    /**
+     * For vmsplice, give the pages to the kernel, they must not be modified afterwards.
+     */
+    SPLICE_F_GIFT(8);
+
+    // The integer value representing the flag
+    private final int value;
+
+    /**
+     * Constructor for SpliceFlag.
+     *
+     * @param value The integer value representing the flag
+     */
+    SpliceFlag(int value) {
+        this.value = value;
+    }
+
+    /**
+     * This method is a getter for the value instance variable.
+     * It returns the current integer value of this SpliceFlag object.
+     *
+     * @return The current integer value of this SpliceFlag object
+     */
+    public int value() {
+        return value;
+    }
+}
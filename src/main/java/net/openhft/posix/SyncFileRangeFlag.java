@@ -0,0 +1,44 @@
+package net.openhft.posix;
+
+/**
+ * This enum represents the flags for sync_file_range(2), which can be combined with {@link #value()}
+ * <p>
+ * WRITE on its own starts writeback of the dirty pages in the range without waiting for it,
+ * WAIT_BEFORE | WRITE | WAIT_AFTER waits for all writeback of the range to complete.
+ * None of these flush the file's metadata or the device's write cache, so they are not a substitute for fdatasync.
+ */
+public enum SyncFileRangeFlag {
+    /**
+     * Wait for writeback of pages in the range already in progress before writing.
+     */
+    SYNC_FILE_RANGE_WAIT_BEFORE(1),
+
+    /**
+     * Start writeback of the dirty pages in the range which are not already being written.
+     */
+    SYNC_FILE_RANGE_WRITE(2),
+
+    /**
+     * Wait for writeback of pages in the range to complete after writing.
+     */
+    SYNC_FILE_RANGE_WAIT_AFTER(4);
+
+    // The integer value representing the sync_file_range flag
+    private final int value;
+
+    /**
+     * Constructor for SyncFileRangeFlag.
+     *
+     * @param value The integer value representing the sync_file_range flag
+     */
+    SyncFileRangeFlag(int value) {
+        this.value = value;
+    }
+
+    /**
+     * @return The integer value of this flag.
+     */
+    public int value() {
+        return value;
+    }
+}
@@ -0,0 +1,139 @@
+package net.openhft.posix;
+
+import jnr.constants.platform.Errno;
+
+/**
+ * This class bounds how much of a file written sequentially can be dirty in the page cache, by starting writeback of each chunk
+ * as soon as it is written with sync_file_range, and waiting for the writeback of old chunks once more than a window is in flight.
+ * <p>
+ * Without this the kernel lets dirty pages build up to dirty_background_ratio of memory, then writes them back all at once,
+ * which can stall writers to the file and to mappings of it for hundreds of microseconds.
+ * With this the writeback is steady, and the only waits are for chunks which are normally already written.
+ * <p>
+ * This works for data written with write(2) and through shared mappings. It is not thread safe; call it from the writer,
+ * or from one background thread given the writer's progress. Where sync_file_range is not available, e.g. not on Linux,
+ * it does nothing.
+ */
+public final class WritebackThrottle {
+    private static final int WRITE = SyncFileRangeFlag.SYNC_FILE_RANGE_WRITE.value();
+    private static final int WAIT = SyncFileRangeFlag.SYNC_FILE_RANGE_WAIT_BEFORE.value()
+            | SyncFileRangeFlag.SYNC_FILE_RANGE_WRITE.value()
+            | SyncFileRangeFlag.SYNC_FILE_RANGE_WAIT_AFTER.value();
+
+    private final PosixAPI posix;
+    private final int fd;
+    private final long chunkSize;
+    private final long windowSize;
+    // writeback has been started up to here
+    private long startedUpto;
+    // writeback has completed up to here
+    private long waitedUpto;
+    private long waits;
+    private boolean supported = true;
+
+    /**
+     * @param fd         The file descriptor being written.
+     * @param startFrom  The position in the file writing starts from, rounded down to a chunk.
+     * @param chunkSize  How much to write back at once e.g. 1 MiB
+     * @param windowSize The most written but not yet known to be written back e.g. 16 MiB
+     */
+    public WritebackThrottle(int fd, long startFrom, long chunkSize, long windowSize) {
+        if (chunkSize <= 0 || windowSize < chunkSize)
+            throw new IllegalArgumentException("chunkSize: " + chunkSize + " windowSize: " + windowSize);
+        this.posix = PosixAPI.posix();
+        this.fd = fd;
+        this.chunkSize = chunkSize;
+        this.windowSize = windowSize;
+        this.startedUpto = this.waitedUpto = startFrom / chunkSize * chunkSize;
+    }
+
+    /**
+     * Reports the file has been written up to a position. Starts writeback of any whole chunks written, then waits for the
+     * oldest chunks if more than the window is in flight.
+     *
+     * @param upto The position written up to.
+     * @throws PosixRuntimeException If sync_file_range fails for a reason other than not being supported.
+     */
+    public void written(long upto) {
+        if (!supported)
+            return;
+        while (upto - startedUpto >= chunkSize) {
+            if (!syncFileRange(startedUpto, chunkSize, WRITE))
+                return;
+            startedUpto += chunkSize;
+        }
+        while (startedUpto - waitedUpto > windowSize) {
+            if (!syncFileRange(waitedUpto, chunkSize, WAIT))
+                return;
+            waitedUpto += chunkSize;
+            waits++;
+        }
+    }
+
+    /**
+     * Writes back everything written up to a position, and waits for it, e.g. before closing the file.
+     * This doesn't flush metadata, use fdatasync for that.
+     *
+     * @param upto The position written up to.
+     */
+    public void flush(long upto) {
+        if (!supported || upto <= waitedUpto)
+            return;
+        if (syncFileRange(waitedUpto, upto - waitedUpto, WAIT)) {
+            startedUpto = Math.max(startedUpto, upto);
+            waitedUpto = upto;
+        }
+    }
+
+    private boolean syncFileRange(long offset, long nbytes, int flags) {
+        if (posix.sync_file_range(fd, offset, nbytes, flags) == 0)
+            return true;
+        final int errno = posix.lastError();
+        // ENOSYS, or EINVAL/ESPIPE for a file which doesn't support it, from then on do nothing
+        if (errno == Errno.ENOSYS.intValue() || errno == Errno.EINVAL.intValue() || errno == Errno.ESPIPE.intValue()) {
+            supported = false;
+            return false;
+        }
+        throw new PosixRuntimeException("sync_file_range failed " + posix.strerror(errno), errno);
+    }
+
+    /**
+     * @return The position writeback has been started up to.
+     */
+    public long startedUpto() {
+        return startedUpto;
+    }
+
+    /**
+     * @return The position writeback is known to have completed up to.
+     */
+    public long waitedUpto() {
+        return waitedUpto;
+    }
+
+    /**
+     * @return The number of chunks waited for, which is how often the writer was throttled.
+     */
+    public long waits() {
+        return waits;
+    }
+
+    /**
+     * @return Whether sync_file_range is supported for this file, false once it has failed with ENOSYS, EINVAL or ESPIPE
+     */
+    public boolean isSupported() {
+        return supported;
+    }
+
+    @Override
+    public String toString() {
+        return "WritebackThrottle{" +
+                "fd=" + fd +
+                ", chunkSize=" + chunkSize +
+                ", windowSize=" + windowSize +
+                ", startedUpto=" + startedUpto +
+                ", waitedUpto=" + waitedUpto +
+                ", waits=" + waits +
+                '}';
+    }
+}
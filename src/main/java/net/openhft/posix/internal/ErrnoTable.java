@@ -0,0 +1,69 @@
+package net.openhft.posix.internal;
+
+import jnr.constants.platform.Errno;
+
+/**
+ * A lookup table from the numeric errno of this platform to its {@link Errno}, built once so error paths
+ * don't need to search or copy {@code Errno.values()}.
+ */
+public final class ErrnoTable {
+    // errno values are small and dense on all supported platforms
+    private static final Errno[] ERRNOS;
+
+    static {
+        int max = 0;
+        final Errno[] values = Errno.values();
+        for (Errno errno : values)
+            if (errno.defined())
+                max = Math.max(max, errno.intValue());
+        ERRNOS = new Errno[max + 1];
+        for (Errno errno : values) {
+            // keep the first name where two share a value e.g. EAGAIN and EWOULDBLOCK
+            if (errno.defined() && errno.intValue() >= 0 && ERRNOS[errno.intValue()] == null)
+                ERRNOS[errno.intValue()] = errno;
+        }
+    }
+
+    // Private constructor to prevent instantiation
+    private ErrnoTable() {
+    }
+
+    /**
+     * @return One more than the largest errno value known.
+     */
+    public static int size() {
+        return ERRNOS.length;
+    }
+
+    /**
+     * Returns the Errno for a numeric errno.
+     *
+     * @param errno The numeric errno e.g. from lastError()
+     * @return The Errno, or null if not known on this platform.
+     */
+    public static Errno errno(int errno) {
+        return errno >= 0 && errno < ERRNOS.length ? ERRNOS[errno] : null;
+    }
+
+    /**
+     * Returns the symbolic name for a numeric errno e.g. ENOMEM
+     *
+     * @param errno The numeric errno.
+     * @return The name, or "errno " + errno if not known.
+     */
+    public static String name(int errno) {
+        final Errno e = errno(errno);
+        return e == null ? "errno " + errno : e.name();
+    }
+
+    /**
+     * Returns the description for a numeric errno, as strerror would e.g. Cannot allocate memory
+     *
+     * @param errno The numeric errno.
+     * @return The description, or "Unknown error " + errno if not known.
+     */
+    public static String description(int errno) {
+        final Errno e = errno(errno);
+        return e == null ? "Unknown error " + errno : e.description();
+    }
+}
@@ -0,0 +1,72 @@
+package net.openhft.posix.internal;
+
+import net.openhft.posix.ClockId;
+import net.openhft.posix.NanoClock;
+import net.openhft.posix.PosixAPI;
+import net.openhft.posix.internal.jnr.JNRVdsoNanoClock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * This class holds one {@link NanoClock} per {@link ClockId}, choosing the fastest implementation which works for each.
+ */
+public final class NanoClockHolder {
+    private static final Logger LOGGER = LoggerFactory.getLogger(NanoClockHolder.class);
+
+    // Only present in the multi-release jar when running on Java 22+
+    static final String FFM_VDSO_NANO_CLOCK = "net.openhft.posix.internal.ffm.FFMVdsoNanoClock";
+
+    // The NanoClock for each ClockId, indexed by ordinal
+    private static final NanoClock[] CLOCKS = new NanoClock[ClockId.values().length];
+
+    // Suppresses default constructor, ensuring non-instantiability
+    private NanoClockHolder() {
+    }
+
+    /**
+     * Returns the NanoClock for a clock ID, creating it on first use.
+     *
+     * @param clockId The clock ID.
+     * @return The NanoClock for the clock ID.
+     */
+    public static NanoClock forClock(ClockId clockId) {
+        NanoClock clock = CLOCKS[clockId.ordinal()];
+        if (clock == null)
+            clock = createClock(clockId);
+        return clock;
+    }
+
+    private static synchronized NanoClock createClock(ClockId clockId) {
+        NanoClock clock = CLOCKS[clockId.ordinal()];
+        if (clock != null)
+            return clock;
+        try {
+            // the FFM clock is used with the FFM implementation, which is only used if selected
+            if ("ffm".equals(PosixAPIHolder.nameOf(PosixAPI.posix())))
+                clock = newFFMVdsoNanoClock(clockId);
+            if (clock == null)
+                clock = new JNRVdsoNanoClock(clockId);
+        } catch (Throwable t) {
+            LOGGER.debug("vDSO clock_gettime not available for {}: {}", clockId, t.toString());
+            clock = new PosixNanoClock(clockId);
+        }
+        CLOCKS[clockId.ordinal()] = clock;
+        return clock;
+    }
+
+    /**
+     * Creates the FFM vDSO clock if this is Java 22+ with native access enabled.
+     *
+     * @param clockId The clock ID.
+     * @return The clock, or null if it can't be used.
+     */
+    private static NanoClock newFFMVdsoNanoClock(ClockId clockId) {
+        try {
+            return (NanoClock) Class.forName(FFM_VDSO_NANO_CLOCK)
+                    .getConstructor(ClockId.class)
+                    .newInstance(clockId);
+        } catch (Throwable t) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package net.openhft.posix.internal;
+
+import net.openhft.posix.ClockId;
+import net.openhft.posix.PosixAPI;
+
+/**
+ * Measures the cost per call of a {@link PosixAPI} implementation with a short loop of cheap calls.
+ */
+public final class PosixAPICalibrator {
+    static final int WARMUP = Integer.getInteger("posix.api.calibrate.warmup", 20_000);
+    static final int CALLS = Integer.getInteger("posix.api.calibrate.calls", 10_000);
+    static final int ROUNDS = 5;
+    static final int CLOCK_MONOTONIC = ClockId.CLOCK_MONOTONIC.value();
+
+    // prevents the calls being optimised away
+    static volatile long blackhole;
+
+    // Suppresses default constructor, ensuring non-instantiability
+    private PosixAPICalibrator() {
+    }
+
+    /**
+     * Times alternate getpid and clock_gettime calls, taking the best of a few rounds to reduce noise.
+     *
+     * @param posix The implementation to measure.
+     * @return The average time per call in nanoseconds.
+     */
+    public static double nanosPerCall(PosixAPI posix) {
+        long sum = 0;
+        for (int i = 0; i < WARMUP; i++)
+            sum += call(posix);
+        long best = Long.MAX_VALUE;
+        for (int r = 0; r < ROUNDS; r++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < CALLS; i++)
+                sum += call(posix);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        blackhole = sum;
+        return best / (2.0 * CALLS);
+    }
+
+    private static long call(PosixAPI posix) {
+        return posix.getpid() + posix.clock_gettime(CLOCK_MONOTONIC);
+    }
+}
@@ -2,44 +2,227 @@ package net.openhft.posix.internal;
 
 import jnr.ffi.Platform;
 import net.openhft.posix.PosixAPI;
+import net.openhft.posix.PosixBackend;
+import net.openhft.posix.internal.jna.JNAPosixAPI;
 import net.openhft.posix.internal.jnr.JNRPosixAPI;
 import net.openhft.posix.internal.jnr.WinJNRPosixAPI;
 import net.openhft.posix.internal.noop.NoOpPosixAPI;
+import net.openhft.posix.internal.raw.RawPosixAPI;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * This class holds the instance of the {@link PosixAPI} to be used.
- * It loads the appropriate PosixAPI implementation based on the native platform.
+ * It loads the appropriate PosixAPI implementation based on the native platform,
+ * or as selected by the system property <code>posix.api</code>, which can be
+ * <ul>
+ *     <li>ffm, jnr, jna, raw or noop to pin an implementation</li>
+ *     <li>fastest to measure each available implementation at startup and use the fastest</li>
+ * </ul>
  */
 public class PosixAPIHolder {
-    // The PosixAPI instance to be used
-    public static PosixAPI POSIX_API;
+    private static final Logger LOGGER = LoggerFactory.getLogger(PosixAPIHolder.class);
+
+    // The PosixAPI instance to be used, volatile as it is read without the lock once loaded
+    public static volatile PosixAPI POSIX_API;
+
+    // Describes POSIX_API, the cost per call is measured on first request unless already known
+    static PosixBackend posixBackend;
+
+    // Names the implementation to use instead of choosing one for the platform
+    static final String POSIX_API_PROPERTY = "posix.api";
+
+    // Only present in the multi-release jar when running on Java 22+
+    static final String FFM_POSIX_API = "net.openhft.posix.internal.ffm.FFMPosixAPI";
+
+    // The implementations which can be measured, in order of preference
+    static final String[] CANDIDATES = {"ffm", "jnr", "jna", "raw"};
 
     /**
      * Loads the appropriate PosixAPI implementation based on the native platform.
-     * If the platform is Unix, it loads {@link JNRPosixAPI}, otherwise it loads {@link WinJNRPosixAPI}.
+     * If the platform is Unix, it loads {@link JNRPosixAPI}, or {@link JNAPosixAPI} if JNR can't be loaded.
+     * The FFM implementation is only used if selected with <code>-Dposix.api=ffm</code> or fastest. On other platforms it loads {@link WinJNRPosixAPI}.
      * If an error occurs during loading, it falls back to {@link NoOpPosixAPI}.
      */
     public static void loadPosixApi() {
+        if (POSIX_API != null)
+            return;
+        loadPosixApi0();
+    }
+
+    private static synchronized void loadPosixApi0() {
         if (POSIX_API != null)
             return;
 
         PosixAPI posixAPI;
         try {
-            // Check if the native platform is Unix and load the appropriate API
-            posixAPI = Platform.getNativePlatform().isUnix()
-                    ? new JNRPosixAPI()
-                    : new WinJNRPosixAPI();
+            final String name = System.getProperty(POSIX_API_PROPERTY, "").toLowerCase();
+            if (name.equals("fastest")) {
+                final Candidate fastest = selectFastest();
+                posixAPI = fastest.posixAPI;
+                posixBackend = fastest.backend;
+
+            } else if (!name.isEmpty()) {
+                posixAPI = loadPosixApi(name);
+                posixBackend = new PosixBackend(nameOf(posixAPI), Double.NaN, "-D" + POSIX_API_PROPERTY);
+
+            } else {
+                // Check if the native platform is Unix and load the appropriate API
+                posixAPI = Platform.getNativePlatform().isUnix()
+                        ? loadUnixPosixApi()
+                        : new WinJNRPosixAPI();
+                posixBackend = new PosixBackend(nameOf(posixAPI), Double.NaN, "platform");
+            }
         } catch (Throwable t) {
             // Fallback to NoOpPosixAPI if an error occurs
             posixAPI = new NoOpPosixAPI(t.toString());
+            posixBackend = new PosixBackend("noop", Double.NaN, "fallback");
         }
         POSIX_API = posixAPI;
     }
 
+    /**
+     * Measures each implementation which can be loaded and returns the fastest.
+     *
+     * @return The fastest implementation and its cost per call.
+     * @throws IllegalStateException If none could be loaded.
+     */
+    static Candidate selectFastest() {
+        Candidate fastest = null;
+        for (String name : CANDIDATES) {
+            final PosixAPI posix;
+            try {
+                posix = loadPosixApi(name);
+            } catch (Throwable t) {
+                LOGGER.debug("{} not available: {}", name, t.toString());
+                continue;
+            }
+            final double nanosPerCall = PosixAPICalibrator.nanosPerCall(posix);
+            LOGGER.debug("{} {} ns/call", name, nanosPerCall);
+            if (fastest == null || nanosPerCall < fastest.backend.nanosPerCall())
+                fastest = new Candidate(posix, new PosixBackend(name, nanosPerCall, "fastest"));
+        }
+        if (fastest == null)
+            throw new IllegalStateException("No PosixAPI implementation available");
+        LOGGER.info("Using PosixAPI {}", fastest.backend);
+        return fastest;
+    }
+
+    /**
+     * Loads the implementation selected by name.
+     *
+     * @param name One of ffm, jnr, jna, raw or noop.
+     * @return The PosixAPI selected.
+     * @throws IllegalArgumentException If the name is not known.
+     */
+    static PosixAPI loadPosixApi(String name) {
+        switch (name.toLowerCase()) {
+            case "ffm":
+                final PosixAPI ffm = (PosixAPI) newInstanceOrNull(FFM_POSIX_API);
+                if (ffm == null)
+                    throw new UnsupportedOperationException("FFM requires Java 22+ with --enable-native-access");
+                return ffm;
+            case "jnr":
+                return Platform.getNativePlatform().isUnix()
+                        ? new JNRPosixAPI()
+                        : new WinJNRPosixAPI();
+            case "jna":
+                return new JNAPosixAPI();
+            case "raw":
+                return new RawPosixAPI();
+            case "noop":
+                return new NoOpPosixAPI("Selected by -D" + POSIX_API_PROPERTY + "=" + name);
+            default:
+                throw new IllegalArgumentException("Unknown -D" + POSIX_API_PROPERTY + "=" + name + ", expected one of ffm, jnr, jna, raw, noop or fastest");
+        }
+    }
+
+    /**
+     * Loads {@link JNRPosixAPI}, falling back to {@link JNAPosixAPI} if JNR can't generate its stubs.
+     *
+     * @return The PosixAPI for a Unix platform.
+     */
+    static PosixAPI loadUnixPosixApi() {
+        try {
+            return new JNRPosixAPI();
+        } catch (Throwable t) {
+            try {
+                return new JNAPosixAPI();
+            } catch (Throwable t2) {
+                t.addSuppressed(t2);
+                throw t;
+            }
+        }
+    }
+
+    /**
+     * Creates an instance of an optional implementation using its public no-args constructor.
+     *
+     * @param className The name of the class.
+     * @return The new instance, or null if the class is not available or can't be used.
+     */
+    static Object newInstanceOrNull(String className) {
+        try {
+            return Class.forName(className).getConstructor().newInstance();
+        } catch (Throwable t) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns the short name of an implementation as used by <code>-Dposix.api</code>.
+     *
+     * @param posixAPI The implementation.
+     * @return Its short name.
+     */
+    static String nameOf(PosixAPI posixAPI) {
+        if (posixAPI instanceof JNRPosixAPI || posixAPI instanceof WinJNRPosixAPI)
+            return "jnr";
+        if (posixAPI instanceof JNAPosixAPI)
+            return "jna";
+        if (posixAPI instanceof RawPosixAPI)
+            return "raw";
+        if (posixAPI instanceof NoOpPosixAPI)
+            return "noop";
+        if (posixAPI.getClass().getName().equals(FFM_POSIX_API))
+            return "ffm";
+        return posixAPI.getClass().getSimpleName();
+    }
+
+    /**
+     * Describes the PosixAPI in use, measuring its cost per call if that hasn't been done already.
+     *
+     * @return The PosixBackend in use.
+     */
+    public static synchronized PosixBackend posixBackend() {
+        loadPosixApi0();
+        if (posixBackend == null || !posixBackend.name().equals(nameOf(POSIX_API)))
+            posixBackend = new PosixBackend(nameOf(POSIX_API), Double.NaN, "assigned");
+        if (Double.isNaN(posixBackend.nanosPerCall()) && !(POSIX_API instanceof NoOpPosixAPI))
+            posixBackend = new PosixBackend(posixBackend.name(),
+                    PosixAPICalibrator.nanosPerCall(POSIX_API),
+                    posixBackend.selectedBy());
+        return posixBackend;
+    }
+
     /**
      * Sets the PosixAPI to a no-op implementation explicitly.
      */
-    public static void useNoOpPosixApi() {
+    public static synchronized void useNoOpPosixApi() {
         POSIX_API = new NoOpPosixAPI("Explicitly disabled");
+        posixBackend = new PosixBackend("noop", Double.NaN, "useNoOpPosixApi");
+    }
+
+    /**
+     * An implementation and its measured cost per call.
+     */
+    static final class Candidate {
+        final PosixAPI posixAPI;
+        final PosixBackend backend;
+
+        Candidate(PosixAPI posixAPI, PosixBackend backend) {
+            this.posixAPI = posixAPI;
+            this.backend = backend;
+        }
     }
 }
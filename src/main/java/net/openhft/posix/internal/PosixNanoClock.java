@@ -0,0 +1,40 @@
+package net.openhft.posix.internal;
+
+import net.openhft.posix.ClockId;
+import net.openhft.posix.NanoClock;
+import net.openhft.posix.PosixAPI;
+
+/**
+ * A {@link NanoClock} which reads the clock via {@link PosixAPI#clock_gettime(int)}, used where no faster binding is available.
+ */
+public final class PosixNanoClock implements NanoClock {
+    private final ClockId clockId;
+    private final int id;
+    private final PosixAPI posix;
+
+    /**
+     * Constructs a PosixNanoClock for a clock ID.
+     *
+     * @param clockId The clock ID to read.
+     */
+    public PosixNanoClock(ClockId clockId) {
+        this.clockId = clockId;
+        this.id = clockId.value();
+        this.posix = PosixAPI.posix();
+    }
+
+    @Override
+    public ClockId clockId() {
+        return clockId;
+    }
+
+    @Override
+    public long nanoTime() {
+        return posix.clock_gettime(id);
+    }
+
+    @Override
+    public String toString() {
+        return "PosixNanoClock{" + clockId + '}';
+    }
+}
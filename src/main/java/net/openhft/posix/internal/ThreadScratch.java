@@ -0,0 +1,62 @@
+package net.openhft.posix.internal;
+
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static net.openhft.posix.internal.UnsafeMemory.UNSAFE;
+
+/**
+ * A small block of native memory per thread, used as the out parameter of calls such as clock_gettime, gettimeofday and statx
+ * so they don't need to malloc and free a struct on every call.
+ * <p>
+ * The memory is allocated the first time a thread uses it and is freed once the thread has been collected.
+ */
+public final class ThreadScratch {
+    /**
+     * The number of bytes available at {@link #address()}, enough for a struct statx and a short path.
+     */
+    public static final int SIZE = 512;
+
+    private static final ThreadLocal<ThreadScratch> SCRATCH = ThreadLocal.withInitial(ThreadScratch::new);
+    private static final ReferenceQueue<ThreadScratch> QUEUE = new ReferenceQueue<>();
+    // keeps the references reachable until the memory they track has been freed
+    private static final Set<Ref> REFS = ConcurrentHashMap.newKeySet();
+
+    private final long address;
+
+    private ThreadScratch() {
+        freeCollected();
+        address = UNSAFE.allocateMemory(SIZE);
+        REFS.add(new Ref(this, address));
+    }
+
+    /**
+     * @return the address of the calling thread's scratch memory, of {@link #SIZE} bytes.
+     */
+    public static long address() {
+        return SCRATCH.get().address;
+    }
+
+    /**
+     * Frees the scratch memory of any threads which have since been collected.
+     */
+    private static void freeCollected() {
+        for (Reference<? extends ThreadScratch> ref; (ref = QUEUE.poll()) != null; ) {
+            Ref r = (Ref) ref;
+            if (REFS.remove(r))
+                UNSAFE.freeMemory(r.address);
+        }
+    }
+
+    static final class Ref extends PhantomReference<ThreadScratch> {
+        final long address;
+
+        Ref(ThreadScratch scratch, long address) {
+            super(scratch, QUEUE);
+            this.address = address;
+        }
+    }
+}
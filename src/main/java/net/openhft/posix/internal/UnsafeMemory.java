@@ -3,6 +3,7 @@ package net.openhft.posix.internal;
 import sun.misc.Unsafe;
 
 import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
 
 /**
  * This enum provides access to the {@link Unsafe} class and some system memory properties.
@@ -31,4 +32,66 @@ public enum UnsafeMemory {
 
     // Indicates if the JVM is running in a 64-bit environment
     public static final boolean IS64BIT = UNSAFE.addressSize() == Long.BYTES;
+
+    /**
+     * Reads a struct timespec, as written by clock_gettime, as nanoseconds.
+     *
+     * @param address The address of the struct timespec.
+     * @return The time in nanoseconds.
+     */
+    public static long timespecNanos(long address) {
+        if (IS32BIT)
+            return (UNSAFE.getInt(address) & 0xFFFFFFFFL) * 1_000_000_000L + UNSAFE.getInt(address + 4);
+        return UNSAFE.getLong(address) * 1_000_000_000L + UNSAFE.getLong(address + 8);
+    }
+
+    /**
+     * Reads a struct timeval, as written by gettimeofday, as microseconds.
+     *
+     * @param address The address of the struct timeval.
+     * @return The time in microseconds.
+     */
+    public static long timevalMicros(long address) {
+        if (IS32BIT)
+            return (UNSAFE.getInt(address) & 0xFFFFFFFFL) * 1_000_000L + UNSAFE.getInt(address + 4);
+        return UNSAFE.getLong(address) * 1_000_000L + UNSAFE.getLong(address + 8);
+    }
+
+    /**
+     * Copies a string into native memory as a NUL terminated C string, for calls made by number.
+     * The caller must free the memory with {@code UNSAFE.freeMemory}
+     *
+     * @param cs The string, encoded as UTF-8.
+     * @return The address of the C string.
+     */
+    public static long toCString(CharSequence cs) {
+        final byte[] bytes = cs.toString().getBytes(StandardCharsets.UTF_8);
+        final long address = UNSAFE.allocateMemory(bytes.length + 1L);
+        for (int i = 0; i < bytes.length; i++)
+            UNSAFE.putByte(address + i, bytes[i]);
+        UNSAFE.putByte(address + bytes.length, (byte) 0);
+        return address;
+    }
+
+    /**
+     * Copies an ASCII string into native memory as a NUL terminated C string, if it fits.
+     *
+     * @param address  The address to write to.
+     * @param cs       The string.
+     * @param capacity The bytes available at address.
+     * @return true if copied, false if the string is too long or not ASCII.
+     */
+    public static boolean putAscii(long address, CharSequence cs, int capacity) {
+        final int length = cs.length();
+        if (length >= capacity)
+            return false;
+        for (int i = 0; i < length; i++) {
+            final char ch = cs.charAt(i);
+            if (ch == 0 || ch >= 0x80)
+                return false;
+            UNSAFE.putByte(address + i, (byte) ch);
+        }
+        UNSAFE.putByte(address + length, (byte) 0);
+        return true;
+    }
 }
@@ -22,4 +22,13 @@ public final class OS {
     public static boolean isMacOSX() {
         return OS_NAME.equals("Mac OS X");
     }
+
+    /**
+     * Checks if the operating system is Linux.
+     *
+     * @return true if the operating system is Linux, false otherwise.
+     */
+    public static boolean isLinux() {
+        return OS_NAME.startsWith("Linux");
+    }
 }
@@ -3,29 +3,262 @@ package net.openhft.posix.internal.jna;
 import com.sun.jna.Native;
 import com.sun.jna.NativeLibrary;
 import com.sun.jna.Platform;
-import com.sun.jna.Pointer;
+import jnr.constants.platform.Errno;
+import net.openhft.posix.Mapping;
+import net.openhft.posix.MclFlag;
 import net.openhft.posix.PosixAPI;
+import net.openhft.posix.PosixRuntimeException;
+import net.openhft.posix.ProcMaps;
+import net.openhft.posix.internal.ThreadScratch;
+import net.openhft.posix.internal.UnsafeMemory;
+import net.openhft.posix.internal.core.Jvm;
+import net.openhft.posix.internal.raw.Syscall;
+
+import java.io.IOException;
 
 /**
- * Abstract class implementing {@link PosixAPI} using JNA (Java Native Access).
- * It provides methods for memory mapping operations, leveraging the JNA library.
+ * Implementation of {@link PosixAPI} using JNA (Java Native Access) direct mapping.
+ * <p>
+ * This doesn't generate any classes at runtime, so it can be used where jnr-ffi is slow to start or can't define its stubs,
+ * at a higher cost per call.
  */
-public abstract class JNAPosixAPI implements PosixAPI {
-    private static final Pointer NULL = Pointer.createConstant(0);
+public final class JNAPosixAPI implements PosixAPI {
+    static final int MLOCK_ONFAULT = 1;
 
     // JNA interface for POSIX functions
     private final JNAPosixInterface jna = new JNAPosixInterface();
 
+    // Cached number of processors
+    private int get_nprocs_conf = 0;
+
     /**
-     * Constructs a JNAPosixAPI instance and initializes the JNA interface.
+     * Constructs a JNAPosixAPI instance and registers the JNA interface with the C library.
      */
     public JNAPosixAPI() {
         NativeLibrary clib = NativeLibrary.getInstance(Platform.C_LIBRARY_NAME);
         Native.register(JNAPosixInterface.class, clib);
     }
 
+    @Override
+    public int open(CharSequence path, int flags, int perm) {
+        return jna.open(path.toString(), flags, perm);
+    }
+
+    @Override
+    public int close(int fd) {
+        return jna.close(fd);
+    }
+
+    @Override
+    public long read(int fd, long dst, long len) {
+        return jna.read(fd, dst, len);
+    }
+
+    @Override
+    public long write(int fd, long src, long len) {
+        return jna.write(fd, src, len);
+    }
+
+    @Override
+    public long lseek(int fd, long offset, int whence) {
+        return jna.lseek(fd, offset, whence);
+    }
+
+    @Override
+    public int lockf(int fd, int cmd, long len) {
+        return jna.lockf(fd, cmd, len);
+    }
+
+    @Override
+    public int ftruncate(int fd, long offset) {
+        return jna.ftruncate(fd, offset);
+    }
+
+    @Override
+    public int fallocate(int fd, int mode, long offset, long length) {
+        int ret = jna.fallocate(fd, mode, offset, length);
+        if (ret == 0 || mode != 0)
+            return ret;
+        // not all file systems support fallocate, posix_fallocate emulates it when mode = 0
+        return jna.posix_fallocate(fd, offset, length) == 0 ? 0 : -1;
+    }
+
     @Override
     public long mmap(long addr, long length, int prot, int flags, int fd, long offset) {
-        return jna.mmap(addr == 0 ? NULL : Pointer.createConstant(addr), length, prot, flags, fd, offset);
+        final long mmap = jna.mmap(addr, length, prot, flags, fd, offset);
+        if (mmap == 0 || mmap == -1)
+            throw PosixRuntimeException.of(lastError());
+        return mmap;
+    }
+
+    @Override
+    public int munmap(long addr, long length) {
+        return jna.munmap(addr, length);
+    }
+
+    @Override
+    public int msync(long address, long length, int mode) {
+        return jna.msync(address, length, mode);
+    }
+
+    @Override
+    public int madvise(long addr, long length, int advice) {
+        return jna.madvise(addr, length, advice);
+    }
+
+    @Override
+    public boolean mlock(long addr, long length) {
+        if (Jvm.isAzul())
+            return true; // no-op on Azul, ignore
+        return checkMlock(jna.mlock(addr, length), "mlock", length);
+    }
+
+    @Override
+    public boolean mlock2(long addr, long length, boolean lockOnFault) {
+        if (Jvm.isAzul())
+            return true; // no-op on Azul, ignore
+        if (!lockOnFault)
+            return mlock(addr, length);
+        // older glibc versions do not include a wrapper for mlock2
+        final int err = (int) jna.syscall(Syscall.MLOCK2.number(), addr, length, MLOCK_ONFAULT);
+        return checkMlock(err, "mlock2", length);
+    }
+
+    private boolean checkMlock(int err, String call, long length) {
+        if (err == 0)
+            return true;
+        if (lastError() == Errno.ENOMEM.intValue())
+            return false;
+        throw new PosixRuntimeException(call + " length: " + length + " error " + lastErrorStr(), lastError());
+    }
+
+    @Override
+    public void mlockall(int flags) {
+        if (flags == MclFlag.MclCurrent.code()
+                || flags == MclFlag.MclCurrentOnFault.code()) {
+            tryMLockAll(flags == MclFlag.MclCurrentOnFault.code());
+            return;
+        }
+        if (jna.mlockall(flags) != 0)
+            throw new PosixRuntimeException("mlockall error " + lastErrorStr(), lastError());
+    }
+
+    /**
+     * Locks each mapping of the current process in turn, ignoring those which can't be locked.
+     *
+     * @param onFault Whether to lock pages as they are faulted in.
+     */
+    private void tryMLockAll(boolean onFault) {
+        try {
+            for (Mapping mapping : ProcMaps.forSelf().list()) {
+                if (mapping.perms().equals("---p"))
+                    continue;
+                try {
+                    if (onFault)
+                        mlock2(mapping.addr(), mapping.length(), true);
+                    else
+                        mlock(mapping.addr(), mapping.length());
+                } catch (PosixRuntimeException ignored) {
+                    // some mappings can't be locked
+                }
+            }
+        } catch (IOException ioe) {
+            throw new PosixRuntimeException(ioe);
+        }
+    }
+
+    @Override
+    public int gettimeofday(long timeval) {
+        return jna.gettimeofday(timeval, 0L);
+    }
+
+    @Override
+    public long clock_gettime(int clockId) throws IllegalArgumentException {
+        final long ptr = ThreadScratch.address();
+        final int ret = jna.clock_gettime(clockId, ptr);
+        if (ret != 0)
+            throw new IllegalArgumentException(lastErrorStr() + ", ret: " + ret);
+        return UnsafeMemory.timespecNanos(ptr);
+    }
+
+    @Override
+    public int clock_gettime(int clockId, long timespec) {
+        return jna.clock_gettime(clockId, timespec);
+    }
+
+    @Override
+    public int sched_setaffinity(int pid, int cpusetsize, long mask) {
+        int ret = jna.sched_setaffinity(pid, cpusetsize, mask);
+        if (ret != 0)
+            throw new IllegalArgumentException(lastErrorStr() + ", ret: " + ret);
+        return ret;
+    }
+
+    @Override
+    public int sched_getaffinity(int pid, int cpusetsize, long mask) {
+        int ret = jna.sched_getaffinity(pid, cpusetsize, mask);
+        if (ret != 0)
+            throw new IllegalArgumentException(lastErrorStr() + ", ret: " + ret);
+        return ret;
+    }
+
+    @Override
+    public long malloc(long size) {
+        return jna.malloc(size);
+    }
+
+    @Override
+    public void free(long ptr) {
+        jna.free(ptr);
+    }
+
+    @Override
+    public int posix_memalign(long memptr, long alignment, long size) {
+        return jna.posix_memalign(memptr, alignment, size);
+    }
+
+    @Override
+    public int get_nprocs() {
+        return jna.get_nprocs();
+    }
+
+    @Override
+    public int get_nprocs_conf() {
+        if (get_nprocs_conf == 0)
+            get_nprocs_conf = jna.get_nprocs_conf();
+        return get_nprocs_conf;
+    }
+
+    @Override
+    public int getpid() {
+        return jna.getpid();
+    }
+
+    @Override
+    public int gettid() {
+        // glibc only added a gettid wrapper in 2.30
+        int ret = (int) jna.syscall(Syscall.GETTID.number());
+        if (ret < 0)
+            throw new IllegalArgumentException(lastErrorStr() + ", ret: " + ret);
+        return ret;
+    }
+
+    @Override
+    public int lastError() {
+        return Native.getLastError();
+    }
+
+    @Override
+    public String strerror(int errno) {
+        return jna.strerror(errno);
+    }
+
+    @Override
+    public long syscall(int number, long arg1, long arg2, long arg3, long arg4, long arg5, long arg6) {
+        if (number < 0) {
+            Native.setLastError(Errno.ENOSYS.intValue());
+            return -1;
+        }
+        return jna.syscall(number, arg1, arg2, arg3, arg4, arg5, arg6);
     }
 }
@@ -1,10 +1,9 @@
 package net.openhft.posix.internal.jna;
 
-import com.sun.jna.Pointer;
-
 /**
- * This class defines the native methods for POSIX-like operations using JNA (Java Native Access).
- * It provides methods for memory mapping operations.
+ * This class defines the native methods for POSIX-like operations using JNA (Java Native Access) direct mapping.
+ * The methods are bound to the C library by {@link com.sun.jna.Native#register(Class, com.sun.jna.NativeLibrary)}.
+ * As with the JNR interface, pointers are passed as a <code>long</code> address.
  */
 public class JNAPosixInterface {
 
@@ -19,5 +18,258 @@ public class JNAPosixInterface {
      * @param offset The offset into the file.
      * @return The starting address of the mapped area.
      */
-    public native long mmap(Pointer addr, long length, int prot, int flags, int fd, long offset);
+    public native long mmap(long addr, long length, int prot, int flags, int fd, long offset);
+
+    /**
+     * Unmaps files or devices from memory.
+     *
+     * @param addr   The address of the mapping.
+     * @param length The length of the mapping.
+     * @return 0 on success, -1 on error.
+     */
+    public native int munmap(long addr, long length);
+
+    /**
+     * Synchronizes a mapping with the underlying file.
+     *
+     * @param addr   The address of the range.
+     * @param length The length of the range.
+     * @param flags  The msync flags.
+     * @return 0 on success, -1 on error.
+     */
+    public native int msync(long addr, long length, int flags);
+
+    /**
+     * Advises the kernel how a range of memory will be used.
+     *
+     * @param addr   The address of the range.
+     * @param length The length of the range.
+     * @param advice The advice.
+     * @return 0 on success, -1 on error.
+     */
+    public native int madvise(long addr, long length, int advice);
+
+    /**
+     * Locks a range of memory into RAM.
+     *
+     * @param addr   The address of the range.
+     * @param length The length of the range.
+     * @return 0 on success, -1 on error.
+     */
+    public native int mlock(long addr, long length);
+
+    /**
+     * Locks all the pages of the process into RAM.
+     *
+     * @param flags The mlockall flags.
+     * @return 0 on success, -1 on error.
+     */
+    public native int mlockall(int flags);
+
+    /**
+     * Opens a file.
+     *
+     * @param path  The path of the file.
+     * @param flags The open flags.
+     * @param perm  The permissions if the file is created.
+     * @return The file descriptor, or -1 on error.
+     */
+    public native int open(String path, int flags, int perm);
+
+    /**
+     * Closes a file descriptor.
+     *
+     * @param fd The file descriptor.
+     * @return 0 on success, -1 on error.
+     */
+    public native int close(int fd);
+
+    /**
+     * Reads from a file descriptor.
+     *
+     * @param fd  The file descriptor.
+     * @param dst The address to read into.
+     * @param len The maximum number of bytes to read.
+     * @return The number of bytes read, or -1 on error.
+     */
+    public native long read(int fd, long dst, long len);
+
+    /**
+     * Writes to a file descriptor.
+     *
+     * @param fd  The file descriptor.
+     * @param src The address to write from.
+     * @param len The number of bytes to write.
+     * @return The number of bytes written, or -1 on error.
+     */
+    public native long write(int fd, long src, long len);
+
+    /**
+     * Repositions the file offset.
+     *
+     * @param fd     The file descriptor.
+     * @param offset The offset.
+     * @param whence How to apply the offset.
+     * @return The resulting offset, or -1 on error.
+     */
+    public native long lseek(int fd, long offset, int whence);
+
+    /**
+     * Locks a section of a file.
+     *
+     * @param fd  The file descriptor.
+     * @param cmd The lockf command.
+     * @param len The length of the section.
+     * @return 0 on success, -1 on error.
+     */
+    public native int lockf(int fd, int cmd, long len);
+
+    /**
+     * Truncates or extends a file.
+     *
+     * @param fd     The file descriptor.
+     * @param length The new length.
+     * @return 0 on success, -1 on error.
+     */
+    public native int ftruncate(int fd, long length);
+
+    /**
+     * Allocates space for a file.
+     *
+     * @param fd     The file descriptor.
+     * @param mode   The allocation mode.
+     * @param offset The offset of the range.
+     * @param length The length of the range.
+     * @return 0 on success, -1 on error.
+     */
+    public native int fallocate(int fd, int mode, long offset, long length);
+
+    /**
+     * Allocates space for a file, emulating it where the file system doesn't support fallocate.
+     *
+     * @param fd     The file descriptor.
+     * @param offset The offset of the range.
+     * @param length The length of the range.
+     * @return 0 on success, or an error number.
+     */
+    public native int posix_fallocate(int fd, long offset, long length);
+
+    /**
+     * Gets the time of day.
+     *
+     * @param timeval    The address of a struct timeval.
+     * @param alwaysNull The obsolete timezone, always 0.
+     * @return 0 on success, -1 on error.
+     */
+    public native int gettimeofday(long timeval, long alwaysNull);
+
+    /**
+     * Reads a clock.
+     *
+     * @param clockId  The clock ID.
+     * @param timespec The address of a struct timespec.
+     * @return 0 on success, -1 on error.
+     */
+    public native int clock_gettime(int clockId, long timespec);
+
+    /**
+     * Allocates native memory.
+     *
+     * @param size The number of bytes.
+     * @return The address of the memory.
+     */
+    public native long malloc(long size);
+
+    /**
+     * Frees native memory.
+     *
+     * @param ptr The address of the memory.
+     */
+    public native void free(long ptr);
+
+    /**
+     * Allocates aligned native memory.
+     *
+     * @param memptr    The address to store the address of the memory in.
+     * @param alignment The alignment.
+     * @param size      The number of bytes.
+     * @return 0 on success, or an error number.
+     */
+    public native int posix_memalign(long memptr, long alignment, long size);
+
+    /**
+     * @return The number of processors available.
+     */
+    public native int get_nprocs();
+
+    /**
+     * @return The number of processors configured.
+     */
+    public native int get_nprocs_conf();
+
+    /**
+     * Sets the CPU affinity of a thread.
+     *
+     * @param pid        The thread ID.
+     * @param cpusetsize The size of the mask in bytes.
+     * @param mask       The address of the mask.
+     * @return 0 on success, -1 on error.
+     */
+    public native int sched_setaffinity(int pid, long cpusetsize, long mask);
+
+    /**
+     * Gets the CPU affinity of a thread.
+     *
+     * @param pid        The thread ID.
+     * @param cpusetsize The size of the mask in bytes.
+     * @param mask       The address of the mask.
+     * @return 0 on success, -1 on error.
+     */
+    public native int sched_getaffinity(int pid, long cpusetsize, long mask);
+
+    /**
+     * @return The process ID.
+     */
+    public native int getpid();
+
+    /**
+     * Returns the message for an error number.
+     *
+     * @param errno The error number.
+     * @return The error message.
+     */
+    public native String strerror(int errno);
+
+    /**
+     * Makes a system call with no arguments.
+     *
+     * @param number The system call number.
+     * @return The result of the system call.
+     */
+    public native long syscall(long number);
+
+    /**
+     * Makes a system call with three arguments.
+     *
+     * @param number The system call number.
+     * @param arg1   The first argument.
+     * @param arg2   The second argument.
+     * @param arg3   The third argument.
+     * @return The result of the system call.
+     */
+    public native long syscall(long number, long arg1, long arg2, long arg3);
+
+    /**
+     * Makes a system call with up to six arguments.
+     *
+     * @param number The system call number.
+     * @param arg1   The first argument.
+     * @param arg2   The second argument.
+     * @param arg3   The third argument.
+     * @param arg4   The fourth argument.
+     * @param arg5   The fifth argument.
+     * @param arg6   The sixth argument.
+     * @return The result of the system call.
+     */
+    public native long syscall(long number, long arg1, long arg2, long arg3, long arg4, long arg5, long arg6);
 }
@@ -6,17 +6,18 @@ import jnr.ffi.Pointer;
 import jnr.ffi.Runtime;
 import jnr.ffi.provider.FFIProvider;
 import net.openhft.posix.*;
+import net.openhft.posix.internal.ErrnoTable;
+import net.openhft.posix.internal.ThreadScratch;
 import net.openhft.posix.internal.UnsafeMemory;
 import net.openhft.posix.internal.core.Jvm;
 import net.openhft.posix.internal.core.OS;
+import net.openhft.posix.internal.raw.Syscall;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.util.function.IntSupplier;
 
-import static net.openhft.posix.internal.UnsafeMemory.UNSAFE;
-
 /**
  * Implementation of {@link PosixAPI} using JNR (Java Native Runtime).
  * Provides POSIX-like methods for file and memory operations, leveraging the JNR library.
@@ -34,13 +35,6 @@ public final class JNRPosixAPI implements PosixAPI {
     static final int LOCK_EX = 2;
     static final int LOCK_UN = 8;
     static final int MLOCK_ONFAULT = 1;
-    static final int SYS_mlock2; // mlock2 syscall value
-
-    static {
-        // These cover the main cases. Full list under https://github.com/torvalds/linux/tree/master/arch
-        SYS_mlock2 = Jvm.isArm() ? 390
-                : Jvm.is64bit() ? 325 : 376;
-    }
 
     // JNR interface for POSIX functions
     private final JNRPosixInterface jnr;
@@ -71,9 +65,8 @@ public final class JNRPosixAPI implements PosixAPI {
         } catch (UnsatisfiedLinkError expected) {
             // ignored
         }
-        if (UnsafeMemory.IS32BIT)
-            return () -> jnr.syscall(224);
-        return () -> jnr.syscall(186);
+        final int sysGettid = Syscall.GETTID.number();
+        return () -> jnr.syscall(sysGettid);
     }
 
     @Override
@@ -111,11 +104,7 @@ public final class JNRPosixAPI implements PosixAPI {
      */
     private static RuntimeException throwPosixException(String msg) {
         final int lastError = RUNTIME.getLastError();
-        for (Errno errno : Errno.values()) {
-            if (errno.intValue() == lastError)
-                throw new PosixRuntimeException(msg + "error " + errno);
-        }
-        throw new PosixRuntimeException(msg + "unknown error " + lastError);
+        throw new PosixRuntimeException(msg + "error " + ErrnoTable.description(lastError), lastError);
     }
 
     @Override
@@ -123,13 +112,9 @@ public final class JNRPosixAPI implements PosixAPI {
 
         final Pointer wrap = addr == 0 ? NULL : Pointer.wrap(RUNTIME, addr);
         final long mmap = jnr.mmap(wrap, length, prot, flags, fd, offset);
-        if (mmap == 0 || mmap == -1) {
-            final int lastError = RUNTIME.getLastError();
-            for (Errno errno : Errno.values()) {
-                if (errno.intValue() == lastError)
-                    throw new PosixRuntimeException(errno.toString());
-            }
-        }
+        // preallocated so callers retrying on e.g. EAGAIN don't create garbage
+        if (mmap == 0 || mmap == -1)
+            throw PosixRuntimeException.of(RUNTIME.getLastError());
         return mmap;
     }
 
@@ -148,7 +133,7 @@ public final class JNRPosixAPI implements PosixAPI {
             return jnr.mlock(addr, length);
 
         // Older glibc versions do not include a wrapper for mlock2, so use syscall for generality
-        return jnr.syscall(SYS_mlock2, addr, length, MLOCK_ONFAULT);
+        return jnr.syscall(Syscall.MLOCK2.number(), addr, length, MLOCK_ONFAULT);
     }
 
     @Override
@@ -161,7 +146,7 @@ public final class JNRPosixAPI implements PosixAPI {
         int err = jnr.mlock(addr, length);
         if (err == 0)
             return true;
-        if (err == Errno.ENOMEM.intValue())
+        if (RUNTIME.getLastError() == Errno.ENOMEM.intValue())
             return false;
         throw throwPosixException("mlock length: " + length + " ");
     }
@@ -175,7 +160,7 @@ public final class JNRPosixAPI implements PosixAPI {
         int err = mlock2_(addr, length, lockOnFault);
         if (err == 0)
             return true;
-        if (err == Errno.ENOMEM.intValue())
+        if (RUNTIME.getLastError() == Errno.ENOMEM.intValue())
             return false;
         throw throwPosixException("mlock2 length: " + length + " ");
     }
@@ -210,11 +195,7 @@ public final class JNRPosixAPI implements PosixAPI {
                     continue;
                 final long kb = mapping.length() / 1024;
                 if (ret != 0) {
-                    final int lastError = RUNTIME.getLastError();
-                    for (Errno errno : Errno.values()) {
-                        if (errno.intValue() == lastError)
-                            System.out.println(mapping + "len: " + kb + " KiB " + " " + errno);
-                    }
+                    System.out.println(mapping + "len: " + kb + " KiB " + " " + ErrnoTable.name(RUNTIME.getLastError()));
                 } else {
                     System.out.println(mapping + "len: " + kb + " KiB " + (onFault ? " mlocked (on fault)" : " mlocked (current pages)"));
                 }
@@ -229,11 +210,42 @@ public final class JNRPosixAPI implements PosixAPI {
         return jnr.munmap(addr, length);
     }
 
+    @Override
+    public int mprotect(long addr, long length, int prot) {
+        return jnr.mprotect(addr, length, prot);
+    }
+
+    @Override
+    public long mremap(long oldAddress, long oldSize, long newSize, int flags, long newAddress) {
+        if (!OS.isLinux())
+            throw new UnsupportedOperationException("mremap is Linux only");
+        final long address = jnr.mremap(oldAddress, oldSize, newSize, flags, newAddress);
+        if (address == -1)
+            throw PosixRuntimeException.of(RUNTIME.getLastError());
+        return address;
+    }
+
     @Override
     public int msync(long address, long length, int flags) {
         return jnr.msync(address, length, flags);
     }
 
+    @Override
+    public int fsync(int fd) {
+        return jnr.fsync(fd);
+    }
+
+    @Override
+    public int fdatasync(int fd) {
+        // macOS has no fdatasync, fsync is the nearest
+        return OS.isMacOSX() ? jnr.fsync(fd) : jnr.fdatasync(fd);
+    }
+
+    @Override
+    public int sync_file_range(int fd, long offset, long nbytes, int flags) {
+        return OS.isLinux() ? jnr.sync_file_range(fd, offset, nbytes, flags) : enosys();
+    }
+
     public class FileLocker implements AutoCloseable {
         private final int fd;
 
@@ -310,6 +322,27 @@ public final class JNRPosixAPI implements PosixAPI {
         return jnr.write(fd, src, len);
     }
 
+    @Override
+    public long pread(int fd, long dst, long len, long offset) {
+        // glibc's pread has a 32-bit offset on 32-bit, elsewhere off_t is 64-bit
+        return OS.isLinux() ? jnr.pread64(fd, dst, len, offset) : jnr.pread(fd, dst, len, offset);
+    }
+
+    @Override
+    public long pwrite(int fd, long src, long len, long offset) {
+        return OS.isLinux() ? jnr.pwrite64(fd, src, len, offset) : jnr.pwrite(fd, src, len, offset);
+    }
+
+    @Override
+    public long preadv(int fd, long iov, int iovcnt, long offset) {
+        return OS.isLinux() ? jnr.preadv64(fd, iov, iovcnt, offset) : jnr.preadv(fd, iov, iovcnt, offset);
+    }
+
+    @Override
+    public long pwritev(int fd, long iov, int iovcnt, long offset) {
+        return OS.isLinux() ? jnr.pwritev64(fd, iov, iovcnt, offset) : jnr.pwritev(fd, iov, iovcnt, offset);
+    }
+
     @Override
     public int gettimeofday(long timeval) {
         return jnr.gettimeofday(timeval, 0L);
@@ -325,6 +358,11 @@ public final class JNRPosixAPI implements PosixAPI {
         jnr.free(ptr);
     }
 
+    @Override
+    public int posix_memalign(long memptr, long alignment, long size) {
+        return jnr.posix_memalign(memptr, alignment, size);
+    }
+
     @Override
     public int get_nprocs() {
         return jnr.get_nprocs();
@@ -378,16 +416,33 @@ public final class JNRPosixAPI implements PosixAPI {
 
     @Override
     public long clock_gettime(int clockId) {
-        long ptr = malloc(16);
-        try {
-            int ret = jnr.clock_gettime(clockId, ptr);
-            if (ret != 0)
-                throw new IllegalArgumentException(lastErrorStr() + ", ret: " + ret);
-            if (UnsafeMemory.IS32BIT)
-                return (UNSAFE.getInt(ptr) & 0xFFFFFFFFL) * 1_000_000_000L + UNSAFE.getInt(ptr + 4);
-            return UNSAFE.getLong(ptr) * 1_000_000_000L + UNSAFE.getInt(ptr + 8);
-        } finally {
-            free(ptr);
-        }
+        // a per-thread buffer means a single native call per timestamp
+        long ptr = ThreadScratch.address();
+        int ret = jnr.clock_gettime(clockId, ptr);
+        if (ret != 0)
+            throw new IllegalArgumentException(lastErrorStr() + ", ret: " + ret);
+        return UnsafeMemory.timespecNanos(ptr);
+    }
+
+    @Override
+    public int clock_gettime(int clockId, long timespec) {
+        return jnr.clock_gettime(clockId, timespec);
+    }
+
+    @Override
+    public long syscall(int number, long arg1, long arg2, long arg3, long arg4, long arg5, long arg6) {
+        if (number < 0)
+            return enosys();
+        return jnr.syscall(number, arg1, arg2, arg3, arg4, arg5, arg6);
+    }
+
+    /**
+     * Fails a call which is not available on this platform, as the C library would.
+     *
+     * @return -1, with errno set to ENOSYS
+     */
+    private static int enosys() {
+        RUNTIME.setLastError(Errno.ENOSYS.intValue());
+        return -1;
     }
 }
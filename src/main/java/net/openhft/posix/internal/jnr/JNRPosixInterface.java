@@ -1,6 +1,7 @@
 package net.openhft.posix.internal.jnr;
 
 import jnr.ffi.Pointer;
+import jnr.ffi.types.intptr_t;
 
 /**
  * This interface defines the native methods for POSIX-like operations using JNR (Java Native Runtime).
@@ -13,6 +14,23 @@ public interface JNRPosixInterface {
 
     long write(int fd, long src, long len);
 
+    long pread(int fd, long dst, long len, long offset);
+
+    long pwrite(int fd, long src, long len, long offset);
+
+    // the 64-bit offset variants on 32-bit glibc
+    long pread64(int fd, long dst, long len, long offset);
+
+    long pwrite64(int fd, long src, long len, long offset);
+
+    long preadv(int fd, long iov, int iovcnt, long offset);
+
+    long pwritev(int fd, long iov, int iovcnt, long offset);
+
+    long preadv64(int fd, long iov, int iovcnt, long offset);
+
+    long pwritev64(int fd, long iov, int iovcnt, long offset);
+
     long lseek(int fd, long offset, int whence);
 
     int lockf(int fd, int cmd, long len);
@@ -32,14 +50,26 @@ public interface JNRPosixInterface {
 
     int munmap(long addr, long length);
 
+    int mprotect(long addr, long length, int prot);
+
+    long mremap(long oldAddress, long oldSize, long newSize, int flags, long newAddress);
+
     int msync(long address, long length, int flags);
 
+    int fsync(int fd);
+
+    int fdatasync(int fd);
+
+    int sync_file_range(int fd, long offset, long nbytes, int flags);
+
     int gettimeofday(long timeval, long alwaysNull);
 
     long malloc(long size);
 
     void free(long ptr);
 
+    int posix_memalign(long memptr, long alignment, long size);
+
     int get_nprocs();
 
     int get_nprocs_conf();
@@ -64,4 +94,8 @@ public interface JNRPosixInterface {
     int syscall(int number);
 
     int syscall(int number, long arg1, long arg2, int arg3);
+
+    @intptr_t
+    long syscall(int number, @intptr_t long arg1, @intptr_t long arg2, @intptr_t long arg3,
+                 @intptr_t long arg4, @intptr_t long arg5, @intptr_t long arg6);
 }
@@ -0,0 +1,76 @@
+package net.openhft.posix.internal.jnr;
+
+import jnr.ffi.LibraryLoader;
+import net.openhft.posix.ClockId;
+import net.openhft.posix.NanoClock;
+import net.openhft.posix.internal.ThreadScratch;
+import net.openhft.posix.internal.UnsafeMemory;
+import net.openhft.posix.internal.core.Jvm;
+
+/**
+ * A {@link NanoClock} which calls the vDSO clock_gettime directly via JNR, skipping libc and the saving of errno.
+ */
+public final class JNRVdsoNanoClock implements NanoClock {
+    // The vDSO is always mapped into Linux processes, and glibc makes it visible to dlopen by this name
+    static final String VDSO_LIBRARY_NAME = "linux-vdso.so.1";
+
+    private static VdsoInterface vdso;
+
+    private final ClockId clockId;
+    private final int id;
+    private final VdsoInterface clock;
+
+    /**
+     * Constructs a JNRVdsoNanoClock, checking the clock can be read.
+     *
+     * @param clockId The clock ID to read.
+     * @throws UnsupportedOperationException If there is no vDSO or it can't read this clock.
+     */
+    public JNRVdsoNanoClock(ClockId clockId) {
+        this.clockId = clockId;
+        this.id = clockId.value();
+        this.clock = vdso();
+        final int ret = clock.clock_gettime(id, ThreadScratch.address());
+        if (ret != 0)
+            throw new UnsupportedOperationException("vDSO clock_gettime " + clockId + " returned " + ret);
+    }
+
+    /**
+     * @return The symbol the vDSO exports clock_gettime as on this architecture.
+     */
+    static String vdsoClockGettimeSymbol() {
+        return Jvm.isArm() && Jvm.is64bit()
+                ? "__kernel_clock_gettime"
+                : "__vdso_clock_gettime";
+    }
+
+    private static synchronized VdsoInterface vdso() {
+        if (vdso == null) {
+            vdso = LibraryLoader.create(VdsoInterface.class)
+                    .library(VDSO_LIBRARY_NAME)
+                    .map("clock_gettime", vdsoClockGettimeSymbol())
+                    .failImmediately()
+                    .load();
+        }
+        return vdso;
+    }
+
+    @Override
+    public ClockId clockId() {
+        return clockId;
+    }
+
+    @Override
+    public long nanoTime() {
+        final long ptr = ThreadScratch.address();
+        final int ret = clock.clock_gettime(id, ptr);
+        if (ret != 0)
+            throw new IllegalArgumentException("clock_gettime " + clockId + " returned " + ret);
+        return UnsafeMemory.timespecNanos(ptr);
+    }
+
+    @Override
+    public String toString() {
+        return "JNRVdsoNanoClock{" + clockId + '}';
+    }
+}
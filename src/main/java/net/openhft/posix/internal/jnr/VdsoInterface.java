@@ -0,0 +1,12 @@
+package net.openhft.posix.internal.jnr;
+
+import jnr.ffi.annotations.IgnoreError;
+
+/**
+ * This interface defines the functions exported by the Linux vDSO (virtual dynamic shared object).
+ * These run entirely in user space, and return a negative errno on failure rather than setting errno.
+ */
+public interface VdsoInterface {
+    @IgnoreError
+    int clock_gettime(int clockId, long timespec);
+}
@@ -1,5 +1,6 @@
 package net.openhft.posix.internal.jnr;
 
+import jnr.constants.platform.Errno;
 import jnr.ffi.Platform;
 import jnr.ffi.provider.FFIProvider;
 import net.openhft.posix.PosixAPI;
@@ -149,11 +150,26 @@ public final class WinJNRPosixAPI implements PosixAPI {
         return RUNTIME.getLastError();
     }
 
+    @Override
+    public long syscall(int number, long arg1, long arg2, long arg3, long arg4, long arg5, long arg6) {
+        // there are no system calls by number on Windows
+        RUNTIME.setLastError(Errno.ENOSYS.intValue());
+        return -1;
+    }
+
     @Override
     public long clock_gettime(int clockId) throws IllegalArgumentException {
         return System.currentTimeMillis() * 1_000_000;
     }
 
+    @Override
+    public int clock_gettime(int clockId, long timespec) {
+        long now = System.currentTimeMillis();
+        UNSAFE.putLong(timespec, now / 1000);
+        UNSAFE.putLong(timespec + 8, (now % 1000) * 1_000_000);
+        return 0;
+    }
+
     @Override
     public String strerror(int errno) {
         return jnr.strerror(errno);
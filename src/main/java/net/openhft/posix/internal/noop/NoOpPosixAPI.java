@@ -1,5 +1,6 @@
 package net.openhft.posix.internal.noop;
 
+import jnr.constants.platform.Errno;
 import net.openhft.posix.PosixAPI;
 import net.openhft.posix.PosixRuntimeException;
 
@@ -111,9 +112,10 @@ public class NoOpPosixAPI implements PosixAPI {
         return -1;
     }
 
+    // any call which fails does so as it is not implemented
     @Override
     public int lastError() {
-        return 0;
+        return Errno.ENOSYS.intValue();
     }
 
     @Override
@@ -121,6 +123,11 @@ public class NoOpPosixAPI implements PosixAPI {
         throw posixImplementationMissing();
     }
 
+    @Override
+    public int clock_gettime(int clockId, long timespec) {
+        throw posixImplementationMissing();
+    }
+
     @Override
     public long malloc(long size) {
         throw posixImplementationMissing();
@@ -151,6 +158,12 @@ public class NoOpPosixAPI implements PosixAPI {
         throw posixImplementationMissing();
     }
 
+    // fails with ENOSYS, see lastError()
+    @Override
+    public long syscall(int number, long arg1, long arg2, long arg3, long arg4, long arg5, long arg6) {
+        return -1;
+    }
+
     // slight loss of info on no-op
     @Override
     public String strerror(int errno) {
@@ -1,11 +1,453 @@
 package net.openhft.posix.internal.raw;
 
+import jnr.constants.platform.Errno;
+import jnr.ffi.LibraryLoader;
+import jnr.ffi.Platform;
+import jnr.ffi.Runtime;
+import jnr.ffi.types.intptr_t;
+import net.openhft.posix.CpuTopology;
+import net.openhft.posix.Mapping;
+import net.openhft.posix.MclFlag;
 import net.openhft.posix.PosixAPI;
+import net.openhft.posix.PosixRuntimeException;
+import net.openhft.posix.ProcMaps;
+import net.openhft.posix.internal.ErrnoTable;
+import net.openhft.posix.internal.ThreadScratch;
+import net.openhft.posix.internal.UnsafeMemory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import static net.openhft.posix.internal.UnsafeMemory.IS32BIT;
+import static net.openhft.posix.internal.UnsafeMemory.UNSAFE;
 
 /**
- * This abstract class serves as a base for raw POSIX API implementations.
- * It implements the {@link PosixAPI} interface, providing a foundation for low-level POSIX operations.
+ * Implementation of {@link PosixAPI} which makes every call as a system call by number, using the {@link Syscall} table for
+ * this architecture, rather than through the C library wrappers.
+ * <p>
+ * This allows newer kernel features such as mlock2, membarrier, memfd_create, copy_file_range and io_uring to be used
+ * where the C library is too old to have wrappers for them. Only the generic syscall(2) entry point is needed from the C library.
+ * <p>
+ * The kernel interfaces differ from the C library in places, which are handled here e.g.
+ * on 32-bit platforms 64-bit offsets are passed as two registers, lockf is built on fcntl,
+ * and get_nprocs reads /sys as the C library does.
  */
-public abstract class RawPosixAPI implements PosixAPI {
-    // This class intentionally left blank as it serves as a base for specific raw POSIX API implementations
+public final class RawPosixAPI implements PosixAPI {
+
+    static final int AT_FDCWD = -100;
+    static final int MLOCK_ONFAULT = 1;
+    // added by the C library on 32-bit platforms
+    static final int O_LARGEFILE = Syscall.Arch.CURRENT == Syscall.Arch.ARM ? 0x20000 : 0x8000;
+    // 32-bit arm passes 64-bit arguments in an even/odd register pair
+    static final boolean ARM_EABI = Syscall.Arch.CURRENT == Syscall.Arch.ARM;
+
+    // fcntl record locks, the 64-bit variants on 32-bit platforms
+    static final int F_GETLK = IS32BIT ? 12 : 5;
+    static final int F_SETLK = IS32BIT ? 13 : 6;
+    static final int F_SETLKW = IS32BIT ? 14 : 7;
+    static final short F_RDLCK = 0;
+    static final short F_WRLCK = 1;
+    static final short F_UNLCK = 2;
+    static final short SEEK_CUR = 1;
+    // offsets in struct flock, i386 packs the 64-bit fields on a 4 byte boundary
+    static final int FLOCK_START = Syscall.Arch.CURRENT == Syscall.Arch.I386 ? 4 : 8;
+    static final int FLOCK_LEN = FLOCK_START + 8;
+    static final int FLOCK_PID = FLOCK_LEN + 8;
+
+    // the generic syscall entry point of the C library
+    private final RawSyscallInterface raw;
+    private final Runtime runtime;
+
+    // Cached number of processors
+    private int get_nprocs_conf = 0;
+
+    /**
+     * Constructs a RawPosixAPI, loading the syscall entry point of the C library.
+     *
+     * @throws UnsupportedOperationException If there is no system call table for this architecture.
+     */
+    public RawPosixAPI() {
+        if (Syscall.Arch.CURRENT == Syscall.Arch.UNKNOWN)
+            throw new UnsupportedOperationException("No system call table for " + System.getProperty("os.arch"));
+        raw = LibraryLoader.create(RawSyscallInterface.class)
+                .library(Platform.getNativePlatform().getStandardCLibraryName())
+                .load();
+        runtime = Runtime.getRuntime(raw);
+    }
+
+    @Override
+    public long syscall(int number, long arg1, long arg2, long arg3, long arg4, long arg5, long arg6) {
+        if (number < 0) {
+            runtime.setLastError(Errno.ENOSYS.intValue());
+            return -1;
+        }
+        return raw.syscall(number, arg1, arg2, arg3, arg4, arg5, arg6);
+    }
+
+    private long syscall(Syscall call, long arg1, long arg2, long arg3) {
+        return syscall(call.number(), arg1, arg2, arg3, 0, 0, 0);
+    }
+
+    /**
+     * @return The low 32 bits of a 64-bit value as passed in a register on 32-bit platforms.
+     */
+    private static long lo(long value) {
+        return value & 0xFFFFFFFFL;
+    }
+
+    /**
+     * @return The high 32 bits of a 64-bit value as passed in a register on 32-bit platforms.
+     */
+    private static long hi(long value) {
+        return value >>> 32;
+    }
+
+    @Override
+    public int open(CharSequence path, int flags, int perm) {
+        final long cpath = UnsafeMemory.toCString(path);
+        try {
+            final int flags2 = IS32BIT ? flags | O_LARGEFILE : flags;
+            return (int) syscall(Syscall.OPENAT.number(), AT_FDCWD, cpath, flags2, perm, 0, 0);
+        } finally {
+            UNSAFE.freeMemory(cpath);
+        }
+    }
+
+    @Override
+    public int close(int fd) {
+        return (int) syscall(Syscall.CLOSE, fd, 0, 0);
+    }
+
+    @Override
+    public long read(int fd, long dst, long len) {
+        return syscall(Syscall.READ, fd, dst, len);
+    }
+
+    @Override
+    public long write(int fd, long src, long len) {
+        return syscall(Syscall.WRITE, fd, src, len);
+    }
+
+    @Override
+    public long pread(int fd, long dst, long len, long offset) {
+        if (!IS32BIT)
+            return syscall(Syscall.PREAD64.number(), fd, dst, len, offset, 0, 0);
+        // arm EABI aligns the 64-bit offset to an even register pair
+        if (ARM_EABI)
+            return syscall(Syscall.PREAD64.number(), fd, dst, len, 0, lo(offset), hi(offset));
+        return syscall(Syscall.PREAD64.number(), fd, dst, len, lo(offset), hi(offset), 0);
+    }
+
+    @Override
+    public long pwrite(int fd, long src, long len, long offset) {
+        if (!IS32BIT)
+            return syscall(Syscall.PWRITE64.number(), fd, src, len, offset, 0, 0);
+        if (ARM_EABI)
+            return syscall(Syscall.PWRITE64.number(), fd, src, len, 0, lo(offset), hi(offset));
+        return syscall(Syscall.PWRITE64.number(), fd, src, len, lo(offset), hi(offset), 0);
+    }
+
+    // preadv and friends take the offset as low and high words on all architectures, so need no padding,
+    // on 64-bit the low word is the whole offset
+    private static long posLow(long offset) {
+        return IS32BIT ? lo(offset) : offset;
+    }
+
+    private static long posHigh(long offset) {
+        return IS32BIT ? hi(offset) : 0;
+    }
+
+    @Override
+    public long preadv(int fd, long iov, int iovcnt, long offset) {
+        return syscall(Syscall.PREADV.number(), fd, iov, iovcnt, posLow(offset), posHigh(offset), 0);
+    }
+
+    @Override
+    public long pwritev(int fd, long iov, int iovcnt, long offset) {
+        return syscall(Syscall.PWRITEV.number(), fd, iov, iovcnt, posLow(offset), posHigh(offset), 0);
+    }
+
+    @Override
+    public long preadv2(int fd, long iov, int iovcnt, long offset, int flags) {
+        return syscall(Syscall.PREADV2.number(), fd, iov, iovcnt, posLow(offset), posHigh(offset), flags);
+    }
+
+    @Override
+    public long pwritev2(int fd, long iov, int iovcnt, long offset, int flags) {
+        return syscall(Syscall.PWRITEV2.number(), fd, iov, iovcnt, posLow(offset), posHigh(offset), flags);
+    }
+
+    @Override
+    public long lseek(int fd, long offset, int whence) {
+        if (!IS32BIT)
+            return syscall(Syscall.LSEEK, fd, offset, whence);
+        // _llseek writes the resulting 64-bit offset
+        final long result = ThreadScratch.address();
+        if (syscall(Syscall.LSEEK.number(), fd, hi(offset), lo(offset), result, whence, 0) != 0)
+            return -1;
+        return UNSAFE.getLong(result);
+    }
+
+    @Override
+    public int ftruncate(int fd, long offset) {
+        if (!IS32BIT)
+            return (int) syscall(Syscall.FTRUNCATE, fd, offset, 0);
+        if (ARM_EABI)
+            return (int) syscall(Syscall.FTRUNCATE.number(), fd, 0, lo(offset), hi(offset), 0, 0);
+        return (int) syscall(Syscall.FTRUNCATE, fd, lo(offset), hi(offset));
+    }
+
+    @Override
+    public int fallocate(int fd, int mode, long offset, long length) {
+        if (!IS32BIT)
+            return (int) syscall(Syscall.FALLOCATE.number(), fd, mode, offset, length, 0, 0);
+        return (int) syscall(Syscall.FALLOCATE.number(), fd, mode, lo(offset), hi(offset), lo(length), hi(length));
+    }
+
+    @Override
+    public int sync_file_range(int fd, long offset, long nbytes, int flags) {
+        if (!IS32BIT)
+            return (int) syscall(Syscall.SYNC_FILE_RANGE.number(), fd, offset, nbytes, flags, 0, 0);
+        // arm_sync_file_range takes the flags second so the offsets are in aligned register pairs
+        if (ARM_EABI)
+            return (int) syscall(Syscall.SYNC_FILE_RANGE.number(), fd, flags, lo(offset), hi(offset), lo(nbytes), hi(nbytes));
+        return (int) syscall(Syscall.SYNC_FILE_RANGE.number(), fd, lo(offset), hi(offset), lo(nbytes), hi(nbytes), flags);
+    }
+
+    @Override
+    public int posix_fadvise(int fd, long offset, long len, int advice) {
+        if (!IS32BIT)
+            return (int) syscall(Syscall.FADVISE64.number(), fd, offset, len, advice, 0, 0);
+        // arm_fadvise64_64 takes the advice second so the offsets are in aligned register pairs
+        if (ARM_EABI)
+            return (int) syscall(Syscall.FADVISE64.number(), fd, advice, lo(offset), hi(offset), lo(len), hi(len));
+        // fadvise64_64 on i386
+        return (int) syscall(Syscall.FADVISE64.number(), fd, lo(offset), hi(offset), lo(len), hi(len), advice);
+    }
+
+    @Override
+    public int readahead(int fd, long offset, long count) {
+        if (!IS32BIT)
+            return (int) syscall(Syscall.READAHEAD.number(), fd, offset, count, 0, 0, 0);
+        // the offset is in an aligned register pair on arm
+        if (ARM_EABI)
+            return (int) syscall(Syscall.READAHEAD.number(), fd, 0, lo(offset), hi(offset), count, 0);
+        return (int) syscall(Syscall.READAHEAD.number(), fd, lo(offset), hi(offset), count, 0, 0);
+    }
+
+    @Override
+    public int lockf(int fd, int cmd, long len) {
+        // lockf is a C library function over fcntl record locks
+        final int fcntlCmd;
+        final short type;
+        switch (cmd) {
+            case 0: // F_ULOCK
+                fcntlCmd = F_SETLK;
+                type = F_UNLCK;
+                break;
+            case 1: // F_LOCK
+                fcntlCmd = F_SETLKW;
+                type = F_WRLCK;
+                break;
+            case 2: // F_TLOCK
+                fcntlCmd = F_SETLK;
+                type = F_WRLCK;
+                break;
+            case 3: // F_TEST
+                fcntlCmd = F_GETLK;
+                type = F_RDLCK;
+                break;
+            default:
+                return -1;
+        }
+        final long flock = ThreadScratch.address();
+        UNSAFE.setMemory(flock, FLOCK_PID + 8, (byte) 0);
+        UNSAFE.putShort(flock, type);
+        UNSAFE.putShort(flock + 2, SEEK_CUR);
+        UNSAFE.putLong(flock + FLOCK_START, 0L);
+        UNSAFE.putLong(flock + FLOCK_LEN, len);
+        final int ret = (int) syscall(Syscall.FCNTL, fd, fcntlCmd, flock);
+        if (ret != 0 || fcntlCmd != F_GETLK)
+            return ret;
+        // locked by another process
+        if (UNSAFE.getShort(flock) != F_UNLCK && UNSAFE.getInt(flock + FLOCK_PID) != getpid())
+            return -1;
+        return 0;
+    }
+
+    @Override
+    public long mmap(long addr, long length, int prot, int flags, int fd, long offset) {
+        final long mmap = IS32BIT
+                ? syscall(Syscall.MMAP.number(), addr, length, prot, flags, fd, offset >>> 12)
+                : syscall(Syscall.MMAP.number(), addr, length, prot, flags, fd, offset);
+        if (mmap == 0 || mmap == -1)
+            throw PosixRuntimeException.of(lastError());
+        return mmap;
+    }
+
+    @Override
+    public int munmap(long addr, long length) {
+        return (int) syscall(Syscall.MUNMAP, addr, length, 0);
+    }
+
+    @Override
+    public int msync(long address, long length, int mode) {
+        return (int) syscall(Syscall.MSYNC, address, length, mode);
+    }
+
+    @Override
+    public int madvise(long addr, long length, int advice) {
+        return (int) syscall(Syscall.MADVISE, addr, length, advice);
+    }
+
+    @Override
+    public boolean mlock(long addr, long length) {
+        return checkMlock((int) syscall(Syscall.MLOCK, addr, length, 0), "mlock", length);
+    }
+
+    @Override
+    public boolean mlock2(long addr, long length, boolean lockOnFault) {
+        return checkMlock((int) syscall(Syscall.MLOCK2, addr, length, lockOnFault ? MLOCK_ONFAULT : 0), "mlock2", length);
+    }
+
+    private boolean checkMlock(int err, String call, long length) {
+        if (err == 0)
+            return true;
+        if (lastError() == Errno.ENOMEM.intValue())
+            return false;
+        throw new PosixRuntimeException(call + " length: " + length + " error " + lastErrorStr(), lastError());
+    }
+
+    @Override
+    public void mlockall(int flags) {
+        if (flags == MclFlag.MclCurrent.code()
+                || flags == MclFlag.MclCurrentOnFault.code()) {
+            tryMLockAll(flags);
+            return;
+        }
+        if (syscall(Syscall.MLOCKALL, flags, 0, 0) != 0)
+            throw new PosixRuntimeException("mlockall error " + lastErrorStr(), lastError());
+    }
+
+    /**
+     * Attempts to lock each mapping of the current process, skipping any which can't be locked.
+     *
+     * @param flags The mlockall flags.
+     */
+    private void tryMLockAll(int flags) {
+        try {
+            final int mlock2Flags = flags == MclFlag.MclCurrentOnFault.code() ? MLOCK_ONFAULT : 0;
+            for (Mapping mapping : ProcMaps.forSelf().list()) {
+                if (mapping.perms().equals("---p"))
+                    continue;
+                syscall(Syscall.MLOCK2, mapping.addr(), mapping.length(), mlock2Flags);
+            }
+        } catch (IOException ioe) {
+            throw new PosixRuntimeException(ioe);
+        }
+    }
+
+    @Override
+    public int gettimeofday(long timeval) {
+        return (int) syscall(Syscall.GETTIMEOFDAY, timeval, 0, 0);
+    }
+
+    @Override
+    public long clock_gettime(int clockId) {
+        final long ptr = ThreadScratch.address();
+        final int ret = clock_gettime(clockId, ptr);
+        if (ret != 0)
+            throw new IllegalArgumentException(lastErrorStr() + ", ret: " + ret);
+        return UnsafeMemory.timespecNanos(ptr);
+    }
+
+    @Override
+    public int clock_gettime(int clockId, long timespec) {
+        return (int) syscall(Syscall.CLOCK_GETTIME, clockId, timespec, 0);
+    }
+
+    @Override
+    public int sched_setaffinity(int pid, int cpusetsize, long mask) {
+        final int ret = (int) syscall(Syscall.SCHED_SETAFFINITY, pid, cpusetsize, mask);
+        if (ret != 0)
+            throw new IllegalArgumentException(lastErrorStr() + ", ret: " + ret);
+        return ret;
+    }
+
+    @Override
+    public int sched_getaffinity(int pid, int cpusetsize, long mask) {
+        // the kernel returns the number of bytes written, the C library returns 0
+        final int ret = (int) syscall(Syscall.SCHED_GETAFFINITY, pid, cpusetsize, mask);
+        if (ret < 0)
+            throw new IllegalArgumentException(lastErrorStr() + ", ret: " + ret);
+        return 0;
+    }
+
+    @Override
+    public long malloc(long size) {
+        return UNSAFE.allocateMemory(size);
+    }
+
+    @Override
+    public void free(long ptr) {
+        UNSAFE.freeMemory(ptr);
+    }
+
+    @Override
+    public int get_nprocs() {
+        return countCpus("/sys/devices/system/cpu/online");
+    }
+
+    @Override
+    public int get_nprocs_conf() {
+        if (get_nprocs_conf == 0)
+            get_nprocs_conf = countCpus("/sys/devices/system/cpu/possible");
+        return get_nprocs_conf;
+    }
+
+    /**
+     * Counts the CPUs in a CPU list file e.g. 0-3,8-11
+     *
+     * @param filename The file to read.
+     * @return The number of CPUs listed, or the number of available processors if it can't be read.
+     */
+    static int countCpus(String filename) {
+        try {
+            final String list = new String(Files.readAllBytes(Paths.get(filename)), StandardCharsets.ISO_8859_1);
+            return CpuTopology.parseCpuList(list).cardinality();
+        } catch (IOException | NumberFormatException e) {
+            return java.lang.Runtime.getRuntime().availableProcessors();
+        }
+    }
+
+    @Override
+    public int getpid() {
+        return (int) syscall(Syscall.GETPID, 0, 0, 0);
+    }
+
+    @Override
+    public int gettid() {
+        return (int) syscall(Syscall.GETTID, 0, 0, 0);
+    }
+
+    @Override
+    public int lastError() {
+        return runtime.getLastError();
+    }
+
+    @Override
+    public String strerror(int errno) {
+        return ErrnoTable.description(errno);
+    }
+
+    /**
+     * The generic system call entry point of the C library, which sets errno on error.
+     */
+    public interface RawSyscallInterface {
+        @intptr_t
+        long syscall(int number, @intptr_t long arg1, @intptr_t long arg2, @intptr_t long arg3,
+                     @intptr_t long arg4, @intptr_t long arg5, @intptr_t long arg6);
+    }
 }
@@ -0,0 +1,169 @@
+package net.openhft.posix.internal.raw;
+
+import net.openhft.posix.internal.UnsafeMemory;
+import net.openhft.posix.internal.core.OS;
+
+/**
+ * This enum holds the Linux system call numbers for each supported architecture, so calls can be made by number where the
+ * C library has no wrapper, or an older wrapper.
+ * Full tables are under https://github.com/torvalds/linux/tree/master/arch
+ * <p>
+ * Where a 32-bit architecture only has a 64-bit offset variant, that is used e.g. mmap2, ftruncate64 and fcntl64,
+ * and the caller is expected to pass the arguments that variant takes.
+ */
+public enum Syscall {
+    //     x86_64, aarch64, i386, arm
+    READ(0, 63, 3, 3),
+    WRITE(1, 64, 4, 4),
+    // aarch64 only has openat
+    OPEN(2, -1, 5, 5),
+    CLOSE(3, 57, 6, 6),
+    // aarch64 has fstat, but no stat
+    FSTAT(5, 80, 197, 197),
+    // _llseek on 32-bit
+    LSEEK(8, 62, 140, 140),
+    // mmap2 on 32-bit, which takes the offset in 4 KiB pages
+    MMAP(9, 222, 192, 192),
+    MPROTECT(10, 226, 125, 125),
+    MUNMAP(11, 215, 91, 91),
+    PREAD64(17, 67, 180, 180),
+    PWRITE64(18, 68, 181, 181),
+    READV(19, 65, 145, 145),
+    WRITEV(20, 66, 146, 146),
+    MREMAP(25, 216, 163, 163),
+    MSYNC(26, 227, 144, 144),
+    MADVISE(28, 233, 219, 220),
+    GETPID(39, 172, 20, 20),
+    // sendfile64 on 32-bit, which takes a 64-bit offset
+    SENDFILE(40, 71, 239, 239),
+    SOCKETPAIR(53, 199, 360, 288),
+    // fcntl64 on 32-bit
+    FCNTL(72, 25, 221, 221),
+    FLOCK(73, 32, 143, 143),
+    FSYNC(74, 82, 118, 118),
+    FDATASYNC(75, 83, 148, 148),
+    // ftruncate64 on 32-bit
+    FTRUNCATE(77, 46, 194, 194),
+    GETTIMEOFDAY(96, 169, 78, 78),
+    MLOCK(149, 228, 150, 150),
+    MLOCKALL(151, 230, 152, 152),
+    GETTID(186, 178, 224, 224),
+    READAHEAD(187, 213, 225, 225),
+    SCHED_SETAFFINITY(203, 122, 241, 241),
+    SCHED_GETAFFINITY(204, 123, 242, 242),
+    // fadvise64_64 on 32-bit, arm_fadvise64_64 on arm which takes the advice before the offset
+    FADVISE64(221, 223, 272, 270),
+    CLOCK_GETTIME(228, 113, 265, 263),
+    OPENAT(257, 56, 295, 322),
+    SPLICE(275, 76, 313, 340),
+    TEE(276, 77, 315, 342),
+    // arm_sync_file_range on arm which takes the flags before the offset
+    SYNC_FILE_RANGE(277, 84, 314, 341),
+    VMSPLICE(278, 75, 316, 343),
+    FALLOCATE(285, 47, 324, 352),
+    PIPE2(293, 59, 331, 359),
+    PREADV(295, 69, 333, 361),
+    PWRITEV(296, 70, 334, 362),
+    GETCPU(309, 168, 318, 345),
+    MEMFD_CREATE(319, 279, 356, 385),
+    MEMBARRIER(324, 283, 375, 389),
+    MLOCK2(325, 284, 376, 390),
+    COPY_FILE_RANGE(326, 285, 377, 391),
+    PREADV2(327, 286, 378, 392),
+    PWRITEV2(328, 287, 379, 393),
+    STATX(332, 291, 383, 397),
+    IO_URING_SETUP(425, 425, 425, 425),
+    IO_URING_ENTER(426, 426, 426, 426),
+    IO_URING_REGISTER(427, 427, 427, 427);
+
+    // The number of this system call on this architecture, or -1 if not available
+    private final int number;
+
+    /**
+     * Constructor for Syscall, selecting the number for the current architecture.
+     *
+     * @param x86_64  The number on x86_64.
+     * @param aarch64 The number on aarch64.
+     * @param i386    The number on i386.
+     * @param arm     The number on 32-bit arm EABI.
+     */
+    Syscall(int x86_64, int aarch64, int i386, int arm) {
+        switch (Arch.CURRENT) {
+            case X86_64:
+                number = x86_64;
+                break;
+            case AARCH64:
+                number = aarch64;
+                break;
+            case I386:
+                number = i386;
+                break;
+            case ARM:
+                number = arm;
+                break;
+            default:
+                number = -1;
+                break;
+        }
+    }
+
+    /**
+     * @return The number of this system call on this architecture, or -1 if not available.
+     */
+    public int number() {
+        return number;
+    }
+
+    /**
+     * @return The number of this system call on a 64-bit architecture, or -1 on 32-bit where 64-bit arguments are split
+     * across registers and the call can't be made with the same arguments.
+     */
+    public int number64() {
+        return UnsafeMemory.IS64BIT ? number : -1;
+    }
+
+    /**
+     * @return Whether this system call has a number on this architecture.
+     */
+    public boolean isAvailable() {
+        return number >= 0;
+    }
+
+    /**
+     * The architectures with a system call table.
+     */
+    public enum Arch {
+        X86_64, AARCH64, I386, ARM, UNKNOWN;
+
+        // The architecture of this JVM, the numbers are only valid for Linux
+        public static final Arch CURRENT = OS.isLinux()
+                ? of(System.getProperty("os.arch", "?"), UnsafeMemory.IS64BIT)
+                : UNKNOWN;
+
+        /**
+         * Returns the architecture for a value of the os.arch system property.
+         *
+         * @param osArch The os.arch value.
+         * @param is64bit Whether the JVM is 64-bit.
+         * @return The matching architecture, or UNKNOWN.
+         */
+        static Arch of(String osArch, boolean is64bit) {
+            switch (osArch) {
+                case "amd64":
+                case "x86_64":
+                    return is64bit ? X86_64 : I386;
+                case "x86":
+                case "i386":
+                case "i486":
+                case "i586":
+                case "i686":
+                    return I386;
+                case "aarch64":
+                case "arm64":
+                    return AARCH64;
+                default:
+                    return osArch.startsWith("arm") ? ARM : UNKNOWN;
+            }
+        }
+    }
+}
@@ -0,0 +1,466 @@
+package net.openhft.posix.internal.ffm;
+
+import jnr.constants.platform.Errno;
+import net.openhft.posix.Mapping;
+import net.openhft.posix.MclFlag;
+import net.openhft.posix.PosixAPI;
+import net.openhft.posix.PosixRuntimeException;
+import net.openhft.posix.ProcMaps;
+import net.openhft.posix.internal.ThreadScratch;
+import net.openhft.posix.internal.UnsafeMemory;
+import net.openhft.posix.internal.core.Jvm;
+import net.openhft.posix.internal.raw.Syscall;
+
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.FunctionDescriptor;
+import java.lang.foreign.Linker;
+import java.lang.foreign.MemoryLayout;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.SymbolLookup;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.VarHandle;
+
+import static java.lang.foreign.ValueLayout.ADDRESS;
+import static java.lang.foreign.ValueLayout.JAVA_INT;
+import static java.lang.foreign.ValueLayout.JAVA_LONG;
+
+/**
+ * Implementation of {@link PosixAPI} using the Foreign Function and Memory API (JDK 22+).
+ * <p>
+ * Calls which are short and never block, such as getpid and clock_gettime, are bound as critical downcalls which skip the
+ * thread state transition. Calls which can block, such as mmap, msync and madvise, use regular downcalls so they don't stall
+ * safepoints, and capture errno for {@link #lastError()}.
+ * <p>
+ * Pointers are passed as a Java long, as with the JNR implementation, which is equivalent on the 64-bit platforms the FFM API supports.
+ * This requires native access to be enabled e.g. with <code>--enable-native-access=ALL-UNNAMED</code>
+ */
+public final class FFMPosixAPI implements PosixAPI {
+
+    static final Linker LINKER = Linker.nativeLinker();
+    static final SymbolLookup LIBC = LINKER.defaultLookup();
+
+    static final Linker.Option CRITICAL = Linker.Option.critical(false);
+    static final Linker.Option ERRNO = Linker.Option.captureCallState("errno");
+    static final VarHandle ERRNO_HANDLE = Linker.Option.captureStateLayout()
+            .varHandle(MemoryLayout.PathElement.groupElement("errno"));
+
+    static final int MLOCK_ONFAULT = 1;
+    static final long SYS_mlock2 = Syscall.MLOCK2.number();
+    static final long SYS_gettid = Syscall.GETTID.number();
+
+    // the captured errno of the last call by each thread
+    private static final ThreadLocal<MemorySegment> CALL_STATE =
+            ThreadLocal.withInitial(() -> Arena.ofAuto().allocate(Linker.Option.captureStateLayout()));
+
+    private static final MethodHandle OPEN = downcall("open", FunctionDescriptor.of(JAVA_INT, ADDRESS, JAVA_INT, JAVA_INT), ERRNO, Linker.Option.firstVariadicArg(2));
+    private static final MethodHandle CLOSE = downcall("close", FunctionDescriptor.of(JAVA_INT, JAVA_INT), ERRNO);
+    private static final MethodHandle READ = downcall("read", FunctionDescriptor.of(JAVA_LONG, JAVA_INT, JAVA_LONG, JAVA_LONG), ERRNO);
+    private static final MethodHandle WRITE = downcall("write", FunctionDescriptor.of(JAVA_LONG, JAVA_INT, JAVA_LONG, JAVA_LONG), ERRNO);
+    private static final MethodHandle LSEEK = downcall("lseek", FunctionDescriptor.of(JAVA_LONG, JAVA_INT, JAVA_LONG, JAVA_INT), ERRNO);
+    private static final MethodHandle LOCKF = downcall("lockf", FunctionDescriptor.of(JAVA_INT, JAVA_INT, JAVA_INT, JAVA_LONG), ERRNO);
+    private static final MethodHandle FTRUNCATE = downcall("ftruncate", FunctionDescriptor.of(JAVA_INT, JAVA_INT, JAVA_LONG), ERRNO);
+    private static final MethodHandle FALLOCATE = downcall("fallocate", FunctionDescriptor.of(JAVA_INT, JAVA_INT, JAVA_INT, JAVA_LONG, JAVA_LONG), ERRNO);
+    private static final MethodHandle POSIX_FALLOCATE = downcall("posix_fallocate", FunctionDescriptor.of(JAVA_INT, JAVA_INT, JAVA_LONG, JAVA_LONG), ERRNO);
+    private static final MethodHandle MMAP = downcall("mmap", FunctionDescriptor.of(JAVA_LONG, JAVA_LONG, JAVA_LONG, JAVA_INT, JAVA_INT, JAVA_INT, JAVA_LONG), ERRNO);
+    private static final MethodHandle MUNMAP = downcall("munmap", FunctionDescriptor.of(JAVA_INT, JAVA_LONG, JAVA_LONG), ERRNO);
+    private static final MethodHandle MSYNC = downcall("msync", FunctionDescriptor.of(JAVA_INT, JAVA_LONG, JAVA_LONG, JAVA_INT), ERRNO);
+    private static final MethodHandle MADVISE = downcall("madvise", FunctionDescriptor.of(JAVA_INT, JAVA_LONG, JAVA_LONG, JAVA_INT), ERRNO);
+    private static final MethodHandle MLOCK = downcall("mlock", FunctionDescriptor.of(JAVA_INT, JAVA_LONG, JAVA_LONG), ERRNO);
+    private static final MethodHandle MLOCKALL = downcall("mlockall", FunctionDescriptor.of(JAVA_INT, JAVA_INT), ERRNO);
+    private static final MethodHandle SYSCALL3 = downcall("syscall", FunctionDescriptor.of(JAVA_LONG, JAVA_LONG, JAVA_LONG, JAVA_LONG, JAVA_LONG), ERRNO, Linker.Option.firstVariadicArg(1));
+    private static final MethodHandle SYSCALL6 = downcall("syscall", FunctionDescriptor.of(JAVA_LONG, JAVA_LONG, JAVA_LONG, JAVA_LONG, JAVA_LONG, JAVA_LONG, JAVA_LONG, JAVA_LONG), ERRNO, Linker.Option.firstVariadicArg(1));
+    private static final MethodHandle SCHED_SETAFFINITY = downcall("sched_setaffinity", FunctionDescriptor.of(JAVA_INT, JAVA_INT, JAVA_LONG, JAVA_LONG), ERRNO);
+    private static final MethodHandle SCHED_GETAFFINITY = downcall("sched_getaffinity", FunctionDescriptor.of(JAVA_INT, JAVA_INT, JAVA_LONG, JAVA_LONG), ERRNO);
+    private static final MethodHandle STRERROR = downcall("strerror", FunctionDescriptor.of(ADDRESS, JAVA_INT), CRITICAL);
+
+    // not critical as they can take a lock in the allocator, or call mmap
+    private static final MethodHandle MALLOC = downcall("malloc", FunctionDescriptor.of(JAVA_LONG, JAVA_LONG));
+    private static final MethodHandle FREE = downcall("free", FunctionDescriptor.ofVoid(JAVA_LONG));
+    private static final MethodHandle POSIX_MEMALIGN = downcall("posix_memalign", FunctionDescriptor.of(JAVA_INT, JAVA_LONG, JAVA_LONG, JAVA_LONG));
+
+    // short, non-blocking calls
+    private static final MethodHandle GETTIMEOFDAY = downcall("gettimeofday", FunctionDescriptor.of(JAVA_INT, JAVA_LONG, JAVA_LONG), CRITICAL);
+    private static final MethodHandle CLOCK_GETTIME = downcall("clock_gettime", FunctionDescriptor.of(JAVA_INT, JAVA_INT, JAVA_LONG), CRITICAL);
+    private static final MethodHandle GET_NPROCS = downcall("get_nprocs", FunctionDescriptor.of(JAVA_INT), CRITICAL);
+    private static final MethodHandle GET_NPROCS_CONF = downcall("get_nprocs_conf", FunctionDescriptor.of(JAVA_INT), CRITICAL);
+    private static final MethodHandle GETPID = downcall("getpid", FunctionDescriptor.of(JAVA_INT), CRITICAL);
+    private static final MethodHandle SYSCALL0 = downcall("syscall", FunctionDescriptor.of(JAVA_LONG, JAVA_LONG), CRITICAL, Linker.Option.firstVariadicArg(1));
+    // older versions of glibc don't have gettid
+    private static final MethodHandle GETTID = LIBC.find("gettid").isPresent()
+            ? downcall("gettid", FunctionDescriptor.of(JAVA_INT), CRITICAL)
+            : null;
+
+    // Cached number of processors
+    private int get_nprocs_conf = 0;
+
+    /**
+     * Constructs an FFMPosixAPI, checking native access is enabled so the caller can fall back to another implementation
+     * rather than logging warnings on every restricted call.
+     */
+    public FFMPosixAPI() {
+        if (!FFMPosixAPI.class.getModule().isNativeAccessEnabled())
+            throw new UnsupportedOperationException("Native access not enabled, add --enable-native-access=ALL-UNNAMED");
+    }
+
+    static MethodHandle downcall(String name, FunctionDescriptor descriptor, Linker.Option... options) {
+        final MemorySegment symbol = LIBC.find(name)
+                .orElseThrow(() -> new UnsatisfiedLinkError("Unable to find " + name));
+        return LINKER.downcallHandle(symbol, descriptor, options);
+    }
+
+    static MemorySegment callState() {
+        return CALL_STATE.get();
+    }
+
+    static RuntimeException rethrow(Throwable t) {
+        if (t instanceof RuntimeException)
+            return (RuntimeException) t;
+        if (t instanceof Error)
+            throw (Error) t;
+        return new PosixRuntimeException(t);
+    }
+
+    @Override
+    public int open(CharSequence path, int flags, int perm) {
+        try (Arena arena = Arena.ofConfined()) {
+            return (int) OPEN.invokeExact(callState(), arena.allocateFrom(path.toString()), flags, perm);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    @Override
+    public int close(int fd) {
+        try {
+            return (int) CLOSE.invokeExact(callState(), fd);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    @Override
+    public long read(int fd, long dst, long len) {
+        try {
+            return (long) READ.invokeExact(callState(), fd, dst, len);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    @Override
+    public long write(int fd, long src, long len) {
+        try {
+            return (long) WRITE.invokeExact(callState(), fd, src, len);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    @Override
+    public long lseek(int fd, long offset, int whence) {
+        try {
+            return (long) LSEEK.invokeExact(callState(), fd, offset, whence);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    @Override
+    public int lockf(int fd, int cmd, long len) {
+        try {
+            return (int) LOCKF.invokeExact(callState(), fd, cmd, len);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    @Override
+    public int ftruncate(int fd, long offset) {
+        try {
+            return (int) FTRUNCATE.invokeExact(callState(), fd, offset);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    @Override
+    public int fallocate(int fd, int mode, long offset, long length) {
+        try {
+            int ret = (int) FALLOCATE.invokeExact(callState(), fd, mode, offset, length);
+            if (ret == 0 || mode != 0)
+                return ret;
+            // not all file systems support fallocate, posix_fallocate emulates it when mode = 0
+            return (int) POSIX_FALLOCATE.invokeExact(callState(), fd, offset, length) == 0 ? 0 : -1;
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    @Override
+    public long mmap(long addr, long length, int prot, int flags, int fd, long offset) {
+        final long mmap;
+        try {
+            mmap = (long) MMAP.invokeExact(callState(), addr, length, prot, flags, fd, offset);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+        if (mmap == 0 || mmap == -1)
+            throw PosixRuntimeException.of(lastError());
+        return mmap;
+    }
+
+    @Override
+    public int munmap(long addr, long length) {
+        try {
+            return (int) MUNMAP.invokeExact(callState(), addr, length);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    @Override
+    public int msync(long address, long length, int mode) {
+        try {
+            return (int) MSYNC.invokeExact(callState(), address, length, mode);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    @Override
+    public int madvise(long addr, long length, int advice) {
+        try {
+            return (int) MADVISE.invokeExact(callState(), addr, length, advice);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    @Override
+    public boolean mlock(long addr, long length) {
+        if (Jvm.isAzul())
+            return true; // no-op on Azul, ignore
+        final int err;
+        try {
+            err = (int) MLOCK.invokeExact(callState(), addr, length);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+        return checkMlock(err, "mlock", length);
+    }
+
+    @Override
+    public boolean mlock2(long addr, long length, boolean lockOnFault) {
+        if (Jvm.isAzul())
+            return true; // no-op on Azul, ignore
+        if (!lockOnFault)
+            return mlock(addr, length);
+        final int err;
+        try {
+            // older glibc versions do not include a wrapper for mlock2
+            err = (int) (long) SYSCALL3.invokeExact(callState(), SYS_mlock2, addr, length, (long) MLOCK_ONFAULT);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+        return checkMlock(err, "mlock2", length);
+    }
+
+    private boolean checkMlock(int err, String call, long length) {
+        if (err == 0)
+            return true;
+        if (lastError() == Errno.ENOMEM.intValue())
+            return false;
+        throw new PosixRuntimeException(call + " length: " + length + " error " + lastErrorStr(), lastError());
+    }
+
+    @Override
+    public void mlockall(int flags) {
+        if (flags == MclFlag.MclCurrent.code()
+                || flags == MclFlag.MclCurrentOnFault.code()) {
+            tryMLockAll(flags == MclFlag.MclCurrentOnFault.code());
+            return;
+        }
+        final int err;
+        try {
+            err = (int) MLOCKALL.invokeExact(callState(), flags);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+        if (err != 0)
+            throw new PosixRuntimeException("mlockall error " + lastErrorStr(), lastError());
+    }
+
+    /**
+     * Locks each mapping of the current process in turn, ignoring those which can't be locked.
+     *
+     * @param onFault Whether to lock pages as they are faulted in.
+     */
+    private void tryMLockAll(boolean onFault) {
+        try {
+            for (Mapping mapping : ProcMaps.forSelf().list()) {
+                if (mapping.perms().equals("---p"))
+                    continue;
+                try {
+                    if (onFault)
+                        mlock2(mapping.addr(), mapping.length(), true);
+                    else
+                        mlock(mapping.addr(), mapping.length());
+                } catch (PosixRuntimeException ignored) {
+                    // some mappings can't be locked
+                }
+            }
+        } catch (IOException ioe) {
+            throw new PosixRuntimeException(ioe);
+        }
+    }
+
+    @Override
+    public int gettimeofday(long timeval) {
+        try {
+            return (int) GETTIMEOFDAY.invokeExact(timeval, 0L);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    @Override
+    public long clock_gettime(int clockId) throws IllegalArgumentException {
+        final long ptr = ThreadScratch.address();
+        final int ret = clock_gettime(clockId, ptr);
+        if (ret != 0)
+            throw new IllegalArgumentException("clock_gettime " + clockId + ", ret: " + ret);
+        return UnsafeMemory.timespecNanos(ptr);
+    }
+
+    @Override
+    public int clock_gettime(int clockId, long timespec) {
+        try {
+            return (int) CLOCK_GETTIME.invokeExact(clockId, timespec);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    @Override
+    public int sched_setaffinity(int pid, int cpusetsize, long mask) {
+        final int ret;
+        try {
+            ret = (int) SCHED_SETAFFINITY.invokeExact(callState(), pid, (long) cpusetsize, mask);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+        if (ret != 0)
+            throw new IllegalArgumentException(lastErrorStr() + ", ret: " + ret);
+        return ret;
+    }
+
+    @Override
+    public int sched_getaffinity(int pid, int cpusetsize, long mask) {
+        final int ret;
+        try {
+            ret = (int) SCHED_GETAFFINITY.invokeExact(callState(), pid, (long) cpusetsize, mask);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+        if (ret != 0)
+            throw new IllegalArgumentException(lastErrorStr() + ", ret: " + ret);
+        return ret;
+    }
+
+    @Override
+    public long malloc(long size) {
+        try {
+            return (long) MALLOC.invokeExact(size);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    @Override
+    public void free(long ptr) {
+        try {
+            FREE.invokeExact(ptr);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    @Override
+    public int posix_memalign(long memptr, long alignment, long size) {
+        try {
+            return (int) POSIX_MEMALIGN.invokeExact(memptr, alignment, size);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    @Override
+    public int get_nprocs() {
+        try {
+            return (int) GET_NPROCS.invokeExact();
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    @Override
+    public int get_nprocs_conf() {
+        if (get_nprocs_conf == 0) {
+            try {
+                get_nprocs_conf = (int) GET_NPROCS_CONF.invokeExact();
+            } catch (Throwable t) {
+                throw rethrow(t);
+            }
+        }
+        return get_nprocs_conf;
+    }
+
+    @Override
+    public int getpid() {
+        try {
+            return (int) GETPID.invokeExact();
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    @Override
+    public int gettid() {
+        try {
+            if (GETTID != null)
+                return (int) GETTID.invokeExact();
+            return (int) (long) SYSCALL0.invokeExact(SYS_gettid);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    @Override
+    public int lastError() {
+        return (int) ERRNO_HANDLE.get(callState(), 0L);
+    }
+
+    @Override
+    public String strerror(int errno) {
+        try {
+            final MemorySegment str = (MemorySegment) STRERROR.invokeExact(errno);
+            return str.reinterpret(Integer.MAX_VALUE).getString(0);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    @Override
+    public long syscall(int number, long arg1, long arg2, long arg3, long arg4, long arg5, long arg6) {
+        if (number < 0) {
+            ERRNO_HANDLE.set(callState(), 0L, Errno.ENOSYS.intValue());
+            return -1;
+        }
+        try {
+            return (long) SYSCALL6.invokeExact(callState(), (long) number, arg1, arg2, arg3, arg4, arg5, arg6);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package net.openhft.posix.internal.ffm;
+
+import net.openhft.posix.ClockId;
+import net.openhft.posix.NanoClock;
+import net.openhft.posix.internal.ThreadScratch;
+import net.openhft.posix.internal.UnsafeMemory;
+import net.openhft.posix.internal.core.Jvm;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.FunctionDescriptor;
+import java.lang.foreign.Linker;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.SymbolLookup;
+import java.lang.invoke.MethodHandle;
+
+import static java.lang.foreign.ValueLayout.JAVA_INT;
+import static java.lang.foreign.ValueLayout.JAVA_LONG;
+
+/**
+ * A {@link NanoClock} which calls the vDSO clock_gettime as a critical downcall, avoiding the thread state transition.
+ */
+public final class FFMVdsoNanoClock implements NanoClock {
+    private static MethodHandle clockGettime;
+
+    private final ClockId clockId;
+    private final int id;
+    private final MethodHandle handle;
+
+    /**
+     * Constructs a FFMVdsoNanoClock, checking the clock can be read.
+     *
+     * @param clockId The clock ID to read.
+     * @throws UnsupportedOperationException If native access is not enabled, there is no vDSO or it can't read this clock.
+     */
+    public FFMVdsoNanoClock(ClockId clockId) {
+        if (!FFMVdsoNanoClock.class.getModule().isNativeAccessEnabled())
+            throw new UnsupportedOperationException("Native access not enabled");
+        this.clockId = clockId;
+        this.id = clockId.value();
+        this.handle = clockGettime();
+        final int ret = clock_gettime(ThreadScratch.address());
+        if (ret != 0)
+            throw new UnsupportedOperationException("vDSO clock_gettime " + clockId + " returned " + ret);
+    }
+
+    private static synchronized MethodHandle clockGettime() {
+        if (clockGettime == null) {
+            final String symbol = Jvm.isArm() && Jvm.is64bit() ? "__kernel_clock_gettime" : "__vdso_clock_gettime";
+            final MemorySegment address = SymbolLookup.libraryLookup("linux-vdso.so.1", Arena.global())
+                    .find(symbol)
+                    .orElseThrow(() -> new UnsupportedOperationException("Unable to find " + symbol));
+            clockGettime = Linker.nativeLinker().downcallHandle(address,
+                    FunctionDescriptor.of(JAVA_INT, JAVA_INT, JAVA_LONG),
+                    Linker.Option.critical(false));
+        }
+        return clockGettime;
+    }
+
+    private int clock_gettime(long timespec) {
+        try {
+            return (int) handle.invokeExact(id, timespec);
+        } catch (Throwable t) {
+            throw FFMPosixAPI.rethrow(t);
+        }
+    }
+
+    @Override
+    public ClockId clockId() {
+        return clockId;
+    }
+
+    @Override
+    public long nanoTime() {
+        final long ptr = ThreadScratch.address();
+        final int ret = clock_gettime(ptr);
+        if (ret != 0)
+            throw new IllegalArgumentException("clock_gettime " + clockId + " returned " + ret);
+        return UnsafeMemory.timespecNanos(ptr);
+    }
+
+    @Override
+    public String toString() {
+        return "FFMVdsoNanoClock{" + clockId + '}';
+    }
+}
@@ -0,0 +1,70 @@
+package net.openhft.posix;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static net.openhft.posix.internal.UnsafeMemory.UNSAFE;
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+public class AddressSpaceReservationTest {
+
+    @Test
+    public void commitFilesAcrossBoundary() throws IOException {
+        assumeTrue(new File("/proc/self").exists());
+        final long fileSize = 64 << 10;
+        final Path file1 = Files.createTempFile("reserve", ".1");
+        final Path file2 = Files.createTempFile("reserve", ".2");
+        final PosixAPI posix = PosixAPI.posix();
+        try (AddressSpaceReservation reservation = AddressSpaceReservation.reserve(1L << 30, 2 << 20)) {
+            assertEquals(0, reservation.address() & ((2 << 20) - 1));
+            assertEquals("---p", perms(reservation.address()));
+
+            final MappedRegion region1 = reservation.commitFile(0, open(posix, file1, fileSize), 0, fileSize, MMapProt.PROT_READ_WRITE, true);
+            final MappedRegion region2 = reservation.commitFile(fileSize, open(posix, file2, fileSize), 0, fileSize, MMapProt.PROT_READ_WRITE, true);
+            assertEquals(reservation.address() + fileSize, region2.address());
+            // one pointer across both files
+            region1.putLong(fileSize - 8, 1);
+            region2.putLong(0, 2);
+            assertEquals(1L, UNSAFE.getLong(reservation.address() + fileSize - 8));
+            assertEquals(2L, UNSAFE.getLong(reservation.address() + fileSize));
+
+            try {
+                reservation.commitAnonymous(fileSize + 4096, 4096, 0);
+                fail();
+            } catch (IllegalArgumentException expected) {
+                // overlaps region2
+            }
+            final MappedRegion anon = reservation.commitAnonymous(1L << 20, 4096, MMapFlag.POPULATE.value());
+            assertEquals(3, reservation.committed().size());
+            assertEquals(0L, anon.getLong(0));
+
+            assertEquals(0, reservation.protect(0, fileSize, MMapProt.PROT_READ));
+            assertEquals("r--s", perms(region1.address()));
+
+            // returned to the reservation, not unmapped
+            region1.close();
+            assertEquals("---p", perms(reservation.address()));
+            assertEquals(2, reservation.committed().size());
+        } finally {
+            Files.delete(file1);
+            Files.delete(file2);
+        }
+    }
+
+    private static int open(PosixAPI posix, Path file, long size) {
+        final int fd = posix.open(file.toString(), OpenFlag.O_RDWR, 0666);
+        assertTrue(fd > 0);
+        assertEquals(0, posix.ftruncate(fd, size));
+        return fd;
+    }
+
+    private static String perms(long address) throws IOException {
+        final Mapping mapping = ProcMaps.forSelf().findFirst(m -> m.addr() <= address && address < m.addr() + m.length());
+        return mapping == null ? null : mapping.perms();
+    }
+}
@@ -0,0 +1,127 @@
+package net.openhft.posix;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+public class CpuReservationsTest {
+    private Path lockDir;
+    private BitSet pool;
+
+    @Before
+    public void setUp() throws IOException {
+        assumeTrue(new File("/proc/self").exists());
+        lockDir = Files.createTempDirectory("cpu-reservations");
+        pool = new BitSet();
+        pool.set(PosixAPI.posix().cpuTopology().online().nextSetBit(0));
+    }
+
+    @Test
+    public void reserveAndRelease() throws IOException, InterruptedException {
+        final CpuReservations reservations = new CpuReservations(pool, lockDir);
+        final int cpu = pool.nextSetBit(0);
+        final String before = PosixAPI.posix().sched_getaffinity_summary(0);
+        try (CpuReservation reservation = reservations.reserve()) {
+            assertEquals(cpu, reservation.cpu());
+            assertEquals(cpu + "-" + cpu, PosixAPI.posix().sched_getaffinity_summary(0));
+
+            final List<CpuReservations.Holder> holders = reservations.holders();
+            assertEquals(1, holders.size());
+            assertEquals(PosixAPI.posix().gettid(), holders.get(0).tid());
+            assertEquals(Thread.currentThread().getName(), holders.get(0).threadName());
+
+            // no other thread can have it
+            final AtomicReference<CpuReservation> other = new AtomicReference<>();
+            final Thread t = new Thread(() -> other.set(reservations.tryReserve()));
+            t.start();
+            t.join();
+            assertNull(other.get());
+        }
+        assertTrue(reservations.holders().isEmpty());
+        assertEquals(before, PosixAPI.posix().sched_getaffinity_summary(0));
+    }
+
+    @Test
+    public void sharedInProcess() throws IOException {
+        final CpuReservations first = new CpuReservations(pool, lockDir);
+        final CpuReservations second = new CpuReservations(pool, lockDir);
+        try (CpuReservation reservation = first.reserve()) {
+            // lockf alone would grant it again, as the lock belongs to this process
+            assertNull(second.tryReserve());
+            final List<CpuReservations.Holder> holders = second.holders();
+            assertEquals(1, holders.size());
+            assertEquals(reservation.tid(), holders.get(0).tid());
+        }
+        try (CpuReservation reservation = second.tryReserve()) {
+            assertNotNull(reservation);
+        }
+    }
+
+    @Test
+    public void releasedOnThreadExit() throws IOException, InterruptedException {
+        final CpuReservations reservations = new CpuReservations(pool, lockDir);
+        final Thread t = new Thread(reservations::reserve, "exits");
+        t.start();
+        t.join();
+        // released by the reaper, which truncates the lock file, without another call to the pool
+        final Path lockFile = reservations.lockFile(pool.nextSetBit(0));
+        for (int i = 0; i < 100 && Files.size(lockFile) > 0; i++)
+            Thread.sleep(20);
+        assertEquals(0, Files.size(lockFile));
+        try (CpuReservation reservation = reservations.tryReserve()) {
+            assertNotNull(reservation);
+        }
+    }
+
+    @Test
+    public void otherProcess() throws IOException, InterruptedException {
+        final CpuReservations reservations = new CpuReservations(pool, lockDir);
+        final String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+        final Process process = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                HoldCpu.class.getName(), lockDir.toString(), Integer.toString(pool.nextSetBit(0)))
+                .redirectErrorStream(true)
+                .start();
+        try (BufferedReader br = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+            String line;
+            while ((line = br.readLine()) != null && !line.equals("reserved"))
+                ;
+            assertEquals("reserved", line);
+            assertNull(reservations.tryReserve());
+            final List<CpuReservations.Holder> holders = reservations.holders();
+            assertEquals(1, holders.size());
+            assertEquals("holder", holders.get(0).threadName());
+            assertNotEquals(PosixAPI.posix().getpid(), holders.get(0).pid());
+        } finally {
+            process.destroy();
+            process.waitFor();
+        }
+        // the kernel released the lock when the process died
+        try (CpuReservation reservation = reservations.tryReserve()) {
+            assertNotNull(reservation);
+        }
+    }
+
+    public static final class HoldCpu {
+        public static void main(String[] args) throws IOException, InterruptedException {
+            Thread.currentThread().setName("holder");
+            final BitSet pool = new BitSet();
+            pool.set(Integer.parseInt(args[1]));
+            new CpuReservations(pool, Paths.get(args[0])).reserve();
+            System.out.println("reserved");
+            Thread.sleep(60_000);
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package net.openhft.posix;
+
+import org.junit.Test;
+
+import static net.openhft.posix.internal.UnsafeMemory.UNSAFE;
+import static org.junit.Assert.*;
+
+public class CpuSetTest {
+
+    @Test
+    public void sizing() {
+        try (CpuSet cpus = new CpuSet(1)) {
+            assertEquals(8, cpus.sizeInBytes());
+            assertEquals(64, cpus.maxCpus());
+        }
+        try (CpuSet cpus = new CpuSet(65)) {
+            assertEquals(16, cpus.sizeInBytes());
+        }
+        try (CpuSet cpus = new CpuSet(256)) {
+            assertEquals(32, cpus.sizeInBytes());
+            assertEquals(256, cpus.maxCpus());
+        }
+    }
+
+    @Test
+    public void setClearIterate() {
+        try (CpuSet cpus = new CpuSet(256)) {
+            cpus.set(0).set(63).set(64).set(200).setRange(100, 103);
+            assertEquals(8, cpus.cardinality());
+            assertEquals("0-0,63-64,100-103,200-200", cpus.toString());
+
+            // cpu_set_t layout, CPU n is bit n % 8 of byte n / 8 on little endian
+            assertEquals((byte) 0x80, UNSAFE.getByte(cpus.address() + 7));
+            assertEquals(1, UNSAFE.getByte(cpus.address() + 8));
+            assertEquals(1, UNSAFE.getByte(cpus.address() + 25));
+
+            StringBuilder sb = new StringBuilder();
+            for (int cpu = cpus.nextSetCpu(0); cpu >= 0; cpu = cpus.nextSetCpu(cpu + 1))
+                sb.append(cpu).append(' ');
+            assertEquals("0 63 64 100 101 102 103 200 ", sb.toString());
+
+            cpus.clear(63).clear(101);
+            assertFalse(cpus.isSet(63));
+            assertTrue(cpus.isSet(64));
+            assertFalse(cpus.isSet(256));
+            assertEquals("0-0,64-64,100-100,102-103,200-200", cpus.toString());
+            assertEquals(-1, cpus.nextSetCpu(201));
+
+            cpus.clearAll();
+            assertEquals(0, cpus.cardinality());
+            assertEquals("", cpus.toString());
+        }
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void outOfRange() {
+        try (CpuSet cpus = new CpuSet(64)) {
+            cpus.set(64);
+        }
+    }
+}
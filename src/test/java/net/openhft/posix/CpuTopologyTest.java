@@ -0,0 +1,109 @@
+package net.openhft.posix;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.BitSet;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+public class CpuTopologyTest {
+
+    static void write(Path path, String text) throws IOException {
+        Files.createDirectories(path.getParent());
+        Files.write(path, (text + "\n").getBytes(StandardCharsets.ISO_8859_1));
+    }
+
+    // two packages of two cores with two hyperthreads each, numbered as Intel does with the siblings n and n+4
+    static Path fakeSysCpu() throws IOException {
+        final Path root = Files.createTempDirectory("cpu");
+        write(root.resolve("possible"), "0-7");
+        write(root.resolve("present"), "0-7");
+        write(root.resolve("online"), "0-7");
+        write(root.resolve("isolated"), "2-3,6-7");
+        write(root.resolve("nohz_full"), "3,7");
+        for (int cpu = 0; cpu < 8; cpu++) {
+            final int pkg = (cpu / 2) % 2;
+            final int core = cpu % 4;
+            final String siblings = core + "," + (core + 4);
+            final String llc = pkg == 0 ? "0-1,4-5" : "2-3,6-7";
+            final Path dir = root.resolve("cpu" + cpu);
+            write(dir.resolve("topology/physical_package_id"), "" + pkg);
+            write(dir.resolve("topology/core_id"), "" + core % 2);
+            write(dir.resolve("topology/thread_siblings_list"), siblings);
+            write(dir.resolve("cache/index0/level"), "1");
+            write(dir.resolve("cache/index0/type"), "Data");
+            write(dir.resolve("cache/index0/shared_cpu_list"), siblings);
+            write(dir.resolve("cache/index1/level"), "1");
+            write(dir.resolve("cache/index1/type"), "Instruction");
+            write(dir.resolve("cache/index1/shared_cpu_list"), siblings);
+            write(dir.resolve("cache/index2/level"), "2");
+            write(dir.resolve("cache/index2/type"), "Unified");
+            write(dir.resolve("cache/index2/shared_cpu_list"), siblings);
+            write(dir.resolve("cache/index3/level"), "3");
+            write(dir.resolve("cache/index3/type"), "Unified");
+            write(dir.resolve("cache/index3/shared_cpu_list"), llc);
+            Files.createDirectories(dir.resolve("node" + pkg));
+        }
+        return root;
+    }
+
+    @Test
+    public void parseCpuList() {
+        assertEquals("{}", CpuTopology.parseCpuList("").toString());
+        assertEquals("{0, 1, 2, 3, 8, 10, 11}", CpuTopology.parseCpuList("0-3,8,10-11\n").toString());
+    }
+
+    @Test
+    public void fakeTopology() throws IOException {
+        final CpuTopology topology = CpuTopology.read(fakeSysCpu());
+        assertEquals(8, topology.cpus().size());
+        final CpuTopology.Cpu cpu6 = topology.cpu(6);
+        assertEquals(1, cpu6.packageId());
+        assertEquals(0, cpu6.coreId());
+        assertEquals(1, cpu6.numaNode());
+        assertEquals("{2, 6}", cpu6.siblings().toString());
+        assertEquals("{2, 6}", cpu6.l2Cache().toString());
+        assertEquals("{2, 3, 6, 7}", cpu6.lastLevelCache().toString());
+        assertEquals(3, cpu6.lastLevelCacheLevel());
+        assertEquals("{2, 3, 6, 7}", topology.isolated().toString());
+        assertEquals("{3, 7}", topology.nohzFull().toString());
+
+        assertTrue(topology.sharesCore(2, 6));
+        assertFalse(topology.sharesCore(2, 3));
+        assertTrue(topology.sharesLastLevelCache(2, 3));
+        assertFalse(topology.sharesLastLevelCache(1, 2));
+
+        // isolated CPUs are preferred
+        assertArrayEquals(new int[]{2, 3}, topology.pairSharingCacheNotCore(null));
+        final BitSet notIsolated = CpuTopology.parseCpuList("0-1,4-5");
+        assertArrayEquals(new int[]{0, 1}, topology.pairSharingCacheNotCore(notIsolated));
+        // only hyperthreads of one core
+        assertNull(topology.pairSharingCacheNotCore(CpuTopology.parseCpuList("0,4")));
+    }
+
+    @Test
+    public void missing() {
+        final CpuTopology topology = CpuTopology.read(Paths.get("/does/not/exist"));
+        assertTrue(topology.cpus().isEmpty());
+        assertNull(topology.cpu(0));
+        assertNull(topology.pairSharingCacheNotCore(null));
+    }
+
+    @Test
+    public void current() {
+        assumeTrue(new File(CpuTopology.SYS_CPU).isDirectory());
+        final CpuTopology topology = PosixAPI.posix().cpuTopology();
+        assertSame(topology, CpuTopology.current());
+        assertEquals(topology.online().cardinality(), PosixAPI.posix().get_nprocs());
+        final CpuTopology.Cpu cpu0 = topology.cpu(0);
+        assertNotNull(cpu0);
+        assertTrue(cpu0.siblings().get(0));
+    }
+}
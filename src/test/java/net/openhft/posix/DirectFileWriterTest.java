@@ -0,0 +1,78 @@
+package net.openhft.posix;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+public class DirectFileWriterTest {
+
+    @Test
+    public void linuxFlags() {
+        assumeTrue(new File("/proc/self").exists());
+        assertEquals(0x40, OpenFlag.O_CREAT.value());
+        assertEquals(0x200, OpenFlag.O_TRUNC.value());
+        assertTrue(OpenFlag.O_DIRECT.isSupported());
+        assertTrue(OpenFlag.O_RDONLY.isSupported());
+        assertFalse(OpenFlag.O_SHLOCK.isSupported());
+    }
+
+    @Test
+    public void createAndTruncate() throws IOException {
+        final Path dir = Files.createTempDirectory("open-flag");
+        final File file = new File(dir.toFile(), "created");
+        final PosixAPI posix = PosixAPI.posix();
+        try {
+            int fd = posix.open(file.toString(), OpenFlag.O_RDWR.or(OpenFlag.O_CREAT) | OpenFlag.O_EXCL.value(), 0644);
+            assertTrue(fd >= 0);
+            final long buf = posix.malloc(3);
+            assertEquals(3, posix.write(fd, buf, 3));
+            posix.free(buf);
+            posix.close(fd);
+            assertEquals(-1, posix.open(file.toString(), OpenFlag.O_RDWR.or(OpenFlag.O_CREAT) | OpenFlag.O_EXCL.value(), 0644));
+            fd = posix.open(file.toString(), OpenFlag.O_RDWR.or(OpenFlag.O_TRUNC), 0);
+            assertTrue(fd >= 0);
+            posix.close(fd);
+            assertEquals(0, file.length());
+        } finally {
+            file.delete();
+            dir.toFile().delete();
+        }
+    }
+
+    @Test
+    public void write() throws IOException {
+        // prefer a directory on a disk, as tmpfs doesn't support O_DIRECT
+        final Path dir = Files.createTempDirectory(new File("target").toPath(), "direct");
+        final File file = new File(dir.toFile(), "archive");
+        try {
+            final byte[] bytes = new byte[1000];
+            try (DirectFileWriter writer = new DirectFileWriter(file.toString(), 8192, 4096)) {
+                for (int i = 0; i < 30; i++) {
+                    for (int j = 0; j < bytes.length; j++)
+                        bytes[j] = (byte) (i + j);
+                    writer.write(bytes, 0, bytes.length);
+                    if (i % 7 == 0)
+                        writer.flush();
+                }
+                assertEquals(30_000, writer.position());
+                writer.sync();
+                // the last block is padded until closed
+                assertEquals(32_768, file.length());
+            }
+            assertEquals(30_000, file.length());
+            final byte[] all = Files.readAllBytes(file.toPath());
+            for (int i = 0; i < 30; i++)
+                for (int j = 0; j < bytes.length; j += 99)
+                    assertEquals((byte) (i + j), all[i * bytes.length + j]);
+        } finally {
+            file.delete();
+            dir.toFile().delete();
+        }
+    }
+}
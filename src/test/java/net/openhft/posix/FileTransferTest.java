@@ -0,0 +1,177 @@
+package net.openhft.posix;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static net.openhft.posix.internal.UnsafeMemory.UNSAFE;
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+public class FileTransferTest {
+    private static final int AF_UNIX = 1;
+    private static final int SOCK_STREAM = 1;
+    private static final int SOCK_NONBLOCK = 04000;
+
+    private static byte[] data(int size) {
+        final byte[] bytes = new byte[size];
+        for (int i = 0; i < size; i++)
+            bytes[i] = (byte) (i * 31 + (i >> 8));
+        return bytes;
+    }
+
+    @Test
+    public void copyFile() throws IOException {
+        final Path from = Files.createTempFile("transfer-from", ".test");
+        final Path to = Files.createTempFile("transfer-to", ".test");
+        try {
+            final byte[] bytes = data(3 << 20);
+            Files.write(from, bytes);
+            assertEquals(bytes.length, FileTransfer.copyFile(from.toString(), to.toString()));
+            assertArrayEquals(bytes, Files.readAllBytes(to));
+        } finally {
+            from.toFile().delete();
+            to.toFile().delete();
+        }
+    }
+
+    @Test
+    public void transferProcFile() throws IOException {
+        assumeTrue(new File("/proc/self/status").exists());
+        final PosixAPI posix = PosixAPI.posix();
+        final Path to = Files.createTempFile("transfer-to", ".test");
+        try (FileTransfer transfer = new FileTransfer()) {
+            final int in = posix.open("/proc/self/status", OpenFlag.O_RDONLY, 0);
+            final int out = posix.open(to.toString(), OpenFlag.O_WRONLY, 0);
+            // copy_file_range copies nothing from procfs without an error
+            final long moved = transfer.transfer(in, 0, out, 64 << 10);
+            posix.close(in);
+            posix.close(out);
+            assertTrue(moved > 0);
+            assertNotEquals(FileTransfer.Method.COPY_FILE_RANGE, transfer.lastMethod());
+            assertTrue(new String(Files.readAllBytes(to)).startsWith("Name:"));
+        } finally {
+            to.toFile().delete();
+        }
+    }
+
+    @Test
+    public void fileToSocketAndPipeToFile() throws IOException {
+        assumeTrue(new File("/proc/self").exists());
+        final PosixAPI posix = PosixAPI.posix();
+        final Path from = Files.createTempFile("transfer-from", ".test");
+        final Path to = Files.createTempFile("transfer-to", ".test");
+        final int size = 16 << 10;
+        final long fds = UNSAFE.allocateMemory(16);
+        final long buf = UNSAFE.allocateMemory(size);
+        try (FileTransfer transfer = new FileTransfer()) {
+            final byte[] bytes = data(size);
+            Files.write(from, bytes);
+            final int in = posix.open(from.toString(), OpenFlag.O_RDONLY, 0);
+
+            // file to a Unix socket, part way into the file
+            assertEquals(0, posix.socketpair(AF_UNIX, SOCK_STREAM, 0, fds));
+            final int sock0 = UNSAFE.getInt(fds), sock1 = UNSAFE.getInt(fds + 4);
+            assertEquals(size - 1000, transfer.transfer(in, 1000, sock0, size - 1000));
+            assertEquals(FileTransfer.Method.SENDFILE, transfer.lastMethod());
+            long read = 0;
+            while (read < size - 1000)
+                read += posix.read(sock1, buf + read, size - 1000 - read);
+            for (int i = 0; i < size - 1000; i += 97)
+                assertEquals(bytes[1000 + i], UNSAFE.getByte(buf + i));
+            posix.close(sock0);
+            posix.close(sock1);
+
+            // user memory into a pipe, duplicated to a second pipe, then to a file
+            assertEquals(0, posix.pipe2(fds, OpenFlag.O_CLOEXEC.value()));
+            assertEquals(0, posix.pipe2(fds + 8, OpenFlag.O_CLOEXEC.value()));
+            final int pipeIn = UNSAFE.getInt(fds), pipeOut = UNSAFE.getInt(fds + 4);
+            final int pipe2In = UNSAFE.getInt(fds + 8), pipe2Out = UNSAFE.getInt(fds + 12);
+            try (IOVec iov = new IOVec(2)) {
+                iov.add(buf, 4096).add(buf + 4096, 4096);
+                assertEquals(8192, posix.vmsplice(pipeOut, iov, 0));
+            }
+            assertEquals(8192, posix.tee(pipeIn, pipe2Out, 8192, 0));
+            final int out = posix.open(to.toString(), OpenFlag.O_WRONLY, 0);
+            assertEquals(8192, transfer.transfer(pipeIn, -1, out, 8192));
+            assertEquals(FileTransfer.Method.SPLICE, transfer.lastMethod());
+            assertEquals(8192, transfer.transfer(pipe2In, -1, out, 8192));
+            posix.close(out);
+            for (int fd : new int[]{pipeIn, pipeOut, pipe2In, pipe2Out, in})
+                posix.close(fd);
+            final byte[] copied = Files.readAllBytes(to);
+            assertEquals(16384, copied.length);
+            for (int i = 0; i < copied.length; i += 89)
+                assertEquals(bytes[1000 + (i & 8191)], copied[i]);
+        } finally {
+            UNSAFE.freeMemory(buf);
+            UNSAFE.freeMemory(fds);
+            from.toFile().delete();
+            to.toFile().delete();
+        }
+    }
+
+    @Test
+    public void fileToFileThroughPipe() throws IOException {
+        final PosixAPI posix = PosixAPI.posix();
+        final Path from = Files.createTempFile("transfer-from", ".test");
+        final Path to = Files.createTempFile("transfer-to", ".test");
+        try (FileTransfer transfer = new FileTransfer(4096)) {
+            final byte[] bytes = data(100_000);
+            Files.write(from, bytes);
+            final int in = posix.open(from.toString(), OpenFlag.O_RDONLY, 0);
+            final int out = posix.open(to.toString(), OpenFlag.O_WRONLY, 0);
+            // a file offset of -1 reads from the file offset of in
+            assertEquals(bytes.length, transfer.transfer(in, -1, out, bytes.length + 100));
+            assertEquals(0, transfer.transfer(in, -1, out, 100));
+            posix.close(in);
+            posix.close(out);
+            assertArrayEquals(bytes, Files.readAllBytes(to));
+            assertEquals(bytes.length, transfer.bytes(transfer.lastMethod()));
+        } finally {
+            from.toFile().delete();
+            to.toFile().delete();
+        }
+    }
+
+    @Test
+    public void wouldBlockKeepsDataInPipe() {
+        assumeTrue(new File("/proc/self").exists());
+        final PosixAPI posix = PosixAPI.posix();
+        final int size = 64 << 10;
+        final long fds = UNSAFE.allocateMemory(16);
+        final long buf = UNSAFE.allocateMemory(size);
+        try (FileTransfer transfer = new FileTransfer()) {
+            // neither is a file nor a pipe, so it goes through the pipe
+            assertEquals(0, posix.socketpair(AF_UNIX, SOCK_STREAM, 0, fds));
+            assertEquals(0, posix.socketpair(AF_UNIX, SOCK_STREAM | SOCK_NONBLOCK, 0, fds + 8));
+            final int in0 = UNSAFE.getInt(fds), in1 = UNSAFE.getInt(fds + 4);
+            final int out0 = UNSAFE.getInt(fds + 8), out1 = UNSAFE.getInt(fds + 12);
+            long filled = 0;
+            for (long n; (n = posix.write(out0, buf, size)) > 0; )
+                filled += n;
+
+            final byte[] bytes = data(4096);
+            for (int i = 0; i < bytes.length; i++)
+                UNSAFE.putByte(buf + i, bytes[i]);
+            assertEquals(bytes.length, posix.write(in1, buf, bytes.length));
+            assertEquals(0, transfer.transfer(in0, -1, out0, bytes.length));
+            assertEquals(FileTransfer.Method.SPLICE, transfer.lastMethod());
+
+            for (long read = 0; read < filled; )
+                read += posix.read(out1, buf, Math.min(size, filled - read));
+            assertEquals(bytes.length, transfer.transfer(in0, -1, out0, bytes.length));
+            assertEquals(bytes.length, posix.read(out1, buf, size));
+            for (int i = 0; i < bytes.length; i++)
+                assertEquals(bytes[i], UNSAFE.getByte(buf + i));
+            for (int fd : new int[]{in0, in1, out0, out1})
+                posix.close(fd);
+        } finally {
+            UNSAFE.freeMemory(buf);
+            UNSAFE.freeMemory(fds);
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package net.openhft.posix;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+public class HugePageAllocatorTest {
+
+    @Test
+    public void pools() throws IOException {
+        final Path dir = Files.createTempDirectory("hugepages");
+        write(dir.resolve("hugepages-2048kB/nr_hugepages"), "512\n");
+        write(dir.resolve("hugepages-2048kB/free_hugepages"), "500\n");
+        write(dir.resolve("hugepages-2048kB/resv_hugepages"), "10\n");
+        write(dir.resolve("hugepages-2048kB/surplus_hugepages"), "0\n");
+        write(dir.resolve("hugepages-1048576kB/nr_hugepages"), "0\n");
+
+        final List<HugePageAllocator.Pool> pools = HugePageAllocator.pools(dir);
+        assertEquals(2, pools.size());
+        final HugePageAllocator.Pool pool = pools.get(0);
+        assertEquals(2 << 20, pool.pageSize());
+        assertEquals(512, pool.total());
+        assertEquals(490, pool.free());
+        assertEquals(1L << 30, pools.get(1).pageSize());
+        assertEquals(0, pools.get(1).free());
+
+        assertTrue(HugePageAllocator.pools(dir.resolve("missing")).isEmpty());
+    }
+
+    @Test
+    public void hugetlbfsMount() throws IOException {
+        final Path mounts = Files.createTempFile("mounts", ".test");
+        try {
+            Files.write(mounts, Arrays.asList(
+                    "proc /proc proc rw,nosuid,nodev,noexec,relatime 0 0",
+                    "hugetlbfs /dev/hugepages hugetlbfs rw,relatime,pagesize=2M 0 0",
+                    "none /mnt/huge1g hugetlbfs rw,relatime,pagesize=1024M 0 0",
+                    "none /mnt/huge hugetlbfs rw,relatime 0 0"), StandardCharsets.ISO_8859_1);
+            assertEquals("/dev/hugepages", HugePageAllocator.hugetlbfsMount(mounts, 2 << 20, 2 << 20));
+            assertEquals("/mnt/huge1g", HugePageAllocator.hugetlbfsMount(mounts, 1 << 30, 2 << 20));
+            // the first mount matching
+            assertEquals("/mnt/huge1g", HugePageAllocator.hugetlbfsMount(mounts, 1 << 30, 1 << 30));
+            assertEquals("/mnt/huge", HugePageAllocator.hugetlbfsMount(mounts, 16 << 20, 16 << 20));
+            assertNull(HugePageAllocator.hugetlbfsMount(mounts, 16 << 20, 2 << 20));
+        } finally {
+            Files.delete(mounts);
+        }
+    }
+
+    @Test
+    public void transparentHugePages() throws IOException {
+        final Path enabled = Files.createTempFile("enabled", ".test");
+        try {
+            write(enabled, "always [madvise] never\n");
+            assertEquals("madvise", HugePageAllocator.transparentHugePages(enabled));
+            write(enabled, "always madvise [never]\n");
+            assertEquals("never", HugePageAllocator.transparentHugePages(enabled));
+        } finally {
+            Files.delete(enabled);
+        }
+        assertNull(HugePageAllocator.transparentHugePages(enabled));
+    }
+
+    @Test
+    public void allocate() {
+        assumeTrue(new File("/proc/self").exists());
+        final long pageSize = 2 << 20;
+        final HugePageAllocator allocator = new HugePageAllocator(pageSize, true);
+        try (HugePageAllocator.Allocation allocation = allocator.allocate(3 * pageSize - 1)) {
+            assertEquals(3 * pageSize, allocation.length());
+            assertEquals(0, allocation.address() & (pageSize - 1));
+            allocation.region().putLong(allocation.length() - 8, 1);
+            assertEquals(1L, allocation.region().getLong(allocation.length() - 8));
+            final HugePageAllocator.Pool pool = HugePageAllocator.pool(pageSize);
+            if (pool == null || pool.total() == 0)
+                assertNotEquals(HugePageAllocator.Backing.HUGETLB, allocation.backing());
+            if ("never".equals(HugePageAllocator.transparentHugePages()))
+                assertNotEquals(HugePageAllocator.Backing.TRANSPARENT, allocation.backing());
+        }
+    }
+
+    @Test
+    public void transparentPageSize() throws IOException {
+        final Path pmdSize = Files.createTempFile("hpage_pmd_size", ".test");
+        try {
+            write(pmdSize, "524288\n");
+            assertEquals(512 << 10, HugePageAllocator.transparentPageSize(pmdSize));
+            write(pmdSize, "junk\n");
+            assertEquals(2 << 20, HugePageAllocator.transparentPageSize(pmdSize));
+        } finally {
+            Files.delete(pmdSize);
+        }
+        assertEquals(2 << 20, HugePageAllocator.transparentPageSize(pmdSize));
+    }
+
+    @Test
+    public void fallbackUsesTransparentPageSize() {
+        assumeTrue(new File("/proc/self").exists());
+        final long pageSize = 1L << 30;
+        final HugePageAllocator.Pool pool = HugePageAllocator.pool(pageSize);
+        assumeTrue(pool == null || pool.free() == 0);
+        final long thpSize = HugePageAllocator.transparentPageSize();
+        final HugePageAllocator allocator = new HugePageAllocator(pageSize, true);
+        // rounded and aligned to the transparent huge page size, not the 1 GiB asked for
+        try (HugePageAllocator.Allocation allocation = allocator.allocate(thpSize + 1)) {
+            assertEquals(2 * thpSize, allocation.length());
+            assertEquals(0, allocation.address() & (thpSize - 1));
+            if (allocation.backing() == HugePageAllocator.Backing.TRANSPARENT)
+                assertEquals(thpSize, allocation.pageSize());
+            else
+                assertEquals(HugePageAllocator.Backing.NORMAL, allocation.backing());
+        }
+    }
+
+    private static void write(Path path, String text) throws IOException {
+        Files.createDirectories(path.getParent());
+        Files.write(path, text.getBytes(StandardCharsets.ISO_8859_1));
+    }
+}
@@ -0,0 +1,74 @@
+package net.openhft.posix;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static net.openhft.posix.internal.UnsafeMemory.UNSAFE;
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+public class IOVecTest {
+
+    @Test
+    public void entries() {
+        try (IOVec iov = new IOVec(4)) {
+            iov.add(0x1000, 10).add(0x2000, 20);
+            assertEquals(2, iov.count());
+            assertEquals(0x2000, iov.base(1));
+            assertEquals(20, iov.length(1));
+            assertEquals(30, iov.totalLength());
+            assertEquals(0, iov.clear().count());
+            iov.add(1, 1).add(2, 2).add(3, 3).add(4, 4);
+            try {
+                iov.add(5, 5);
+                fail();
+            } catch (IllegalStateException expected) {
+                // full
+            }
+        }
+    }
+
+    @Test
+    public void vectored() throws IOException {
+        assumeTrue(new File("/proc/self").exists());
+        final Path file = Files.createTempFile("iovec", ".test");
+        final PosixAPI posix = PosixAPI.posix();
+        final int fd = posix.open(file.toString(), OpenFlag.O_RDWR, 0666);
+        final long buf = UNSAFE.allocateMemory(64);
+        try (IOVec iov = new IOVec(8)) {
+            for (int i = 0; i < 64; i += 8)
+                UNSAFE.putLong(buf + i, i);
+            // two writes in one call, gathered out of order
+            iov.add(buf + 32, 32).add(buf, 32);
+            assertEquals(64, posix.pwritev(fd, iov, 4096));
+            assertEquals(0, posix.lseek(fd, 0, 1 /* SEEK_CUR */));
+            assertEquals(8, posix.pwrite(fd, buf + 8, 8, 0));
+
+            UNSAFE.setMemory(buf, 64, (byte) 0);
+            assertEquals(8, posix.pread(fd, buf, 8, 4096 + 32));
+            assertEquals(0L, UNSAFE.getLong(buf));
+            assertEquals(8, posix.pread(fd, buf, 8, 0));
+            assertEquals(8L, UNSAFE.getLong(buf));
+
+            iov.clear().add(buf + 8, 8).add(buf + 16, 8);
+            assertEquals(16, posix.preadv(fd, iov, 4096));
+            assertEquals(32L, UNSAFE.getLong(buf + 8));
+            assertEquals(40L, UNSAFE.getLong(buf + 16));
+
+            assertEquals(16, posix.preadv2(fd, iov, 4096 + 48, RwfFlag.RWF_HIPRI.value()));
+            assertEquals(16L, UNSAFE.getLong(buf + 8));
+            assertEquals(24L, UNSAFE.getLong(buf + 16));
+            assertEquals(16, posix.pwritev2(fd, iov, 1L << 32, RwfFlag.RWF_DSYNC.value()));
+            assertEquals((1L << 32) + 16, Files.size(file));
+            assertEquals(0, posix.lseek(fd, 0, 1 /* SEEK_CUR */));
+        } finally {
+            UNSAFE.freeMemory(buf);
+            posix.close(fd);
+            Files.delete(file);
+        }
+    }
+}
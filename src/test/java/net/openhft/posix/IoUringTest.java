@@ -0,0 +1,141 @@
+package net.openhft.posix;
+
+import net.openhft.posix.internal.UnsafeMemory;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static net.openhft.posix.internal.UnsafeMemory.UNSAFE;
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeNoException;
+import static org.junit.Assume.assumeTrue;
+
+public class IoUringTest {
+
+    static IoUring ring(int entries) {
+        assumeTrue(new File("/proc/self").exists());
+        try {
+            return new IoUring(entries);
+        } catch (PosixRuntimeException e) {
+            // e.g. ENOSYS or EPERM in a container
+            assumeNoException(e);
+            return null;
+        }
+    }
+
+    @Test
+    public void nop() {
+        try (IoUring ring = ring(8)) {
+            assertEquals(8, ring.sqEntries());
+            for (int i = 0; i < 8; i++)
+                assertNotEquals(0, ring.prepNop(i));
+            assertEquals(0, ring.prepNop(8));
+            assertEquals(8, ring.prepared());
+            assertEquals(8, ring.submit());
+            assertEquals(8, ring.inFlight());
+            final long[] sum = {0};
+            int count = 0;
+            while (count < 8)
+                count += ring.waitCompletions(8 - count, (userData, res, flags) -> {
+                    assertEquals(0, res);
+                    sum[0] += userData;
+                });
+            assertEquals(28, sum[0]);
+            assertEquals(0, ring.inFlight());
+        }
+    }
+
+    @Test
+    public void sqpoll() {
+        assumeTrue(new File("/proc/self").exists());
+        final IoUring ring;
+        try {
+            ring = new IoUring(4, IoUring.IORING_SETUP_SQPOLL, 10, -1);
+        } catch (PosixRuntimeException e) {
+            // EPERM before Linux 5.11 without CAP_SYS_NICE
+            assumeNoException(e);
+            return;
+        }
+        try {
+            for (int i = 0; i < 100; i++) {
+                ring.prepNop(i);
+                ring.submit();
+                final int[] count = {0};
+                while (count[0] == 0)
+                    ring.waitCompletions(1, (userData, res, flags) -> count[0]++);
+            }
+            assertEquals(0, ring.inFlight());
+        } finally {
+            ring.close();
+        }
+    }
+
+    @Test
+    public void writeFsyncRead() throws IOException {
+        final Path file = Files.createTempFile("io_uring", ".test");
+        final PosixAPI posix = PosixAPI.posix();
+        final int blocks = 16, size = 4096;
+        final long buf = UNSAFE.allocateMemory(blocks * size);
+        final long path = UnsafeMemory.toCString(file.toString());
+        try (IoUring ring = ring(32)) {
+            for (int i = 0; i < blocks * size; i++)
+                UNSAFE.putByte(buf + i, (byte) (i / size));
+            // open, then a batch of writes linked to an fsync
+            ring.prepOpenat(-100, path, OpenFlag.O_RDWR.value(), 0, 100);
+            final int[] res = new int[1];
+            assertEquals(1, ring.waitCompletions(1, (userData, r, flags) -> res[0] = r));
+            final int fd = res[0];
+            assertTrue("openat " + fd, fd >= 0);
+            try {
+                ring.prepFallocate(fd, 0, 0, (long) blocks * size, 200);
+                for (int i = 0; i < blocks; i++)
+                    ring.prepWrite(fd, buf + (long) i * size, size, (long) i * size, i);
+                IoUring.sqeFlags(ring.prepFsync(fd, true, 300), IoUring.IOSQE_IO_DRAIN);
+                assertEquals(blocks + 2, ring.submit());
+                final int[] done = {0};
+                while (done[0] < blocks + 2)
+                    ring.waitCompletions(1, (userData, r, flags) -> {
+                        if (userData < blocks)
+                            assertEquals(size, r);
+                        else if (r != -95) // EOPNOTSUPP from fallocate on some file systems
+                            assertEquals(0, r);
+                        done[0]++;
+                    });
+                assertEquals((long) blocks * size, file.toFile().length());
+
+                // read it back with registered buffers and files
+                UNSAFE.setMemory(buf, blocks * size, (byte) 0);
+                try (IOVec iov = new IOVec(1)) {
+                    iov.add(buf, blocks * size);
+                    ring.registerBuffers(iov);
+                    ring.registerFiles(fd);
+                    for (int i = blocks - 1; i >= 0; i--)
+                        IoUring.sqeFlags(ring.prepReadFixed(0, buf + (long) i * size, size, (long) i * size, 0, i), IoUring.IOSQE_FIXED_FILE);
+                    ring.submit();
+                    done[0] = 0;
+                    while (done[0] < blocks)
+                        ring.waitCompletions(1, (userData, r, flags) -> {
+                            assertEquals(size, r);
+                            done[0]++;
+                        });
+                    ring.unregisterFiles();
+                    ring.unregisterBuffers();
+                } catch (PosixRuntimeException e) {
+                    // ENOMEM if RLIMIT_MEMLOCK is too low to register buffers
+                    assumeNoException(e);
+                }
+                for (int i = 0; i < blocks * size; i += 511)
+                    assertEquals(i / size, UNSAFE.getByte(buf + i));
+            } finally {
+                posix.close(fd);
+            }
+        } finally {
+            UNSAFE.freeMemory(path);
+            UNSAFE.freeMemory(buf);
+            file.toFile().delete();
+        }
+    }
+}
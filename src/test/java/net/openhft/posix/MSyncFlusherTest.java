@@ -0,0 +1,130 @@
+package net.openhft.posix;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+public class MSyncFlusherTest {
+
+    @Test
+    public void syncCoalescesAdjacentRanges() throws IOException, InterruptedException, ExecutionException, TimeoutException {
+        assumeTrue(new File("/proc/self").exists());
+        final Path file = Files.createTempFile("flusher", ".test");
+        final long length = 64 << 10;
+        // only flushes on request
+        final MSyncFlusher.Policy policy = new MSyncFlusher.Policy().everyBytes(Long.MAX_VALUE).everyMicros(Long.MAX_VALUE);
+        try (MappedRegion region = MappedRegion.mapFile(file.toString(), length, true);
+             MSyncFlusher flusher = new MSyncFlusher("flusher", policy)) {
+            final long half = length / 2;
+            try (MSyncFlusher.Range first = flusher.register(region.address(), half);
+                 MSyncFlusher.Range second = flusher.register(region.address() + half, half)) {
+                region.putLong(0, 1);
+                first.dirty(half);
+                region.putLong(half, 2);
+                second.dirty(8);
+                second.dirty(4);
+                assertEquals(8, second.dirtyUpto());
+
+                flusher.sync().get(10, TimeUnit.SECONDS);
+                assertEquals(half, first.syncedUpto());
+                assertEquals(8, second.syncedUpto());
+                assertEquals(1, flusher.msyncCalls());
+
+                // nothing more to do
+                flusher.sync().get(10, TimeUnit.SECONDS);
+                assertEquals(1, flusher.msyncCalls());
+                assertEquals(0, flusher.failures());
+            }
+            assertTrue(flusher.ranges().isEmpty());
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void flushEveryBytes() throws IOException, InterruptedException {
+        assumeTrue(new File("/proc/self").exists());
+        final Path file = Files.createTempFile("flusher", ".test");
+        final long length = 64 << 10;
+        final MSyncFlusher.Policy policy = new MSyncFlusher.Policy().everyBytes(8 << 10).everyMicros(Long.MAX_VALUE / 1000).pauseMicros(10);
+        try (MappedRegion region = MappedRegion.mapFile(file.toString(), length, true);
+             MSyncFlusher flusher = new MSyncFlusher("flusher", policy);
+             MSyncFlusher.Range range = flusher.register(region)) {
+            range.dirty(4 << 10);
+            Thread.sleep(50);
+            assertEquals(0, range.flushedUpto());
+
+            range.dirty(12 << 10);
+            for (int i = 0; i < 1000 && range.flushedUpto() == 0; i++)
+                Thread.sleep(1);
+            assertEquals(12 << 10, range.flushedUpto());
+            // with MS_ASYNC
+            assertEquals(0, range.syncedUpto());
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void dirtyBeyondLength() {
+        try (MappedRegion region = MappedRegion.mapAnonymous(MappedRegion.PAGE_SIZE, 0);
+             MSyncFlusher flusher = new MSyncFlusher("flusher", new MSyncFlusher.Policy());
+             MSyncFlusher.Range range = flusher.register(region)) {
+            range.dirty(MappedRegion.PAGE_SIZE);
+            try {
+                range.dirty(MappedRegion.PAGE_SIZE + 1);
+                fail();
+            } catch (IllegalArgumentException expected) {
+                assertEquals(MappedRegion.PAGE_SIZE, range.dirtyUpto());
+            }
+        }
+    }
+
+    @Test
+    public void syncAfterClose() throws InterruptedException {
+        final MSyncFlusher flusher = new MSyncFlusher("flusher", new MSyncFlusher.Policy());
+        flusher.close();
+        try {
+            flusher.sync().get();
+            fail();
+        } catch (ExecutionException expected) {
+            assertTrue(expected.getCause() instanceof IllegalStateException);
+        }
+    }
+
+    @Test
+    public void invalidCpu() {
+        try {
+            new MSyncFlusher.Policy().cpu(-2);
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+        final MSyncFlusher.Policy policy = new MSyncFlusher.Policy().cpu(PosixAPI.posix().get_nprocs_conf());
+        try {
+            new MSyncFlusher("flusher", policy).close();
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    @Test
+    public void boundToCpu() {
+        assumeTrue(new File("/proc/self").exists());
+        final PosixAPI posix = PosixAPI.posix();
+        // a CPU this process is allowed to run on
+        final int cpu = posix.getcpu();
+        assumeTrue(cpu >= 0);
+        try (MSyncFlusher flusher = new MSyncFlusher("flusher", new MSyncFlusher.Policy().cpu(cpu))) {
+            assertEquals(0, flusher.msyncCalls());
+        }
+    }
+}
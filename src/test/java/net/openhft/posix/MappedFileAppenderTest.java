@@ -0,0 +1,122 @@
+package net.openhft.posix;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static net.openhft.posix.internal.UnsafeMemory.UNSAFE;
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+public class MappedFileAppenderTest {
+
+    @Test
+    public void appendAcrossChunks() throws IOException {
+        assumeTrue(new File("/proc/self").exists());
+        final Path file = Files.createTempFile("appender", ".test");
+        final long chunk = 64 << 10;
+        try {
+            try (MappedFileAppender appender = new MappedFileAppender(file.toString(), 8 * chunk, chunk, 2)) {
+                assertEquals(chunk, appender.mappedUpto());
+                // prepare the current chunk and two ahead, then msync has nothing to do
+                while (appender.runOnce()) {
+                }
+                assertEquals(3 * chunk, appender.mappedUpto());
+                assertEquals(3 * chunk, Files.size(file));
+
+                final byte[] record = new byte[1000];
+                for (int i = 0; i < record.length; i++)
+                    record[i] = (byte) i;
+                long expected = 0;
+                // straddles the chunks without waiting for the writer
+                while (appender.tail() + record.length <= 3 * chunk) {
+                    assertEquals(expected, appender.append(record, 0, record.length));
+                    expected += record.length;
+                }
+                assertEquals(0, appender.stalls());
+                assertEquals(expected, appender.tail());
+
+                // the writer maps what it needs if the background work falls behind
+                final long addr = appender.acquire(chunk);
+                UNSAFE.putLong(addr, 0x1234567890L);
+                appender.advance(chunk);
+                assertEquals(1, appender.stalls());
+
+                while (appender.runOnce()) {
+                }
+                assertEquals(appender.tail() & -MappedRegion.PAGE_SIZE, appender.syncedUpto());
+                assertEquals(6 * chunk, appender.mappedUpto());
+
+                try {
+                    appender.acquire(8 * chunk);
+                    fail();
+                } catch (IllegalStateException expectedException) {
+                    // over capacity
+                }
+                try (MappedRegion region = MappedRegion.mapFile(file.toString(), 6 * chunk, false)) {
+                    assertEquals(0x1234567890L, region.getLong(expected));
+                    assertEquals((byte) 999, region.getByte(expected - 1));
+                }
+            }
+            assertEquals(6 * chunk, Files.size(file));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void background() throws IOException, InterruptedException {
+        assumeTrue(new File("/proc/self").exists());
+        final Path file = Files.createTempFile("appender", ".test");
+        try {
+            final long length = 16 << 20;
+            final MappedFileAppender appender = MappedFileAppender.open(file.toString(), length);
+            try {
+                final byte[] record = new byte[4096];
+                while (appender.tail() < length)
+                    appender.append(record, 0, record.length);
+                assertEquals(length, appender.tail());
+            } finally {
+                appender.close();
+            }
+            assertEquals(0, appender.mappedUpto());
+            assertEquals(length, Files.size(file));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void backgroundFailure() throws IOException, InterruptedException {
+        assumeTrue(new File("/proc/self").exists());
+        final Path file = Files.createTempFile("appender", ".test");
+        try {
+            final MappedFileAppender appender = new MappedFileAppender(file.toString(), 1 << 20, 64 << 10, 2);
+            // the next chunk can't be allocated
+            PosixAPI.posix().close(appender.fd());
+            appender.start();
+            PosixRuntimeException failure = null;
+            for (int i = 0; i < 1000 && failure == null; i++) {
+                try {
+                    appender.acquire(0);
+                    Thread.sleep(1);
+                } catch (PosixRuntimeException e) {
+                    failure = e;
+                }
+            }
+            assertNotNull(failure);
+            try {
+                appender.close();
+                fail();
+            } catch (PosixRuntimeException e) {
+                assertSame(failure, e);
+            }
+            assertEquals(0, appender.mappedUpto());
+        } finally {
+            Files.delete(file);
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package net.openhft.posix;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+public class MappedRegionTest {
+
+    @Test
+    public void mapFile() throws IOException {
+        assumeTrue(new File("/proc/self").exists());
+        final Path file = Files.createTempFile("region", ".test");
+        final long length = 1L << 16;
+        try {
+            try (MappedRegion region = MappedRegion.mapFile(file.toString(), length, true)) {
+                assertEquals(length, region.length());
+                assertEquals(length, Files.size(file));
+                region.putLong(0, 0x0123456789ABCDEFL);
+                region.putIntVolatile(8, 1);
+                region.putOrderedLong(16, 2);
+                assertTrue(region.compareAndSwapLong(16, 2, 3));
+                assertFalse(region.compareAndSwapInt(8, 2, 3));
+                assertEquals(3, region.getAndAddLong(16, 4));
+                assertEquals(7, region.getLongVolatile(16));
+                region.putBytes(length - 5, "hello".getBytes(), 0, 5);
+
+                assertEquals(0, region.msync(4000, 200, MSyncFlag.MS_SYNC));
+                assertEquals(0, region.madvise(1, length - 1, MAdviseFlag.MADV_SEQUENTIAL));
+                assertTrue(region.mlock(0, 4096, true));
+
+                try {
+                    region.getLong(length - 7);
+                    fail();
+                } catch (IndexOutOfBoundsException expected) {
+                    // past the end
+                }
+            }
+            final MappedRegion readOnly;
+            try (MappedRegion region = MappedRegion.mapFile(file.toString(), length, false)) {
+                assertEquals(0x0123456789ABCDEFL, region.getLong(0));
+                assertEquals(1, region.getIntVolatile(8));
+                final byte[] bytes = new byte[5];
+                region.getBytes(length - 5, bytes, 0, 5);
+                assertEquals("hello", new String(bytes));
+                readOnly = region;
+            }
+            assertTrue(readOnly.isClosed());
+            try {
+                readOnly.getByte(0);
+                fail();
+            } catch (IndexOutOfBoundsException expected) {
+                // closed
+            }
+            try {
+                MappedRegion.mapFile(file.toString(), length + 1, false).close();
+                fail();
+            } catch (PosixRuntimeException expected) {
+                // would raise SIGBUS reading past the end of the file
+                assertEquals(length, Files.size(file));
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void mapAnonymous() {
+        assumeTrue(new File("/proc/self").exists());
+        final long length = 1L << 20;
+        try (MappedRegion region = MappedRegion.mapAnonymous(length, MMapFlag.POPULATE.or(MMapFlag.NORESERVE))) {
+            assertEquals(-1, region.fd());
+            assertEquals(0L, region.getLong(length - 8));
+            region.putLong(length - 8, 1);
+
+            // won't replace an existing mapping
+            final PosixAPI posix = PosixAPI.posix();
+            try {
+                posix.mmap(region.address(), 4096, MMapProt.PROT_READ_WRITE,
+                        MMapFlag.PRIVATE.or(MMapFlag.ANONYMOUS) | MMapFlag.FIXED_NOREPLACE.value(), -1, 0);
+                fail();
+            } catch (PosixRuntimeException expected) {
+                // EEXIST
+                assertEquals(17, expected.errno());
+            }
+            assertEquals(1L, region.getLong(length - 8));
+        }
+    }
+
+    @Test
+    public void flags() {
+        assumeTrue(new File("/proc/self").exists());
+        assertEquals(0x8022, MMapFlag.PRIVATE.or(MMapFlag.ANONYMOUS) | MMapFlag.POPULATE.value());
+        assertEquals(0x40000 | 21 << 26, MMapFlag.HUGETLB.or(MMapFlag.HUGE_2MB));
+        assertEquals(3, MMapFlag.SHARED_VALIDATE.or(MMapFlag.SHARED));
+    }
+
+    @Test
+    public void grow() throws IOException {
+        assumeTrue(new File("/proc/self").exists());
+        final Path file = Files.createTempFile("region", ".test");
+        final long length = 64 << 10;
+        try (MappedRegion region = MappedRegion.mapFile(file.toString(), length, true)) {
+            region.putLong(8, 1);
+            final long address = region.address();
+            if (region.growInPlace(2 * length)) {
+                assertEquals(address, region.address());
+            } else {
+                region.resize(2 * length);
+            }
+            assertEquals(2 * length, region.length());
+            assertEquals(2 * length, Files.size(file));
+            assertEquals(1L, region.getLong(8));
+            region.putLong(2 * length - 8, 2);
+
+            // shrinking in place frees the addresses after it, so it can grow back in place
+            final long addr = region.resize(length);
+            assertTrue(region.growInPlace(2 * length));
+            assertEquals(addr, region.address());
+            assertEquals(2L, region.getLong(2 * length - 8));
+        } finally {
+            Files.delete(file);
+        }
+    }
+}
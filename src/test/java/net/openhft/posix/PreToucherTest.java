@@ -0,0 +1,55 @@
+package net.openhft.posix;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+public class PreToucherTest {
+
+    @Test
+    public void touch() throws IOException {
+        assumeTrue(new File("/proc/self").exists());
+        final Path file = Files.createTempFile("pretouch", ".test");
+        final long length = 3 * PreToucher.PIECE_SIZE + (1 << 20);
+        final PosixAPI posix = PosixAPI.posix();
+        final PreToucher preToucher = new PreToucher(4);
+        try {
+            try (MappedRegion region = MappedRegion.mapFile(file.toString(), length, true)) {
+                region.putLong(8, 0x0123456789ABCDEFL);
+                assertEquals(0, posix.du(file.toString()) >> 10);
+                preToucher.touch(region);
+                // write faulting a shared mapping allocates the blocks
+                assertEquals(length >> 10, posix.du(file.toString()));
+                assertEquals(0x0123456789ABCDEFL, region.getLong(8));
+
+                // part of a mapping, not page aligned
+                preToucher.touch(region.address() + 100, 10_000, false);
+            }
+            final long end;
+            try (MappedRegion region = MappedRegion.mapFile(file.toString(), length, false)) {
+                preToucher.touch(region);
+                try {
+                    preToucher.touch(region.address(), region.length(), true);
+                    fail();
+                } catch (IllegalArgumentException expected) {
+                    // read only
+                }
+                end = region.address() + region.length();
+            }
+            try {
+                preToucher.touch(end - 4096, 4096, false);
+                fail();
+            } catch (IllegalArgumentException expected) {
+                // not mapped
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package net.openhft.posix;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static net.openhft.posix.internal.UnsafeMemory.UNSAFE;
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+public class SequentialScanTest {
+
+    @Test
+    public void fadviseAndReadahead() throws IOException {
+        assumeTrue(new File("/proc/self").exists());
+        final Path file = Files.createTempFile("fadvise", ".test");
+        final PosixAPI posix = PosixAPI.posix();
+        try {
+            Files.write(file, new byte[64 << 10]);
+            final int fd = posix.open(file.toString(), OpenFlag.O_RDONLY, 0);
+            try {
+                assertEquals(0, posix.posix_fadvise(fd, 0, 0, FAdviseFlag.POSIX_FADV_SEQUENTIAL));
+                assertEquals(0, posix.posix_fadvise(fd, 0, 32 << 10, FAdviseFlag.POSIX_FADV_WILLNEED));
+                assertEquals(0, posix.posix_fadvise(fd, 0, 32 << 10, FAdviseFlag.POSIX_FADV_DONTNEED));
+                assertEquals(0, posix.readahead(fd, 32 << 10, 32 << 10));
+                assertEquals(-1, posix.posix_fadvise(-1, 0, 0, FAdviseFlag.POSIX_FADV_NORMAL));
+                assertEquals(9, posix.lastError()); // EBADF
+            } finally {
+                posix.close(fd);
+            }
+        } finally {
+            file.toFile().delete();
+        }
+    }
+
+    @Test
+    public void scan() throws IOException {
+        final Path file = Files.createTempFile("scan", ".test");
+        final int size = 4 << 20;
+        final byte[] bytes = new byte[size];
+        for (int i = 0; i < size; i++)
+            bytes[i] = (byte) (i >> 12);
+        Files.write(file, bytes);
+        final int bufSize = 64 << 10;
+        final long buf = UNSAFE.allocateMemory(bufSize);
+        try (SequentialScan scan = SequentialScan.open(file.toString(), 1 << 20, 1 << 20)) {
+            long total = 0;
+            for (int n; (n = scan.read(buf, bufSize)) > 0; total += n) {
+                assertEquals((byte) (total >> 12), UNSAFE.getByte(buf));
+                if (scan.isAdvising()) {
+                    assertTrue(scan.willNeedUpto() >= scan.position());
+                    assertTrue(scan.position() - scan.dontNeedUpto() <= (1 << 20) + (256 << 10));
+                }
+            }
+            assertEquals(size, total);
+            assertEquals(size, scan.position());
+            if (scan.isAdvising())
+                // one call per quarter of a window, for each of WILLNEED and DONTNEED, plus SEQUENTIAL
+                assertTrue(scan.adviceCalls() + " calls", scan.adviceCalls() <= 1 + 2 * 16 + 1);
+        } finally {
+            UNSAFE.freeMemory(buf);
+            file.toFile().delete();
+        }
+    }
+}
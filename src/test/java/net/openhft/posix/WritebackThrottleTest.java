@@ -0,0 +1,50 @@
+package net.openhft.posix;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static net.openhft.posix.internal.UnsafeMemory.UNSAFE;
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+public class WritebackThrottleTest {
+
+    @Test
+    public void written() throws IOException {
+        assumeTrue(new File("/proc/self").exists());
+        final Path file = Files.createTempFile("writeback", ".test");
+        final PosixAPI posix = PosixAPI.posix();
+        final int fd = posix.open(file.toString(), OpenFlag.O_RDWR, 0666);
+        final int size = 16 << 10;
+        final long buf = UNSAFE.allocateMemory(size);
+        try {
+            UNSAFE.setMemory(buf, size, (byte) 1);
+            final long chunk = 64 << 10;
+            final WritebackThrottle throttle = new WritebackThrottle(fd, 0, chunk, 4 * chunk);
+            long written = 0;
+            while (written < 16 * chunk) {
+                assertEquals(size, posix.write(fd, buf, size));
+                written += size;
+                throttle.written(written);
+                assertTrue(throttle.isSupported());
+                // never more than the window in flight
+                assertTrue(throttle.startedUpto() - throttle.waitedUpto() <= 4 * chunk);
+                assertEquals(written / chunk * chunk, throttle.startedUpto());
+            }
+            assertEquals(12 * chunk, throttle.waitedUpto());
+            assertEquals(12, throttle.waits());
+
+            throttle.flush(written + 10);
+            assertEquals(written + 10, throttle.waitedUpto());
+            assertEquals(0, posix.fdatasync(fd));
+        } finally {
+            UNSAFE.freeMemory(buf);
+            posix.close(fd);
+            Files.delete(file);
+        }
+    }
+}
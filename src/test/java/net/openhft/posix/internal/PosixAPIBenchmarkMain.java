@@ -0,0 +1,40 @@
+package net.openhft.posix.internal;
+
+import net.openhft.posix.PosixAPI;
+
+/*
+ Compares the cost per call of each PosixAPI implementation available.
+ Run with --enable-native-access=ALL-UNNAMED on Java 22+ to include FFM.
+ */
+public class PosixAPIBenchmarkMain {
+    static final int RUNS = Integer.getInteger("runs", 2_000_000);
+    static long blackhole;
+
+    public static void main(String[] args) {
+        for (String name : new String[]{"ffm", "jnr", "jna"}) {
+            final PosixAPI posix;
+            try {
+                posix = PosixAPIHolder.loadPosixApi(name);
+            } catch (Throwable t) {
+                System.out.println(name + ": not available, " + t);
+                continue;
+            }
+            for (int i = 0; i < 3; i++) {
+                long start0 = System.nanoTime();
+                for (int j = 0; j < RUNS; j++)
+                    blackhole += posix.getpid();
+                long start1 = System.nanoTime();
+                for (int j = 0; j < RUNS; j++)
+                    blackhole += posix.clock_gettime();
+                long start2 = System.nanoTime();
+                for (int j = 0; j < RUNS; j++)
+                    blackhole += posix.madvise(0, 0, 0);
+                long end = System.nanoTime();
+                System.out.printf("%s: getpid %.1f ns, clock_gettime %.1f ns, madvise %.1f ns%n", name,
+                        (double) (start1 - start0) / RUNS,
+                        (double) (start2 - start1) / RUNS,
+                        (double) (end - start2) / RUNS);
+            }
+        }
+    }
+}
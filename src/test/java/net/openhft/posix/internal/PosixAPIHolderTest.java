@@ -0,0 +1,41 @@
+package net.openhft.posix.internal;
+
+import jnr.ffi.Platform;
+import net.openhft.posix.PosixAPI;
+import net.openhft.posix.PosixBackend;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+public class PosixAPIHolderTest {
+
+    @Test
+    public void selectFastest() {
+        assumeTrue(Platform.getNativePlatform().isUnix());
+
+        final PosixAPIHolder.Candidate fastest = PosixAPIHolder.selectFastest();
+        assertEquals(PosixAPIHolder.nameOf(fastest.posixAPI), fastest.backend.name());
+        assertEquals("fastest", fastest.backend.selectedBy());
+        assertTrue(fastest.backend.nanosPerCall() > 0);
+        assertTrue(fastest.posixAPI.getpid() > 0);
+    }
+
+    @Test
+    public void posixBackend() {
+        final PosixBackend backend = PosixAPI.posixBackend();
+        assertEquals(PosixAPIHolder.nameOf(PosixAPI.posix()), backend.name());
+        assertSame(backend, PosixAPI.posixBackend());
+    }
+
+    @Test
+    public void loadByName() {
+        assertEquals("noop", PosixAPIHolder.nameOf(PosixAPIHolder.loadPosixApi("noop")));
+        assertEquals("jna", PosixAPIHolder.nameOf(PosixAPIHolder.loadPosixApi("JNA")));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownName() {
+        PosixAPIHolder.loadPosixApi("unknown");
+    }
+}
@@ -0,0 +1,109 @@
+package net.openhft.posix.internal.ffm;
+
+import jnr.constants.platform.Errno;
+import net.openhft.posix.*;
+import net.openhft.posix.internal.raw.Syscall;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static net.openhft.posix.internal.UnsafeMemory.UNSAFE;
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * The FFM implementation is compiled only by the java22 profile, into META-INF/versions/22, so it is loaded by name.
+ */
+public class FFMPosixAPITest {
+    private PosixAPI ffm;
+
+    static int javaVersion() {
+        final String version = System.getProperty("java.specification.version");
+        return Integer.parseInt(version.startsWith("1.") ? version.substring(2) : version);
+    }
+
+    @Before
+    public void setUp() throws ReflectiveOperationException {
+        assumeTrue(javaVersion() >= 22);
+        assumeTrue(new File("/proc/self").exists());
+        ffm = (PosixAPI) Class.forName("net.openhft.posix.internal.ffm.FFMPosixAPI").getConstructor().newInstance();
+    }
+
+    @Test
+    public void mmap_sync() throws IOException {
+        final Path file = Files.createTempFile("mmap", ".test");
+        final String filename = file.toAbsolutePath().toString();
+        final int fd = ffm.open(filename, OpenFlag.O_RDWR, 0666);
+        assertTrue(fd > 0);
+        final long length = 1L << 16;
+        assertEquals(0, ffm.ftruncate(fd, length));
+        assertEquals(4096, ffm.lseek(fd, 4096, WhenceFlag.SEEK_SET));
+
+        final long addr = ffm.mmap(0, length, MMapProt.PROT_READ_WRITE, MMapFlag.SHARED, fd, 0L);
+        assertNotEquals(-1, addr);
+        UNSAFE.putLong(addr, 0x0123456789ABCDEFL);
+        assertEquals(0, ffm.madvise(addr, length, MAdviseFlag.MADV_SEQUENTIAL));
+        assertEquals(0, ffm.fallocate(fd, 0, 0, length));
+        assertEquals(length >> 10, ffm.du(filename));
+        assertEquals(0, ffm.msync(addr, length, MSyncFlag.MS_SYNC));
+        assertEquals(0, ffm.munmap(addr, length));
+
+        final long buf = ffm.malloc(8);
+        assertNotEquals(0, buf);
+        assertEquals(8, ffm.pread(fd, buf, 8, 0));
+        assertEquals(0x0123456789ABCDEFL, UNSAFE.getLong(buf));
+        ffm.free(buf);
+        assertEquals(0, ffm.close(fd));
+        assertTrue(file.toFile().delete());
+    }
+
+    @Test
+    public void lastError() {
+        assertEquals(-1, ffm.close(-1));
+        assertEquals(Errno.EBADF.intValue(), ffm.lastError());
+        assertNotNull(ffm.lastErrorStr());
+        // errno is per thread
+        assertEquals(-1, ffm.lseek(-1, 0, WhenceFlag.SEEK_SET.value()));
+        assertEquals(Errno.EBADF.intValue(), ffm.lastError());
+    }
+
+    @Test
+    public void posix_memalign() {
+        final long memptr = ffm.malloc(8);
+        try {
+            assertEquals(0, ffm.posix_memalign(memptr, 4096, 8192));
+            final long addr = UNSAFE.getLong(memptr);
+            assertEquals(0, addr & 4095);
+            UNSAFE.putLong(addr + 8184, 1);
+            ffm.free(addr);
+            // not a power of two
+            assertEquals(Errno.EINVAL.intValue(), ffm.posix_memalign(memptr, 3000, 8192));
+        } finally {
+            ffm.free(memptr);
+        }
+    }
+
+    @Test
+    public void ids() {
+        assertEquals(PosixAPI.posix().getpid(), ffm.getpid());
+        assertEquals(PosixAPI.posix().gettid(), ffm.gettid());
+        assertEquals(ffm.gettid(), ffm.syscall(Syscall.GETTID.number(), 0, 0, 0, 0, 0, 0));
+        assertTrue(ffm.get_nprocs() <= ffm.get_nprocs_conf());
+        assertEquals(System.currentTimeMillis() * 1_000L, ffm.gettimeofday(), 2_000);
+        assertEquals(ffm.gettimeofday() * 1_000.0, ffm.clock_gettime(), 1_000_000);
+    }
+
+    @Test
+    public void nanoClock() throws ReflectiveOperationException {
+        final NanoClock clock = (NanoClock) Class.forName("net.openhft.posix.internal.ffm.FFMVdsoNanoClock")
+                .getConstructor(ClockId.class)
+                .newInstance(ClockId.CLOCK_MONOTONIC);
+        final long t0 = clock.nanoTime();
+        assertEquals(ffm.clock_gettime(ClockId.CLOCK_MONOTONIC), t0, 1_000_000);
+        assertTrue(clock.nanoTime() >= t0);
+    }
+}
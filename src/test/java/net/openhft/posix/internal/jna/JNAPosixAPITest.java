@@ -0,0 +1,61 @@
+package net.openhft.posix.internal.jna;
+
+import jnr.ffi.Platform;
+import net.openhft.posix.*;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static net.openhft.posix.internal.core.OS.isMacOSX;
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeFalse;
+import static org.junit.Assume.assumeTrue;
+
+public class JNAPosixAPITest {
+
+    @Test
+    public void mmap_sync() throws IOException {
+        assumeTrue(new File("/proc/self").exists());
+        final PosixAPI jna = new JNAPosixAPI();
+        final Path file = Files.createTempFile("mmap", ".test");
+        final String filename = file.toAbsolutePath().toString();
+        final int fd = jna.open(filename, OpenFlag.O_RDWR, 0666);
+        final long length = 1L << 16;
+        assertEquals(0, jna.ftruncate(fd, length));
+        assertEquals(4096, jna.lseek(fd, 4096, WhenceFlag.SEEK_SET));
+
+        long addr = jna.mmap(0, length, MMapProt.PROT_READ_WRITE, MMapFlag.SHARED, fd, 0L);
+        assertNotEquals(-1, addr);
+        assertEquals(0, jna.madvise(addr, length, MAdviseFlag.MADV_SEQUENTIAL));
+        assertEquals(0, jna.fallocate(fd, 0, 0, length));
+        assertEquals(length >> 10, jna.du(filename));
+        assertEquals(0, jna.msync(addr, length, MSyncFlag.MS_ASYNC));
+        assertEquals(0, jna.munmap(addr, length));
+        assertEquals(0, jna.close(fd));
+        assertTrue(file.toFile().delete());
+    }
+
+    @Test
+    public void lastError() {
+        final PosixAPI jna = new JNAPosixAPI();
+        assertEquals(-1, jna.close(-1));
+        assertEquals(9 /* EBADF */, jna.lastError());
+        assertNotNull(jna.lastErrorStr());
+    }
+
+    @Test
+    public void ids() {
+        assumeTrue(Platform.getNativePlatform().isUnix());
+        assumeFalse("macOS doesn't support 'gettid'", isMacOSX());
+
+        final PosixAPI jna = new JNAPosixAPI();
+        assertTrue(jna.getpid() > 0);
+        assertTrue(jna.gettid() > 0);
+        assertTrue(jna.get_nprocs() <= jna.get_nprocs_conf());
+        assertEquals(System.currentTimeMillis() * 1_000L, jna.gettimeofday(), 2_000);
+        assertEquals(jna.gettimeofday() * 1_000.0, jna.clock_gettime(), 1_000_000);
+    }
+}
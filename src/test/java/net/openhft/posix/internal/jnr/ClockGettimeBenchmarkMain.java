@@ -0,0 +1,54 @@
+package net.openhft.posix.internal.jnr;
+
+import net.openhft.posix.ClockId;
+import net.openhft.posix.NanoClock;
+import net.openhft.posix.internal.UnsafeMemory;
+
+/*
+ Compares the cost of reading CLOCK_MONOTONIC by
+ - malloc'ing and freeing a timespec on each call, as clock_gettime(int) used to
+ - the per-thread scratch buffer now used by clock_gettime(int)
+ - a caller supplied timespec
+ - NanoClock, which calls the vDSO directly where available
+ */
+public class ClockGettimeBenchmarkMain {
+    static final int RUNS = Integer.getInteger("runs", 10_000_000);
+    static long blackhole;
+
+    public static void main(String[] args) {
+        final JNRPosixAPI jnr = new JNRPosixAPI();
+        final int clockId = ClockId.CLOCK_MONOTONIC.value();
+        final NanoClock nanoClock = NanoClock.forClock(ClockId.CLOCK_MONOTONIC);
+        System.out.println("Using " + nanoClock);
+        final long timespec = jnr.malloc(16);
+        for (int i = 0; i < 5; i++) {
+            long start0 = System.nanoTime();
+            for (int j = 0; j < RUNS; j++) {
+                long ptr = jnr.malloc(16);
+                jnr.clock_gettime(clockId, ptr);
+                blackhole += UnsafeMemory.timespecNanos(ptr);
+                jnr.free(ptr);
+            }
+            long start1 = System.nanoTime();
+            for (int j = 0; j < RUNS; j++) {
+                blackhole += jnr.clock_gettime(clockId);
+            }
+            long start2 = System.nanoTime();
+            for (int j = 0; j < RUNS; j++) {
+                jnr.clock_gettime(clockId, timespec);
+                blackhole += UnsafeMemory.timespecNanos(timespec);
+            }
+            long start3 = System.nanoTime();
+            for (int j = 0; j < RUNS; j++) {
+                blackhole += nanoClock.nanoTime();
+            }
+            long end = System.nanoTime();
+            System.out.printf("malloc/free: %.1f ns, thread scratch: %.1f ns, caller supplied: %.1f ns, NanoClock: %.1f ns%n",
+                    (double) (start1 - start0) / RUNS,
+                    (double) (start2 - start1) / RUNS,
+                    (double) (start3 - start2) / RUNS,
+                    (double) (end - start3) / RUNS);
+        }
+        jnr.free(timespec);
+    }
+}
@@ -2,6 +2,10 @@ package net.openhft.posix.internal.jnr;
 
 import jnr.ffi.Platform;
 import net.openhft.posix.*;
+import net.openhft.posix.internal.ErrnoTable;
+import net.openhft.posix.internal.UnsafeMemory;
+import net.openhft.posix.internal.core.OS;
+import net.openhft.posix.internal.raw.Syscall;
 import org.junit.Test;
 
 import java.io.File;
@@ -13,6 +17,7 @@ import java.util.List;
 import java.util.concurrent.ConcurrentSkipListSet;
 import java.util.function.Supplier;
 
+import static net.openhft.posix.internal.UnsafeMemory.UNSAFE;
 import static net.openhft.posix.internal.core.OS.isMacOSX;
 import static org.junit.Assert.*;
 import static org.junit.Assume.assumeFalse;
@@ -81,6 +86,20 @@ public class JNRPosixAPITest {
 
         final int err0 = jnr.msync(addr, length, MSyncFlag.MS_ASYNC);
         assertEquals(0, err0);
+        assertEquals(0, jnr.sync_file_range(fd, 0, length, SyncFileRangeFlag.SYNC_FILE_RANGE_WRITE));
+        assertEquals(0, jnr.fdatasync(fd));
+        assertEquals(0, jnr.fsync(fd));
+
+        final long buf = jnr.malloc(16);
+        UNSAFE.putLong(buf, 0x0123456789ABCDEFL);
+        assertEquals(8, jnr.pwrite(fd, buf, 8, length - 8));
+        try (IOVec iov = new IOVec(2)) {
+            iov.add(buf + 8, 8).add(buf, 8);
+            assertEquals(16, jnr.preadv(fd, iov, length - 16));
+        }
+        assertEquals(0x0123456789ABCDEFL, UNSAFE.getLong(buf));
+        assertEquals(0L, UNSAFE.getLong(buf + 8));
+        jnr.free(buf);
 
         int err1 = jnr.munmap(addr, length);
         assertEquals(0, err1);
@@ -90,6 +109,58 @@ public class JNRPosixAPITest {
         file.toFile().delete();
     }
 
+    @Test
+    public void stat() throws IOException {
+        assumeTrue(isUnix() && !isMacOSX());
+        final Path file = Files.createTempFile("stat", ".test");
+        final int fd = jnr.open(file.toString(), OpenFlag.O_RDWR, 0666);
+        try {
+            final long length = 1L << 20;
+            assertEquals(0, jnr.ftruncate(fd, length));
+            final FileStat stat = new FileStat();
+            assertEquals(0, jnr.stat(file.toString(), stat));
+            assertEquals(length, stat.size());
+            // sparse
+            assertEquals(0, stat.blocks());
+            assertEquals(((Number) Files.getAttribute(file, "unix:ino")).longValue(), stat.inode());
+            assertEquals(Files.getLastModifiedTime(file).toMillis(), stat.mtimeNanos() / 1_000_000);
+            assertFalse(stat.isDirectory());
+            assertEquals(0, jnr.du(file.toString()));
+
+            assertEquals(0, jnr.fallocate(fd, 0, 0, length));
+            final FileStat fstat = new FileStat();
+            assertEquals(0, jnr.fstat(fd, fstat));
+            assertEquals(stat.inode(), fstat.inode());
+            assertEquals(length, fstat.diskUsage());
+            assertEquals(length >> 10, jnr.du(file.toString()));
+
+            assertEquals(-1, jnr.stat(file + ".missing", stat));
+            assertEquals(0, jnr.stat(file.getParent().toString(), stat));
+            assertTrue(stat.isDirectory());
+        } finally {
+            jnr.close(fd);
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void mmap_errno() {
+        assumeTrue(isUnix() && !isMacOSX());
+        try {
+            jnr.mmap(0, 4096, MMapProt.PROT_READ_WRITE, MMapFlag.SHARED, -1, 0L);
+            fail();
+        } catch (PosixRuntimeException e) {
+            assertEquals(9, e.errno());
+            assertEquals("EBADF: Bad file descriptor", e.getMessage());
+            // shared and stackless so retry loops don't create garbage
+            assertSame(e, PosixRuntimeException.of(9));
+            assertEquals(0, e.getStackTrace().length);
+        }
+        assertEquals("ENOMEM", ErrnoTable.name(12));
+        assertEquals("errno 100000", ErrnoTable.name(100000));
+        assertEquals(100000, PosixRuntimeException.of(100000).errno());
+    }
+
     @Test
     public void mlockall() {
         assumeFalse("macOS doesn't support 'mlockall'", isMacOSX());
@@ -155,6 +226,43 @@ public class JNRPosixAPITest {
         assertEquals(clock_gettime / 1000.0, time, 1_000);
     }
 
+    @Test
+    public void clock_gettime_buffer() {
+        assumeTrue(isUnix());
+
+        final long timespec = jnr.malloc(16);
+        try {
+            assertEquals(0, jnr.clock_gettime(ClockId.CLOCK_REALTIME.value(), timespec));
+            final long nanos = UnsafeMemory.timespecNanos(timespec);
+            assertEquals(System.currentTimeMillis() * 1_000_000L, nanos, 2_000_000_000L);
+            assertEquals(jnr.clock_gettime(), nanos, 1_000_000_000L);
+        } finally {
+            jnr.free(timespec);
+        }
+    }
+
+    @Test
+    public void nanoClock() {
+        assumeTrue(isUnix());
+
+        final boolean vdso = OS.isLinux()
+                && (Syscall.Arch.CURRENT == Syscall.Arch.X86_64 || Syscall.Arch.CURRENT == Syscall.Arch.AARCH64);
+        for (ClockId clockId : new ClockId[]{ClockId.CLOCK_REALTIME, ClockId.CLOCK_MONOTONIC, ClockId.CLOCK_MONOTONIC_RAW}) {
+            final NanoClock clock = NanoClock.forClock(clockId);
+            assertSame(clock, NanoClock.forClock(clockId));
+            assertEquals(clockId, clock.clockId());
+            // the vDSO is always mapped on these, so a fallback to clock_gettime would be a failure to find it
+            if (vdso)
+                assertTrue(clock.toString(), clock instanceof JNRVdsoNanoClock
+                        || clock.getClass().getSimpleName().equals("FFMVdsoNanoClock"));
+            final long time0 = clock.nanoTime();
+            final long time1 = jnr.clock_gettime(clockId);
+            final long time2 = clock.nanoTime();
+            assertTrue(clock + " " + time0 + " <= " + time1, time0 <= time1);
+            assertTrue(clock + " " + time1 + " <= " + time2, time1 <= time2);
+        }
+    }
+
     @Test
     public void get_nprocs() {
         assumeFalse("macOS doesn't support 'get_nprocs'", isMacOSX());
@@ -207,6 +315,7 @@ public class JNRPosixAPITest {
     @Test
     public void setaffinity() {
         assumeTrue("Windows and macOS doesn't support 'setaffinity'", isUnix() && !isMacOSX());
+        assumeTrue("Needs CPUs 0 to 3", jnr.get_nprocs() >= 4);
 
         int gettid = jnr.gettid();
         assertEquals(0, jnr.sched_setaffinity_as(gettid, 1));
@@ -216,6 +325,32 @@ public class JNRPosixAPITest {
         assertEquals(0, jnr.sched_setaffinity_range(gettid, 0, jnr.get_nprocs_conf()));
     }
 
+    @Test
+    public void cpuSet() {
+        assumeTrue("Windows and macOS doesn't support 'setaffinity'", isUnix() && !isMacOSX());
+
+        int gettid = jnr.gettid();
+        try (CpuSet original = new CpuSet(); CpuSet cpus = new CpuSet()) {
+            assertEquals(0, jnr.sched_getaffinity(gettid, original));
+            assertTrue(original.cardinality() >= 1);
+            assertEquals(original.toString(), jnr.sched_getaffinity_summary(gettid));
+
+            final int first = original.nextSetCpu(0);
+            assertEquals(0, jnr.sched_setaffinity(gettid, cpus.set(first)));
+            assertEquals(0, jnr.sched_getaffinity(gettid, cpus.clearAll()));
+            assertEquals(first + "-" + first, cpus.toString());
+            assertEquals(first, jnr.getcpu());
+
+            // reuses the set, clearing it first
+            assertEquals(0, jnr.sched_setaffinity_as(gettid, first, cpus));
+            assertEquals(first + "-" + first, jnr.sched_getaffinity_summary(gettid, cpus));
+            assertEquals(0, jnr.sched_setaffinity_range(gettid, first, first, cpus));
+            assertEquals(first + "-" + first, jnr.sched_getaffinity_summary(gettid, cpus));
+
+            assertEquals(0, jnr.sched_setaffinity(gettid, original));
+        }
+    }
+
     @Test
     public void clocks() {
         assumeTrue(isUnix());
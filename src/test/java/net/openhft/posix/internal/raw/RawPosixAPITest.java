@@ -0,0 +1,137 @@
+package net.openhft.posix.internal.raw;
+
+import net.openhft.posix.*;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static net.openhft.posix.internal.UnsafeMemory.UNSAFE;
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+public class RawPosixAPITest {
+    private PosixAPI raw;
+
+    @Before
+    public void setUp() {
+        assumeTrue(new File("/proc/self").exists());
+        assumeTrue(Syscall.Arch.CURRENT != Syscall.Arch.UNKNOWN);
+        raw = new RawPosixAPI();
+    }
+
+    @Test
+    public void arch() {
+        assertEquals(Syscall.Arch.X86_64, Syscall.Arch.of("amd64", true));
+        assertEquals(Syscall.Arch.I386, Syscall.Arch.of("x86", false));
+        assertEquals(Syscall.Arch.AARCH64, Syscall.Arch.of("aarch64", true));
+        assertEquals(Syscall.Arch.ARM, Syscall.Arch.of("arm", false));
+        assertEquals(Syscall.Arch.UNKNOWN, Syscall.Arch.of("ppc64le", true));
+    }
+
+    @Test
+    public void mmap_sync() throws IOException {
+        final Path file = Files.createTempFile("mmap", ".test");
+        final String filename = file.toAbsolutePath().toString();
+        final int fd = raw.open(filename, OpenFlag.O_RDWR, 0666);
+        assertTrue(fd > 0);
+        final long length = 1L << 16;
+        assertEquals(0, raw.ftruncate(fd, length));
+        assertEquals(0, raw.lockf(fd, LockfFlag.F_TLOCK.value(), 0));
+        assertEquals(0, raw.lockf(fd, LockfFlag.F_TEST.value(), 0));
+        assertEquals(0, raw.lockf(fd, LockfFlag.F_ULOCK.value(), 0));
+
+        long addr = raw.mmap(0, length, MMapProt.PROT_READ_WRITE, MMapFlag.SHARED, fd, 0L);
+        UNSAFE.putLong(addr, 0x0123456789ABCDEFL);
+        assertEquals(0, raw.madvise(addr, length, MAdviseFlag.MADV_SEQUENTIAL));
+        assertEquals(0, raw.fallocate(fd, 0, 0, length));
+        assertEquals(0, raw.msync(addr, length, MSyncFlag.MS_SYNC));
+        assertEquals(0, raw.sync_file_range(fd, 0, length,
+                SyncFileRangeFlag.SYNC_FILE_RANGE_WAIT_BEFORE, SyncFileRangeFlag.SYNC_FILE_RANGE_WRITE, SyncFileRangeFlag.SYNC_FILE_RANGE_WAIT_AFTER));
+        assertEquals(0, raw.fdatasync(fd));
+        assertEquals(0, raw.fsync(fd));
+        assertEquals(0, raw.posix_fadvise(fd, 0, length, FAdviseFlag.POSIX_FADV_WILLNEED));
+        assertEquals(0, raw.readahead(fd, 0, length));
+        assertTrue(raw.mlock2(addr, length, true));
+        assertEquals(0, raw.munmap(addr, length));
+
+        final long buf = raw.malloc(8);
+        assertEquals(0, raw.lseek(fd, 0, 0 /* SEEK_SET */));
+        assertEquals(8, raw.read(fd, buf, 8));
+        assertEquals(0x0123456789ABCDEFL, UNSAFE.getLong(buf));
+        UNSAFE.putLong(buf, 0);
+        assertEquals(8, raw.pread(fd, buf, 8, 0));
+        assertEquals(0x0123456789ABCDEFL, UNSAFE.getLong(buf));
+        try (IOVec iov = new IOVec(1)) {
+            iov.add(buf, 8);
+            assertEquals(8, raw.pwritev(fd, iov, length + 8));
+            assertEquals(8, raw.preadv2(fd, iov, 8, RwfFlag.RWF_NOWAIT.value()));
+            assertEquals(0L, UNSAFE.getLong(buf));
+        }
+        raw.free(buf);
+        assertEquals(0, raw.close(fd));
+        assertTrue(file.toFile().delete());
+    }
+
+    @Test
+    public void lastError() {
+        assertEquals(-1, raw.close(-1));
+        assertEquals(9 /* EBADF */, raw.lastError());
+        assertEquals("Bad file descriptor", raw.lastErrorStr());
+    }
+
+    @Test
+    public void syscallNotAvailable() {
+        assertEquals(-1, raw.syscall(-1, 0, 0, 0, 0, 0, 0));
+        assertEquals(38 /* ENOSYS */, raw.lastError());
+    }
+
+    @Test
+    public void ids() {
+        assertTrue(raw.getpid() > 0);
+        assertEquals(raw.getpid(), PosixAPI.posix().getpid());
+        assertTrue(raw.gettid() > 0);
+        assertTrue(raw.get_nprocs() <= raw.get_nprocs_conf());
+        assertTrue(raw.getcpu() >= 0);
+        assertTrue(raw.getcpu() < raw.get_nprocs_conf());
+        assertEquals(System.currentTimeMillis() * 1_000L, raw.gettimeofday(), 2_000);
+        assertEquals(raw.gettimeofday() * 1_000.0, raw.clock_gettime(), 1_000_000);
+    }
+
+    @Test
+    public void membarrier() {
+        final int supported = raw.membarrier(0 /* MEMBARRIER_CMD_QUERY */, 0);
+        assumeTrue(supported > 0);
+        assertNotEquals(0, supported & 1 /* MEMBARRIER_CMD_GLOBAL */);
+    }
+
+    @Test
+    public void memfd_copy_file_range() {
+        final int memfd = raw.memfd_create("test", 1 /* MFD_CLOEXEC */);
+        assumeTrue(memfd > 0);
+        final int memfd2 = raw.memfd_create("test2", 1 /* MFD_CLOEXEC */);
+        final long buf = raw.malloc(16);
+        try {
+            UNSAFE.putLong(buf, 0x0123456789ABCDEFL);
+            assertEquals(8, raw.write(memfd, buf, 8));
+            // copy from offset 0 of memfd
+            UNSAFE.putLong(buf + 8, 0L);
+            final long copied = raw.copy_file_range(memfd, buf + 8, memfd2, 0, 8, 0);
+            // not all file systems support copying between memfds
+            assumeTrue(copied >= 0);
+            assertEquals(8, copied);
+            assertEquals(8, UNSAFE.getLong(buf + 8));
+            UNSAFE.putLong(buf, 0L);
+            assertEquals(0, raw.lseek(memfd2, 0, 0 /* SEEK_SET */));
+            assertEquals(8, raw.read(memfd2, buf, 8));
+            assertEquals(0x0123456789ABCDEFL, UNSAFE.getLong(buf));
+        } finally {
+            raw.free(buf);
+            raw.close(memfd);
+            raw.close(memfd2);
+        }
+    }
+}